@@ -0,0 +1,69 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.flume;
+
+import java.util.List;
+
+import org.apache.flume.annotations.InterfaceAudience;
+import org.apache.flume.annotations.InterfaceStability;
+
+/**
+ * <p>
+ * A {@link Channel} that can put and take several events in one call.
+ * Implementing it is optional; callers check for it and fall back to
+ * {@linkplain Channel#put(Event) put} and {@linkplain Channel#take() take}
+ * otherwise, as {@link org.apache.flume.channel.ChannelUtils#putAll} and
+ * {@link org.apache.flume.channel.ChannelUtils#takeBatch} do.
+ * </p>
+ */
+@InterfaceAudience.Public
+@InterfaceStability.Evolving
+public interface BatchChannel extends Channel {
+
+  /**
+   * <p>Puts the given events into the channel, in order. Channels may
+   * reserve the space for all events at once, so this is usually cheaper
+   * than putting the events one by one.</p>
+   * <p>If this throws, some of the events may have been put already; the
+   * transaction should then be rolled back.</p>
+   * <p><strong>Note</strong>: This method must be invoked within an active
+   * {@link Transaction} boundary. Failure to do so can lead to unpredictable
+   * results.</p>
+   * @param events the events to transport.
+   * @throws ChannelException in case this operation fails.
+   * @see org.apache.flume.Transaction#begin()
+   */
+  public void putAll(List<Event> events) throws ChannelException;
+
+  /**
+   * <p>Takes up to {@code max} of the next events from the channel and adds
+   * them to {@code out}. The channel waits for the first event as
+   * {@link #take()} does, but may return fewer events than requested
+   * without waiting for more.</p>
+   * <p><strong>Note</strong>: This method must be invoked within an active
+   * {@link Transaction} boundary. Failure to do so can lead to unpredictable
+   * results.</p>
+   * @param max the maximum number of events to take.
+   * @param out the list to add the taken events to.
+   * @return the number of events taken, {@code 0} if no events are
+   * available.
+   * @throws ChannelException in case this operation fails.
+   * @see org.apache.flume.Transaction#begin()
+   */
+  public int take(int max, List<Event> out) throws ChannelException;
+}
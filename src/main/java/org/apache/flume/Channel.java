@@ -52,6 +52,7 @@ import org.apache.flume.lifecycle.LifecycleAware;
  * @see org.apache.flume.Source
  * @see org.apache.flume.Sink
  * @see org.apache.flume.Transaction
+ * @see org.apache.flume.BatchChannel
  */
 @InterfaceAudience.Public
 @InterfaceStability.Stable
@@ -18,8 +18,12 @@
  */
 package org.apache.flume.channel;
 
-import org.apache.flume.Channel;
+import java.util.List;
+
+import org.apache.flume.BatchChannel;
+import org.apache.flume.ChannelException;
 import org.apache.flume.Context;
+import org.apache.flume.Event;
 import org.apache.flume.annotations.InterfaceAudience;
 import org.apache.flume.annotations.InterfaceStability;
 import org.apache.flume.conf.Configurable;
@@ -29,7 +33,7 @@ import org.apache.flume.lifecycle.LifecycleState;
 @InterfaceAudience.Public
 @InterfaceStability.Stable
 public abstract class AbstractChannel
-    implements Channel, LifecycleAware, Configurable {
+    implements BatchChannel, LifecycleAware, Configurable {
 
   private String name;
 
@@ -69,6 +73,36 @@ public abstract class AbstractChannel
 
   }
 
+  /**
+   * Puts the events one by one. Channels that can reserve space for several
+   * events at once should override this.
+   */
+  @Override
+  public void putAll(List<Event> events) throws ChannelException {
+    for (Event event : events) {
+      put(event);
+    }
+  }
+
+  /**
+   * Takes events one by one until {@code max} are taken or {@link #take()}
+   * returns {@code null}. Channels that can take several events at once
+   * should override this.
+   */
+  @Override
+  public int take(int max, List<Event> out) throws ChannelException {
+    int taken = 0;
+    while (taken < max) {
+      Event event = take();
+      if (event == null) {
+        break;
+      }
+      out.add(event);
+      taken++;
+    }
+    return taken;
+  }
+
   public String toString() {
 	  return this.getClass().getName() + "{name: " + name + "}";
   }
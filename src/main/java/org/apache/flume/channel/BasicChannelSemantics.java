@@ -19,6 +19,8 @@
 
 package org.apache.flume.channel;
 
+import java.util.List;
+
 import org.apache.flume.Channel;
 import org.apache.flume.ChannelException;
 import org.apache.flume.Event;
@@ -95,6 +97,36 @@ public abstract class BasicChannelSemantics extends AbstractChannel {
     return transaction.take();
   }
 
+  /**
+   * <p>
+   * Ensures that a transaction exists for this thread and then
+   * delegates the <code>putAll</code> to the thread's {@link
+   * BasicTransactionSemantics} instance.
+   * </p>
+   */
+  @Override
+  public void putAll(List<Event> events) throws ChannelException {
+    BasicTransactionSemantics transaction = currentTransaction.get();
+    Preconditions.checkState(transaction != null,
+        "No transaction exists for this thread");
+    transaction.putAll(events);
+  }
+
+  /**
+   * <p>
+   * Ensures that a transaction exists for this thread and then
+   * delegates the <code>take</code> of several events to the thread's
+   * {@link BasicTransactionSemantics} instance.
+   * </p>
+   */
+  @Override
+  public int take(int max, List<Event> out) throws ChannelException {
+    BasicTransactionSemantics transaction = currentTransaction.get();
+    Preconditions.checkState(transaction != null,
+        "No transaction exists for this thread");
+    return transaction.take(max, out);
+  }
+
   /**
    * <p>
    * Initializes the channel if it is not already, then checks to see
@@ -19,6 +19,8 @@
 
 package org.apache.flume.channel;
 
+import java.util.List;
+
 import org.apache.flume.Channel;
 import org.apache.flume.ChannelException;
 import org.apache.flume.Event;
@@ -44,7 +46,9 @@ import com.google.common.base.Preconditions;
  * those methods are called only after transaction state preconditions
  * have been properly met.  <code>doBegin</code> and
  * <code>doClose</code> may also be implemented if there is work to be
- * done at those points.
+ * done at those points, and <code>doPutAll</code> and the batch
+ * <code>doTake</code> if several events can be handled more cheaply
+ * than one by one.
  * </p>
  * <p>
  * All InterruptedException exceptions thrown from the implementations
@@ -70,6 +74,32 @@ public abstract class BasicTransactionSemantics implements Transaction {
   protected abstract void doRollback() throws InterruptedException;
   protected void doClose() {}
 
+  /**
+   * Puts the events one by one with <code>doPut</code>.
+   */
+  protected void doPutAll(List<Event> events) throws InterruptedException {
+    for (Event event : events) {
+      doPut(event);
+    }
+  }
+
+  /**
+   * Takes events one by one with <code>doTake</code> until <code>max</code>
+   * are taken or none is available.
+   */
+  protected int doTake(int max, List<Event> out) throws InterruptedException {
+    int taken = 0;
+    while (taken < max) {
+      Event event = doTake();
+      if (event == null) {
+        break;
+      }
+      out.add(event);
+      taken++;
+    }
+    return taken;
+  }
+
   protected BasicTransactionSemantics() {
     state = State.NEW;
     initialThreadId = Thread.currentThread().getId();
@@ -117,6 +147,55 @@ public abstract class BasicTransactionSemantics implements Transaction {
     }
   }
 
+  /**
+   * <p>
+   * The method to which {@link BasicChannelSemantics} delegates calls
+   * to <code>putAll</code>.
+   * </p>
+   */
+  protected void putAll(List<Event> events) {
+    Preconditions.checkState(Thread.currentThread().getId() == initialThreadId,
+        "putAll() called from different thread than getTransaction()!");
+    Preconditions.checkState(state.equals(State.OPEN),
+        "putAll() called when transaction is %s!", state);
+    Preconditions.checkArgument(events != null,
+        "putAll() called with null events!");
+    for (Event event : events) {
+      Preconditions.checkArgument(event != null,
+          "putAll() called with null event!");
+    }
+
+    try {
+      doPutAll(events);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ChannelException(e.toString(), e);
+    }
+  }
+
+  /**
+   * <p>
+   * The method to which {@link BasicChannelSemantics} delegates calls
+   * to <code>take</code> several events. An interrupt ends the take with
+   * the events taken so far.
+   * </p>
+   */
+  protected int take(int max, List<Event> out) {
+    Preconditions.checkState(Thread.currentThread().getId() == initialThreadId,
+        "take() called from different thread than getTransaction()!");
+    Preconditions.checkState(state.equals(State.OPEN),
+        "take() called when transaction is %s!", state);
+    Preconditions.checkArgument(max >= 0, "take() called with max %s", max);
+
+    int size = out.size();
+    try {
+      return doTake(max, out);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return out.size() - size;
+    }
+  }
+
   /**
    * @return the current state of the transaction
    */
@@ -129,8 +129,8 @@ public class ChannelProcessor implements Configurable {
   }
 
   /**
-   * Attempts to {@linkplain Channel#put(Event) put} the given events into each
-   * configured channel. If any {@code required} channel throws a
+   * Attempts to {@linkplain ChannelUtils#putAll(Channel, List) put} the given
+   * events into each configured channel. If any {@code required} channel throws a
    * {@link ChannelException}, that exception will be propagated.
    *
    * <p>Note that if multiple channels are configured, some {@link Transaction}s
@@ -183,11 +183,7 @@ public class ChannelProcessor implements Configurable {
       try {
         tx.begin();
 
-        List<Event> batch = reqChannelQueue.get(reqChannel);
-
-        for (Event event : batch) {
-          reqChannel.put(event);
-        }
+        ChannelUtils.putAll(reqChannel, reqChannelQueue.get(reqChannel));
 
         tx.commit();
       } catch (Throwable t) {
@@ -214,11 +210,7 @@ public class ChannelProcessor implements Configurable {
       try {
         tx.begin();
 
-        List<Event> batch = optChannelQueue.get(optChannel);
-
-        for (Event event : batch ) {
-          optChannel.put(event);
-        }
+        ChannelUtils.putAll(optChannel, optChannelQueue.get(optChannel));
 
         tx.commit();
       } catch (Throwable t) {
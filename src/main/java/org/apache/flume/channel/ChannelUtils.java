@@ -25,6 +25,7 @@ import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executors;
 
+import org.apache.flume.BatchChannel;
 import org.apache.flume.Channel;
 import org.apache.flume.ChannelException;
 import org.apache.flume.Event;
@@ -131,6 +132,48 @@ public class ChannelUtils {
       });
   }
 
+  /**
+   * <p>
+   * Puts the events within the current transaction, in one call if the
+   * channel is a {@link BatchChannel}, or one by one otherwise.
+   * </p>
+   */
+  public static void putAll(Channel channel, List<Event> events)
+      throws ChannelException {
+    if (channel instanceof BatchChannel) {
+      ((BatchChannel) channel).putAll(events);
+      return;
+    }
+    for (Event event : events) {
+      channel.put(event);
+    }
+  }
+
+  /**
+   * <p>
+   * Takes up to <code>max</code> events within the current transaction, in
+   * one call if the channel is a {@link BatchChannel}, or one by one until
+   * the channel has none available otherwise.
+   * </p>
+   * @return the number of events added to <code>out</code>
+   */
+  public static int takeBatch(Channel channel, int max, List<Event> out)
+      throws ChannelException {
+    if (channel instanceof BatchChannel) {
+      return ((BatchChannel) channel).take(max, out);
+    }
+    int taken = 0;
+    while (taken < max) {
+      Event event = channel.take();
+      if (event == null) {
+        break;
+      }
+      out.add(event);
+      taken++;
+    }
+    return taken;
+  }
+
   /**
    * <p>
    * A convenience method for transactions that don't require a return
@@ -0,0 +1,144 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A {@link LaneQueue} that shares the channel between its lanes in
+ * proportion to their weights, typically with one lane per source. Each
+ * header value gets a lane of its own the first time it is seen, up to
+ * {@code maxLanes} lanes including the default one, after which further
+ * values share the default lane.
+ * </p>
+ * <p>
+ * Events are taken by deficit round robin: the lanes are visited in turn,
+ * and a lane of weight {@code w} gives up to {@code w} events per visit.
+ * </p>
+ * <p>
+ * Capacity is shared among the active lanes, those with queued events or
+ * with a commit waiting for space. A lane that already has events may only
+ * grow up to its share, {@code capacity * weight / (sum of the weights of
+ * the active lanes)}, so that a burst from one source leaves room for the
+ * others once they have something to commit. An idle lane is always
+ * accepted, which keeps a lane from being locked out by a share smaller
+ * than a transaction; a lone lane may use the whole capacity.
+ * </p>
+ */
+class FairLaneQueue extends LaneQueue {
+
+  private final Map<String, Integer> weightsByValue;
+  private final int defaultWeight;
+  private final int maxLanes;
+  private int[] weights;
+  private int current;
+  private int credit;
+
+  /**
+   * @param values the header values to open lanes for up front
+   * @param weightsByValue the weights of header values; other values and
+   * the default lane have {@code defaultWeight}
+   * @param maxLanes the maximum number of lanes, including the default one
+   */
+  FairLaneQueue(String header, List<String> values,
+      Map<String, Integer> weightsByValue, int defaultWeight, int maxLanes) {
+    super(header, values, values.size());
+    Preconditions.checkArgument(defaultWeight > 0,
+        "Lane weights must be positive");
+    Preconditions.checkArgument(maxLanes > values.size(),
+        "Lane limit %s must leave room for the %s configured lanes and the "
+        + "default lane", maxLanes, values.size());
+    for (Map.Entry<String, Integer> entry : weightsByValue.entrySet()) {
+      Preconditions.checkArgument(entry.getValue() > 0,
+          "Weight of lane %s must be positive", entry.getKey());
+    }
+    this.weightsByValue = Collections.unmodifiableMap(weightsByValue);
+    this.defaultWeight = defaultWeight;
+    this.maxLanes = maxLanes;
+    this.weights = new int[getLaneCount()];
+    for (int i = 0; i < values.size(); i++) {
+      weights[i] = weightOf(values.get(i));
+    }
+    weights[getDefaultLane()] = defaultWeight;
+  }
+
+  @Override
+  protected int laneFor(String value) {
+    if (getLaneCount() >= maxLanes) {
+      return getDefaultLane();
+    }
+    int lane = addLane(value);
+    if (lane >= weights.length) {
+      weights = Arrays.copyOf(weights, lane * 2);
+    }
+    weights[lane] = weightOf(value);
+    return lane;
+  }
+
+  @Override
+  protected int nextLane() {
+    if (credit > 0 && !isEmpty(current)) {
+      credit--;
+      return current;
+    }
+    int lanes = getLaneCount();
+    do {
+      current = (current + 1) % lanes;
+    } while (isEmpty(current));
+    credit = weights[current] - 1;
+    return current;
+  }
+
+  @Override
+  protected int rejectedLane(int[] counts, int capacity) {
+    long activeWeight = 0;
+    for (int i = 0; i < getLaneCount(); i++) {
+      if (!isEmpty(i) || pending(i) > 0 || (i < counts.length && counts[i] > 0)) {
+        activeWeight += weights[i];
+      }
+    }
+    for (int i = 0; i < counts.length; i++) {
+      int occupied = size(i) + pending(i);
+      if (counts[i] == 0 || occupied == 0) {
+        continue;
+      }
+      long share = Math.max(1L, capacity * (long) weights[i] / activeWeight);
+      if (occupied + counts[i] > share) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  int getWeight(int lane) {
+    return weights[lane];
+  }
+
+  private int weightOf(String value) {
+    Integer weight = weightsByValue.get(value);
+    return weight == null ? defaultWeight : weight;
+  }
+
+}
@@ -0,0 +1,306 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+import org.apache.flume.Event;
+import org.apache.flume.channel.OffHeapEventStore.OffHeapEvent;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * The queue of a {@link MemoryChannel} split into lanes, with the lane of an
+ * event chosen by the value of one of its headers. Each lane is a FIFO; the
+ * subclass decides which lane the next event is taken from, and may open a
+ * lane for a header value the first time it is seen. Events whose header is
+ * missing or has a value without a lane of its own go to the default lane.
+ * </p>
+ * <p>
+ * A lane queue does not bound the number of events, which the channel
+ * already does with its semaphores, but a subclass may refuse the events of
+ * a commit in {@link #rejectedLane(int[], int)}. It is not thread safe: the
+ * channel only uses it while holding its queue lock. {@link #size()} may be
+ * read without the lock.
+ * </p>
+ */
+abstract class LaneQueue {
+
+  static final String DEFAULT_LANE_NAME = "other";
+
+  private final String header;
+  private final Map<String, Integer> lanesByValue;
+  private final int defaultLane;
+  private final List<ArrayDeque<Event>> lanes;
+  private final List<String> names;
+  // events of commits that wait for space in the channel, by lane
+  private int[] pending;
+  private volatile int size;
+
+  /**
+   * @param header the header whose value selects the lane
+   * @param values the header values with a lane of their own; the lane of
+   * the value at index {@code i} is {@code i}
+   * @param defaultLane the lane of the other events, which may be
+   * {@code values.size()} to give them a lane of their own
+   */
+  LaneQueue(String header, List<String> values, int defaultLane) {
+    Preconditions.checkArgument(header != null && !header.isEmpty(),
+        "Lane header must not be empty");
+    Preconditions.checkArgument(defaultLane >= 0
+        && defaultLane <= values.size(), "Invalid default lane %s", defaultLane);
+    this.header = header;
+    this.lanesByValue = new HashMap<String, Integer>();
+    this.defaultLane = defaultLane;
+    this.lanes = new ArrayList<ArrayDeque<Event>>();
+    this.names = new ArrayList<String>();
+    this.pending = new int[values.size() + 1];
+    for (String value : values) {
+      Preconditions.checkArgument(!lanesByValue.containsKey(value),
+          "Duplicate lane %s", value);
+      addLane(value);
+    }
+    if (defaultLane == values.size()) {
+      lanes.add(new ArrayDeque<Event>());
+      names.add(DEFAULT_LANE_NAME);
+    }
+  }
+
+  /**
+   * Returns the lane, among the non-empty ones, to take the next event from.
+   * Only called when the queue is not empty.
+   */
+  protected abstract int nextLane();
+
+  /**
+   * Returns the lane of a header value seen for the first time. The default
+   * implementation returns the default lane; a subclass may open a lane for
+   * the value with {@link #addLane(String)} instead.
+   */
+  protected int laneFor(String value) {
+    return defaultLane;
+  }
+
+  /**
+   * Returns a lane that may not grow by the given number of events, or
+   * {@code -1} to accept them. The default implementation accepts all
+   * events.
+   *
+   * @param counts the number of events to add, by lane
+   * @param capacity the capacity of the channel
+   */
+  protected int rejectedLane(int[] counts, int capacity) {
+    return -1;
+  }
+
+  /**
+   * Called after an event was taken from a lane by {@link #poll()}.
+   */
+  protected void taken(int lane, Event event) {
+  }
+
+  /**
+   * Called after a taken event was returned to a lane by
+   * {@link #addFirst(Event)}.
+   */
+  protected void returned(int lane, Event event) {
+  }
+
+  /**
+   * Opens a lane for the given header value and returns it.
+   */
+  protected final int addLane(String value) {
+    int lane = lanes.size();
+    lanes.add(new ArrayDeque<Event>());
+    names.add(value);
+    lanesByValue.put(value, lane);
+    if (lane >= pending.length) {
+      pending = Arrays.copyOf(pending, lane * 2);
+    }
+    return lane;
+  }
+
+  String getHeader() {
+    return header;
+  }
+
+  int getLaneCount() {
+    return lanes.size();
+  }
+
+  int getDefaultLane() {
+    return defaultLane;
+  }
+
+  /**
+   * Returns the header value of a lane, or {@value #DEFAULT_LANE_NAME} for
+   * the lane of events without a value of their own.
+   */
+  String getLaneName(int lane) {
+    return names.get(lane);
+  }
+
+  int laneOf(Event event) {
+    String value;
+    if (event instanceof OffHeapEvent) {
+      value = ((OffHeapEvent) event).getHeader(header);
+    } else {
+      value = event.getHeaders().get(header);
+    }
+    if (value == null) {
+      return defaultLane;
+    }
+    Integer lane = lanesByValue.get(value);
+    return lane == null ? laneFor(value) : lane;
+  }
+
+  /**
+   * Adds an event to the end of its lane.
+   */
+  void offer(Event event) {
+    lanes.get(laneOf(event)).addLast(event);
+    size++;
+  }
+
+  /**
+   * Returns a taken event to the front of its lane, as on a rollback.
+   */
+  void addFirst(Event event) {
+    int lane = laneOf(event);
+    lanes.get(lane).addFirst(event);
+    size++;
+    returned(lane, event);
+  }
+
+  /**
+   * Takes the next event, or returns null if the queue is empty.
+   */
+  Event poll() {
+    if (size == 0) {
+      return null;
+    }
+    int lane = nextLane();
+    Event event = lanes.get(lane).pollFirst();
+    Preconditions.checkState(event != null, "Lane %s is empty", lane);
+    size--;
+    taken(lane, event);
+    return event;
+  }
+
+  /**
+   * Counts the given events by lane.
+   */
+  int[] countLanes(Collection<Event> events) {
+    int[] counts = new int[lanes.size()];
+    for (Event event : events) {
+      int lane = laneOf(event);
+      if (lane >= counts.length) {
+        counts = Arrays.copyOf(counts, lanes.size());
+      }
+      counts[lane]++;
+    }
+    return counts;
+  }
+
+  /**
+   * Registers the events of a commit as pending until they are added or
+   * the commit fails, unless a lane may not grow by them.
+   *
+   * @param counts the number of events to add, by lane, as returned by
+   * {@link #countLanes(Collection)}
+   * @param capacity the capacity of the channel
+   * @return the rejected lane, or {@code -1} if the events were registered
+   * and {@link #release(int[])} must be called
+   */
+  int reserve(int[] counts, int capacity) {
+    int rejected = rejectedLane(counts, capacity);
+    if (rejected < 0) {
+      for (int i = 0; i < counts.length; i++) {
+        pending[i] += counts[i];
+      }
+    }
+    return rejected;
+  }
+
+  /**
+   * Unregisters the pending events of a commit.
+   */
+  void release(int[] counts) {
+    for (int i = 0; i < counts.length; i++) {
+      pending[i] -= counts[i];
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  int size(int lane) {
+    return lanes.get(lane).size();
+  }
+
+  int pending(int lane) {
+    return pending[lane];
+  }
+
+  boolean isEmpty(int lane) {
+    return lanes.get(lane).isEmpty();
+  }
+
+  /**
+   * Returns the number of queued events of each lane, by lane name.
+   */
+  Map<String, Integer> getLaneSizes() {
+    Map<String, Integer> sizes = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < lanes.size(); i++) {
+      sizes.put(names.get(i), lanes.get(i).size());
+    }
+    return sizes;
+  }
+
+  /**
+   * Adds all events to the given collection, lane by lane, leaving them
+   * queued.
+   */
+  void copyTo(Collection<Event> events) {
+    for (ArrayDeque<Event> lane : lanes) {
+      events.addAll(lane);
+    }
+  }
+
+  /**
+   * Moves all events to the given queue, in the order they would be taken.
+   */
+  void drainTo(Queue<Event> queue) {
+    Event event;
+    while ((event = poll()) != null) {
+      queue.add(event);
+    }
+  }
+
+}
@@ -18,6 +18,14 @@
  */
 package org.apache.flume.channel;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
@@ -29,11 +37,15 @@ import org.apache.flume.Event;
 import org.apache.flume.annotations.InterfaceAudience;
 import org.apache.flume.annotations.InterfaceStability;
 import org.apache.flume.annotations.Recyclable;
+import org.apache.flume.channel.OffHeapEventStore.OffHeapEvent;
+import org.apache.flume.event.EventHelper;
 import org.apache.flume.instrumentation.ChannelCounter;
+import org.apache.flume.tools.DirectMemoryUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Supplier;
 
 /**
  * <p>
@@ -45,6 +57,46 @@ import com.google.common.base.Preconditions;
  * Additionally, MemoryChannel should be used when a channel is required for
  * unit testing purposes.
  * </p>
+ * <p>
+ * With {@code offHeap} set, event bodies (and with {@code offHeapHeaders}
+ * also the headers) are kept in direct memory by an
+ * {@link OffHeapEventStore}, so that a large backlog does not have to be
+ * traced by the garbage collector. {@code byteCapacity} then defaults to 80%
+ * of the maximum direct memory, and taken events are copied back onto the
+ * heap. Events kept off heap are charged against {@code byteCapacity} for
+ * the {@code offHeapBlockSize} blocks they take, headers included, rather
+ * than for their body size, so that small events cannot fill the store
+ * before {@code byteCapacity} is reached.
+ * </p>
+ * <p>
+ * With {@code laneHeader} set, the queue is split into priority lanes by
+ * the value of that header: the values listed in {@code lanes} get a lane
+ * each, highest priority first, and all other events share a last lane.
+ * Sinks take from the highest non-empty lane, except that after
+ * {@code starvationLimit} events in a row were taken while a lower lane was
+ * waiting, one is taken from that lane; see {@link PriorityLaneQueue}.
+ * </p>
+ * <p>
+ * With {@code lanePolicy = fair} the lanes share the channel instead, which
+ * keeps a burst from one source from delaying all others when each source
+ * stamps its events with a header of its own (with a static interceptor,
+ * for example). Every value of {@code laneHeader} gets a lane, up to
+ * {@code maxLanes}, and sinks take from the lanes in turn, as many events
+ * per turn as the lane's weight, set with {@code laneWeights.<value>}. A
+ * commit to a lane that already holds more than its weighted share of the
+ * capacity fails with a {@link ChannelException}, so that its source backs
+ * off while the others get the space; see {@link FairLaneQueue}. The number
+ * of events queued in each lane is reported as the {@code LaneSizes}
+ * channel metric.
+ * </p>
+ * <p>
+ * With {@code snapshotFile} set, the events still queued when the channel is
+ * stopped are saved to that file, and a channel started with the file in
+ * place restores them before its sources and sinks start, so that restarts
+ * and reloads that replace the channel do not lose its contents. Only a
+ * graceful stop writes the file: events are still lost if the agent dies.
+ * See {@link MemoryChannelSnapshot} for the format.
+ * </p>
  */
 @InterfaceAudience.Public
 @InterfaceStability.Stable
@@ -53,11 +105,16 @@ public class MemoryChannel extends BasicChannelSemantics {
   private static Logger LOGGER = LoggerFactory.getLogger(MemoryChannel.class);
   private static final Integer defaultCapacity = 100;
   private static final Integer defaultTransCapacity = 100;
-  private static final double byteCapacitySlotSize = 100;
+  private static final int byteCapacitySlotSize = 100;
   private static final Long defaultByteCapacity = (long)(Runtime.getRuntime().maxMemory() * .80);
   private static final Integer defaultByteCapacityBufferPercentage = 20;
 
   private static final Integer defaultKeepAlive = 3;
+  private static final Integer defaultStarvationLimit = 100;
+  private static final Integer defaultMaxLanes = 64;
+  private static final Integer defaultLaneWeight = 1;
+  private static final Integer defaultOffHeapBlockSize =
+      OffHeapEventStore.DEFAULT_BLOCK_SIZE;
 
   private class MemoryTransaction extends BasicTransactionSemantics {
     private LinkedBlockingDeque<Event> takeList;
@@ -75,28 +132,46 @@ public class MemoryChannel extends BasicChannelSemantics {
 
     @Override
     protected void doPut(Event event) throws InterruptedException {
-      channelCounter.incrementEventPutAttemptCount();
-      int eventByteSize = (int)Math.ceil(estimateEventSize(event)/byteCapacitySlotSize);
+      channelCounter.increment(ChannelCounter.Counter.EVENT_PUT_ATTEMPT);
+      long startNanos = System.nanoTime();
+      OffHeapEventStore store = offHeapStore;
+      boolean storeHeaders = offHeapHeaders;
+      String laneHeader = laneHeader();
+      int eventSize = estimateEventSize(event, store, storeHeaders);
+      int eventByteSize = slotsFor(eventSize);
 
       if (bytesRemaining.tryAcquire(eventByteSize, keepAlive, TimeUnit.SECONDS)) {
-        if(!putList.offer(event)) {
+        Event stored = event;
+        if (store != null) {
+          stored = store.store(event, storeHeaders, laneHeader);
+          if (stored == null) {
+            bytesRemaining.release(eventByteSize);
+            throw new ChannelException("Off heap storage of MemoryChannel " +
+                "is full, " + store.getUsedBytes() + " bytes are already " +
+                "used. Try increasing byteCapacity or byteCapacityBufferPercentage");
+          }
+        }
+        if(!putList.offer(stored)) {
+          free(stored);
           throw new ChannelException("Put queue for MemoryTransaction of capacity " +
               putList.size() + " full, consider committing more frequently, " +
               "increasing capacity or increasing thread count");
         }
       } else {
         throw new ChannelException("Put queue for MemoryTransaction of byteCapacity " +
-            (lastByteCapacity * (int)byteCapacitySlotSize) + " bytes cannot add an " +
-            " event of size " + estimateEventSize(event) + " bytes because " +
-             (bytesRemaining.availablePermits() * (int)byteCapacitySlotSize) + " bytes are already used." +
+            ((long)lastByteCapacity * byteCapacitySlotSize) + " bytes cannot add an " +
+            " event of size " + eventSize + " bytes because " +
+             ((long)bytesRemaining.availablePermits() * byteCapacitySlotSize) + " bytes are already used." +
             " Try consider comitting more frequently, increasing byteCapacity or increasing thread count");
       }
       putByteCounter += eventByteSize;
+      channelCounter.recordPutLatency(startNanos);
     }
 
     @Override
     protected Event doTake() throws InterruptedException {
-      channelCounter.incrementEventTakeAttemptCount();
+      channelCounter.increment(ChannelCounter.Counter.EVENT_TAKE_ATTEMPT);
+      long startNanos = System.nanoTime();
       if(takeList.remainingCapacity() == 0) {
         throw new ChannelException("Take list for MemoryTransaction, capacity " +
             takeList.size() + " full, consider committing more frequently, " +
@@ -107,37 +182,200 @@ public class MemoryChannel extends BasicChannelSemantics {
       }
       Event event;
       synchronized(queueLock) {
-        event = queue.poll();
+        event = pollQueued();
       }
       Preconditions.checkNotNull(event, "Queue.poll returned NULL despite semaphore " +
           "signalling existence of entry");
       takeList.put(event);
 
-      int eventByteSize = (int)Math.ceil(estimateEventSize(event)/byteCapacitySlotSize);
+      int eventByteSize = slotsFor(estimateEventSize(event));
       takeByteCounter += eventByteSize;
+      channelCounter.recordTakeLatency(startNanos);
 
+      if (event instanceof OffHeapEvent) {
+        return ((OffHeapEvent) event).toHeapEvent();
+      }
       return event;
     }
 
+    /**
+     * Reserves the bytes of all events with one semaphore acquisition.
+     */
+    @Override
+    protected void doPutAll(List<Event> events) throws InterruptedException {
+      int count = events.size();
+      if (count == 0) {
+        return;
+      }
+      long startNanos = System.nanoTime();
+      channelCounter.addToEventPutAttemptCount(count);
+      if (putList.remainingCapacity() < count) {
+        throw new ChannelException("Put queue for MemoryTransaction of capacity " +
+            (putList.size() + putList.remainingCapacity()) + " cannot add " +
+            count + " events, consider committing more frequently, " +
+            "increasing capacity or increasing thread count");
+      }
+      OffHeapEventStore store = offHeapStore;
+      boolean storeHeaders = offHeapHeaders;
+      String laneHeader = laneHeader();
+      long eventsSize = 0;
+      int[] slots = new int[count];
+      long totalSlots = 0;
+      for (int i = 0; i < count; i++) {
+        int eventSize = estimateEventSize(events.get(i), store, storeHeaders);
+        eventsSize += eventSize;
+        slots[i] = slotsFor(eventSize);
+        totalSlots += slots[i];
+      }
+      if (totalSlots > Integer.MAX_VALUE || !bytesRemaining.tryAcquire(
+          (int) totalSlots, keepAlive, TimeUnit.SECONDS)) {
+        throw new ChannelException("Put queue for MemoryTransaction of byteCapacity " +
+            ((long)lastByteCapacity * byteCapacitySlotSize) + " bytes cannot add " +
+            count + " events of size " + eventsSize + " bytes because " +
+             ((long)bytesRemaining.availablePermits() * byteCapacitySlotSize) + " bytes are already used." +
+            " Try consider comitting more frequently, increasing byteCapacity or increasing thread count");
+      }
+
+      for (int i = 0; i < count; i++) {
+        Event stored = events.get(i);
+        if (store != null) {
+          stored = store.store(stored, storeHeaders, laneHeader);
+          if (stored == null) {
+            // the events already stored are freed on rollback
+            int unused = 0;
+            for (int j = i; j < count; j++) {
+              unused += slots[j];
+            }
+            bytesRemaining.release(unused);
+            throw new ChannelException("Off heap storage of MemoryChannel " +
+                "is full, " + store.getUsedBytes() + " bytes are already " +
+                "used. Try increasing byteCapacity or byteCapacityBufferPercentage");
+          }
+        }
+        putList.offer(stored);
+        putByteCounter += slots[i];
+      }
+      channelCounter.recordPutLatency(startNanos);
+    }
+
+    /**
+     * Acquires the available events, up to {@code max}, with one semaphore
+     * acquisition, and polls them while holding the queue lock once.
+     */
+    @Override
+    protected int doTake(int max, List<Event> out) throws InterruptedException {
+      if (max <= 0) {
+        return 0;
+      }
+      long startNanos = System.nanoTime();
+      int count = Math.min(max, takeList.remainingCapacity());
+      if(count == 0) {
+        channelCounter.increment(ChannelCounter.Counter.EVENT_TAKE_ATTEMPT);
+        throw new ChannelException("Take list for MemoryTransaction, capacity " +
+            takeList.size() + " full, consider committing more frequently, " +
+            "increasing capacity, or increasing thread count");
+      }
+      count = acquireStored(count);
+      // counted as the takes of a loop, which stops on the first empty poll
+      channelCounter.addToEventTakeAttemptCount(count < max ? count + 1 : count);
+      if (count == 0) {
+        return 0;
+      }
+      // nothing below blocks, so an interrupt cannot lose taken events
+      int start = out.size();
+      synchronized(queueLock) {
+        for (int i = 0; i < count; i++) {
+          Event event = pollQueued();
+          Preconditions.checkNotNull(event, "Queue.poll returned NULL despite semaphore " +
+              "signalling existence of entry");
+          out.add(event);
+        }
+      }
+      for (int i = start; i < out.size(); i++) {
+        Event event = out.get(i);
+        takeList.offer(event);
+        takeByteCounter += slotsFor(estimateEventSize(event));
+        if (event instanceof OffHeapEvent) {
+          out.set(i, ((OffHeapEvent) event).toHeapEvent());
+        }
+      }
+      channelCounter.recordTakeLatency(startNanos);
+      return count;
+    }
+
+    /**
+     * Acquires permits for up to {@code max} stored events, waiting for the
+     * first one only, and returns how many were acquired.
+     */
+    private int acquireStored(int max) throws InterruptedException {
+      int available = Math.min(max, queueStored.availablePermits());
+      if (available > 0 && queueStored.tryAcquire(available)) {
+        return available;
+      }
+      if (!queueStored.tryAcquire(keepAlive, TimeUnit.SECONDS)) {
+        return 0;
+      }
+      int acquired = 1;
+      available = Math.min(max - 1, queueStored.availablePermits());
+      if (available > 0 && queueStored.tryAcquire(available)) {
+        acquired += available;
+      }
+      return acquired;
+    }
+
     @Override
     protected void doCommit() throws InterruptedException {
+      long startNanos = System.nanoTime();
       int remainingChange = takeList.size() - putList.size();
+      int puts = putList.size();
+      int takes = takeList.size();
+      LaneQueue reserved = null;
+      int[] laneCounts = null;
+      if (puts > 0 && lanes != null) {
+        synchronized(queueLock) {
+          if (lanes != null) {
+            reserved = lanes;
+            laneCounts = reserved.countLanes(putList);
+            int rejected = reserved.reserve(laneCounts,
+                queue.size() + queue.remainingCapacity());
+            if (rejected >= 0) {
+              throw new ChannelException("Lane " +
+                  reserved.getLaneName(rejected) + " is over its share of " +
+                  "the channel, its events have to wait for the sinks");
+            }
+          }
+        }
+      }
       if(remainingChange < 0) {
-        if(!queueRemaining.tryAcquire(-remainingChange, keepAlive, TimeUnit.SECONDS)) {
+        boolean acquired = false;
+        try {
+          acquired = queueRemaining.tryAcquire(-remainingChange, keepAlive, TimeUnit.SECONDS);
+        } finally {
+          if (!acquired && laneCounts != null) {
+            synchronized(queueLock) {
+              reserved.release(laneCounts);
+            }
+          }
+        }
+        if(!acquired) {
           throw new ChannelException("Space for commit to queue couldn't be acquired" +
               " Sinks are likely not keeping up with sources, or the buffer size is too tight");
         }
       }
-      int puts = putList.size();
-      int takes = takeList.size();
       synchronized(queueLock) {
+        if (laneCounts != null) {
+          reserved.release(laneCounts);
+        }
         if(puts > 0 ) {
           while(!putList.isEmpty()) {
-            if(!queue.offer(putList.removeFirst())) {
+            if(!offerQueued(putList.removeFirst())) {
               throw new RuntimeException("Queue add failed, this shouldn't be able to happen");
             }
           }
         }
+        for (Event event : takeList) {
+          free(event);
+        }
         putList.clear();
         takeList.clear();
       }
@@ -150,23 +388,27 @@ public class MemoryChannel extends BasicChannelSemantics {
         queueRemaining.release(remainingChange);
       }
       if (puts > 0) {
-        channelCounter.addToEventPutSuccessCount(puts);
+        channelCounter.add(ChannelCounter.Counter.EVENT_PUT_SUCCESS, puts);
       }
       if (takes > 0) {
-        channelCounter.addToEventTakeSuccessCount(takes);
+        channelCounter.add(ChannelCounter.Counter.EVENT_TAKE_SUCCESS, takes);
       }
 
-      channelCounter.setChannelSize(queue.size());
+      channelCounter.setChannelSize(queuedSize());
+      channelCounter.recordCommitLatency(startNanos);
     }
 
     @Override
     protected void doRollback() {
       int takes = takeList.size();
       synchronized(queueLock) {
-        Preconditions.checkState(queue.remainingCapacity() >= takeList.size(), "Not enough space in memory channel " +
+        Preconditions.checkState(queuedRemainingCapacity() >= takeList.size(), "Not enough space in memory channel " +
             "queue to rollback takes. This should never happen, please report");
         while(!takeList.isEmpty()) {
-          queue.addFirst(takeList.removeLast());
+          returnQueued(takeList.removeLast());
+        }
+        for (Event event : putList) {
+          free(event);
         }
         putList.clear();
       }
@@ -175,7 +417,7 @@ public class MemoryChannel extends BasicChannelSemantics {
       takeByteCounter = 0;
 
       queueStored.release(takes);
-      channelCounter.setChannelSize(queue.size());
+      channelCounter.setChannelSize(queuedSize());
     }
 
   }
@@ -185,6 +427,10 @@ public class MemoryChannel extends BasicChannelSemantics {
   private Object queueLock = new Object();
 
   private LinkedBlockingDeque<Event> queue;
+  // null unless events are split into lanes, which then hold the events
+  // while the empty queue only keeps track of the capacity; volatile so that
+  // commits can tell without the lock whether to reserve lane space
+  private volatile LaneQueue lanes;
 
   // invariant that tracks the amount of space remaining in the queue(with all uncommitted takeLists deducted)
   // we maintain the remaining permits = queue.remaining - takeList.size()
@@ -203,6 +449,12 @@ public class MemoryChannel extends BasicChannelSemantics {
   private volatile int byteCapacityBufferPercentage;
   private Semaphore bytesRemaining;
   private ChannelCounter channelCounter;
+  // null unless event bodies are kept off heap
+  private volatile OffHeapEventStore offHeapStore;
+  private volatile int offHeapBlockSize;
+  private volatile boolean offHeapHeaders;
+  // null unless queued events are saved when the channel stops
+  private volatile File snapshotFile;
 
 
   public MemoryChannel() {
@@ -216,6 +468,16 @@ public class MemoryChannel extends BasicChannelSemantics {
    * <li>byteCapacity = type long that defines the max number of bytes used for events in the queue.
    * <li>byteCapacityBufferPercentage = type int that defines the percent of buffer between byteCapacity and the estimated event size.
    * <li>keep-alive = type int that defines the number of second to wait for a queue permit
+   * <li>offHeap = type boolean that enables keeping event bodies in direct memory.
+   * <li>offHeapHeaders = type boolean that enables keeping event headers in direct memory as well.
+   * <li>offHeapBlockSize = type int that defines the unit in bytes in which direct memory is given to events.
+   * <li>laneHeader = type string that names the header which selects the lane of an event.
+   * <li>lanePolicy = type string, priority (the default) or fair, that defines how lanes share the channel.
+   * <li>lanes = type string that lists the header values with a lane of their own, highest priority first.
+   * <li>starvationLimit = type int that defines how many events in a row are taken from higher lanes while a lower one waits.
+   * <li>maxLanes = type int that defines how many lanes fair lanes open at most, including the default one.
+   * <li>laneWeights.&lt;value&gt; = type int that defines the weight of a fair lane, 1 by default.
+   * <li>snapshotFile = type string that names the file queued events are saved to on stop and restored from on start.
    */
   @Override
   public void configure(Context context) {
@@ -256,13 +518,19 @@ public class MemoryChannel extends BasicChannelSemantics {
       byteCapacityBufferPercentage = defaultByteCapacityBufferPercentage;
     }
 
+    boolean offHeap = context.getBoolean("offHeap", false);
+    long defaultBytes = offHeap ?
+        (long)(DirectMemoryUtils.getDirectMemorySize() * .80) : defaultByteCapacity;
+    long byteCapacityBytes;
     try {
-      byteCapacity = (int)((context.getLong("byteCapacity", defaultByteCapacity).longValue() * (1 - byteCapacityBufferPercentage * .01 )) /byteCapacitySlotSize);
-      if (byteCapacity < 1) {
-        byteCapacity = Integer.MAX_VALUE;
-      }
+      byteCapacityBytes = context.getLong("byteCapacity", defaultBytes);
     } catch(NumberFormatException e) {
-      byteCapacity = (int)((defaultByteCapacity * (1 - byteCapacityBufferPercentage * .01 )) /byteCapacitySlotSize);
+      byteCapacityBytes = defaultBytes;
+    }
+    byteCapacity = (int)((byteCapacityBytes * (1 - byteCapacityBufferPercentage * .01 )) /byteCapacitySlotSize);
+    if (byteCapacity < 1) {
+      byteCapacity = Integer.MAX_VALUE;
+      byteCapacityBytes = defaultBytes;
     }
 
     try {
@@ -305,9 +573,186 @@ public class MemoryChannel extends BasicChannelSemantics {
       }
     }
 
+    configureOffHeap(context, offHeap, byteCapacityBytes);
+    configureLanes(context);
+
+    String snapshot = context.getString("snapshotFile");
+    snapshotFile = snapshot == null || snapshot.trim().isEmpty()
+        ? null : new File(snapshot.trim());
+
     if (channelCounter == null) {
       channelCounter = new ChannelCounter(getName());
     }
+    channelCounter.setLaneSizes(new Supplier<Map<String, Integer>>() {
+      @Override
+      public Map<String, Integer> get() {
+        synchronized(queueLock) {
+          return lanes == null ? null : lanes.getLaneSizes();
+        }
+      }
+    });
+  }
+
+  /**
+   * Events already in the channel keep a reference to the store they live
+   * in, so switching modes on a reconfiguration is safe; a store that is no
+   * longer used is retired and frees its memory once its last event is
+   * taken.
+   */
+  private void configureOffHeap(Context context, boolean offHeap,
+      long byteCapacityBytes) {
+    offHeapHeaders = context.getBoolean("offHeapHeaders", false);
+    int blockSize;
+    try {
+      blockSize = context.getInteger("offHeapBlockSize", defaultOffHeapBlockSize);
+    } catch(NumberFormatException e) {
+      blockSize = defaultOffHeapBlockSize;
+    }
+    if (blockSize <= 0) {
+      blockSize = defaultOffHeapBlockSize;
+      LOGGER.warn("Invalid off heap block size specified, using the default "
+          + "of {} bytes", defaultOffHeapBlockSize);
+    }
+
+    OffHeapEventStore store = offHeapStore;
+    if (store != null && (!offHeap || blockSize != offHeapBlockSize)) {
+      offHeapStore = null;
+      store.retire();
+      store = null;
+    }
+    if (offHeap) {
+      if (store == null) {
+        offHeapStore = new OffHeapEventStore(byteCapacityBytes, blockSize,
+            OffHeapEventStore.DEFAULT_SLAB_SIZE);
+        offHeapBlockSize = blockSize;
+      } else {
+        store.setCapacity(byteCapacityBytes);
+      }
+    }
+  }
+
+  /**
+   * Queued events are moved to the new lanes, or back to the queue, in the
+   * order they would have been taken.
+   */
+  private void configureLanes(Context context) {
+    String header = context.getString("laneHeader");
+    LaneQueue next = null;
+    if (header != null && !header.trim().isEmpty()) {
+      String values = context.getString("lanes", "").trim();
+      List<String> valueList = values.isEmpty()
+          ? Arrays.<String>asList() : Arrays.asList(values.split("\\s+"));
+      String policy = context.getString("lanePolicy", "priority").trim();
+      if (policy.equalsIgnoreCase("fair")) {
+        next = createFairLanes(context, header.trim(), valueList);
+      } else {
+        Preconditions.checkArgument(policy.equalsIgnoreCase("priority"),
+            "Unknown lane policy %s, expected priority or fair", policy);
+        next = createPriorityLanes(context, header.trim(), valueList);
+      }
+    }
+
+    synchronized(queueLock) {
+      LaneQueue current = lanes;
+      if (current == null && next == null) {
+        return;
+      }
+      ArrayDeque<Event> queued = new ArrayDeque<Event>();
+      if (current != null) {
+        current.drainTo(queued);
+      } else {
+        queued.addAll(queue);
+        queue.clear();
+      }
+      lanes = next;
+      for (Event event : queued) {
+        offerQueued(event);
+      }
+    }
+  }
+
+  private PriorityLaneQueue createPriorityLanes(Context context,
+      String header, List<String> values) {
+    int starvationLimit;
+    try {
+      starvationLimit = context.getInteger("starvationLimit", defaultStarvationLimit);
+    } catch(NumberFormatException e) {
+      starvationLimit = defaultStarvationLimit;
+    }
+    if (starvationLimit <= 0) {
+      starvationLimit = defaultStarvationLimit;
+      LOGGER.warn("Invalid starvation limit specified, using the default "
+          + "of {}", defaultStarvationLimit);
+    }
+    return new PriorityLaneQueue(header, values, starvationLimit);
+  }
+
+  private FairLaneQueue createFairLanes(Context context, String header,
+      List<String> values) {
+    int maxLanes;
+    try {
+      maxLanes = context.getInteger("maxLanes", defaultMaxLanes);
+    } catch(NumberFormatException e) {
+      maxLanes = defaultMaxLanes;
+    }
+    if (maxLanes <= values.size()) {
+      maxLanes = Math.max(defaultMaxLanes, values.size() + 1);
+      LOGGER.warn("Invalid lane limit specified, using {}", maxLanes);
+    }
+    Map<String, Integer> weights = new HashMap<String, Integer>();
+    for (Map.Entry<String, String> entry :
+        context.getSubProperties("laneWeights.").entrySet()) {
+      int weight;
+      try {
+        weight = Integer.parseInt(entry.getValue().trim());
+      } catch(NumberFormatException e) {
+        weight = 0;
+      }
+      if (weight <= 0) {
+        weight = defaultLaneWeight;
+        LOGGER.warn("Invalid weight specified for lane {}, using the default "
+            + "of {}", entry.getKey(), defaultLaneWeight);
+      }
+      weights.put(entry.getKey(), weight);
+    }
+    return new FairLaneQueue(header, values, weights, defaultLaneWeight,
+        maxLanes);
+  }
+
+  // the following methods must be called while holding the queue lock,
+  // except for queuedSize()
+
+  private boolean offerQueued(Event event) {
+    LaneQueue current = lanes;
+    if (current == null) {
+      return queue.offer(event);
+    }
+    current.offer(event);
+    return true;
+  }
+
+  private Event pollQueued() {
+    LaneQueue current = lanes;
+    return current == null ? queue.poll() : current.poll();
+  }
+
+  private void returnQueued(Event event) {
+    LaneQueue current = lanes;
+    if (current == null) {
+      queue.addFirst(event);
+    } else {
+      current.addFirst(event);
+    }
+  }
+
+  private int queuedRemainingCapacity() {
+    LaneQueue current = lanes;
+    return queue.remainingCapacity() - (current == null ? 0 : current.size());
+  }
+
+  private int queuedSize() {
+    LaneQueue current = lanes;
+    return current == null ? queue.size() : current.size();
   }
 
   private void resizeQueue(int capacity) throws InterruptedException {
@@ -341,7 +786,8 @@ public class MemoryChannel extends BasicChannelSemantics {
   @Override
   public synchronized void start() {
     channelCounter.start();
-    channelCounter.setChannelSize(queue.size());
+    restoreSnapshot();
+    channelCounter.setChannelSize(queuedSize());
     channelCounter.setChannelCapacity(Long.valueOf(
             queue.size() + queue.remainingCapacity()));
     super.start();
@@ -349,23 +795,199 @@ public class MemoryChannel extends BasicChannelSemantics {
 
   @Override
   public synchronized void stop() {
-    channelCounter.setChannelSize(queue.size());
+    saveSnapshot();
+    channelCounter.setChannelSize(queuedSize());
     channelCounter.stop();
+    OffHeapEventStore store = offHeapStore;
+    if (store != null && store.release()) {
+      LOGGER.info("Freed the off heap storage of channel {}", getName());
+    }
     super.stop();
   }
 
+  /**
+   * Saves the queued events, which stay in the channel in case it is
+   * started again. Events taken by transactions that are still open are
+   * not saved; sinks are stopped before their channels.
+   */
+  private void saveSnapshot() {
+    File file = snapshotFile;
+    if (file == null) {
+      return;
+    }
+    List<Event> events;
+    synchronized(queueLock) {
+      events = new ArrayList<Event>(queuedSize());
+      LaneQueue current = lanes;
+      if (current == null) {
+        events.addAll(queue);
+      } else {
+        current.copyTo(events);
+      }
+    }
+    if (events.isEmpty()) {
+      if (file.exists() && !file.delete()) {
+        LOGGER.warn("Unable to delete the outdated snapshot {} of channel {}",
+            file, getName());
+      }
+      return;
+    }
+    long startMillis = System.currentTimeMillis();
+    try {
+      MemoryChannelSnapshot.write(file, events);
+      LOGGER.info("Saved {} events of channel {} to {} in {} ms", new Object[] {
+          events.size(), getName(), file,
+          System.currentTimeMillis() - startMillis });
+    } catch (IOException e) {
+      LOGGER.error("Unable to save the " + events.size() + " events of " +
+          "channel " + getName() + " to " + file, e);
+    }
+  }
+
+  /**
+   * Restores the events of a snapshot and deletes it. A damaged snapshot is
+   * restored up to the damage and kept under the suffix {@code .corrupt};
+   * events that do not fit into the channel are dropped.
+   */
+  private void restoreSnapshot() {
+    File file = snapshotFile;
+    if (file == null || !file.exists()) {
+      return;
+    }
+    if (queuedSize() > 0) {
+      // a channel that is restarted rather than recreated kept its events
+      LOGGER.info("Channel {} still holds its events, ignoring snapshot {}",
+          getName(), file);
+      if (!file.delete()) {
+        LOGGER.warn("Unable to delete snapshot {}", file);
+      }
+      return;
+    }
+    long startMillis = System.currentTimeMillis();
+    int restored = 0;
+    int dropped = 0;
+    MemoryChannelSnapshot.Reader reader = null;
+    try {
+      reader = new MemoryChannelSnapshot.Reader(file);
+      Event event;
+      while ((event = reader.next()) != null) {
+        if (restoreQueued(event)) {
+          restored++;
+        } else {
+          dropped++;
+        }
+      }
+      reader.close();
+      reader = null;
+      if (!file.delete()) {
+        LOGGER.warn("Unable to delete snapshot {}, its events will be " +
+            "restored again", file);
+      }
+    } catch (IOException e) {
+      File corrupt = new File(file.getPath() + ".corrupt");
+      LOGGER.error("Unable to read snapshot " + file + " of channel " +
+          getName() + " past its first " + (restored + dropped) +
+          " events, keeping it as " + corrupt, e);
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException ex) {
+          LOGGER.warn("Unable to close snapshot " + file, ex);
+        }
+      }
+      if (!file.renameTo(corrupt)) {
+        LOGGER.warn("Unable to rename snapshot {} to {}", file, corrupt);
+      }
+    }
+    LOGGER.info("Restored {} events of channel {} from {} in {} ms",
+        new Object[] { restored, getName(), file,
+        System.currentTimeMillis() - startMillis });
+    if (dropped > 0) {
+      LOGGER.error("Dropped {} events of snapshot {} that did not fit into " +
+          "channel {}", new Object[] { dropped, file, getName() });
+    }
+  }
+
+  /**
+   * Returns the header events are sorted into lanes by, or null.
+   */
+  private String laneHeader() {
+    LaneQueue current = lanes;
+    return current == null ? null : current.getHeader();
+  }
+
+  /**
+   * Adds a restored event to the queue as a committed put would, but
+   * without waiting for space.
+   */
+  private boolean restoreQueued(Event event) {
+    OffHeapEventStore store = offHeapStore;
+    boolean storeHeaders = offHeapHeaders;
+    String laneHeader = laneHeader();
+    int slots = slotsFor(estimateEventSize(event, store, storeHeaders));
+    if (!queueRemaining.tryAcquire()) {
+      return false;
+    }
+    if (!bytesRemaining.tryAcquire(slots)) {
+      queueRemaining.release();
+      return false;
+    }
+    Event stored = event;
+    if (store != null) {
+      stored = store.store(event, storeHeaders, laneHeader);
+      if (stored == null) {
+        bytesRemaining.release(slots);
+        queueRemaining.release();
+        return false;
+      }
+    }
+    synchronized(queueLock) {
+      offerQueued(stored);
+    }
+    queueStored.release();
+    return true;
+  }
+
   @Override
   protected BasicTransactionSemantics createTransaction() {
     return new MemoryTransaction(transCapacity, channelCounter);
   }
 
-  private long estimateEventSize(Event event)
+  private static void free(Event event) {
+    if (event instanceof OffHeapEvent) {
+      ((OffHeapEvent) event).free();
+    }
+  }
+
+  /**
+   * Returns the number of bytes an event to be put is charged against
+   * byteCapacity: the blocks it will take in the given off heap store, or
+   * its body size without one.
+   */
+  private static int estimateEventSize(Event event, OffHeapEventStore store,
+      boolean storeHeaders) {
+    if (store == null) {
+      return estimateEventSize(event);
+    }
+    return store.footprint(event, storeHeaders);
+  }
+
+  /**
+   * Returns the number of bytes a queued event is charged against
+   * byteCapacity, as it was when it was put.
+   */
+  private static int estimateEventSize(Event event)
   {
-    byte[] body = event.getBody();
-    if(body != null && body.length != 0) {
-      return body.length;
+    if (event instanceof OffHeapEvent) {
+      return ((OffHeapEvent) event).getFootprint();
     }
+    // the body of a SizedEvent is neither copied nor encoded here
+    int size = EventHelper.getBodySize(event);
     //Each event occupies at least 1 slot, so return 1.
-    return 1;
+    return size != 0 ? size : 1;
+  }
+
+  private static int slotsFor(int eventSize) {
+    return (int)(((long)eventSize + byteCapacitySlotSize - 1) / byteCapacitySlotSize);
   }
 }
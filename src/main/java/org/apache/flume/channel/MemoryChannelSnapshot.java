@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.tools.PlatformDetect;
+
+import com.google.common.base.Charsets;
+
+/**
+ * <p>
+ * The file a {@link MemoryChannel} saves its queued events to when it is
+ * stopped, and restores them from when it is started again. The file is
+ * written and read sequentially through buffered streams:
+ * </p>
+ * <pre>
+ * magic "FLMS", version
+ * for each event: 1, header count, (key, value)*, body
+ * 0, event count, CRC32 of all preceding bytes
+ * </pre>
+ * <p>
+ * Counts and lengths are unsigned varints, and strings are UTF-8 bytes
+ * prefixed by their length. The file is written under a temporary name and
+ * renamed once it is complete and forced to disk, so a crash while saving
+ * leaves the previous snapshot, if any, in place.
+ * </p>
+ */
+final class MemoryChannelSnapshot {
+
+  private static final int MAGIC = 0x464c4d53; // "FLMS"
+  private static final int VERSION = 1;
+  private static final int EVENT = 1;
+  private static final int END = 0;
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private MemoryChannelSnapshot() {
+  }
+
+  /**
+   * Saves the given events to a snapshot file, replacing any existing one.
+   */
+  static void write(File file, Iterable<Event> events) throws IOException {
+    File dir = file.getAbsoluteFile().getParentFile();
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Unable to create directory " + dir);
+    }
+    File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+    FileOutputStream fileOut = new FileOutputStream(tmp);
+    try {
+      CRC32 crc = new CRC32();
+      DataOutputStream out = new DataOutputStream(new CheckedOutputStream(
+          new BufferedOutputStream(fileOut, BUFFER_SIZE), crc));
+      out.writeInt(MAGIC);
+      out.writeByte(VERSION);
+      long count = 0;
+      for (Event event : events) {
+        out.writeByte(EVENT);
+        Map<String, String> headers = event.getHeaders();
+        writeVarint(out, headers.size());
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+          writeBytes(out, header.getKey().getBytes(Charsets.UTF_8));
+          writeBytes(out, header.getValue().getBytes(Charsets.UTF_8));
+        }
+        writeBytes(out, event.getBody());
+        count++;
+      }
+      out.writeByte(END);
+      writeVarint(out, count);
+      out.flush();
+      out.writeInt((int) crc.getValue());
+      out.flush();
+      fileOut.getChannel().force(true);
+    } catch (IOException e) {
+      fileOut.close();
+      tmp.delete();
+      throw e;
+    }
+    fileOut.close();
+
+    if (PlatformDetect.isWindows() && file.exists()) {
+      if (!file.delete()) {
+        tmp.delete();
+        throw new IOException("Unable to delete existing snapshot " + file);
+      }
+    }
+    if (!tmp.renameTo(file)) {
+      tmp.delete();
+      throw new IOException("Unable to rename " + tmp + " to " + file);
+    }
+  }
+
+  private static void writeVarint(OutputStream out, long value)
+      throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      out.write((int) ((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+    out.write((int) value);
+  }
+
+  private static void writeBytes(OutputStream out, byte[] bytes)
+      throws IOException {
+    writeVarint(out, bytes.length);
+    out.write(bytes);
+  }
+
+  /**
+   * Reads the events of a snapshot file in the order they were saved. The
+   * checksum is verified once the last event has been read, so a damaged
+   * file may yield some events before {@link #next()} fails.
+   */
+  static class Reader implements Closeable {
+
+    private final File file;
+    private final long fileLength;
+    private final CRC32 crc = new CRC32();
+    private final DataInputStream in;
+    private long count;
+    private boolean done;
+
+    Reader(File file) throws IOException {
+      this.file = file;
+      this.fileLength = file.length();
+      this.in = new DataInputStream(new CheckedInputStream(
+          new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE),
+          crc));
+      try {
+        if (in.readInt() != MAGIC) {
+          throw new IOException("Not a channel snapshot: " + file);
+        }
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+          throw new IOException("Unsupported version " + version
+              + " of channel snapshot " + file);
+        }
+      } catch (IOException e) {
+        in.close();
+        throw e;
+      }
+    }
+
+    /**
+     * Returns the next event, or null after the last one.
+     *
+     * @throws IOException if the file is truncated or damaged
+     */
+    Event next() throws IOException {
+      if (done) {
+        return null;
+      }
+      try {
+        int marker = in.readUnsignedByte();
+        if (marker == EVENT) {
+          int headerCount = readLength();
+          Map<String, String> headers =
+              new HashMap<String, String>(headerCount * 2);
+          for (int i = 0; i < headerCount; i++) {
+            headers.put(readString(), readString());
+          }
+          Event event = EventBuilder.withBody(readBytes(), headers);
+          count++;
+          return event;
+        }
+        if (marker != END) {
+          throw new IOException("Corrupt channel snapshot " + file);
+        }
+        long expectedCount = readVarint();
+        int expectedCrc = (int) crc.getValue();
+        if (expectedCount != count || in.readInt() != expectedCrc) {
+          throw new IOException("Checksum mismatch in channel snapshot "
+              + file);
+        }
+        done = true;
+        return null;
+      } catch (EOFException e) {
+        throw new IOException("Truncated channel snapshot " + file, e);
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      in.close();
+    }
+
+    private long readVarint() throws IOException {
+      long value = 0;
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = in.readUnsignedByte();
+        value |= (long) (b & 0x7F) << shift;
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+      throw new IOException("Corrupt channel snapshot " + file);
+    }
+
+    private int readLength() throws IOException {
+      // a length beyond the end of the file can only come from damage
+      long length = readVarint();
+      if (length > Math.min(fileLength, Integer.MAX_VALUE)) {
+        throw new IOException("Corrupt channel snapshot " + file);
+      }
+      return (int) length;
+    }
+
+    private byte[] readBytes() throws IOException {
+      byte[] bytes = new byte[readLength()];
+      in.readFully(bytes);
+      return bytes;
+    }
+
+    private String readString() throws IOException {
+      return new String(readBytes(), Charsets.UTF_8);
+    }
+  }
+
+}
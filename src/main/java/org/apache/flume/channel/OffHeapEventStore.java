@@ -0,0 +1,458 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventHelper;
+import org.apache.flume.event.SimpleEvent;
+import org.apache.flume.event.SizedEvent;
+import org.apache.flume.tools.DirectMemoryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Stores event bodies, and optionally serialized headers, outside of the
+ * Java heap for {@link MemoryChannel}. Direct memory is allocated through
+ * {@link DirectMemoryUtils} in slabs that are cut into fixed size blocks; a
+ * stored event occupies as many blocks as it needs, which are handed out
+ * from and returned to a free list. Slabs are allocated as they are needed,
+ * up to the capacity of the store, the last one only as large as the
+ * capacity allows, and are only given back by {@link #release()} once no
+ * event is stored any more, or by the last event freed after
+ * {@link #retire()}.
+ * </p>
+ * <p>
+ * What remains on the heap per event is a small {@link OffHeapEvent} holding
+ * the block numbers, so a large backlog costs the garbage collector little.
+ * Events are copied in when stored and copied back out onto the heap with
+ * {@link OffHeapEvent#toHeapEvent()}.
+ * </p>
+ */
+class OffHeapEventStore {
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(OffHeapEventStore.class);
+
+  public static final int DEFAULT_BLOCK_SIZE = 256;
+  public static final int DEFAULT_SLAB_SIZE = 64 * 1024 * 1024;
+
+  private final int blockSize;
+  private final int blocksPerSlab;
+  private final List<ByteBuffer> slabs = new ArrayList<ByteBuffer>();
+  private volatile long capacity;
+
+  // stack of free block numbers, block b lives in slab b / blocksPerSlab
+  private int[] freeBlocks = new int[0];
+  private int freeCount;
+  // blocks in all slabs, the last slab may hold fewer than blocksPerSlab
+  private int totalBlocks;
+  private boolean retired;
+
+  /**
+   * @param capacity the number of bytes of direct memory that may be used
+   * @param blockSize the unit in which memory is handed out to events
+   * @param slabSize the size of one allocation of direct memory, lowered to
+   * the capacity if that is smaller
+   */
+  OffHeapEventStore(long capacity, int blockSize, int slabSize) {
+    Preconditions.checkArgument(blockSize > 0, "blockSize must be positive");
+    Preconditions.checkArgument(slabSize >= blockSize,
+        "slabSize must not be smaller than blockSize");
+    this.blockSize = blockSize;
+    this.blocksPerSlab = (int) Math.max(1,
+        Math.min(slabSize, capacity) / blockSize);
+    setCapacity(capacity);
+  }
+
+  /**
+   * Sets the number of bytes of direct memory the store may allocate. A
+   * lower capacity does not free slabs that are already allocated.
+   */
+  void setCapacity(long capacity) {
+    Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the number of bytes the blocks for an event take, with its
+   * headers if {@code storeHeaders} is set. This is what the event holds
+   * once stored, see {@link OffHeapEvent#getFootprint()}.
+   */
+  int footprint(Event event, boolean storeHeaders) {
+    long bytes = EventHelper.getBodySize(event);
+    if (storeHeaders) {
+      bytes += serializedSize(event.getHeaders());
+    }
+    return blocksFor(bytes) * blockSize;
+  }
+
+  private int blocksFor(long bytes) {
+    return (int) Math.max(1L, (bytes + blockSize - 1) / blockSize);
+  }
+
+  /**
+   * Copies an event into the store, with its headers if
+   * {@code storeHeaders} is set. Returns null if the store is full.
+   */
+  OffHeapEvent store(Event event, boolean storeHeaders) {
+    return store(event, storeHeaders, null);
+  }
+
+  /**
+   * Copies an event into the store as {@link #store(Event, boolean)} does,
+   * and keeps the value of {@code keyHeader} on the heap, so that
+   * {@link OffHeapEvent#getHeader(String)} does not read the stored headers
+   * for it.
+   */
+  OffHeapEvent store(Event event, boolean storeHeaders, String keyHeader) {
+    byte[] body = event.getBody();
+    if (body == null) {
+      body = new byte[0];
+    }
+    byte[] headers = storeHeaders ? serialize(event.getHeaders()) : null;
+    int headerLength = headers == null ? 0 : headers.length;
+    int[] blocks = allocate(headerLength + body.length);
+    if (blocks == null) {
+      return null;
+    }
+    if (headers != null) {
+      copy(blocks, 0, headers, true);
+    }
+    copy(blocks, headerLength, body, true);
+    if (!storeHeaders) {
+      return new OffHeapEvent(this, blocks, headerLength, body.length,
+          event.getHeaders(), null, null);
+    }
+    String keyValue =
+        keyHeader == null ? null : event.getHeaders().get(keyHeader);
+    return new OffHeapEvent(this, blocks, headerLength, body.length, null,
+        keyHeader, keyValue);
+  }
+
+  /**
+   * Returns the number of bytes of direct memory currently allocated.
+   */
+  synchronized long getAllocatedBytes() {
+    return (long) totalBlocks * blockSize;
+  }
+
+  /**
+   * Returns the number of bytes held by stored events, counted in blocks.
+   */
+  synchronized long getUsedBytes() {
+    return ((long) totalBlocks - freeCount) * blockSize;
+  }
+
+  /**
+   * Frees all slabs if no event is stored. Returns whether it did.
+   */
+  synchronized boolean release() {
+    if (freeCount != totalBlocks) {
+      return false;
+    }
+    for (ByteBuffer slab : slabs) {
+      try {
+        DirectMemoryUtils.clean(slab);
+      } catch (Exception e) {
+        LOG.warn("Unable to free a direct memory slab, leaving it to the "
+            + "garbage collector", e);
+      }
+    }
+    slabs.clear();
+    freeBlocks = new int[0];
+    freeCount = 0;
+    totalBlocks = 0;
+    return true;
+  }
+
+  /**
+   * Frees all slabs once no event is stored any more, which may be right
+   * away. For a store its channel no longer puts events into, but that
+   * still holds some of the queued ones.
+   */
+  synchronized void retire() {
+    retired = true;
+    release();
+  }
+
+  private synchronized int[] allocate(int bytes) {
+    int needed = blocksFor(bytes);
+    long capacityBlocks = capacity / blockSize;
+    while (freeCount < needed && totalBlocks < capacityBlocks) {
+      addSlab((int) Math.min(blocksPerSlab, capacityBlocks - totalBlocks));
+    }
+    if (freeCount < needed) {
+      return null;
+    }
+    int[] blocks = new int[needed];
+    for (int i = 0; i < needed; i++) {
+      blocks[i] = freeBlocks[--freeCount];
+    }
+    return blocks;
+  }
+
+  private synchronized void free(int[] blocks) {
+    for (int i = blocks.length - 1; i >= 0; i--) {
+      freeBlocks[freeCount++] = blocks[i];
+    }
+    if (retired && freeCount == totalBlocks) {
+      release();
+    }
+  }
+
+  private void addSlab(int blocks) {
+    int slab = slabs.size();
+    slabs.add(DirectMemoryUtils.allocate(blocks * blockSize));
+    int[] grown = new int[totalBlocks + blocks];
+    System.arraycopy(freeBlocks, 0, grown, 0, freeCount);
+    // pushed in reverse so that blocks are handed out in ascending order,
+    // which lets copies span several adjacent blocks at once
+    int first = slab * blocksPerSlab;
+    for (int b = first + blocks - 1; b >= first; b--) {
+      grown[freeCount++] = b;
+    }
+    freeBlocks = grown;
+    totalBlocks += blocks;
+  }
+
+  private synchronized ByteBuffer slab(int index) {
+    return slabs.get(index);
+  }
+
+  /**
+   * Copies between a byte array and the blocks, starting at the given
+   * offset into the blocks. Runs of adjacent blocks in the same slab are
+   * copied in one go.
+   */
+  private void copy(int[] blocks, int offset, byte[] data, boolean write) {
+    ByteBuffer[] views = new ByteBuffer[0];
+    int done = 0;
+    int i = offset / blockSize;
+    int inBlock = offset % blockSize;
+    while (done < data.length) {
+      int block = blocks[i];
+      int slab = block / blocksPerSlab;
+      int run = 1;
+      while (i + run < blocks.length && blocks[i + run] == block + run
+          && (block + run) / blocksPerSlab == slab) {
+        run++;
+      }
+      int position = (block % blocksPerSlab) * blockSize + inBlock;
+      int length = Math.min(data.length - done, run * blockSize - inBlock);
+      if (slab >= views.length) {
+        ByteBuffer[] grown = new ByteBuffer[slab + 1];
+        System.arraycopy(views, 0, grown, 0, views.length);
+        views = grown;
+      }
+      if (views[slab] == null) {
+        views[slab] = slab(slab).duplicate();
+      }
+      ByteBuffer view = views[slab];
+      view.limit(position + length).position(position);
+      if (write) {
+        view.put(data, done, length);
+      } else {
+        view.get(data, done, length);
+      }
+      done += length;
+      i += (inBlock + length) / blockSize;
+      inBlock = (inBlock + length) % blockSize;
+    }
+  }
+
+  private static byte[] serialize(Map<String, String> headers) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+    DataOutputStream out = new DataOutputStream(bytes);
+    try {
+      out.writeInt(headers.size());
+      for (Map.Entry<String, String> header : headers.entrySet()) {
+        out.writeUTF(header.getKey());
+        out.writeUTF(header.getValue());
+      }
+      out.flush();
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to serialize headers", e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Returns the length of the headers once serialized, where
+   * {@link DataOutputStream#writeUTF(String)} takes two bytes plus one to
+   * three bytes per character.
+   */
+  private static long serializedSize(Map<String, String> headers) {
+    long size = 4;
+    for (Map.Entry<String, String> header : headers.entrySet()) {
+      size += 4 + utfLength(header.getKey()) + utfLength(header.getValue());
+    }
+    return size;
+  }
+
+  private static int utfLength(String value) {
+    int length = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c >= 0x0001 && c <= 0x007F) {
+        length++;
+      } else if (c > 0x07FF) {
+        length += 3;
+      } else {
+        length += 2;
+      }
+    }
+    return length;
+  }
+
+  private static Map<String, String> deserialize(byte[] data) {
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+    try {
+      int size = in.readInt();
+      Map<String, String> headers = new HashMap<String, String>(size * 2);
+      for (int i = 0; i < size; i++) {
+        headers.put(in.readUTF(), in.readUTF());
+      }
+      return headers;
+    } catch (IOException e) {
+      throw new IllegalStateException("Unable to deserialize headers", e);
+    }
+  }
+
+  /**
+   * An event whose body, and possibly headers, live in an
+   * {@link OffHeapEventStore}. It is only meant to be held by the channel
+   * and cannot be modified.
+   */
+  static class OffHeapEvent implements SizedEvent {
+
+    private final OffHeapEventStore store;
+    private final int[] blocks;
+    private final int headerLength;
+    private final int bodyLength;
+    // null when the headers are stored off heap
+    private final Map<String, String> headers;
+    // the header kept on the heap when the headers are stored off heap
+    private final String keyHeader;
+    private final String keyValue;
+    private volatile boolean freed;
+
+    private OffHeapEvent(OffHeapEventStore store, int[] blocks,
+        int headerLength, int bodyLength, Map<String, String> headers,
+        String keyHeader, String keyValue) {
+      this.store = store;
+      this.blocks = blocks;
+      this.headerLength = headerLength;
+      this.bodyLength = bodyLength;
+      this.headers = headers;
+      this.keyHeader = keyHeader;
+      this.keyValue = keyValue;
+    }
+
+    @Override
+    public int getBodySize() {
+      return bodyLength;
+    }
+
+    /**
+     * Returns the number of bytes of the blocks this event occupies.
+     */
+    int getFootprint() {
+      return blocks.length * store.blockSize;
+    }
+
+    /**
+     * Returns a copy of this event on the heap.
+     */
+    Event toHeapEvent() {
+      SimpleEvent event = new SimpleEvent();
+      event.setHeaders(getHeaders());
+      event.setBody(getBody());
+      return event;
+    }
+
+    /**
+     * Returns the blocks of this event to the store. The event must not be
+     * read afterwards.
+     */
+    void free() {
+      Preconditions.checkState(!freed, "Event was already freed");
+      freed = true;
+      store.free(blocks);
+    }
+
+    @Override
+    public Map<String, String> getHeaders() {
+      if (headers != null) {
+        return new HashMap<String, String>(headers);
+      }
+      return deserialize(read(0, headerLength));
+    }
+
+    @Override
+    public byte[] getBody() {
+      return read(headerLength, bodyLength);
+    }
+
+    /**
+     * Returns the value of one header. Unless it is the key header the event
+     * was stored with, this reads all headers when they are stored off heap.
+     */
+    String getHeader(String name) {
+      if (headers != null) {
+        return headers.get(name);
+      }
+      if (name.equals(keyHeader)) {
+        return keyValue;
+      }
+      return deserialize(read(0, headerLength)).get(name);
+    }
+
+    @Override
+    public void setHeaders(Map<String, String> headers) {
+      throw new UnsupportedOperationException("Off heap events are read only");
+    }
+
+    @Override
+    public void setBody(byte[] body) {
+      throw new UnsupportedOperationException("Off heap events are read only");
+    }
+
+    private byte[] read(int offset, int length) {
+      Preconditions.checkState(!freed, "Event was already freed");
+      byte[] data = new byte[length];
+      store.copy(blocks, offset, data, false);
+      return data;
+    }
+  }
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A {@link LaneQueue} that takes events from the highest priority lane
+ * first. Lane {@code 0}, the first configured header value, has the highest
+ * priority, and events without a configured value go to a last lane of
+ * their own.
+ * </p>
+ * <p>
+ * So that a steady stream of high priority events cannot hold back the
+ * others indefinitely, after {@code starvationLimit} events in a row were
+ * taken from a lane while a lower one was waiting, the next event is taken
+ * from one of the waiting lower lanes. The lower lanes take these turns in
+ * rotation, so that the lowest one is not held back by the lanes between.
+ * </p>
+ */
+class PriorityLaneQueue extends LaneQueue {
+
+  private final int starvationLimit;
+  private int skipped;
+  // the lane last served by the starvation guard
+  private int guardLane;
+
+  PriorityLaneQueue(String header, List<String> values, int starvationLimit) {
+    super(header, values, values.size());
+    Preconditions.checkArgument(starvationLimit > 0,
+        "Starvation limit must be positive");
+    this.starvationLimit = starvationLimit;
+  }
+
+  @Override
+  protected int nextLane() {
+    int lanes = getLaneCount();
+    int highest = 0;
+    while (isEmpty(highest)) {
+      highest++;
+    }
+    int lower = highest + 1;
+    while (lower < lanes && isEmpty(lower)) {
+      lower++;
+    }
+    if (lower == lanes) {
+      skipped = 0;
+      return highest;
+    }
+    if (skipped >= starvationLimit) {
+      skipped = 0;
+      int lane = guardLane;
+      do {
+        lane++;
+        if (lane <= highest || lane >= lanes) {
+          lane = highest + 1;
+        }
+      } while (isEmpty(lane));
+      guardLane = lane;
+      return lane;
+    }
+    skipped++;
+    return highest;
+  }
+
+}
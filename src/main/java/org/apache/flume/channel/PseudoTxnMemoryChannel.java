@@ -125,13 +125,15 @@ public class PseudoTxnMemoryChannel extends AbstractChannel {
   public void put(Event event) {
     Preconditions.checkState(queue != null,
         "No queue defined (Did you forget to configure me?");
-    channelCounter.incrementEventPutAttemptCount();
+    channelCounter.increment(ChannelCounter.Counter.EVENT_PUT_ATTEMPT);
+    long startNanos = System.nanoTime();
     try {
       queue.put(event);
     } catch (InterruptedException ex) {
       throw new ChannelException("Failed to put(" + event + ")", ex);
     }
-    channelCounter.addToEventPutSuccessCount(1);
+    channelCounter.recordPutLatency(startNanos);
+    channelCounter.add(ChannelCounter.Counter.EVENT_PUT_SUCCESS, 1);
     channelCounter.setChannelSize(queue.size());
   }
 
@@ -139,10 +141,12 @@ public class PseudoTxnMemoryChannel extends AbstractChannel {
   public Event take() {
     Preconditions.checkState(queue != null,
         "No queue defined (Did you forget to configure me?");
-    channelCounter.incrementEventTakeAttemptCount();
+    channelCounter.increment(ChannelCounter.Counter.EVENT_TAKE_ATTEMPT);
+    long startNanos = System.nanoTime();
     try {
       Event e = queue.poll(keepAlive, TimeUnit.SECONDS);
-      channelCounter.addToEventTakeSuccessCount(1);
+      channelCounter.recordTakeLatency(startNanos);
+      channelCounter.add(ChannelCounter.Counter.EVENT_TAKE_SUCCESS, 1);
       channelCounter.setChannelSize(queue.size());
       return e;
     } catch (InterruptedException ex) {
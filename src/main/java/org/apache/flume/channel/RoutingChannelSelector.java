@@ -0,0 +1,356 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.flume.Channel;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.FlumeException;
+import org.apache.flume.instrumentation.StripedCounter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * A channel selector that routes events on an ordered list of rules, each
+ * of which matches on any number of headers. Where
+ * {@link MultiplexingChannelSelector} looks up the value of a single header,
+ * a rule here can for example send events of the billing module with
+ * severity ERROR to one channel and all other billing events to another:
+ * </p>
+ * <pre>
+ * selector.type = routing
+ * selector.rules = billingErrors billing
+ * selector.rules.billingErrors.module = billing
+ * selector.rules.billingErrors.severity = ERROR
+ * selector.rules.billingErrors.channels = c1 c2
+ * selector.rules.billing.module = billing*
+ * selector.rules.billing.channels = c2
+ * selector.rules.billing.optional = c3
+ * selector.default = c4
+ * </pre>
+ * <p>
+ * Every property of a rule other than {@code channels} and {@code optional}
+ * is a header condition. A value ending in {@code *} matches any header
+ * value with that prefix, a lone {@code *} matches any value as long as the
+ * header is present, and any other value must match exactly. An event is
+ * routed by the first rule, in the order of {@code rules}, whose conditions
+ * all hold, or to the default channels if none does.
+ * </p>
+ * <p>
+ * The rules are compiled into one character trie per header, whose nodes
+ * carry bit masks of the rules that a value reaching them satisfies. An event
+ * is matched by walking each header value through its trie once and
+ * intersecting the masks, without allocating, and the channel lists returned
+ * are built once at configuration time and are immutable. At most
+ * {@value #MAX_RULES} rules can be configured. The number of events routed
+ * by each rule is counted, see {@link #getRuleHits(String)}.
+ * </p>
+ */
+public class RoutingChannelSelector extends AbstractChannelSelector {
+
+  public static final String CONFIG_RULES = "rules";
+  public static final String CONFIG_PREFIX_RULE = "rules.";
+  public static final String CONFIG_CHANNELS = "channels";
+  public static final String CONFIG_OPTIONAL = "optional";
+  public static final String CONFIG_DEFAULT_CHANNEL = "default";
+  public static final String WILDCARD = "*";
+  public static final int MAX_RULES = 64;
+
+  private static final Logger LOG = LoggerFactory
+      .getLogger(RoutingChannelSelector.class);
+
+  private static final List<Channel> EMPTY_LIST =
+      Collections.emptyList();
+
+  private String[] ruleNames;
+  private HeaderIndex[] indexes;
+  private long allRules;
+  private List<List<Channel>> requiredChannels;
+  private List<List<Channel>> optionalChannels;
+  private List<Channel> defaultChannels;
+  private boolean hasOptionalChannels;
+
+  // one counter per rule, the last one counts events routed to the default
+  private StripedCounter[] hits;
+
+  @Override
+  public List<Channel> getRequiredChannels(Event event) {
+    int rule = match(event.getHeaders());
+    hits[rule < 0 ? ruleNames.length : rule].increment();
+    return rule < 0 ? defaultChannels : requiredChannels.get(rule);
+  }
+
+  @Override
+  public List<Channel> getOptionalChannels(Event event) {
+    if (!hasOptionalChannels) {
+      return EMPTY_LIST;
+    }
+    int rule = match(event.getHeaders());
+    return rule < 0 ? EMPTY_LIST : optionalChannels.get(rule);
+  }
+
+  /**
+   * Returns the number of events routed by the given rule, or by the default
+   * channels if the rule is null.
+   */
+  public long getRuleHits(String rule) {
+    if (rule == null) {
+      return hits[ruleNames.length].get();
+    }
+    for (int i = 0; i < ruleNames.length; i++) {
+      if (ruleNames[i].equals(rule)) {
+        return hits[i].get();
+      }
+    }
+    throw new IllegalArgumentException("Unknown rule: " + rule);
+  }
+
+  /**
+   * Returns the number of events routed by each rule, in rule order.
+   */
+  public Map<String, Long> getRuleHits() {
+    Map<String, Long> result = new LinkedHashMap<String, Long>();
+    for (int i = 0; i < ruleNames.length; i++) {
+      result.put(ruleNames[i], hits[i].get());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the index of the first rule matching the headers, or -1.
+   */
+  private int match(Map<String, String> headers) {
+    long rules = allRules;
+    for (int i = 0; i < indexes.length && rules != 0; i++) {
+      rules &= indexes[i].match(headers.get(indexes[i].header));
+    }
+    return rules == 0 ? -1 : Long.numberOfTrailingZeros(rules);
+  }
+
+  @Override
+  public void configure(Context context) {
+    Map<String, Channel> channelNameMap = getChannelNameMap();
+
+    defaultChannels = Collections.unmodifiableList(getChannelListFromNames(
+        context.getString(CONFIG_DEFAULT_CHANNEL), channelNameMap));
+
+    String rulesList = context.getString(CONFIG_RULES, "").trim();
+    String[] names = rulesList.isEmpty()
+        ? new String[0] : rulesList.split("\\s+");
+    if (names.length > MAX_RULES) {
+      throw new FlumeException("At most " + MAX_RULES + " rules can be "
+          + "configured, found " + names.length);
+    }
+
+    requiredChannels = new ArrayList<List<Channel>>(names.length);
+    optionalChannels = new ArrayList<List<Channel>>(names.length);
+    hasOptionalChannels = false;
+    Map<String, IndexBuilder> builders = new LinkedHashMap<String, IndexBuilder>();
+    for (int i = 0; i < names.length; i++) {
+      for (int j = 0; j < i; j++) {
+        if (names[j].equals(names[i])) {
+          throw new FlumeException("Rule configured twice: " + names[i]);
+        }
+      }
+      Map<String, String> ruleConfig =
+          context.getSubProperties(CONFIG_PREFIX_RULE + names[i] + ".");
+
+      List<Channel> required = getChannelListFromNames(
+          ruleConfig.get(CONFIG_CHANNELS), channelNameMap);
+      if (required.isEmpty()) {
+        throw new FlumeException("No channel configured for rule: "
+            + names[i]);
+      }
+      List<Channel> optional = getChannelListFromNames(
+          ruleConfig.get(CONFIG_OPTIONAL), channelNameMap);
+      optional.removeAll(required);
+      hasOptionalChannels |= !optional.isEmpty();
+      requiredChannels.add(Collections.unmodifiableList(required));
+      optionalChannels.add(optional.isEmpty()
+          ? EMPTY_LIST : Collections.unmodifiableList(optional));
+
+      for (Map.Entry<String, String> condition : ruleConfig.entrySet()) {
+        String header = condition.getKey();
+        if (header.equals(CONFIG_CHANNELS) || header.equals(CONFIG_OPTIONAL)) {
+          continue;
+        }
+        IndexBuilder builder = builders.get(header);
+        if (builder == null) {
+          builder = new IndexBuilder(header);
+          builders.put(header, builder);
+        }
+        builder.add(i, condition.getValue().trim());
+      }
+    }
+
+    allRules = names.length == MAX_RULES ? -1L : (1L << names.length) - 1;
+    indexes = new HeaderIndex[builders.size()];
+    int i = 0;
+    for (IndexBuilder builder : builders.values()) {
+      // rules without a condition on this header match any value
+      indexes[i++] = builder.build(allRules & ~builder.constrained);
+    }
+    ruleNames = names;
+    hits = new StripedCounter[names.length + 1];
+    for (int j = 0; j < hits.length; j++) {
+      hits[j] = new StripedCounter();
+    }
+    LOG.info("Routing channel selector {} compiled {} rules over headers {}",
+        new Object[] { getName(), names.length, builders.keySet() });
+  }
+
+  /**
+   * The conditions of all rules on one header. The value of the header is
+   * walked through a trie of the configured values; every node passed on the
+   * way contributes the prefix rules ending there, and the node the walk
+   * ends on contributes the exact rules if the whole value was consumed.
+   */
+  private static final class HeaderIndex {
+    private final String header;
+    // rules satisfied by a missing header
+    private final long absent;
+    // rules satisfied by any value of the header
+    private final long present;
+    private final TrieNode root;
+
+    HeaderIndex(String header, long absent, long present, TrieNode root) {
+      this.header = header;
+      this.absent = absent;
+      this.present = present;
+      this.root = root;
+    }
+
+    long match(String value) {
+      if (value == null) {
+        return absent;
+      }
+      long rules = present | root.prefixRules;
+      TrieNode node = root;
+      for (int i = 0; i < value.length(); i++) {
+        node = node.child(value.charAt(i));
+        if (node == null) {
+          return rules;
+        }
+        rules |= node.prefixRules;
+      }
+      return rules | node.exactRules;
+    }
+  }
+
+  private static final class TrieNode {
+    private final char[] keys;
+    private final TrieNode[] children;
+    private final long prefixRules;
+    private final long exactRules;
+
+    TrieNode(char[] keys, TrieNode[] children, long prefixRules,
+        long exactRules) {
+      this.keys = keys;
+      this.children = children;
+      this.prefixRules = prefixRules;
+      this.exactRules = exactRules;
+    }
+
+    TrieNode child(char c) {
+      int low = 0;
+      int high = keys.length - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        if (keys[mid] < c) {
+          low = mid + 1;
+        } else if (keys[mid] > c) {
+          high = mid - 1;
+        } else {
+          return children[mid];
+        }
+      }
+      return null;
+    }
+  }
+
+  private static final class IndexBuilder {
+    private final String header;
+    private final NodeBuilder root = new NodeBuilder();
+    private long constrained;
+    private long wildcard;
+
+    IndexBuilder(String header) {
+      this.header = header;
+    }
+
+    void add(int rule, String value) {
+      long bit = 1L << rule;
+      constrained |= bit;
+      if (value.equals(WILDCARD)) {
+        wildcard |= bit;
+        return;
+      }
+      boolean prefix = value.endsWith(WILDCARD);
+      if (prefix) {
+        value = value.substring(0, value.length() - 1);
+      }
+      NodeBuilder node = root;
+      for (int i = 0; i < value.length(); i++) {
+        NodeBuilder child = node.children.get(value.charAt(i));
+        if (child == null) {
+          child = new NodeBuilder();
+          node.children.put(value.charAt(i), child);
+        }
+        node = child;
+      }
+      if (prefix) {
+        node.prefixRules |= bit;
+      } else {
+        node.exactRules |= bit;
+      }
+    }
+
+    HeaderIndex build(long unconstrained) {
+      return new HeaderIndex(header, unconstrained, unconstrained | wildcard,
+          root.build());
+    }
+  }
+
+  private static final class NodeBuilder {
+    private final TreeMap<Character, NodeBuilder> children =
+        new TreeMap<Character, NodeBuilder>();
+    private long prefixRules;
+    private long exactRules;
+
+    TrieNode build() {
+      char[] keys = new char[children.size()];
+      TrieNode[] nodes = new TrieNode[children.size()];
+      int i = 0;
+      for (Map.Entry<Character, NodeBuilder> entry : children.entrySet()) {
+        keys[i] = entry.getKey();
+        nodes[i++] = entry.getValue().build();
+      }
+      return new TrieNode(keys, nodes, prefixRules, exactRules);
+    }
+  }
+
+}
@@ -43,6 +43,7 @@ import org.apache.flume.annotations.InterfaceAudience;
 import org.apache.flume.annotations.InterfaceStability;
 import org.apache.flume.api.RpcClient;
 import org.apache.flume.api.RpcClientFactory;
+import org.apache.flume.event.EventHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -217,7 +218,7 @@ public class AvroCLIClient {
       while (!(events = reader.readEvents(batchSize)).isEmpty()) {
         for (Event event : events) {
           event.setHeaders(headers);
-          sentBytes += event.getBody().length;
+          sentBytes += EventHelper.getBodySize(event);
           sent++;
 
           long now = System.currentTimeMillis();
@@ -20,12 +20,10 @@
 package org.apache.flume.client.avro;
 
 import java.io.File;
-import java.io.FileFilter;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.util.*;
-import java.util.regex.Pattern;
 
 import org.apache.flume.Context;
 import org.apache.flume.Event;
@@ -52,6 +50,11 @@ import com.google.common.io.Files;
  * <p/>Read calls will return no data if there are no files left to read. This
  * class, in general, is not thread safe.
  *
+ * <p/>Several readers may process the files of one directory concurrently
+ * if they are built with the same {@link SpoolDirectoryIndex} and distinct
+ * reader ids. Each reader tracks its position in its own meta file, and a
+ * reader that is restarted resumes the file its meta file refers to.
+ *
  * <p/>This reader assumes that files with unique file names are left in the
  * spooling directory and not modified once they are placed there. Any user
  * behavior which violates these assumptions, when detected, will result in a
@@ -76,21 +79,36 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
 
   static final String metaFileName = ".flumespool-main.meta";
 
+  static final String checkpointFileName = ".flumespool-main.checkpoint";
+
+  /** Returns the name of the meta file of the reader with the given id. */
+  static String metaFileName(int readerId, TrackerType trackerType) {
+    String name = trackerType == TrackerType.CHECKPOINT
+        ? checkpointFileName : metaFileName;
+    return readerId == 0 ? name : name.replace("-main.", "-" + readerId + ".");
+  }
+
   private final File spoolDirectory;
   private final String completedSuffix;
   private final String deserializerType;
   private final Context deserializerContext;
-  private final Pattern ignorePattern;
+  private final SpoolDirectoryIndex index;
   private final File metaFile;
   private final boolean annotateFileName;
   private final String fileNameHeader;
   private final String deletePolicy;
   private final Charset inputCharset;
+  private final boolean memoryMapped;
+  private final TrackerType trackerType;
+  private final int trackerCommitCount;
+  private final long trackerCommitIntervalMillis;
 
   private Optional<FileInfo> currentFile = Optional.absent();
   /** Always contains the last file from which lines have been read. **/
   private Optional<FileInfo> lastFileRead = Optional.absent();
   private boolean committed = true;
+  /** The file the meta file referred to on startup, until it is claimed. */
+  private File recoveredFile;
 
   /**
    * Create a ReliableSpoolingFileEventReader to watch the given directory.
@@ -99,7 +117,10 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
       String completedSuffix, String ignorePattern, String trackerDirPath,
       boolean annotateFileName, String fileNameHeader,
       String deserializerType, Context deserializerContext,
-      String deletePolicy, String inputCharset) throws IOException {
+      String deletePolicy, String inputCharset, boolean memoryMapped,
+      String trackerType, int trackerCommitCount,
+      long trackerCommitIntervalMillis, SpoolDirectoryIndex index,
+      int readerId) throws IOException {
 
     // Sanity checks
     Preconditions.checkNotNull(spoolDirectory);
@@ -110,6 +131,8 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
     Preconditions.checkNotNull(deserializerContext);
     Preconditions.checkNotNull(deletePolicy);
     Preconditions.checkNotNull(inputCharset);
+    Preconditions.checkNotNull(trackerType);
+    Preconditions.checkArgument(readerId >= 0, "reader id must not be negative");
 
     // validate delete policy
     if (!deletePolicy.equalsIgnoreCase(DeletePolicy.NEVER.name()) &&
@@ -150,9 +173,12 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
     this.deserializerContext = deserializerContext;
     this.annotateFileName = annotateFileName;
     this.fileNameHeader = fileNameHeader;
-    this.ignorePattern = Pattern.compile(ignorePattern);
     this.deletePolicy = deletePolicy;
     this.inputCharset = Charset.forName(inputCharset);
+    this.memoryMapped = memoryMapped;
+    this.trackerType = TrackerType.valueOf(trackerType.toUpperCase());
+    this.trackerCommitCount = trackerCommitCount;
+    this.trackerCommitIntervalMillis = trackerCommitIntervalMillis;
 
     File trackerDirectory = new File(trackerDirPath);
 
@@ -175,7 +201,27 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
           trackerDirectory);
     }
 
-    this.metaFile = new File(trackerDirectory, metaFileName);
+    this.metaFile = new File(trackerDirectory,
+        metaFileName(readerId, this.trackerType));
+
+    if (index == null) {
+      index = new SpoolDirectoryIndex(spoolDirectory, completedSuffix,
+          ignorePattern);
+    } else {
+      Preconditions.checkArgument(
+          index.getSpoolDirectory().equals(spoolDirectory),
+          "Index of %s cannot be used for %s", index.getSpoolDirectory(),
+          spoolDirectory);
+    }
+    this.index = index;
+
+    // keep other readers off the file this reader was reading
+    if (metaFile.exists()) {
+      PositionTracker tracker = openTracker(metaFile.getPath());
+      recoveredFile = new File(tracker.getTarget());
+      tracker.close();
+      index.reserve(recoveredFile);
+    }
   }
 
   /** Return the filename which generated the data from the last successful
@@ -247,6 +293,7 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
   public void close() throws IOException {
     if (currentFile.isPresent()) {
       currentFile.get().getDeserializer().close();
+      index.release(currentFile.get().getFile());
       currentFile = Optional.absent();
     }
   }
@@ -295,6 +342,7 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
       throw new IllegalArgumentException("Unsupported delete policy: " +
           deletePolicy);
     }
+    index.retire(currentFile.get().getFile());
   }
 
   /**
@@ -376,75 +424,73 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
   }
 
   /**
-   * Find and open the oldest file in the chosen directory. If two or more
-   * files are equally old, the file name with lower lexicographical value is
-   * returned. If the directory is empty, this will return an absent option.
+   * Claim and open the oldest file in the chosen directory, or the file this
+   * reader was reading before a restart. If two or more files are equally
+   * old, the file name with lower lexicographical value is returned. If no
+   * file is waiting to be read, this will return an absent option.
    */
   private Optional<FileInfo> getNextFile() {
-    /* Filter to exclude finished or hidden files */
-    FileFilter filter = new FileFilter() {
-      public boolean accept(File candidate) {
-        String fileName = candidate.getName();
-        if ((candidate.isDirectory()) ||
-            (fileName.endsWith(completedSuffix)) ||
-            (fileName.startsWith(".")) ||
-            ignorePattern.matcher(fileName).matches()) {
-          return false;
-        }
-        return true;
+    Optional<File> claimed = index.claim(recoveredFile);
+    if (recoveredFile != null) {
+      if (!claimed.isPresent() ||
+          !claimed.get().getName().equals(recoveredFile.getName())) {
+        index.release(recoveredFile);
       }
-    };
-    List<File> candidateFiles = Arrays.asList(spoolDirectory.listFiles(filter));
-    if (candidateFiles.isEmpty()) {
+      recoveredFile = null;
+    }
+    if (!claimed.isPresent()) {
       return Optional.absent();
-    } else {
-      Collections.sort(candidateFiles, new Comparator<File>() {
-        public int compare(File a, File b) {
-          int timeComparison = new Long(a.lastModified()).compareTo(
-              new Long(b.lastModified()));
-          if (timeComparison != 0) {
-            return timeComparison;
-          }
-          else {
-            return a.getName().compareTo(b.getName());
-          }
-        }
-      });
-      File nextFile = candidateFiles.get(0);
-      try {
-        // roll the meta file, if needed
-        String nextPath = nextFile.getPath();
-        PositionTracker tracker =
-            DurablePositionTracker.getInstance(metaFile, nextPath);
-        if (!tracker.getTarget().equals(nextPath)) {
-          tracker.close();
-          deleteMetaFile();
-          tracker = DurablePositionTracker.getInstance(metaFile, nextPath);
-        }
-
-        // sanity check
-        Preconditions.checkState(tracker.getTarget().equals(nextPath),
-            "Tracker target %s does not equal expected filename %s",
-            tracker.getTarget(), nextPath);
-
-        ResettableInputStream in =
-            new ResettableFileInputStream(nextFile, tracker,
-                ResettableFileInputStream.DEFAULT_BUF_SIZE, inputCharset);
-        EventDeserializer deserializer = EventDeserializerFactory.getInstance
-            (deserializerType, deserializerContext, in);
-
-        return Optional.of(new FileInfo(nextFile, deserializer));
-      } catch (FileNotFoundException e) {
-        // File could have been deleted in the interim
-        logger.warn("Could not find file: " + nextFile, e);
-        return Optional.absent();
-      } catch (IOException e) {
-        logger.error("Exception opening file: " + nextFile, e);
-        return Optional.absent();
+    }
+    File nextFile = claimed.get();
+    try {
+      // roll the meta file, if needed
+      String nextPath = nextFile.getPath();
+      PositionTracker tracker = openTracker(nextPath);
+      if (!tracker.getTarget().equals(nextPath)) {
+        tracker.close();
+        deleteMetaFile();
+        tracker = openTracker(nextPath);
       }
+
+      // sanity check
+      Preconditions.checkState(tracker.getTarget().equals(nextPath),
+          "Tracker target %s does not equal expected filename %s",
+          tracker.getTarget(), nextPath);
+
+      ResettableInputStream in = memoryMapped
+          ? new ResettableFileInputStream(nextFile, tracker,
+              ResettableFileInputStream.DEFAULT_MAP_WINDOW_SIZE, inputCharset,
+              true)
+          : new ResettableFileInputStream(nextFile, tracker,
+              ResettableFileInputStream.DEFAULT_BUF_SIZE, inputCharset);
+      EventDeserializer deserializer = EventDeserializerFactory.getInstance
+          (deserializerType, deserializerContext, in);
+
+      return Optional.of(new FileInfo(nextFile, deserializer));
+    } catch (FileNotFoundException e) {
+      // File could have been deleted in the interim
+      logger.warn("Could not find file: " + nextFile, e);
+      index.release(nextFile);
+      return Optional.absent();
+    } catch (IOException e) {
+      logger.error("Exception opening file: " + nextFile, e);
+      index.release(nextFile);
+      return Optional.absent();
     }
   }
 
+  /**
+   * Opens the meta file, creating it for the given target if it does not
+   * exist.
+   */
+  private PositionTracker openTracker(String target) throws IOException {
+    if (trackerType == TrackerType.CHECKPOINT) {
+      return CheckpointPositionTracker.getInstance(metaFile, target,
+          trackerCommitCount, trackerCommitIntervalMillis);
+    }
+    return DurablePositionTracker.getInstance(metaFile, target);
+  }
+
   private void deleteMetaFile() throws IOException {
     if (metaFile.exists() && !metaFile.delete()) {
       throw new IOException("Unable to delete old meta file " + metaFile);
@@ -479,6 +525,18 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
     DELAY
   }
 
+  /**
+   * Formats of the meta file that tracks the position in the current file.
+   */
+  @InterfaceAudience.Private
+  @InterfaceStability.Unstable
+  static enum TrackerType {
+    /** An Avro container file that every mark is appended to. */
+    DURABLE,
+    /** A fixed-size binary checkpoint with group commit. */
+    CHECKPOINT
+  }
+
   /**
    * Special builder class for ReliableSpoolingFileEventReader
    */
@@ -501,6 +559,17 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
         SpoolDirectorySourceConfigurationConstants.DEFAULT_DELETE_POLICY;
     private String inputCharset =
         SpoolDirectorySourceConfigurationConstants.DEFAULT_INPUT_CHARSET;
+    private boolean memoryMapped =
+        SpoolDirectorySourceConfigurationConstants.DEFAULT_MEMORY_MAPPED;
+    private String trackerType =
+        SpoolDirectorySourceConfigurationConstants.DEFAULT_POSITION_TRACKER;
+    private int trackerCommitCount =
+        SpoolDirectorySourceConfigurationConstants.DEFAULT_TRACKER_COMMIT_COUNT;
+    private long trackerCommitIntervalMillis =
+        SpoolDirectorySourceConfigurationConstants
+            .DEFAULT_TRACKER_COMMIT_INTERVAL;
+    private SpoolDirectoryIndex index;
+    private int readerId = 0;
 
     public Builder spoolDirectory(File directory) {
       this.spoolDirectory = directory;
@@ -552,10 +621,64 @@ public class ReliableSpoolingFileEventReader implements ReliableEventReader {
       return this;
     }
 
+    public Builder memoryMapped(boolean memoryMapped) {
+      this.memoryMapped = memoryMapped;
+      return this;
+    }
+
+    /**
+     * Sets the format of the meta file, {@code durable} or
+     * {@code checkpoint}.
+     */
+    public Builder trackerType(String trackerType) {
+      this.trackerType = trackerType;
+      return this;
+    }
+
+    /**
+     * Sets how many marks a checkpoint tracker commits at once.
+     */
+    public Builder trackerCommitCount(int trackerCommitCount) {
+      this.trackerCommitCount = trackerCommitCount;
+      return this;
+    }
+
+    /**
+     * Sets the time after its last commit from which a checkpoint tracker
+     * commits a mark regardless of the count, or 0 to commit on count
+     * alone. It is only checked on a mark, so the last mark before the
+     * reader goes idle may stay uncommitted until the next one or close.
+     */
+    public Builder trackerCommitIntervalMillis(
+        long trackerCommitIntervalMillis) {
+      this.trackerCommitIntervalMillis = trackerCommitIntervalMillis;
+      return this;
+    }
+
+    /**
+     * Shares the given index with other readers of the same directory. By
+     * default the reader has an index of its own.
+     */
+    public Builder index(SpoolDirectoryIndex index) {
+      this.index = index;
+      return this;
+    }
+
+    /**
+     * Sets the id of the reader among the readers sharing an index, which
+     * determines its meta file. The default is 0.
+     */
+    public Builder readerId(int readerId) {
+      this.readerId = readerId;
+      return this;
+    }
+
     public ReliableSpoolingFileEventReader build() throws IOException {
       return new ReliableSpoolingFileEventReader(spoolDirectory, completedSuffix,
           ignorePattern, trackerDirPath, annotateFileName, fileNameHeader,
-          deserializerType, deserializerContext, deletePolicy, inputCharset);
+          deserializerType, deserializerContext, deletePolicy, inputCharset,
+          memoryMapped, trackerType, trackerCommitCount,
+          trackerCommitIntervalMillis, index, readerId);
     }
   }
 
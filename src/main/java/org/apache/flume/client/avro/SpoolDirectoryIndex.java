@@ -0,0 +1,218 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.client.avro;
+
+import java.io.File;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
+
+import org.apache.flume.annotations.InterfaceAudience;
+import org.apache.flume.annotations.InterfaceStability;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Preconditions;
+
+/**
+ * <p/>The files of a spooling directory that are waiting to be read, oldest
+ * first, shared by the {@link ReliableSpoolingFileEventReader}s that read
+ * the directory concurrently. A reader claims a file before opening it, so
+ * that no two readers process the same file, and retires it once the file
+ * has been renamed or deleted.
+ *
+ * <p/>The directory is only listed again when its modification time has
+ * changed, which happens when files are added, renamed or removed. Because
+ * that time may have a granularity of a second, a listing taken within
+ * {@link #RACY_MILLIS} of the last change is not trusted, and the directory
+ * is listed again on the next claim. Files seen in an earlier listing are
+ * not examined again, so re-listing a directory full of completed files
+ * does not cost a stat call per file.
+ *
+ * <p/>This class is thread safe.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class SpoolDirectoryIndex {
+
+  static final long RACY_MILLIS = 2000L;
+
+  private final File spoolDirectory;
+  private final String completedSuffix;
+  private final Pattern ignorePattern;
+
+  /** Files waiting to be read, by name. */
+  private final Map<String, Candidate> candidates =
+      new HashMap<String, Candidate>();
+  private final TreeSet<Candidate> ordered =
+      new TreeSet<Candidate>(new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+          if (a.lastModified != b.lastModified) {
+            return a.lastModified < b.lastModified ? -1 : 1;
+          }
+          return a.name.compareTo(b.name);
+        }
+      });
+  /** Names of files that are being read, or reserved for a reader. */
+  private final Set<String> claimed = new HashSet<String>();
+  /** Names of directories and other entries that are never candidates. */
+  private final Set<String> skipped = new HashSet<String>();
+
+  private long listedModified = Long.MIN_VALUE;
+  private long listedAt;
+
+  public SpoolDirectoryIndex(File spoolDirectory, String completedSuffix,
+      String ignorePattern) {
+    Preconditions.checkNotNull(spoolDirectory);
+    Preconditions.checkNotNull(completedSuffix);
+    Preconditions.checkNotNull(ignorePattern);
+    this.spoolDirectory = spoolDirectory;
+    this.completedSuffix = completedSuffix;
+    this.ignorePattern = Pattern.compile(ignorePattern);
+  }
+
+  public File getSpoolDirectory() {
+    return spoolDirectory;
+  }
+
+  /**
+   * Keeps the given file from being claimed by any reader but one that
+   * prefers it. Readers reserve the file their position tracker refers to
+   * before any reader claims a file, so that it is resumed rather than read
+   * again from the start by another reader.
+   */
+  public synchronized void reserve(File file) {
+    claimed.add(file.getName());
+  }
+
+  /**
+   * Claims the given preferred file if it is waiting to be read, or else
+   * the oldest unclaimed file. If two or more files are equally old, the
+   * file name with lower lexicographical value is claimed.
+   *
+   * @param preferred a file to claim first, or null
+   * @return the claimed file, or absent if no file is waiting
+   */
+  public synchronized Optional<File> claim(File preferred) {
+    refresh();
+    if (preferred != null) {
+      Candidate candidate = candidates.get(preferred.getName());
+      if (candidate != null) {
+        claimed.add(candidate.name);
+        return Optional.of(candidate.file);
+      }
+    }
+    for (Candidate candidate : ordered) {
+      if (!claimed.contains(candidate.name)) {
+        claimed.add(candidate.name);
+        return Optional.of(candidate.file);
+      }
+    }
+    return Optional.absent();
+  }
+
+  /**
+   * Makes a claimed file available to readers again, for example because it
+   * could not be opened.
+   */
+  public synchronized void release(File file) {
+    claimed.remove(file.getName());
+  }
+
+  /**
+   * Forgets a claimed file that has been renamed or deleted.
+   */
+  public synchronized void retire(File file) {
+    String name = file.getName();
+    claimed.remove(name);
+    Candidate candidate = candidates.remove(name);
+    if (candidate != null) {
+      ordered.remove(candidate);
+    }
+  }
+
+  /** Returns the number of files waiting to be read, claimed or not. */
+  public synchronized int size() {
+    refresh();
+    return candidates.size();
+  }
+
+  private void refresh() {
+    long modified = spoolDirectory.lastModified();
+    if (modified == listedModified && listedAt - modified > RACY_MILLIS) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    String[] names = spoolDirectory.list();
+    if (names == null) {
+      return;
+    }
+
+    Set<String> present = new HashSet<String>(names.length * 2);
+    for (String name : names) {
+      if (name.endsWith(completedSuffix) || name.startsWith(".") ||
+          ignorePattern.matcher(name).matches()) {
+        continue;
+      }
+      present.add(name);
+      if (candidates.containsKey(name) || skipped.contains(name)) {
+        continue;
+      }
+      File file = new File(spoolDirectory, name);
+      if (file.isDirectory()) {
+        skipped.add(name);
+        continue;
+      }
+      Candidate candidate = new Candidate(name, file, file.lastModified());
+      candidates.put(name, candidate);
+      ordered.add(candidate);
+    }
+
+    Iterator<Candidate> it = candidates.values().iterator();
+    while (it.hasNext()) {
+      Candidate candidate = it.next();
+      if (!present.contains(candidate.name)) {
+        it.remove();
+        ordered.remove(candidate);
+      }
+    }
+    skipped.retainAll(present);
+
+    listedModified = modified;
+    listedAt = now;
+  }
+
+  private static class Candidate {
+    private final String name;
+    private final File file;
+    private final long lastModified;
+
+    Candidate(String name, File file, long lastModified) {
+      this.name = name;
+      this.file = file;
+      this.lastModified = lastModified;
+    }
+  }
+
+}
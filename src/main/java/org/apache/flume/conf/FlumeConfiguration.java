@@ -28,6 +28,7 @@ import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
 
 import org.apache.flume.Context;
 import org.apache.flume.conf.ComponentConfiguration.ComponentType;
@@ -42,14 +43,17 @@ import org.apache.flume.conf.source.SourceType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.annotations.VisibleForTesting;
+
 /**
  * <p>
  * FlumeConfiguration is an in memory representation of the hierarchical
  * configuration namespace required by the ConfigurationProvider.
- * This class is instantiated with a map or properties object which is parsed
- * to construct the hierarchy in memory. Once the entire set of properties have
- * been parsed and populated, a validation routine is run that identifies and
- * removes invalid components.
+ * This class is instantiated with a map or properties object which is indexed
+ * by agent name in a single pass. The hierarchy of an agent is only
+ * constructed and validated, removing invalid components, the first time it
+ * is requested through {@link #getConfigurationFor(String)}, so a file
+ * shared by many agents costs each agent process little more than reading it.
  * </p>
  *
  * @see org.apache.flume.node.ConfigurationProvider
@@ -60,6 +64,10 @@ public class FlumeConfiguration {
   private static final Logger logger = LoggerFactory
       .getLogger(FlumeConfiguration.class);
 
+  // raw properties of each agent, keyed by agent name, with the agent prefix
+  // stripped from the property names
+  private final Map<String, Map<String, String>> agentPropertiesMap;
+  // built agent configurations; null values mark agents found invalid
   private final Map<String, AgentConfiguration> agentConfigMap;
   private final LinkedList<FlumeConfigurationError> errors;
   public static final String NEWLINE = System.getProperty("line.separator",
@@ -71,29 +79,27 @@ public class FlumeConfiguration {
    */
   @Deprecated
   public FlumeConfiguration(Properties properties) {
+    agentPropertiesMap = new HashMap<String, Map<String, String>>();
     agentConfigMap = new HashMap<String, AgentConfiguration>();
     errors = new LinkedList<FlumeConfigurationError>();
-    // Construct the in-memory component hierarchy
+    // Index the properties by agent name
     for(Object name : properties.keySet()) {
       Object value = properties.get(name);
       if (!addRawProperty(name.toString(), value.toString())) {
         logger.warn("Configuration property ignored: " + name + " = " + value);
       }
     }
-    // Now iterate thru the agentContext and create agent configs and add them
-    // to agentConfigMap
-
-    // validate and remove improperly configured components
-    validateConfiguration();
-
+    logger.info("Flume configuration contains properties for agents: "
+        + agentPropertiesMap.keySet());
   }
   /**
    * Creates a populated Flume Configuration object.
    */
   public FlumeConfiguration(Map<String, String> properties) {
+    agentPropertiesMap = new HashMap<String, Map<String, String>>();
     agentConfigMap = new HashMap<String, AgentConfiguration>();
     errors = new LinkedList<FlumeConfigurationError>();
-    // Construct the in-memory component hierarchy
+    // Index the properties by agent name
     for(String name : properties.keySet()) {
       String value = properties.get(name);
 
@@ -101,44 +107,73 @@ public class FlumeConfiguration {
         logger.warn("Configuration property ignored: " + name + " = " + value);
       }
     }
-    // Now iterate thru the agentContext and create agent configs and add them
-    // to agentConfigMap
-
-    // validate and remove improperly configured components
-    validateConfiguration();
+    logger.info("Flume configuration contains properties for agents: "
+        + agentPropertiesMap.keySet());
   }
 
-  public List<FlumeConfigurationError> getConfigurationErrors() {
+  /**
+   * Returns the errors of the whole configuration. This builds and validates
+   * every agent that has not been requested yet.
+   */
+  public synchronized List<FlumeConfigurationError> getConfigurationErrors() {
+    for (String agentName : agentPropertiesMap.keySet()) {
+      getConfigurationFor(agentName);
+    }
     return errors;
   }
 
-  public AgentConfiguration getConfigurationFor(String hostname) {
-    return agentConfigMap.get(hostname);
-  }
-
-  private void validateConfiguration() {
-    Iterator<String> it = agentConfigMap.keySet().iterator();
-
-    while (it.hasNext()) {
-      String agentName = it.next();
-      AgentConfiguration aconf = agentConfigMap.get(agentName);
-
-      if (!aconf.isValid()) {
-        logger.warn("Agent configuration invalid for agent '" + agentName
-            + "'. It will be removed.");
-        errors.add(new FlumeConfigurationError(agentName, "",
-            FlumeConfigurationErrorType.AGENT_CONFIGURATION_INVALID,
-            ErrorOrWarning.ERROR));
+  /**
+   * Returns the validated configuration of the given agent, building it on
+   * first use.
+   *
+   * @return the configuration, or null if the agent is not configured or its
+   * configuration is invalid
+   */
+  public synchronized AgentConfiguration getConfigurationFor(String hostname) {
+    if (agentConfigMap.containsKey(hostname)) {
+      return agentConfigMap.get(hostname);
+    }
+    Map<String, String> agentProperties = agentPropertiesMap.get(hostname);
+    if (agentProperties == null) {
+      return null;
+    }
 
-        it.remove();
+    AgentConfiguration aconf = new AgentConfiguration(hostname, errors);
+    for (Map.Entry<String, String> entry : agentProperties.entrySet()) {
+      // Each configuration key must begin with one of the four prefixes:
+      // sources, sinks, channels or sinkgroups.
+      if (!aconf.addProperty(entry.getKey(), entry.getValue())) {
+        logger.warn("Configuration property ignored: " + hostname + "."
+            + entry.getKey() + " = " + entry.getValue());
       }
+    }
+
+    // validate and remove improperly configured components
+    if (!aconf.isValid()) {
+      logger.warn("Agent configuration invalid for agent '" + hostname
+          + "'. It will be removed.");
+      errors.add(new FlumeConfigurationError(hostname, "",
+          FlumeConfigurationErrorType.AGENT_CONFIGURATION_INVALID,
+          ErrorOrWarning.ERROR));
+      aconf = null;
+    } else {
       logger.debug("Channels:" + aconf.channels + "\n");
       logger.debug("Sinks " + aconf.sinks + "\n");
       logger.debug("Sources " + aconf.sources + "\n");
+      logger.info("Post-validation flume configuration contains configuration"
+          + " for agent: " + hostname);
     }
+    agentConfigMap.put(hostname, aconf);
+    return aconf;
+  }
 
-    logger.info("Post-validation flume configuration contains configuration"
-        + " for agents: " + agentConfigMap.keySet());
+  /**
+   * Returns whether the configuration of the given agent has been built and
+   * validated.
+   */
+  @VisibleForTesting
+  synchronized boolean isBuilt(String agentName) {
+    return agentConfigMap.containsKey(agentName);
   }
 
   private boolean addRawProperty(String name, String value) {
@@ -197,16 +232,15 @@ public class FlumeConfiguration {
       return false;
     }
 
-    AgentConfiguration aconf = agentConfigMap.get(agentName);
+    Map<String, String> agentProperties = agentPropertiesMap.get(agentName);
 
-    if (aconf == null) {
-      aconf = new AgentConfiguration(agentName, errors);
-      agentConfigMap.put(agentName, aconf);
+    if (agentProperties == null) {
+      agentProperties = new HashMap<String, String>();
+      agentPropertiesMap.put(agentName, agentProperties);
     }
 
-    // Each configuration key must begin with one of the three prefixes:
-    // sources, sinks, or channels.
-    return aconf.addProperty(configKey, value);
+    agentProperties.put(configKey, value);
+    return true;
   }
 
   public static class AgentConfiguration {
@@ -232,6 +266,9 @@ public class FlumeConfiguration {
     private Set<String> channelSet;
     private Set<String> sinkgroupSet;
 
+    // component properties exactly as read, keyed by e.g. "sources.r1"
+    private final Map<String, Map<String, String>> componentProperties;
+
     private final List<FlumeConfigurationError> errorList;
 
     private AgentConfiguration(String agentName,
@@ -246,7 +283,7 @@ public class FlumeConfiguration {
       sinkContextMap = new HashMap<String, Context>();
       channelContextMap = new HashMap<String, Context>();
       sinkGroupContextMap = new HashMap<String, Context>();
-
+      componentProperties = new HashMap<String, Map<String, String>>();
     }
 
     public Map<String, ComponentConfiguration> getChannelConfigMap() {
@@ -293,6 +330,36 @@ public class FlumeConfiguration {
       return sinkgroupSet;
     }
 
+    /**
+     * Returns the properties of a component as they appeared in the
+     * configuration, before validation rewrote them, sorted by key.
+     *
+     * @param prefix one of the {@link BasicConfigurationConstants}
+     * component prefixes, such as {@code sources.}
+     * @param componentName name of the component
+     * @return the properties, empty if the component was not configured
+     */
+    public Map<String, String> getComponentProperties(String prefix,
+        String componentName) {
+      Map<String, String> props =
+          componentProperties.get(prefix + componentName);
+      if (props == null) {
+        return Collections.emptyMap();
+      }
+      return Collections.unmodifiableMap(props);
+    }
+
+    private void addComponentProperty(String prefix,
+        ComponentNameAndConfigKey cnck, String value) {
+      String key = prefix + cnck.getComponentName();
+      Map<String, String> props = componentProperties.get(key);
+      if (props == null) {
+        props = new TreeMap<String, String>();
+        componentProperties.put(key, props);
+      }
+      props.put(cnck.getConfigKey(), value);
+    }
+
 
     /**
      * <p>
@@ -987,6 +1054,8 @@ public class FlumeConfiguration {
         }
 
         srcConf.put(cnck.getConfigKey(), value);
+        addComponentProperty(
+            BasicConfigurationConstants.CONFIG_SOURCES_PREFIX, cnck, value);
         return true;
       }
 
@@ -1004,6 +1073,8 @@ public class FlumeConfiguration {
         }
 
         channelConf.put(cnck.getConfigKey(), value);
+        addComponentProperty(
+            BasicConfigurationConstants.CONFIG_CHANNELS_PREFIX, cnck, value);
         return true;
       }
 
@@ -1024,6 +1095,8 @@ public class FlumeConfiguration {
         }
 
         sinkConf.put(cnck.getConfigKey(), value);
+        addComponentProperty(
+            BasicConfigurationConstants.CONFIG_SINKS_PREFIX, cnck, value);
         return true;
       }
 
@@ -1039,6 +1112,8 @@ public class FlumeConfiguration {
         }
 
         groupConf.put(cnck.getConfigKey(), value);
+        addComponentProperty(
+            BasicConfigurationConstants.CONFIG_SINKGROUPS_PREFIX, cnck, value);
 
         return true;
       }
@@ -53,7 +53,8 @@ public class ChannelSelectorConfiguration extends
     REPLICATING(null),
     MULTIPLEXING(
         "org.apache.flume.conf.channel." +
-            "MultiplexingChannelSelectorConfiguration");
+            "MultiplexingChannelSelectorConfiguration"),
+    ROUTING(null);
 
     private String selectorType;
 
@@ -34,7 +34,12 @@ public enum ChannelSelectorType {
   /**
    * Multiplexing channel selector.
    */
-  MULTIPLEXING("org.apache.flume.channel.MultiplexingChannelSelector");
+  MULTIPLEXING("org.apache.flume.channel.MultiplexingChannelSelector"),
+
+  /**
+   * Channel selector routing on rules over several headers.
+   */
+  ROUTING("org.apache.flume.channel.RoutingChannelSelector");
 
   private final String channelSelectorClassName;
 
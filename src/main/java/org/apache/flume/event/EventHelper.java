@@ -41,6 +41,18 @@ public class EventHelper {
   private static final Logger LOGGER = LoggerFactory
       .getLogger(EventHelper.class);
 
+  /**
+   * Returns the length of the event's body, without copying or encoding it
+   * if the event is a {@link SizedEvent}. A null body has a length of 0.
+   */
+  public static int getBodySize(Event event) {
+    if (event instanceof SizedEvent) {
+      return ((SizedEvent) event).getBodySize();
+    }
+    byte[] body = event.getBody();
+    return body == null ? 0 : body.length;
+  }
+
   public static String dumpEvent(Event event) {
     return dumpEvent(event, DEFAULT_MAX_BYTES);
   }
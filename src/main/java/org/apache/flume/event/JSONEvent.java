@@ -20,15 +20,17 @@ package org.apache.flume.event;
 
 import java.io.UnsupportedEncodingException;
 import java.util.Map;
-import org.apache.flume.Event;
 
 /**
  *
  */
-public class JSONEvent implements Event{
+public class JSONEvent implements SizedEvent {
   private Map<String, String> headers;
   private String body;
   private transient String charset = "UTF-8";
+  // the encoded length of the body, valid while bodySizeKnown is set
+  private transient int bodySize;
+  private transient boolean bodySizeKnown;
 
   @Override
   public Map<String, String> getHeaders() {
@@ -62,10 +64,22 @@ public class JSONEvent implements Event{
     } else {
       this.body = "";
     }
+    bodySizeKnown = false;
   }
 
   public void setCharset(String charset) {
     this.charset = charset;
+    bodySizeKnown = false;
+  }
+
+  @Override
+  public int getBodySize() {
+    if (!bodySizeKnown) {
+      byte[] encoded = getBody();
+      bodySize = encoded == null ? 0 : encoded.length;
+      bodySizeKnown = true;
+    }
+    return bodySize;
   }
 
 }
@@ -24,7 +24,7 @@ import java.util.Map;
 
 import org.apache.flume.Event;
 
-public class SimpleEvent implements Event {
+public class SimpleEvent implements SizedEvent {
 
   private Map<String, String> headers;
   private byte[] body;
@@ -57,6 +57,11 @@ public class SimpleEvent implements Event {
     this.body = body;
   }
 
+  @Override
+  public int getBodySize() {
+    return body == null ? 0 : body.length;
+  }
+
   @Override
   public String toString() {
     Integer bodyLen = null;
@@ -0,0 +1,38 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.event;
+
+import org.apache.flume.Event;
+
+/**
+ * An {@link Event} that knows the length of its body without copying or
+ * encoding it. Events whose {@link #getBody()} does more than return a
+ * field implement this, and memoize the size until the body changes, so
+ * that channels can account for event bytes on every put and take for
+ * free. Use {@link EventHelper#getBodySize(Event)} to get the size of any
+ * event.
+ */
+public interface SizedEvent extends Event {
+
+  /**
+   * Returns the number of bytes {@link #getBody()} would return.
+   */
+  public int getBodySize();
+
+}
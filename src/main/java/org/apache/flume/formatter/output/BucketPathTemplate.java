@@ -0,0 +1,361 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.formatter.output;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * A {@link BucketPath} escape string parsed once into a sequence of literal,
+ * header and time segments. {@link #render(Map)} produces the same output as
+ * {@link BucketPath#escapeString(String, Map, TimeZone, boolean, int, int,
+ * boolean)} with the same arguments, but without running a regex or
+ * allocating date formatters per event.
+ * </p>
+ *
+ * <p>
+ * Formatted time segments are cached for the calendar bucket (second,
+ * minute, hour or day, depending on the finest shorthand used) that the last
+ * rendered timestamp fell into, so consecutive events in the same bucket only
+ * pay for a range check. Instances are immutable apart from that cache,
+ * which is swapped atomically, so a template may be shared between threads.
+ * </p>
+ */
+public class BucketPathTemplate {
+
+  private static final int LITERAL = 0;
+  private static final int HEADER = 1;
+  private static final int DATE = 2;
+  private static final int UNIX_SECONDS = 3;
+  private static final int UNIX_MILLIS = 4;
+
+  // cache granularities, finest first
+  private static final int[] GRANULARITY_FIELDS = { Calendar.SECOND,
+      Calendar.MINUTE, Calendar.HOUR_OF_DAY, Calendar.DAY_OF_MONTH };
+  private static final int SECOND = 0;
+  private static final int MINUTE = 1;
+  private static final int HOUR = 2;
+  private static final int DAY = 3;
+
+  private final String template;
+  private final int[] types;
+  // literal text, header name or date pattern, depending on the type
+  private final String[] values;
+  private final int dateSegments;
+  private final int granularity;
+  private final boolean needsTimestamp;
+  private final int sizeHint;
+
+  private final TimeZone timeZone;
+  private final boolean needRounding;
+  private final int unit;
+  private final int roundDown;
+  private final boolean useLocalTimeStamp;
+
+  private volatile TimeBucket bucket;
+
+  private BucketPathTemplate(String template, TimeZone timeZone,
+      boolean needRounding, int unit, int roundDown,
+      boolean useLocalTimeStamp) {
+    this.template = template;
+    this.timeZone = timeZone;
+    this.needRounding = needRounding;
+    this.unit = unit;
+    this.roundDown = roundDown;
+    this.useLocalTimeStamp = useLocalTimeStamp;
+
+    List<Integer> typeList = new ArrayList<Integer>();
+    List<String> valueList = new ArrayList<String>();
+    StringBuilder literal = new StringBuilder();
+    boolean timestamp = false;
+    int dates = 0;
+    int finest = DAY;
+
+    int i = 0;
+    int len = template.length();
+    while (i < len) {
+      char c = template.charAt(i);
+      if (c != '%' || i + 1 >= len) {
+        literal.append(c);
+        i++;
+        continue;
+      }
+
+      char next = template.charAt(i + 1);
+      if (next == '{') {
+        int close = headerNameEnd(template, i + 2);
+        if (close < 0) {
+          literal.append(c);
+          i++;
+          continue;
+        }
+        flushLiteral(literal, typeList, valueList);
+        typeList.add(HEADER);
+        valueList.add(template.substring(i + 2, close));
+        i = close + 1;
+        continue;
+      }
+
+      if (next != '%' && !isWordChar(next)) {
+        literal.append(c);
+        i++;
+        continue;
+      }
+
+      // any %x shorthand, even an unknown one, requires a timestamp
+      timestamp = true;
+      i += 2;
+      if (next == '%') {
+        literal.append('%');
+      } else if (next == 's') {
+        flushLiteral(literal, typeList, valueList);
+        typeList.add(UNIX_SECONDS);
+        valueList.add(null);
+      } else if (next == 't') {
+        flushLiteral(literal, typeList, valueList);
+        typeList.add(UNIX_MILLIS);
+        valueList.add(null);
+      } else {
+        String pattern = BucketPath.dateFormatFor(next);
+        if (pattern != null) {
+          flushLiteral(literal, typeList, valueList);
+          typeList.add(DATE);
+          valueList.add(pattern);
+          dates++;
+          finest = Math.min(finest, granularityOf(next));
+        }
+      }
+    }
+    flushLiteral(literal, typeList, valueList);
+
+    this.types = new int[typeList.size()];
+    for (int j = 0; j < types.length; j++) {
+      types[j] = typeList.get(j);
+    }
+    this.values = valueList.toArray(new String[valueList.size()]);
+    this.dateSegments = dates;
+    this.granularity = finest;
+    this.needsTimestamp = timestamp;
+    this.sizeHint = len + 32;
+  }
+
+  /**
+   * Compiles an escape string using the default timezone, no rounding and
+   * the event's timestamp header.
+   */
+  public static BucketPathTemplate compile(String in) {
+    return compile(in, null, false, 0, 0, false);
+  }
+
+  /**
+   * Compiles an escape string. The arguments have the same meaning as for
+   * {@link BucketPath#escapeString(String, Map, TimeZone, boolean, int, int,
+   * boolean)}.
+   */
+  public static BucketPathTemplate compile(String in, TimeZone timeZone,
+      boolean needRounding, int unit, int roundDown,
+      boolean useLocalTimeStamp) {
+    Preconditions.checkNotNull(in, "escape string must not be null");
+    return new BucketPathTemplate(in, timeZone, needRounding, unit,
+        roundDown, useLocalTimeStamp);
+  }
+
+  /**
+   * Replaces the escapes of this template using the given event headers.
+   * Missing headers are rendered as the empty string.
+   */
+  public String render(Map<String, String> headers) {
+    long rawTs = 0;
+    long ts = 0;
+    String timestampHeader = null;
+    if (needsTimestamp) {
+      if (useLocalTimeStamp) {
+        rawTs = BucketPath.getClock().currentTimeMillis();
+      } else {
+        timestampHeader = headers.get("timestamp");
+        Preconditions.checkNotNull(timestampHeader, "Expected timestamp in " +
+            "the Flume event headers, but it was null");
+        try {
+          rawTs = Long.parseLong(timestampHeader);
+        } catch (NumberFormatException e) {
+          throw new RuntimeException("Flume wasn't able to parse timestamp " +
+              "header in the event to resolve time based bucketing. Please " +
+              "check that you're correctly populating timestamp header (for " +
+              "example using TimestampInterceptor source interceptor).", e);
+        }
+      }
+      ts = needRounding ? BucketPath.roundDown(roundDown, unit, rawTs) : rawTs;
+    }
+
+    String[] dates = dateSegments > 0 ? bucketFor(ts).formatted : null;
+
+    StringBuilder sb = new StringBuilder(sizeHint);
+    int date = 0;
+    for (int i = 0; i < types.length; i++) {
+      switch (types[i]) {
+      case LITERAL:
+        sb.append(values[i]);
+        break;
+      case HEADER:
+        String value = headers.get(values[i]);
+        if (value != null) {
+          sb.append(value);
+        }
+        break;
+      case DATE:
+        sb.append(dates[date++]);
+        break;
+      case UNIX_SECONDS:
+        sb.append(ts / 1000);
+        break;
+      case UNIX_MILLIS:
+        if (timestampHeader != null) {
+          sb.append(timestampHeader);
+        } else {
+          sb.append(rawTs);
+        }
+        break;
+      default:
+        throw new IllegalStateException("Unknown segment type " + types[i]);
+      }
+    }
+    return sb.toString();
+  }
+
+  @Override
+  public String toString() {
+    return template;
+  }
+
+  private TimeBucket bucketFor(long ts) {
+    TimeBucket current = bucket;
+    if (current != null && ts >= current.start && ts < current.end) {
+      return current;
+    }
+
+    Calendar cal = timeZone != null
+        ? Calendar.getInstance(timeZone) : Calendar.getInstance();
+    cal.setTimeInMillis(ts);
+    cal.set(Calendar.MILLISECOND, 0);
+    if (granularity >= MINUTE) {
+      cal.set(Calendar.SECOND, 0);
+    }
+    if (granularity >= HOUR) {
+      cal.set(Calendar.MINUTE, 0);
+    }
+    if (granularity >= DAY) {
+      cal.set(Calendar.HOUR_OF_DAY, 0);
+    }
+    long start = cal.getTimeInMillis();
+    cal.add(GRANULARITY_FIELDS[granularity], 1);
+    long end = cal.getTimeInMillis();
+
+    String[] formatted = new String[dateSegments];
+    Date date = new Date(ts);
+    int j = 0;
+    for (int i = 0; i < types.length; i++) {
+      if (types[i] == DATE) {
+        SimpleDateFormat format = new SimpleDateFormat(values[i]);
+        if (timeZone != null) {
+          format.setTimeZone(timeZone);
+        }
+        formatted[j++] = format.format(date);
+      }
+    }
+
+    // a timestamp before a DST-shifted bucket start is only cached for itself
+    if (ts < start || ts >= end) {
+      start = ts;
+      end = ts + 1;
+    }
+    current = new TimeBucket(start, end, formatted);
+    bucket = current;
+    return current;
+  }
+
+  private static int granularityOf(char c) {
+    switch (c) {
+    case 'c':
+    case 'S':
+      return SECOND;
+    case 'M':
+    case 'z': // some zones shift on the half hour
+      return MINUTE;
+    case 'H':
+    case 'I':
+    case 'k':
+    case 'l':
+    case 'p':
+      return HOUR;
+    default:
+      return DAY;
+    }
+  }
+
+  private static int headerNameEnd(String in, int from) {
+    int i = from;
+    while (i < in.length()) {
+      char c = in.charAt(i);
+      if (c == '}') {
+        return i > from ? i : -1;
+      }
+      if (!isWordChar(c) && c != '.' && c != '-') {
+        return -1;
+      }
+      i++;
+    }
+    return -1;
+  }
+
+  // equivalent of the regex class \w
+  private static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') ||
+        (c >= '0' && c <= '9') || c == '_';
+  }
+
+  private static void flushLiteral(StringBuilder literal,
+      List<Integer> typeList, List<String> valueList) {
+    if (literal.length() > 0) {
+      typeList.add(LITERAL);
+      valueList.add(literal.toString());
+      literal.setLength(0);
+    }
+  }
+
+  private static class TimeBucket {
+    private final long start;
+    private final long end;
+    private final String[] formatted;
+
+    TimeBucket(long start, long end, String[] formatted) {
+      this.start = start;
+      this.end = end;
+      this.formatted = formatted;
+    }
+  }
+
+}
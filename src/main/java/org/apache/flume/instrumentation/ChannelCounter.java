@@ -18,88 +18,231 @@
  */
 package org.apache.flume.instrumentation;
 
+import java.util.Map;
+
+import com.google.common.base.Supplier;
+
 public class ChannelCounter extends MonitoredCounterGroup implements
     ChannelCounterMBean {
 
-  private static final String COUNTER_CHANNEL_SIZE = "channel.current.size";
+  /**
+   * The counters of the group, for the hot paths of in-tree components:
+   * unlike the {@code increment} and {@code addTo} methods, which return the
+   * new total, {@link #increment(Counter)} and {@link #add(Counter, long)}
+   * do not read every stripe of the counter.
+   */
+  public enum Counter {
+    CHANNEL_SIZE("channel.current.size"),
+    EVENT_PUT_ATTEMPT("channel.event.put.attempt"),
+    EVENT_TAKE_ATTEMPT("channel.event.take.attempt"),
+    EVENT_PUT_SUCCESS("channel.event.put.success"),
+    EVENT_TAKE_SUCCESS("channel.event.take.success"),
+    CHANNEL_CAPACITY("channel.capacity");
+
+    private final String attribute;
+
+    private Counter(String attribute) {
+      this.attribute = attribute;
+    }
+
+    @Override
+    public String toString() {
+      return attribute;
+    }
+  }
 
-  private static final String COUNTER_EVENT_PUT_ATTEMPT =
-      "channel.event.put.attempt";
+  private static final String[] ATTRIBUTES = attributesOf(Counter.values());
 
-  private static final String COUNTER_EVENT_TAKE_ATTEMPT =
-      "channel.event.take.attempt";
+  private static final String HISTOGRAM_PUT_LATENCY = "channel.put.latency";
 
-  private static final String COUNTER_EVENT_PUT_SUCCESS =
-      "channel.event.put.success";
+  private static final String HISTOGRAM_TAKE_LATENCY = "channel.take.latency";
 
-  private static final String COUNTER_EVENT_TAKE_SUCCESS =
-      "channel.event.take.success";
+  private static final String HISTOGRAM_COMMIT_LATENCY =
+      "channel.commit.latency";
 
-  private static final String COUNTER_CHANNEL_CAPACITY =
-          "channel.capacity";
+  private final LatencyHistogram putLatency;
+  private final LatencyHistogram takeLatency;
+  private final LatencyHistogram commitLatency;
 
-  private static final String[] ATTRIBUTES = {
-    COUNTER_CHANNEL_SIZE, COUNTER_EVENT_PUT_ATTEMPT,
-    COUNTER_EVENT_TAKE_ATTEMPT, COUNTER_EVENT_PUT_SUCCESS,
-    COUNTER_EVENT_TAKE_SUCCESS, COUNTER_CHANNEL_CAPACITY
-  };
+  private volatile Supplier<? extends Map<String, ? extends Number>>
+      laneSizes;
 
   public ChannelCounter(String name) {
     super(MonitoredCounterGroup.Type.CHANNEL, name, ATTRIBUTES);
+    putLatency = addHistogram(HISTOGRAM_PUT_LATENCY);
+    takeLatency = addHistogram(HISTOGRAM_TAKE_LATENCY);
+    commitLatency = addHistogram(HISTOGRAM_COMMIT_LATENCY);
+  }
+
+  /**
+   * Increments a counter without reading its new total.
+   */
+  public void increment(Counter counter) {
+    super.increment(counter);
+  }
+
+  /**
+   * Adds to a counter without reading its new total.
+   */
+  public void add(Counter counter, long delta) {
+    super.add(counter, delta);
   }
 
   @Override
   public long getChannelSize() {
-    return get(COUNTER_CHANNEL_SIZE);
+    return get(Counter.CHANNEL_SIZE);
   }
 
   public void setChannelSize(long newSize) {
-    set(COUNTER_CHANNEL_SIZE, newSize);
+    set(Counter.CHANNEL_SIZE, newSize);
   }
 
   @Override
   public long getEventPutAttemptCount() {
-    return get(COUNTER_EVENT_PUT_ATTEMPT);
+    return get(Counter.EVENT_PUT_ATTEMPT);
   }
 
   public long incrementEventPutAttemptCount() {
-    return increment(COUNTER_EVENT_PUT_ATTEMPT);
+    increment(Counter.EVENT_PUT_ATTEMPT);
+    return get(Counter.EVENT_PUT_ATTEMPT);
+  }
+
+  public void addToEventPutAttemptCount(long delta) {
+    add(Counter.EVENT_PUT_ATTEMPT, delta);
   }
 
   @Override
   public long getEventTakeAttemptCount() {
-    return get(COUNTER_EVENT_TAKE_ATTEMPT);
+    return get(Counter.EVENT_TAKE_ATTEMPT);
   }
 
   public long incrementEventTakeAttemptCount() {
-    return increment(COUNTER_EVENT_TAKE_ATTEMPT);
+    increment(Counter.EVENT_TAKE_ATTEMPT);
+    return get(Counter.EVENT_TAKE_ATTEMPT);
+  }
+
+  public void addToEventTakeAttemptCount(long delta) {
+    add(Counter.EVENT_TAKE_ATTEMPT, delta);
   }
 
   @Override
   public long getEventPutSuccessCount() {
-    return get(COUNTER_EVENT_PUT_SUCCESS);
+    return get(Counter.EVENT_PUT_SUCCESS);
   }
 
   public long addToEventPutSuccessCount(long delta) {
-    return addAndGet(COUNTER_EVENT_PUT_SUCCESS, delta);
+    add(Counter.EVENT_PUT_SUCCESS, delta);
+    return get(Counter.EVENT_PUT_SUCCESS);
   }
 
   @Override
   public long getEventTakeSuccessCount() {
-    return get(COUNTER_EVENT_TAKE_SUCCESS);
+    return get(Counter.EVENT_TAKE_SUCCESS);
   }
 
   public long addToEventTakeSuccessCount(long delta) {
-    return addAndGet(COUNTER_EVENT_TAKE_SUCCESS, delta);
+    add(Counter.EVENT_TAKE_SUCCESS, delta);
+    return get(Counter.EVENT_TAKE_SUCCESS);
   }
 
   public void setChannelCapacity(long capacity){
-    set(COUNTER_CHANNEL_CAPACITY, capacity);
+    set(Counter.CHANNEL_CAPACITY, capacity);
   }
 
   @Override
   public long getChannelCapacity(){
-    return get(COUNTER_CHANNEL_CAPACITY);
+    return get(Counter.CHANNEL_CAPACITY);
+  }
+
+  @Override
+  public String getPutLatency() {
+    return putLatency.toString();
+  }
+
+  /**
+   * Returns the 99th percentile of the put latency since the counter was
+   * started, in microseconds.
+   */
+  @Override
+  public long getPutLatencyP99() {
+    return putLatency.getPercentile(99.0);
+  }
+
+  @Override
+  public long getPutLatencyMax() {
+    return putLatency.getMax();
+  }
+
+  /**
+   * Records the duration of a put that started at {@code startNanos}, as
+   * returned by {@link System#nanoTime()}.
+   */
+  public void recordPutLatency(long startNanos) {
+    putLatency.recordSince(startNanos);
+  }
+
+  @Override
+  public String getTakeLatency() {
+    return takeLatency.toString();
+  }
+
+  /**
+   * Returns the 99th percentile of the take latency since the counter was
+   * started, in microseconds.
+   */
+  @Override
+  public long getTakeLatencyP99() {
+    return takeLatency.getPercentile(99.0);
+  }
+
+  @Override
+  public long getTakeLatencyMax() {
+    return takeLatency.getMax();
+  }
+
+  public void recordTakeLatency(long startNanos) {
+    takeLatency.recordSince(startNanos);
+  }
+
+  @Override
+  public String getCommitLatency() {
+    return commitLatency.toString();
+  }
+
+  /**
+   * Returns the 99th percentile of the commit latency since the counter was
+   * started, in microseconds.
+   */
+  @Override
+  public long getCommitLatencyP99() {
+    return commitLatency.getPercentile(99.0);
+  }
+
+  @Override
+  public long getCommitLatencyMax() {
+    return commitLatency.getMax();
+  }
+
+  public void recordCommitLatency(long startNanos) {
+    commitLatency.recordSince(startNanos);
+  }
+
+  /**
+   * Sets where the number of events in each lane of a channel that splits
+   * its events into lanes is read from. The supplier may return null when
+   * the channel has no lanes.
+   */
+  public void setLaneSizes(
+      Supplier<? extends Map<String, ? extends Number>> laneSizes) {
+    this.laneSizes = laneSizes;
+  }
+
+  @Override
+  public String getLaneSizes() {
+    Supplier<? extends Map<String, ? extends Number>> supplier = laneSizes;
+    Map<String, ? extends Number> sizes =
+        supplier == null ? null : supplier.get();
+    return sizes == null ? "{}" : sizes.toString();
   }
 
   @Override
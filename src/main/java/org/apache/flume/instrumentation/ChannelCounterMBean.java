@@ -46,4 +46,24 @@ public interface ChannelCounterMBean {
   String getType();
 
   double getChannelFillPercentage();
+
+  String getPutLatency();
+
+  long getPutLatencyP99();
+
+  long getPutLatencyMax();
+
+  String getTakeLatency();
+
+  long getTakeLatencyP99();
+
+  long getTakeLatencyMax();
+
+  String getCommitLatency();
+
+  long getCommitLatencyP99();
+
+  long getCommitLatencyMax();
+
+  String getLaneSizes();
 }
@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * <p>
+ * Follows sampled events across agents to tell which hop of a topology adds
+ * latency. A trace is started by stamping an event with the
+ * {@value #ORIGIN_HEADER} header, and every component that sees the event
+ * afterwards appends a mark, its hop name and the current time, to the
+ * {@value #HOPS_HEADER} header, for example
+ * {@code agent1:1388534400000,agent1-out:1388534400120}. On each mark the
+ * time since the previous mark and since the origin are recorded in the
+ * {@link TraceCounter} of the hop.
+ * </p>
+ * <p>
+ * Traces are started by the
+ * {@link org.apache.flume.interceptor.TracingInterceptor} for a sampled
+ * fraction of events, or for every event by a
+ * {@link org.apache.flume.source.SequenceGeneratorSource} configured as a
+ * probe. Avro sources and RPC sinks mark traced events when configured with
+ * a {@value #CONFIG_TRACE_HOP}; sinks mark copies of the events, since an
+ * event taken from a channel may be shared with other channels. Marks use wall clock time, so latencies
+ * between hosts are only as accurate as their clocks are synchronized.
+ * </p>
+ * <p>
+ * Hop names should be unique in an agent, since each one gets its own
+ * counter group, and may not contain commas or colons.
+ * </p>
+ */
+public class EventTracer {
+
+  public static final String ORIGIN_HEADER = "flume.trace.origin";
+  public static final String HOPS_HEADER = "flume.trace.hops";
+
+  /**
+   * Name of the hop a source or sink marks traced events with. Tracing is
+   * disabled for the component when it is not set.
+   */
+  public static final String CONFIG_TRACE_HOP = "traceHop";
+
+  private final String hop;
+  private final TraceCounter counter;
+
+  public EventTracer(String hop) {
+    Preconditions.checkArgument(hop != null && hop.length() > 0,
+        "hop name must not be empty");
+    Preconditions.checkArgument(hop.indexOf(',') < 0 && hop.indexOf(':') < 0,
+        "hop name must not contain ',' or ':': " + hop);
+    this.hop = hop;
+    this.counter = new TraceCounter(hop);
+  }
+
+  /**
+   * Returns a tracer for the {@value #CONFIG_TRACE_HOP} of the context, or
+   * null if tracing is not configured.
+   */
+  public static EventTracer fromContext(Context context) {
+    String hop = context.getString(CONFIG_TRACE_HOP);
+    return hop == null ? null : new EventTracer(hop.trim());
+  }
+
+  public static boolean isTraced(Event event) {
+    return event.getHeaders().containsKey(ORIGIN_HEADER);
+  }
+
+  public void start() {
+    counter.start();
+  }
+
+  public void stop() {
+    counter.stop();
+  }
+
+  public String getHop() {
+    return hop;
+  }
+
+  public TraceCounter getCounter() {
+    return counter;
+  }
+
+  /**
+   * Starts tracing an event at this hop, unless it is already traced, in
+   * which case it is only marked.
+   */
+  public void begin(Event event) {
+    if (isTraced(event)) {
+      mark(event);
+      return;
+    }
+    String now = Long.toString(System.currentTimeMillis());
+    Map<String, String> headers = event.getHeaders();
+    headers.put(ORIGIN_HEADER, now);
+    headers.put(HOPS_HEADER, hop + ":" + now);
+    counter.incrementTraceStartedCount();
+  }
+
+  /**
+   * Marks an event with this hop if it is traced. An event that is marked
+   * again by the same hop, for example because a sink retries a batch, has
+   * the time of its last mark replaced.
+   *
+   * @return whether the event is traced
+   */
+  public boolean mark(Event event) {
+    Map<String, String> headers = event.getHeaders();
+    String origin = headers.get(ORIGIN_HEADER);
+    if (origin == null) {
+      return false;
+    }
+    long now = System.currentTimeMillis();
+    long originTime;
+    try {
+      originTime = Long.parseLong(origin);
+    } catch (NumberFormatException e) {
+      return false;
+    }
+
+    String hops = headers.get(HOPS_HEADER);
+    if (hops == null) {
+      hops = "";
+    }
+    int last = hops.lastIndexOf(',') + 1;
+    if (hops.startsWith(hop + ":", last)) {
+      hops = last == 0 ? "" : hops.substring(0, last - 1);
+      last = hops.lastIndexOf(',') + 1;
+    }
+    long previous = originTime;
+    int colon = hops.lastIndexOf(':');
+    if (colon >= last) {
+      try {
+        previous = Long.parseLong(hops.substring(colon + 1));
+      } catch (NumberFormatException e) {
+        // keep the origin
+      }
+    }
+
+    headers.put(HOPS_HEADER, hops.length() == 0
+        ? hop + ":" + now : hops + "," + hop + ":" + now);
+    counter.recordMark(now - previous, now - originTime);
+    return true;
+  }
+
+  /**
+   * Marks all traced events of a batch with this hop.
+   */
+  public void mark(List<Event> events) {
+    for (Event event : events) {
+      mark(event);
+    }
+  }
+
+  /**
+   * Returns the batch with every traced event replaced by a marked copy, so
+   * that events still referenced by a channel, or by the other channels a
+   * replicating selector put them in, are left as they are.
+   */
+  public List<Event> markCopies(List<Event> events) {
+    List<Event> marked = new ArrayList<Event>(events.size());
+    for (Event event : events) {
+      if (isTraced(event)) {
+        event = EventBuilder.withBody(event.getBody(),
+            new HashMap<String, String>(event.getHeaders()));
+        mark(event);
+      }
+      marked.add(event);
+    }
+    return marked;
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A latency histogram with a fixed memory footprint, in the spirit of
+ * HdrHistogram. Values are recorded in microseconds into log-linear
+ * buckets: values below 32 get a bucket each, and every power of two above
+ * that is split into 32 equal buckets, so any recorded value is reported
+ * with a relative error of at most about 3%. Values above roughly 38 hours
+ * are clamped.
+ * </p>
+ * <p>
+ * Recording is lock free and may be done from any number of threads. A
+ * {@link Snapshot} is not taken atomically with respect to concurrent
+ * recording, so its totals can be off by the few values recorded while it
+ * was being copied.
+ * </p>
+ * <p>
+ * Values accumulate until {@link #reset()}. A {@link MonitoredCounterGroup}
+ * only resets its histograms in {@link MonitoredCounterGroup#start()}, so
+ * the latency attributes of counter groups are lifetime figures of the
+ * component rather than those of a recent window.
+ * </p>
+ */
+public class LatencyHistogram {
+
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int MAX_EXPONENT = 36;
+  private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+  private static final int BUCKETS =
+      SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+  private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong sum = new AtomicLong();
+  private final AtomicLong max = new AtomicLong();
+  private volatile long resetTime = System.currentTimeMillis();
+
+  /**
+   * Records a value in microseconds. Negative values are recorded as zero.
+   */
+  public void record(long micros) {
+    long value = micros < 0 ? 0 : Math.min(micros, MAX_VALUE);
+    buckets.incrementAndGet(bucketOf(value));
+    count.incrementAndGet();
+    sum.addAndGet(value);
+    long current = max.get();
+    while (value > current && !max.compareAndSet(current, value)) {
+      current = max.get();
+    }
+  }
+
+  /**
+   * Records the time elapsed since {@code startNanos}, a value previously
+   * obtained from {@link System#nanoTime()}.
+   */
+  public void recordSince(long startNanos) {
+    record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+  }
+
+  /**
+   * Clears all recorded values.
+   */
+  public void reset() {
+    for (int i = 0; i < BUCKETS; i++) {
+      buckets.set(i, 0L);
+    }
+    count.set(0L);
+    sum.set(0L);
+    max.set(0L);
+    resetTime = System.currentTimeMillis();
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getMax() {
+    return max.get();
+  }
+
+  /**
+   * Returns the given percentile of the values recorded since the last
+   * reset, see {@link Snapshot#getPercentile(double)}.
+   */
+  public long getPercentile(double percentile) {
+    return getSnapshot().getPercentile(percentile);
+  }
+
+  public Snapshot getSnapshot() {
+    long[] counts = new long[BUCKETS];
+    long total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      counts[i] = buckets.get(i);
+      total += counts[i];
+    }
+    return new Snapshot(counts, total, sum.get(), max.get(),
+        System.currentTimeMillis() - resetTime);
+  }
+
+  @Override
+  public String toString() {
+    return getSnapshot().toString();
+  }
+
+  static int bucketOf(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    int exponent = 63 - Long.numberOfLeadingZeros(value);
+    int shift = exponent - SUB_BUCKET_BITS;
+    int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+    return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+  }
+
+  /**
+   * Returns the highest value that falls into the given bucket.
+   */
+  static long highestValueOf(int bucket) {
+    if (bucket < SUB_BUCKETS) {
+      return bucket;
+    }
+    int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+    int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+    return ((long) (SUB_BUCKETS + subBucket + 1) << shift) - 1;
+  }
+
+  /**
+   * An immutable copy of a histogram's state. All values are in
+   * microseconds.
+   */
+  public static class Snapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+    private final long windowMillis;
+
+    private Snapshot(long[] counts, long count, long sum, long max,
+        long windowMillis) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+      this.windowMillis = windowMillis;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public long getSum() {
+      return sum;
+    }
+
+    public long getMax() {
+      return max;
+    }
+
+    public double getMean() {
+      return count == 0 ? 0.0 : (double) sum / count;
+    }
+
+    /**
+     * Returns the average number of values recorded per second since the
+     * histogram was last reset, which for a counter group is the average
+     * since it was started, not a current rate.
+     */
+    public double getRatePerSecond() {
+      return windowMillis <= 0 ? 0.0 : count * 1000.0 / windowMillis;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded
+     * values fall, for example 99.0 for the 99th percentile.
+     */
+    public long getPercentile(double percentile) {
+      if (count == 0) {
+        return 0L;
+      }
+      long rank = (long) Math.ceil(count * Math.min(percentile, 100.0) / 100.0);
+      rank = Math.max(rank, 1L);
+      long seen = 0;
+      for (int i = 0; i < counts.length; i++) {
+        seen += counts[i];
+        if (seen >= rank) {
+          return Math.min(highestValueOf(i), max);
+        }
+      }
+      return max;
+    }
+
+    @Override
+    public String toString() {
+      return "count=" + count + ", mean=" + Math.round(getMean())
+          + ", p50=" + getPercentile(50.0) + ", p95=" + getPercentile(95.0)
+          + ", p99=" + getPercentile(99.0) + ", p999="
+          + getPercentile(99.9) + ", max=" + max + " (us)";
+    }
+  }
+
+}
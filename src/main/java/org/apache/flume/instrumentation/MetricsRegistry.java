@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>
+ * Keeps track of every {@link MonitoredCounterGroup} that has been started
+ * in this JVM, so that monitoring services can read metrics straight from
+ * the counter groups instead of querying the platform MBean server.
+ * </p>
+ * <p>
+ * Groups are keyed like the JMX based monitoring output, by type and name,
+ * for example {@code CHANNEL.c1}. A group started under a key that is
+ * already taken replaces the previous group, which is what happens when a
+ * component is recreated on a configuration reload.
+ * </p>
+ */
+public class MetricsRegistry {
+
+  private static final Map<String, MonitoredCounterGroup> groups =
+      new ConcurrentHashMap<String, MonitoredCounterGroup>();
+
+  private static final Map<Class<?>, List<Method>> attributeCache =
+      new ConcurrentHashMap<Class<?>, List<Method>>();
+
+  private MetricsRegistry() {
+  }
+
+  static void register(MonitoredCounterGroup group) {
+    groups.put(keyOf(group), group);
+  }
+
+  /**
+   * Returns the key of a counter group, its type and name joined by a dot.
+   */
+  public static String keyOf(MonitoredCounterGroup group) {
+    return group.getType() + "." + group.getName();
+  }
+
+  /**
+   * Returns the registered counter groups, sorted by key.
+   */
+  public static List<MonitoredCounterGroup> getCounterGroups() {
+    List<MonitoredCounterGroup> sorted =
+        new ArrayList<MonitoredCounterGroup>(groups.values());
+    Collections.sort(sorted, new Comparator<MonitoredCounterGroup>() {
+      @Override
+      public int compare(MonitoredCounterGroup o1, MonitoredCounterGroup o2) {
+        return keyOf(o1).compareTo(keyOf(o2));
+      }
+    });
+    return sorted;
+  }
+
+  /**
+   * Returns the getters of the MBean interfaces implemented by the given
+   * counter group class, sorted by attribute name. These are the attributes
+   * the group exposes through JMX.
+   */
+  public static List<Method> getAttributeGetters(Class<?> groupClass) {
+    List<Method> getters = attributeCache.get(groupClass);
+    if (getters == null) {
+      getters = new ArrayList<Method>();
+      for (Class<?> klass = groupClass; klass != null;
+          klass = klass.getSuperclass()) {
+        for (Class<?> iface : klass.getInterfaces()) {
+          if (!iface.getSimpleName().endsWith("MBean")) {
+            continue;
+          }
+          for (Method method : iface.getMethods()) {
+            if (attributeName(method) != null && !getters.contains(method)) {
+              getters.add(method);
+            }
+          }
+        }
+      }
+      Collections.sort(getters, new Comparator<Method>() {
+        @Override
+        public int compare(Method o1, Method o2) {
+          return attributeName(o1).compareTo(attributeName(o2));
+        }
+      });
+      getters = Collections.unmodifiableList(getters);
+      attributeCache.put(groupClass, getters);
+    }
+    return getters;
+  }
+
+  /**
+   * Returns the JMX attribute name of a getter, or null if the method is
+   * not a getter.
+   */
+  public static String attributeName(Method method) {
+    if (method.getParameterTypes().length != 0
+        || method.getReturnType() == Void.TYPE
+        || Modifier.isStatic(method.getModifiers())) {
+      return null;
+    }
+    String name = method.getName();
+    if (name.startsWith("get") && name.length() > 3) {
+      return name.substring(3);
+    }
+    if (name.startsWith("is") && name.length() > 2
+        && method.getReturnType() == Boolean.TYPE) {
+      return name.substring(2);
+    }
+    return null;
+  }
+
+}
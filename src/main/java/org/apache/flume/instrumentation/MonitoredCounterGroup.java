@@ -23,6 +23,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicLong;
@@ -33,10 +34,15 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * Used for keeping track of internal metrics using atomic integers</p>
+ * Used for keeping track of internal metrics using striped counters</p>
  *
  * This is used by a variety of component types such as Sources, Channels,
  * Sinks, SinkProcessors, ChannelProcessors, Interceptors and Serializers.
+ *
+ * Counters can be addressed by their attribute name or, without a map
+ * lookup, by an enum constant whose ordinal is the position of the
+ * attribute in the constructor's attribute list; see
+ * {@link #attributesOf(Enum[])}.
  */
 public abstract class MonitoredCounterGroup {
 
@@ -51,7 +57,9 @@ public abstract class MonitoredCounterGroup {
 
   private final Type type;
   private final String name;
-  private final Map<String, AtomicLong> counterMap;
+  private final Map<String, StripedCounter> counterMap;
+  private final StripedCounter[] counters;
+  private final Map<String, LatencyHistogram> histogramMap;
 
   private AtomicLong startTime;
   private AtomicLong stopTime;
@@ -62,14 +70,18 @@ public abstract class MonitoredCounterGroup {
     this.type = type;
     this.name = name;
 
-    Map<String, AtomicLong> counterInitMap = new HashMap<String, AtomicLong>();
+    Map<String, StripedCounter> counterInitMap =
+        new HashMap<String, StripedCounter>();
+    counters = new StripedCounter[attrs.length];
 
     // Initialize the counters
-    for (String attribute : attrs) {
-      counterInitMap.put(attribute, new AtomicLong(0L));
+    for (int i = 0; i < attrs.length; i++) {
+      counters[i] = new StripedCounter();
+      counterInitMap.put(attrs[i], counters[i]);
     }
 
     counterMap = Collections.unmodifiableMap(counterInitMap);
+    histogramMap = new LinkedHashMap<String, LatencyHistogram>();
 
     startTime = new AtomicLong(0L);
     stopTime = new AtomicLong(0L);
@@ -90,6 +102,9 @@ public abstract class MonitoredCounterGroup {
     for (String counter : counterMap.keySet()) {
       counterMap.get(counter).set(0L);
     }
+    for (LatencyHistogram histogram : histogramMap.values()) {
+      histogram.reset();
+    }
     startTime.set(System.currentTimeMillis());
     logger.info("Component type: " + type + ", name: " + name + " started");
   }
@@ -100,6 +115,7 @@ public abstract class MonitoredCounterGroup {
    * method.
    */
   void register() {
+    MetricsRegistry.register(this);
     if (!registered) {
       try {
         ObjectName objName = new ObjectName("org.apache.flume."
@@ -168,6 +184,12 @@ public abstract class MonitoredCounterGroup {
         + "name: " + name + ". "
         + counterMapKey + " == " + counterMapValue);
     }
+
+    for (Map.Entry<String, LatencyHistogram> entry : histogramMap.entrySet()) {
+      logger.info("Shutdown Metric for type: " + type + ", "
+        + "name: " + name + ". "
+        + entry.getKey() + " == " + entry.getValue().getSnapshot());
+    }
   }
 
   /**
@@ -230,24 +252,105 @@ public abstract class MonitoredCounterGroup {
   }
 
   /**
-   * Atomically adds the delta to the current value for this key
+   * Adds the delta to the current value for this key
    *
    * @param counter The key for this metric
    * @param delta
-   * @return The updated value for this key
+   * @return The value for this key after the update, which may include
+   * concurrent updates
    */
   protected long addAndGet(String counter, long delta) {
-    return counterMap.get(counter).addAndGet(delta);
+    StripedCounter stripedCounter = counterMap.get(counter);
+    stripedCounter.add(delta);
+    return stripedCounter.get();
   }
 
   /**
-   * Atomically increments the current value for this key by one
+   * Increments the current value for this key by one
    *
    * @param counter The key for this metric
-   * @return The updated value for this key
+   * @return The value for this key after the update, which may include
+   * concurrent updates
    */
   protected long increment(String counter) {
-    return counterMap.get(counter).incrementAndGet();
+    StripedCounter stripedCounter = counterMap.get(counter);
+    stripedCounter.increment();
+    return stripedCounter.get();
+  }
+
+  /**
+   * Retrieves the current value of a counter
+   *
+   * @param counter The constant for this metric
+   * @return The current value
+   */
+  protected long get(Enum<?> counter) {
+    return counters[counter.ordinal()].get();
+  }
+
+  /**
+   * Sets the value of a counter to the given value
+   *
+   * @param counter The constant for this metric
+   * @param value The new value
+   */
+  protected void set(Enum<?> counter, long value) {
+    counters[counter.ordinal()].set(value);
+  }
+
+  /**
+   * Adds the delta to a counter. Unlike {@link #addAndGet(String, long)}
+   * this does not read the other stripes of the counter.
+   *
+   * @param counter The constant for this metric
+   * @param delta
+   */
+  protected void add(Enum<?> counter, long delta) {
+    counters[counter.ordinal()].add(delta);
+  }
+
+  /**
+   * Increments a counter by one. Unlike {@link #increment(String)} this
+   * does not read the other stripes of the counter.
+   *
+   * @param counter The constant for this metric
+   */
+  protected void increment(Enum<?> counter) {
+    counters[counter.ordinal()].increment();
+  }
+
+  /**
+   * Returns the attribute names of the given enum constants, in order, as
+   * the {@code attrs} argument of the constructor. The attribute name of a
+   * constant is its {@code toString()}.
+   */
+  protected static String[] attributesOf(Enum<?>[] counters) {
+    String[] attributes = new String[counters.length];
+    for (int i = 0; i < counters.length; i++) {
+      attributes[i] = counters[i].toString();
+    }
+    return attributes;
+  }
+
+  /**
+   * Adds a latency histogram to this group. This should only be called from
+   * the constructor of a subclass.
+   *
+   * @param histogram The key for this metric
+   * @return The new histogram
+   */
+  protected LatencyHistogram addHistogram(String histogram) {
+    LatencyHistogram latencyHistogram = new LatencyHistogram();
+    histogramMap.put(histogram, latencyHistogram);
+    return latencyHistogram;
+  }
+
+  /**
+   * Returns the latency histograms of this group by key, in the order they
+   * were added.
+   */
+  public Map<String, LatencyHistogram> getHistograms() {
+    return Collections.unmodifiableMap(histogramMap);
   }
 
   /**
@@ -270,4 +373,8 @@ public abstract class MonitoredCounterGroup {
   public String getType(){
     return type.name();
   }
+
+  public String getName() {
+    return name;
+  }
 }
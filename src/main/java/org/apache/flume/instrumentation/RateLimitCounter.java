@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Metrics of a rate limiting interceptor. Besides the totals, the number of
+ * events rate limited or sampled out is kept for every key the interceptor
+ * limits by.
+ */
+public class RateLimitCounter extends MonitoredCounterGroup implements
+    RateLimitCounterMBean {
+
+  private enum Counter {
+    EVENT_ACCEPTED("interceptor.event.accepted.count"),
+    EVENT_RATE_LIMITED("interceptor.event.rate-limited.count"),
+    EVENT_SAMPLED_OUT("interceptor.event.sampled-out.count");
+
+    private final String attribute;
+
+    private Counter(String attribute) {
+      this.attribute = attribute;
+    }
+
+    @Override
+    public String toString() {
+      return attribute;
+    }
+  }
+
+  private static final String[] ATTRIBUTES = attributesOf(Counter.values());
+
+  private final ConcurrentMap<String, StripedCounter> dropped =
+      new ConcurrentHashMap<String, StripedCounter>();
+
+  public RateLimitCounter(String name) {
+    super(MonitoredCounterGroup.Type.INTERCEPTOR, name, ATTRIBUTES);
+  }
+
+  @Override
+  public void start() {
+    dropped.clear();
+    super.start();
+  }
+
+  @Override
+  public long getEventAcceptedCount() {
+    return get(Counter.EVENT_ACCEPTED);
+  }
+
+  public void incrementEventAcceptedCount() {
+    increment(Counter.EVENT_ACCEPTED);
+  }
+
+  @Override
+  public long getEventRateLimitedCount() {
+    return get(Counter.EVENT_RATE_LIMITED);
+  }
+
+  public void incrementEventRateLimitedCount(String key) {
+    increment(Counter.EVENT_RATE_LIMITED);
+    droppedCounterOf(key).increment();
+  }
+
+  @Override
+  public long getEventSampledOutCount() {
+    return get(Counter.EVENT_SAMPLED_OUT);
+  }
+
+  public void incrementEventSampledOutCount(String key) {
+    increment(Counter.EVENT_SAMPLED_OUT);
+    droppedCounterOf(key).increment();
+  }
+
+  /**
+   * Returns the number of events of a key that were rate limited or sampled
+   * out.
+   */
+  public long getDroppedCount(String key) {
+    StripedCounter counter = dropped.get(key);
+    return counter == null ? 0L : counter.get();
+  }
+
+  @Override
+  public String getDroppedByKey() {
+    Map<String, StripedCounter> sorted =
+        new TreeMap<String, StripedCounter>(dropped);
+    return sorted.toString();
+  }
+
+  private StripedCounter droppedCounterOf(String key) {
+    StripedCounter counter = dropped.get(key);
+    if (counter == null) {
+      StripedCounter created = new StripedCounter();
+      counter = dropped.putIfAbsent(key, created);
+      if (counter == null) {
+        counter = created;
+      }
+    }
+    return counter;
+  }
+
+}
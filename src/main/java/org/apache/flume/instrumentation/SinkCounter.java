@@ -20,119 +20,175 @@ package org.apache.flume.instrumentation;
 public class SinkCounter extends MonitoredCounterGroup implements
     SinkCounterMBean {
 
-  private static final String COUNTER_CONNECTION_CREATED =
-      "sink.connection.creation.count";
+  /**
+   * The counters of the group, for the hot paths of in-tree components:
+   * unlike the {@code increment} and {@code addTo} methods, which return the
+   * new total, {@link #increment(Counter)} and {@link #add(Counter, long)}
+   * do not read every stripe of the counter.
+   */
+  public enum Counter {
+    CONNECTION_CREATED("sink.connection.creation.count"),
+    CONNECTION_CLOSED("sink.connection.closed.count"),
+    CONNECTION_FAILED("sink.connection.failed.count"),
+    BATCH_EMPTY("sink.batch.empty"),
+    BATCH_UNDERFLOW("sink.batch.underflow"),
+    BATCH_COMPLETE("sink.batch.complete"),
+    EVENT_DRAIN_ATTEMPT("sink.event.drain.attempt"),
+    EVENT_DRAIN_SUCCESS("sink.event.drain.sucess");
 
-  private static final String COUNTER_CONNECTION_CLOSED =
-      "sink.connection.closed.count";
+    private final String attribute;
 
-  private static final String COUNTER_CONNECTION_FAILED =
-      "sink.connection.failed.count";
+    private Counter(String attribute) {
+      this.attribute = attribute;
+    }
 
-  private static final String COUNTER_BATCH_EMPTY =
-      "sink.batch.empty";
-
-  private static final String COUNTER_BATCH_UNDERFLOW =
-      "sink.batch.underflow";
-
-  private static final String COUNTER_BATCH_COMPLETE =
-      "sink.batch.complete";
-
-  private static final String COUNTER_EVENT_DRAIN_ATTEMPT =
-      "sink.event.drain.attempt";
+    @Override
+    public String toString() {
+      return attribute;
+    }
+  }
 
-  private static final String COUNTER_EVENT_DRAIN_SUCCESS =
-      "sink.event.drain.sucess";
+  private static final String[] ATTRIBUTES = attributesOf(Counter.values());
 
-  private static final String[] ATTRIBUTES = {
-    COUNTER_CONNECTION_CREATED, COUNTER_CONNECTION_CLOSED,
-    COUNTER_CONNECTION_FAILED, COUNTER_BATCH_EMPTY,
-    COUNTER_BATCH_UNDERFLOW, COUNTER_BATCH_COMPLETE,
-    COUNTER_EVENT_DRAIN_ATTEMPT, COUNTER_EVENT_DRAIN_SUCCESS
-  };
+  private static final String HISTOGRAM_BATCH_DELIVERY_LATENCY =
+      "sink.batch.delivery.latency";
 
+  private final LatencyHistogram batchDeliveryLatency;
 
   public SinkCounter(String name) {
     super(MonitoredCounterGroup.Type.SINK, name, ATTRIBUTES);
+    batchDeliveryLatency = addHistogram(HISTOGRAM_BATCH_DELIVERY_LATENCY);
+  }
+
+  /**
+   * Increments a counter without reading its new total.
+   */
+  public void increment(Counter counter) {
+    super.increment(counter);
+  }
+
+  /**
+   * Adds to a counter without reading its new total.
+   */
+  public void add(Counter counter, long delta) {
+    super.add(counter, delta);
   }
 
   @Override
   public long getConnectionCreatedCount() {
-    return get(COUNTER_CONNECTION_CREATED);
+    return get(Counter.CONNECTION_CREATED);
   }
 
   public long incrementConnectionCreatedCount() {
-    return increment(COUNTER_CONNECTION_CREATED);
+    increment(Counter.CONNECTION_CREATED);
+    return get(Counter.CONNECTION_CREATED);
   }
 
   @Override
   public long getConnectionClosedCount() {
-    return get(COUNTER_CONNECTION_CLOSED);
+    return get(Counter.CONNECTION_CLOSED);
   }
 
   public long incrementConnectionClosedCount() {
-    return increment(COUNTER_CONNECTION_CLOSED);
+    increment(Counter.CONNECTION_CLOSED);
+    return get(Counter.CONNECTION_CLOSED);
   }
 
   @Override
   public long getConnectionFailedCount() {
-    return get(COUNTER_CONNECTION_FAILED);
+    return get(Counter.CONNECTION_FAILED);
   }
 
   public long incrementConnectionFailedCount() {
-    return increment(COUNTER_CONNECTION_FAILED);
+    increment(Counter.CONNECTION_FAILED);
+    return get(Counter.CONNECTION_FAILED);
   }
 
   @Override
   public long getBatchEmptyCount() {
-    return get(COUNTER_BATCH_EMPTY);
+    return get(Counter.BATCH_EMPTY);
   }
 
   public long incrementBatchEmptyCount() {
-    return increment(COUNTER_BATCH_EMPTY);
+    increment(Counter.BATCH_EMPTY);
+    return get(Counter.BATCH_EMPTY);
   }
 
   @Override
   public long getBatchUnderflowCount() {
-    return get(COUNTER_BATCH_UNDERFLOW);
+    return get(Counter.BATCH_UNDERFLOW);
   }
 
   public long incrementBatchUnderflowCount() {
-    return increment(COUNTER_BATCH_UNDERFLOW);
+    increment(Counter.BATCH_UNDERFLOW);
+    return get(Counter.BATCH_UNDERFLOW);
   }
 
   @Override
   public long getBatchCompleteCount() {
-    return get(COUNTER_BATCH_COMPLETE);
+    return get(Counter.BATCH_COMPLETE);
   }
 
   public long incrementBatchCompleteCount() {
-    return increment(COUNTER_BATCH_COMPLETE);
+    increment(Counter.BATCH_COMPLETE);
+    return get(Counter.BATCH_COMPLETE);
   }
 
   @Override
   public long getEventDrainAttemptCount() {
-    return get(COUNTER_EVENT_DRAIN_ATTEMPT);
+    return get(Counter.EVENT_DRAIN_ATTEMPT);
   }
 
   public long incrementEventDrainAttemptCount() {
-    return increment(COUNTER_EVENT_DRAIN_ATTEMPT);
+    increment(Counter.EVENT_DRAIN_ATTEMPT);
+    return get(Counter.EVENT_DRAIN_ATTEMPT);
   }
 
   public long addToEventDrainAttemptCount(long delta) {
-    return addAndGet(COUNTER_EVENT_DRAIN_ATTEMPT, delta);
+    add(Counter.EVENT_DRAIN_ATTEMPT, delta);
+    return get(Counter.EVENT_DRAIN_ATTEMPT);
   }
 
   @Override
   public long getEventDrainSuccessCount() {
-    return get(COUNTER_EVENT_DRAIN_SUCCESS);
+    return get(Counter.EVENT_DRAIN_SUCCESS);
+  }
+
+  @Override
+  public String getBatchDeliveryLatency() {
+    return batchDeliveryLatency.toString();
+  }
+
+  /**
+   * Returns the 99th percentile of the batch delivery latency since the
+   * counter was started, in microseconds.
+   */
+  @Override
+  public long getBatchDeliveryLatencyP99() {
+    return batchDeliveryLatency.getPercentile(99.0);
+  }
+
+  @Override
+  public long getBatchDeliveryLatencyMax() {
+    return batchDeliveryLatency.getMax();
+  }
+
+  /**
+   * Records how long it took to hand a batch to the sink's destination,
+   * for example an RPC call, that started at {@code startNanos} as returned
+   * by {@link System#nanoTime()}.
+   */
+  public void recordBatchDeliveryLatency(long startNanos) {
+    batchDeliveryLatency.recordSince(startNanos);
   }
 
   public long incrementEventDrainSuccessCount() {
-    return increment(COUNTER_EVENT_DRAIN_SUCCESS);
+    increment(Counter.EVENT_DRAIN_SUCCESS);
+    return get(Counter.EVENT_DRAIN_SUCCESS);
   }
 
   public long addToEventDrainSuccessCount(long delta) {
-    return addAndGet(COUNTER_EVENT_DRAIN_SUCCESS, delta);
+    add(Counter.EVENT_DRAIN_SUCCESS, delta);
+    return get(Counter.EVENT_DRAIN_SUCCESS);
   }
 }
@@ -43,6 +43,12 @@ public interface SinkCounterMBean {
 
   long getEventDrainSuccessCount();
 
+  String getBatchDeliveryLatency();
+
+  long getBatchDeliveryLatencyP99();
+
+  long getBatchDeliveryLatencyMax();
+
   long getStartTime();
 
   long getStopTime();
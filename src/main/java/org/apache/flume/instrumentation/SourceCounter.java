@@ -21,105 +21,152 @@ package org.apache.flume.instrumentation;
 public class SourceCounter extends MonitoredCounterGroup implements
     SourceCounterMBean {
 
-  private static final String COUNTER_EVENTS_RECEIVED =
-      "src.events.received";
-  private static final String COUNTER_EVENTS_ACCEPTED =
-      "src.events.accepted";
-
-  private static final String COUNTER_APPEND_RECEIVED =
-      "src.append.received";
-  private static final String COUNTER_APPEND_ACCEPTED =
-      "src.append.accepted";
-
-  private static final String COUNTER_APPEND_BATCH_RECEIVED =
-      "src.append-batch.received";
-  private static final String COUNTER_APPEND_BATCH_ACCEPTED =
-      "src.append-batch.accepted";
-  
-  private static final String COUNTER_OPEN_CONNECTION_COUNT =
-          "src.open-connection.count";
-
-
-  private static final String[] ATTRIBUTES =
-    {
-      COUNTER_EVENTS_RECEIVED, COUNTER_EVENTS_ACCEPTED,
-      COUNTER_APPEND_RECEIVED, COUNTER_APPEND_ACCEPTED,
-      COUNTER_APPEND_BATCH_RECEIVED, COUNTER_APPEND_BATCH_ACCEPTED,
-      COUNTER_OPEN_CONNECTION_COUNT
-    };
-
+  /**
+   * The counters of the group, for the hot paths of in-tree components:
+   * unlike the {@code increment} and {@code addTo} methods, which return the
+   * new total, {@link #increment(Counter)} and {@link #add(Counter, long)}
+   * do not read every stripe of the counter.
+   */
+  public enum Counter {
+    EVENTS_RECEIVED("src.events.received"),
+    EVENTS_ACCEPTED("src.events.accepted"),
+    APPEND_RECEIVED("src.append.received"),
+    APPEND_ACCEPTED("src.append.accepted"),
+    APPEND_BATCH_RECEIVED("src.append-batch.received"),
+    APPEND_BATCH_ACCEPTED("src.append-batch.accepted"),
+    OPEN_CONNECTION_COUNT("src.open-connection.count"),
+    CHANNEL_WRITE_RETRY_COUNT("src.channel-write.retry.count"),
+    BLOCKED_TIME("src.blocked.time");
+
+    private final String attribute;
+
+    private Counter(String attribute) {
+      this.attribute = attribute;
+    }
+
+    @Override
+    public String toString() {
+      return attribute;
+    }
+  }
+
+  private static final String[] ATTRIBUTES = attributesOf(Counter.values());
 
   public SourceCounter(String name) {
     super(MonitoredCounterGroup.Type.SOURCE, name, ATTRIBUTES);
   }
 
+  /**
+   * Increments a counter without reading its new total.
+   */
+  public void increment(Counter counter) {
+    super.increment(counter);
+  }
+
+  /**
+   * Adds to a counter without reading its new total.
+   */
+  public void add(Counter counter, long delta) {
+    super.add(counter, delta);
+  }
+
   @Override
   public long getEventReceivedCount() {
-    return get(COUNTER_EVENTS_RECEIVED);
+    return get(Counter.EVENTS_RECEIVED);
   }
 
   public long incrementEventReceivedCount() {
-    return increment(COUNTER_EVENTS_RECEIVED);
+    increment(Counter.EVENTS_RECEIVED);
+    return get(Counter.EVENTS_RECEIVED);
   }
 
   public long addToEventReceivedCount(long delta) {
-    return addAndGet(COUNTER_EVENTS_RECEIVED, delta);
+    add(Counter.EVENTS_RECEIVED, delta);
+    return get(Counter.EVENTS_RECEIVED);
   }
 
   @Override
   public long getEventAcceptedCount() {
-    return get(COUNTER_EVENTS_ACCEPTED);
+    return get(Counter.EVENTS_ACCEPTED);
   }
 
   public long incrementEventAcceptedCount() {
-    return increment(COUNTER_EVENTS_ACCEPTED);
+    increment(Counter.EVENTS_ACCEPTED);
+    return get(Counter.EVENTS_ACCEPTED);
   }
 
   public long addToEventAcceptedCount(long delta) {
-    return addAndGet(COUNTER_EVENTS_ACCEPTED, delta);
+    add(Counter.EVENTS_ACCEPTED, delta);
+    return get(Counter.EVENTS_ACCEPTED);
   }
 
   @Override
   public long getAppendReceivedCount() {
-    return get(COUNTER_APPEND_RECEIVED);
+    return get(Counter.APPEND_RECEIVED);
   }
 
   public long incrementAppendReceivedCount() {
-    return increment(COUNTER_APPEND_RECEIVED);
+    increment(Counter.APPEND_RECEIVED);
+    return get(Counter.APPEND_RECEIVED);
   }
 
   @Override
   public long getAppendAcceptedCount() {
-    return get(COUNTER_APPEND_ACCEPTED);
+    return get(Counter.APPEND_ACCEPTED);
   }
 
   public long incrementAppendAcceptedCount() {
-    return increment(COUNTER_APPEND_ACCEPTED);
+    increment(Counter.APPEND_ACCEPTED);
+    return get(Counter.APPEND_ACCEPTED);
   }
 
   @Override
   public long getAppendBatchReceivedCount() {
-    return get(COUNTER_APPEND_BATCH_RECEIVED);
+    return get(Counter.APPEND_BATCH_RECEIVED);
   }
 
   public long incrementAppendBatchReceivedCount() {
-    return increment(COUNTER_APPEND_BATCH_RECEIVED);
+    increment(Counter.APPEND_BATCH_RECEIVED);
+    return get(Counter.APPEND_BATCH_RECEIVED);
   }
 
   @Override
   public long getAppendBatchAcceptedCount() {
-    return get(COUNTER_APPEND_BATCH_ACCEPTED);
+    return get(Counter.APPEND_BATCH_ACCEPTED);
   }
 
   public long incrementAppendBatchAcceptedCount() {
-    return increment(COUNTER_APPEND_BATCH_ACCEPTED);
+    increment(Counter.APPEND_BATCH_ACCEPTED);
+    return get(Counter.APPEND_BATCH_ACCEPTED);
   }
 
   public long getOpenConnectionCount() {
-    return get(COUNTER_OPEN_CONNECTION_COUNT);
+    return get(Counter.OPEN_CONNECTION_COUNT);
   }
 
   public void setOpenConnectionCount(long openConnectionCount){
-    set(COUNTER_OPEN_CONNECTION_COUNT, openConnectionCount);
+    set(Counter.OPEN_CONNECTION_COUNT, openConnectionCount);
+  }
+
+  @Override
+  public long getChannelWriteRetryCount() {
+    return get(Counter.CHANNEL_WRITE_RETRY_COUNT);
+  }
+
+  public void incrementChannelWriteRetryCount() {
+    increment(Counter.CHANNEL_WRITE_RETRY_COUNT);
+  }
+
+  /**
+   * Returns the time in milliseconds the source spent waiting for room in
+   * its channels.
+   */
+  @Override
+  public long getBlockedTime() {
+    return get(Counter.BLOCKED_TIME);
+  }
+
+  public void addToBlockedTime(long millis) {
+    add(Counter.BLOCKED_TIME, millis);
   }
 }
@@ -45,4 +45,8 @@ public interface SourceCounterMBean {
   String getType();
 
   long getOpenConnectionCount();
+
+  long getChannelWriteRetryCount();
+
+  long getBlockedTime();
 }
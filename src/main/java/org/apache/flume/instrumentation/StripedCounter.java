@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A counter that spreads updates over several cells, each on its own cache
+ * line, so that threads incrementing it concurrently do not all contend on
+ * one memory location. This is the idea behind {@code LongAdder}, which is
+ * not available before Java 8.
+ * </p>
+ * <p>
+ * A thread always updates the same cell, chosen from its id. Reading the
+ * value sums all cells and is therefore more expensive than updating it;
+ * the sum is exact once updates have stopped, and otherwise reflects some
+ * of the concurrent updates.
+ * </p>
+ */
+public class StripedCounter {
+
+  // 16 longs are 128 bytes, which also keeps adjacent-line prefetching
+  // from pairing two cells
+  private static final int PADDING = 16;
+  private static final int MAX_STRIPES = 32;
+  private static final int STRIPES = stripesFor(
+      Runtime.getRuntime().availableProcessors());
+  private static final int STRIPE_BITS =
+      Integer.numberOfTrailingZeros(STRIPES);
+
+  // cell i lives at (i + 1) * PADDING, away from the array header
+  private final AtomicLongArray cells =
+      new AtomicLongArray((STRIPES + 2) * PADDING);
+
+  public void increment() {
+    cells.getAndIncrement(cellOfCurrentThread());
+  }
+
+  public void add(long delta) {
+    cells.getAndAdd(cellOfCurrentThread(), delta);
+  }
+
+  /**
+   * Returns the sum of all cells.
+   */
+  public long get() {
+    long sum = 0;
+    for (int i = 1; i <= STRIPES; i++) {
+      sum += cells.get(i * PADDING);
+    }
+    return sum;
+  }
+
+  /**
+   * Sets the counter to the given value. Updates made concurrently with this
+   * call may be lost, so it is meant for gauges and resets.
+   */
+  public void set(long value) {
+    cells.set(PADDING, value);
+    for (int i = 2; i <= STRIPES; i++) {
+      cells.set(i * PADDING, 0L);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return Long.toString(get());
+  }
+
+  private static int cellOfCurrentThread() {
+    if (STRIPES == 1) {
+      return PADDING;
+    }
+    // thread ids are sequential, the multiplication spreads them out
+    long hash = Thread.currentThread().getId() * 0x9E3779B97F4A7C15L;
+    int stripe = (int) (hash >>> (64 - STRIPE_BITS));
+    return (stripe + 1) * PADDING;
+  }
+
+  static int stripesFor(int processors) {
+    int stripes = 1;
+    while (stripes < processors && stripes < MAX_STRIPES) {
+      stripes <<= 1;
+    }
+    return stripes;
+  }
+
+}
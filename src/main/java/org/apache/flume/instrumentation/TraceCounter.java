@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metrics of one hop of traced events, see {@link EventTracer}. The hop
+ * latency is the time since the previous hop marked an event, and the
+ * origin latency the time since the event's trace was started. Both are
+ * reported in microseconds and cover every mark since the counter was
+ * started.
+ */
+public class TraceCounter extends MonitoredCounterGroup implements
+    TraceCounterMBean {
+
+  private enum Counter {
+    TRACE_STARTED("trace.started.count"),
+    TRACE_MARKED("trace.marked.count");
+
+    private final String attribute;
+
+    private Counter(String attribute) {
+      this.attribute = attribute;
+    }
+
+    @Override
+    public String toString() {
+      return attribute;
+    }
+  }
+
+  private static final String[] ATTRIBUTES = attributesOf(Counter.values());
+
+  private static final String HISTOGRAM_HOP_LATENCY = "trace.hop.latency";
+  private static final String HISTOGRAM_ORIGIN_LATENCY =
+      "trace.origin.latency";
+
+  private final LatencyHistogram hopLatency;
+  private final LatencyHistogram originLatency;
+
+  public TraceCounter(String name) {
+    super(MonitoredCounterGroup.Type.OTHER, name, ATTRIBUTES);
+    hopLatency = addHistogram(HISTOGRAM_HOP_LATENCY);
+    originLatency = addHistogram(HISTOGRAM_ORIGIN_LATENCY);
+  }
+
+  @Override
+  public long getTraceStartedCount() {
+    return get(Counter.TRACE_STARTED);
+  }
+
+  public void incrementTraceStartedCount() {
+    increment(Counter.TRACE_STARTED);
+  }
+
+  @Override
+  public long getTraceMarkedCount() {
+    return get(Counter.TRACE_MARKED);
+  }
+
+  @Override
+  public String getHopLatency() {
+    return hopLatency.toString();
+  }
+
+  @Override
+  public long getHopLatencyP99() {
+    return hopLatency.getPercentile(99.0);
+  }
+
+  @Override
+  public long getHopLatencyMax() {
+    return hopLatency.getMax();
+  }
+
+  @Override
+  public String getOriginLatency() {
+    return originLatency.toString();
+  }
+
+  @Override
+  public long getOriginLatencyP99() {
+    return originLatency.getPercentile(99.0);
+  }
+
+  @Override
+  public long getOriginLatencyMax() {
+    return originLatency.getMax();
+  }
+
+  /**
+   * Records that a traced event reached this hop {@code hopMillis} after
+   * the previous hop and {@code originMillis} after its trace was started.
+   */
+  public void recordMark(long hopMillis, long originMillis) {
+    increment(Counter.TRACE_MARKED);
+    hopLatency.record(TimeUnit.MILLISECONDS.toMicros(hopMillis));
+    originLatency.record(TimeUnit.MILLISECONDS.toMicros(originMillis));
+  }
+
+}
@@ -18,17 +18,16 @@
  */
 package org.apache.flume.instrumentation.http;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 import java.io.IOException;
-import java.lang.reflect.Type;
-import java.util.Map;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.flume.Context;
 import org.apache.flume.instrumentation.MonitorService;
-import org.apache.flume.instrumentation.util.JMXPollUtil;
+import org.apache.flume.instrumentation.util.MetricsSnapshot;
 import org.mortbay.jetty.Request;
 import org.mortbay.jetty.Server;
 import org.mortbay.jetty.handler.AbstractHandler;
@@ -44,6 +43,13 @@ import org.slf4j.LoggerFactory;
  * {<p> "componentName1":{"metric1" : "metricValue1","metric2":"metricValue2"}
  * <p> "componentName1":{"metric3" : "metricValue3","metric4":"metricValue4"}
  * <p> }
+ * <p> <tt>/metrics?format=prometheus</tt> returns the same metrics in the
+ * Prometheus text format, and one or more <tt>component</tt> parameters, such
+ * as <tt>component=CHANNEL.c1</tt>, <tt>component=c1</tt> or
+ * <tt>component=sink</tt>, restrict the output to some components. <p>
+ * Metrics are read from the counter groups directly and cached for
+ * <tt>freshnessMillis</tt> (default 1000) milliseconds, so frequent scrapes
+ * share one snapshot.
  */
 public class HTTPMetricsServer implements MonitorService {
 
@@ -52,6 +58,11 @@ public class HTTPMetricsServer implements MonitorService {
   private static Logger LOG = LoggerFactory.getLogger(HTTPMetricsServer.class);
   public static int DEFAULT_PORT = 41414;
   public static String CONFIG_PORT = "port";
+  public static long DEFAULT_FRESHNESS_MILLIS = 1000;
+  public static String CONFIG_FRESHNESS_MILLIS = "freshnessMillis";
+
+  private long freshnessMillis;
+  private MetricsSnapshot snapshot;
 
   @Override
   public void start() {
@@ -60,10 +71,8 @@ public class HTTPMetricsServer implements MonitorService {
     //specifying a handler directly is the most efficient.
     jettyServer.setHandler(new HTTPMetricsHandler());
     try {
+      // start() returns once the connector is bound and the server is ready
       jettyServer.start();
-      while (!jettyServer.isStarted()) {
-        Thread.sleep(500);
-      }
     } catch (Exception ex) {
       LOG.error("Error starting Jetty. JSON Metrics may not be available.", ex);
     }
@@ -84,14 +93,24 @@ public class HTTPMetricsServer implements MonitorService {
   @Override
   public void configure(Context context) {
     port = context.getInteger(CONFIG_PORT, DEFAULT_PORT);
+    freshnessMillis = context.getLong(CONFIG_FRESHNESS_MILLIS,
+        DEFAULT_FRESHNESS_MILLIS);
   }
 
-  private class HTTPMetricsHandler extends AbstractHandler {
+  /**
+   * Returns the cached snapshot, taking a new one if it is older than the
+   * freshness window. Concurrent requests wait for a single refresh.
+   */
+  private synchronized MetricsSnapshot getSnapshot() {
+    long now = System.currentTimeMillis();
+    if (snapshot == null || now - snapshot.getTimestamp() >= freshnessMillis
+        || now < snapshot.getTimestamp()) {
+      snapshot = MetricsSnapshot.take();
+    }
+    return snapshot;
+  }
 
-    Type mapType =
-            new TypeToken<Map<String, Map<String, String>>>() {
-            }.getType();
-    Gson gson = new Gson();
+  private class HTTPMetricsHandler extends AbstractHandler {
 
     @Override
     public void handle(String target,
@@ -111,11 +130,30 @@ public class HTTPMetricsServer implements MonitorService {
         ((Request) request).setHandled(true);
         return;
       } else if (target.equalsIgnoreCase("/metrics")) {
-        response.setContentType("application/json;charset=utf-8");
+        List<String> filter = new ArrayList<String>();
+        String[] components = request.getParameterValues("component");
+        if (components != null) {
+          for (String component : components) {
+            for (String entry : component.split(",")) {
+              if (entry.trim().length() > 0) {
+                filter.add(entry.trim());
+              }
+            }
+          }
+        }
+        MetricsSnapshot metrics = getSnapshot();
         response.setStatus(HttpServletResponse.SC_OK);
-        Map<String, Map<String, String>> metricsMap = JMXPollUtil.getAllMBeans();
-        String json = gson.toJson(metricsMap, mapType);
-        response.getWriter().write(json);
+        if ("prometheus".equalsIgnoreCase(request.getParameter("format"))) {
+          response.setContentType("text/plain;version=0.0.4;charset=utf-8");
+          Writer writer = response.getWriter();
+          metrics.writePrometheus(writer, filter);
+          writer.flush();
+        } else {
+          response.setContentType("application/json;charset=utf-8");
+          Writer writer = response.getWriter();
+          metrics.writeJson(writer, filter);
+          writer.flush();
+        }
         response.flushBuffer();
         ((Request) request).setHandled(true);
         return;
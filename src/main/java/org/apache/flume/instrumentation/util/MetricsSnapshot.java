@@ -0,0 +1,392 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.flume.instrumentation.LatencyHistogram;
+import org.apache.flume.instrumentation.MetricsRegistry;
+import org.apache.flume.instrumentation.MonitoredCounterGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * An immutable copy of the metrics of all registered
+ * {@link MonitoredCounterGroup}s, read directly from the groups through
+ * their MBean getters rather than through the platform MBean server.
+ * </p>
+ * <p>
+ * A snapshot can be written as the JSON document served by the HTTP
+ * monitoring service, which has the same shape as the one built from
+ * {@link JMXPollUtil#getAllMBeans()}, or in the Prometheus text exposition
+ * format. Both writers stream their output and can be restricted to some
+ * components.
+ * </p>
+ */
+public class MetricsSnapshot {
+
+  private static final Logger LOG =
+      LoggerFactory.getLogger(MetricsSnapshot.class);
+
+  private static final double[] QUANTILES = { 0.5, 0.95, 0.99, 0.999 };
+
+  /**
+   * Attributes that only grow while a component runs besides those named
+   * {@code ...Count}, and attributes named {@code ...Count} that do not.
+   */
+  private static final Set<String> CUMULATIVE_ATTRIBUTES =
+      Collections.singleton("BlockedTime");
+  private static final Set<String> CURRENT_COUNT_ATTRIBUTES =
+      Collections.singleton("OpenConnectionCount");
+
+  private final long timestamp;
+  private final List<Component> components;
+
+  private MetricsSnapshot(long timestamp, List<Component> components) {
+    this.timestamp = timestamp;
+    this.components = components;
+  }
+
+  /**
+   * Reads the current metrics of every registered counter group.
+   */
+  public static MetricsSnapshot take() {
+    List<Component> components = new ArrayList<Component>();
+    for (MonitoredCounterGroup group : MetricsRegistry.getCounterGroups()) {
+      List<Method> getters =
+          MetricsRegistry.getAttributeGetters(group.getClass());
+      String[] attributes = new String[getters.size()];
+      Object[] values = new Object[getters.size()];
+      for (int i = 0; i < attributes.length; i++) {
+        Method getter = getters.get(i);
+        attributes[i] = MetricsRegistry.attributeName(getter);
+        try {
+          values[i] = getter.invoke(group);
+        } catch (Exception e) {
+          LOG.warn("Unable to read " + attributes[i] + " of "
+              + MetricsRegistry.keyOf(group), e);
+        }
+      }
+      Map<String, LatencyHistogram.Snapshot> histograms =
+          new LinkedHashMap<String, LatencyHistogram.Snapshot>();
+      for (Map.Entry<String, LatencyHistogram> entry :
+          group.getHistograms().entrySet()) {
+        histograms.put(entry.getKey(), entry.getValue().getSnapshot());
+      }
+      components.add(new Component(group.getType(), group.getName(),
+          attributes, values, histograms));
+    }
+    return new MetricsSnapshot(System.currentTimeMillis(),
+        Collections.unmodifiableList(components));
+  }
+
+  /**
+   * Returns when this snapshot was taken, in milliseconds since the epoch.
+   */
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  /**
+   * Writes the metrics as a JSON object that maps each component, as
+   * {@code TYPE.name}, to an object of its attribute values as strings.
+   *
+   * @param filter keys (such as {@code CHANNEL.c1}), names or types of the
+   * components to write; null or empty for all components
+   */
+  public void writeJson(Writer out, Collection<String> filter)
+      throws IOException {
+    out.write('{');
+    boolean firstComponent = true;
+    for (Component component : components) {
+      if (!component.matches(filter)) {
+        continue;
+      }
+      if (!firstComponent) {
+        out.write(',');
+      }
+      firstComponent = false;
+      writeJsonString(out, component.getKey());
+      out.write(":{");
+      boolean firstAttribute = true;
+      for (int i = 0; i < component.attributes.length; i++) {
+        if (component.values[i] == null) {
+          continue;
+        }
+        if (!firstAttribute) {
+          out.write(',');
+        }
+        firstAttribute = false;
+        writeJsonString(out, component.attributes[i]);
+        out.write(':');
+        writeJsonString(out, component.values[i].toString());
+      }
+      out.write('}');
+    }
+    out.write('}');
+  }
+
+  /**
+   * Writes the metrics in the Prometheus text exposition format. Numeric
+   * attributes are named after the component type and attribute. Totals,
+   * such as {@code EventPutAttemptCount}, become counters with a
+   * {@code _total} suffix, like {@code flume_channel_event_put_attempt_total},
+   * and current values, such as {@code ChannelSize}, become gauges. Latency
+   * histograms become summaries in microseconds. Every sample is labelled
+   * with the component name.
+   *
+   * @param filter keys (such as {@code CHANNEL.c1}), names or types of the
+   * components to write; null or empty for all components
+   */
+  public void writePrometheus(Writer out, Collection<String> filter)
+      throws IOException {
+    // components are sorted by key, so those of a type are contiguous
+    int from = 0;
+    while (from < components.size()) {
+      String type = components.get(from).type;
+      int to = from;
+      while (to < components.size() && components.get(to).type.equals(type)) {
+        to++;
+      }
+      List<Component> ofType = new ArrayList<Component>();
+      for (Component component : components.subList(from, to)) {
+        if (component.matches(filter)) {
+          ofType.add(component);
+        }
+      }
+      writePrometheusType(out, type, ofType);
+      from = to;
+    }
+  }
+
+  private static void writePrometheusType(Writer out, String type,
+      List<Component> ofType) throws IOException {
+    Set<String> attributes = new LinkedHashSet<String>();
+    Set<String> histograms = new LinkedHashSet<String>();
+    for (Component component : ofType) {
+      for (int i = 0; i < component.attributes.length; i++) {
+        if (component.values[i] instanceof Number) {
+          attributes.add(component.attributes[i]);
+        }
+      }
+      histograms.addAll(component.histograms.keySet());
+    }
+
+    String prefix = "flume_" + type.toLowerCase() + "_";
+    for (String attribute : attributes) {
+      boolean counter = isCumulative(attribute);
+      String metric = prefix + metricName(attribute, counter);
+      out.write("# TYPE " + metric + (counter ? " counter\n" : " gauge\n"));
+      for (Component component : ofType) {
+        Object value = component.valueOf(attribute);
+        if (value instanceof Number) {
+          out.write(metric);
+          writeLabels(out, component.name, null);
+          out.write(' ');
+          out.write(formatNumber((Number) value));
+          out.write('\n');
+        }
+      }
+    }
+
+    for (String histogram : histograms) {
+      String metric = "flume_" + histogram.replace('.', '_').replace('-', '_')
+          + "_microseconds";
+      out.write("# TYPE " + metric + " summary\n");
+      for (Component component : ofType) {
+        LatencyHistogram.Snapshot snapshot =
+            component.histograms.get(histogram);
+        if (snapshot == null) {
+          continue;
+        }
+        for (double quantile : QUANTILES) {
+          out.write(metric);
+          writeLabels(out, component.name, String.valueOf(quantile));
+          out.write(' ');
+          out.write(Long.toString(snapshot.getPercentile(quantile * 100)));
+          out.write('\n');
+        }
+        out.write(metric + "_sum");
+        writeLabels(out, component.name, null);
+        out.write(" " + snapshot.getSum() + "\n");
+        out.write(metric + "_count");
+        writeLabels(out, component.name, null);
+        out.write(" " + snapshot.getCount() + "\n");
+      }
+    }
+  }
+
+  private static void writeLabels(Writer out, String component,
+      String quantile) throws IOException {
+    out.write("{component=\"");
+    for (int i = 0; i < component.length(); i++) {
+      char c = component.charAt(i);
+      if (c == '\\' || c == '"') {
+        out.write('\\');
+        out.write(c);
+      } else if (c == '\n') {
+        out.write("\\n");
+      } else {
+        out.write(c);
+      }
+    }
+    out.write('"');
+    if (quantile != null) {
+      out.write(",quantile=\"" + quantile + "\"");
+    }
+    out.write('}');
+  }
+
+  private static String formatNumber(Number value) {
+    if (value instanceof Double || value instanceof Float) {
+      double d = value.doubleValue();
+      if (Double.isNaN(d)) {
+        return "NaN";
+      }
+      if (Double.isInfinite(d)) {
+        return d > 0 ? "+Inf" : "-Inf";
+      }
+    }
+    return value.toString();
+  }
+
+  static boolean isCumulative(String attribute) {
+    return CUMULATIVE_ATTRIBUTES.contains(attribute)
+        || (attribute.endsWith("Count")
+            && !CURRENT_COUNT_ATTRIBUTES.contains(attribute));
+  }
+
+  static String metricName(String attribute, boolean counter) {
+    String name = snakeCase(attribute);
+    if (!counter) {
+      return name;
+    }
+    if (name.endsWith("_count")) {
+      name = name.substring(0, name.length() - "_count".length());
+    }
+    return name + "_total";
+  }
+
+  static String snakeCase(String camelCase) {
+    StringBuilder sb = new StringBuilder(camelCase.length() + 8);
+    for (int i = 0; i < camelCase.length(); i++) {
+      char c = camelCase.charAt(i);
+      if (Character.isUpperCase(c)) {
+        if (i > 0 && !Character.isUpperCase(camelCase.charAt(i - 1))) {
+          sb.append('_');
+        }
+        sb.append(Character.toLowerCase(c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.toString();
+  }
+
+  private static void writeJsonString(Writer out, String value)
+      throws IOException {
+    out.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      switch (c) {
+      case '"':
+        out.write("\\\"");
+        break;
+      case '\\':
+        out.write("\\\\");
+        break;
+      case '\n':
+        out.write("\\n");
+        break;
+      case '\r':
+        out.write("\\r");
+        break;
+      case '\t':
+        out.write("\\t");
+        break;
+      default:
+        if (c < 0x20) {
+          out.write(String.format("\\u%04x", (int) c));
+        } else {
+          out.write(c);
+        }
+      }
+    }
+    out.write('"');
+  }
+
+  private static class Component {
+    private final String type;
+    private final String name;
+    private final String[] attributes;
+    private final Object[] values;
+    private final Map<String, LatencyHistogram.Snapshot> histograms;
+
+    Component(String type, String name, String[] attributes, Object[] values,
+        Map<String, LatencyHistogram.Snapshot> histograms) {
+      this.type = type;
+      this.name = name;
+      this.attributes = attributes;
+      this.values = values;
+      this.histograms = histograms;
+    }
+
+    String getKey() {
+      return type + "." + name;
+    }
+
+    Object valueOf(String attribute) {
+      for (int i = 0; i < attributes.length; i++) {
+        if (attributes[i].equals(attribute)) {
+          return values[i];
+        }
+      }
+      return null;
+    }
+
+    /**
+     * A component matches a filter that contains its key, such as
+     * {@code CHANNEL.c1}, its name, or its type in any case.
+     */
+    boolean matches(Collection<String> filter) {
+      if (filter == null || filter.isEmpty()) {
+        return true;
+      }
+      for (String entry : filter) {
+        if (entry.equals(name) || entry.equals(getKey())
+            || entry.equalsIgnoreCase(type)) {
+          return true;
+        }
+      }
+      return false;
+    }
+  }
+
+}
@@ -0,0 +1,417 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.interceptor;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.flume.Clock;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.SystemClock;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import static org.apache.flume.interceptor.EventTimeInterceptor.Constants.*;
+
+/**
+ * Interceptor that sets the timestamp header from the time an event was
+ * logged, read from the start of its body, rather than from the time the
+ * event reached the agent as {@link TimestampInterceptor} does. After a
+ * backlog the two can be hours apart.
+ *
+ * The layout is a fixed width date pattern made of the {@code yyyy},
+ * {@code yy}, {@code MM}, {@code dd}, {@code HH}, {@code mm}, {@code ss} and
+ * {@code SSS} fields and literal characters, which may be quoted as in
+ * {@link java.text.SimpleDateFormat}. A layout without a date is combined
+ * with the date that puts the event within twelve hours of the current
+ * time, so that events logged just before midnight and read just after it
+ * keep their day.
+ *
+ * Parsing checks the body bytes against the layout and accumulates the
+ * digits. The epoch of the date, hour and minute is cached, so events
+ * logged within the same minute as the previous one cost no calendar
+ * arithmetic and no allocation but the header value.
+ *
+ * Properties:<p>
+ *
+ *   layout: Layout of the time at the start of the body.
+ *           (default is HH:mm:ss,SSS)<p>
+ *
+ *   offset: Number of bytes before the time in the body. (default is 0)<p>
+ *
+ *   timeZone: Time zone of the logged time. (default is the local one)<p>
+ *
+ *   header: Header to set, in milliseconds since the epoch.
+ *           (default is timestamp)<p>
+ *
+ *   preserveExisting: Whether to preserve an existing value for the header
+ *                     (default is false)<p>
+ *
+ *   fallbackToNow: Whether events whose body does not start with a time get
+ *                  the current time, or are left without the header.
+ *                  (default is true)<p>
+ *
+ * Sample config:<p>
+ *
+ * <code>
+ *   agent.sources.r1.interceptors = i1<p>
+ *   agent.sources.r1.interceptors.i1.type = EVENT_TIME<p>
+ *   agent.sources.r1.interceptors.i1.layout = yyyy-MM-dd HH:mm:ss,SSS<p>
+ * </code>
+ */
+public class EventTimeInterceptor implements Interceptor {
+
+  private static final long HALF_DAY = 12 * 60 * 60 * 1000L;
+  private static final char LITERAL = 0;
+
+  private final String header;
+  private final boolean preserveExisting;
+  private final boolean fallbackToNow;
+  private final TimeZone timeZone;
+  private final int offset;
+
+  // per position of the layout, the field it belongs to or LITERAL
+  private final char[] kinds;
+  private final byte[] literals;
+  // positions of the fields coarser than a second
+  private final int[] coarsePositions;
+  private final boolean hasDate;
+  private final boolean twoDigitYear;
+
+  private Clock clock = new SystemClock();
+  private volatile Minute minute;
+  private volatile Day day;
+
+  /**
+   * Only {@link EventTimeInterceptor.Builder} can build me
+   */
+  private EventTimeInterceptor(String layout, int offset, TimeZone timeZone,
+      String header, boolean preserveExisting, boolean fallbackToNow) {
+    this.offset = offset;
+    this.timeZone = timeZone;
+    this.header = header;
+    this.preserveExisting = preserveExisting;
+    this.fallbackToNow = fallbackToNow;
+
+    StringBuilder kindList = new StringBuilder();
+    StringBuilder literalList = new StringBuilder();
+    boolean quoted = false;
+    for (int i = 0; i < layout.length(); i++) {
+      char c = layout.charAt(i);
+      if (c == '\'') {
+        quoted = !quoted;
+      } else if (!quoted && "yMdHmsS".indexOf(c) >= 0) {
+        kindList.append(c);
+        literalList.append(LITERAL);
+      } else {
+        Preconditions.checkArgument(quoted || !Character.isLetter(c),
+            "Unsupported letter '" + c + "' in layout " + layout);
+        Preconditions.checkArgument(c < 0x80,
+            "Layout literals must be ASCII: " + layout);
+        kindList.append(LITERAL);
+        literalList.append(c);
+      }
+    }
+    this.kinds = kindList.toString().toCharArray();
+    this.literals = new byte[kinds.length];
+    List<Integer> coarse = new ArrayList<Integer>();
+    for (int i = 0; i < kinds.length; i++) {
+      literals[i] = (byte) literalList.charAt(i);
+      if (kinds[i] != LITERAL && kinds[i] != 's' && kinds[i] != 'S') {
+        coarse.add(i);
+      }
+    }
+    this.coarsePositions = new int[coarse.size()];
+    for (int i = 0; i < coarsePositions.length; i++) {
+      coarsePositions[i] = coarse.get(i);
+    }
+
+    int years = count('y');
+    Preconditions.checkArgument(years == 0 || years == 2 || years == 4,
+        "Layout needs yy or yyyy: " + layout);
+    Preconditions.checkArgument(count('M') % 2 == 0 && count('M') <= 2
+        && count('d') <= 2 && count('d') % 2 == 0 && count('H') <= 2
+        && count('H') % 2 == 0 && count('m') <= 2 && count('m') % 2 == 0
+        && count('s') <= 2 && count('s') % 2 == 0
+        && (count('S') == 0 || count('S') == 3),
+        "Fields must be MM, dd, HH, mm, ss and SSS in layout " + layout);
+    boolean date = years > 0 && count('M') > 0 && count('d') > 0;
+    Preconditions.checkArgument(date
+        || (years == 0 && count('M') == 0 && count('d') == 0),
+        "Layout needs all or none of year, month and day: " + layout);
+    Preconditions.checkArgument(kinds.length > 0, "Empty layout");
+    this.hasDate = date;
+    this.twoDigitYear = years == 2;
+  }
+
+  private int count(char kind) {
+    int n = 0;
+    for (char c : kinds) {
+      if (c == kind) {
+        n++;
+      }
+    }
+    return n;
+  }
+
+  @VisibleForTesting
+  void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  @Override
+  public void initialize() {
+    // no-op
+  }
+
+  /**
+   * Modifies events in-place.
+   */
+  @Override
+  public Event intercept(Event event) {
+    Map<String, String> headers = event.getHeaders();
+    if (preserveExisting && headers.containsKey(header)) {
+      return event;
+    }
+    long now = clock.currentTimeMillis();
+    long time = extract(event.getBody(), now);
+    if (time >= 0) {
+      headers.put(header, Long.toString(time));
+    } else if (fallbackToNow) {
+      headers.put(header, Long.toString(now));
+    }
+    return event;
+  }
+
+  /**
+   * Delegates to {@link #intercept(Event)} in a loop.
+   * @param events
+   * @return
+   */
+  @Override
+  public List<Event> intercept(List<Event> events) {
+    for (Event event : events) {
+      intercept(event);
+    }
+    return events;
+  }
+
+  @Override
+  public void close() {
+    // no-op
+  }
+
+  /**
+   * Returns the time at the start of the body, or -1 if it does not start
+   * with one.
+   */
+  @VisibleForTesting
+  long extract(byte[] body, long now) {
+    if (body == null || body.length < offset + kinds.length) {
+      return -1;
+    }
+    int year = 0, month = 0, dayOfMonth = 0, hour = 0, min = 0, sec = 0;
+    int millis = 0;
+    for (int i = 0; i < kinds.length; i++) {
+      byte b = body[offset + i];
+      char kind = kinds[i];
+      if (kind == LITERAL) {
+        if (b != literals[i]) {
+          return -1;
+        }
+        continue;
+      }
+      if (b < '0' || b > '9') {
+        return -1;
+      }
+      int digit = b - '0';
+      switch (kind) {
+      case 'y':
+        year = year * 10 + digit;
+        break;
+      case 'M':
+        month = month * 10 + digit;
+        break;
+      case 'd':
+        dayOfMonth = dayOfMonth * 10 + digit;
+        break;
+      case 'H':
+        hour = hour * 10 + digit;
+        break;
+      case 'm':
+        min = min * 10 + digit;
+        break;
+      case 's':
+        sec = sec * 10 + digit;
+        break;
+      default:
+        millis = millis * 10 + digit;
+      }
+    }
+    if (hour > 23 || min > 59 || sec > 60 || (hasDate
+        && (month < 1 || month > 12 || dayOfMonth < 1 || dayOfMonth > 31))) {
+      return -1;
+    }
+
+    long dayStart = hasDate ? 0L : dayOf(now).start;
+    Minute cached = minute;
+    if (cached == null || cached.dayStart != dayStart
+        || !cached.matches(body, offset, coarsePositions)) {
+      byte[] key = new byte[coarsePositions.length];
+      for (int i = 0; i < key.length; i++) {
+        key[i] = body[offset + coarsePositions[i]];
+      }
+      Calendar cal = Calendar.getInstance(timeZone);
+      if (hasDate) {
+        cal.clear();
+        cal.set(twoDigitYear ? 2000 + year : year, month - 1, dayOfMonth);
+      } else {
+        cal.setTimeInMillis(dayStart);
+      }
+      cal.set(Calendar.HOUR_OF_DAY, hour);
+      cal.set(Calendar.MINUTE, min);
+      cal.set(Calendar.SECOND, 0);
+      cal.set(Calendar.MILLISECOND, 0);
+      cached = new Minute(key, dayStart, cal.getTimeInMillis());
+      minute = cached;
+    }
+
+    long time = cached.start + sec * 1000L + millis;
+    if (!hasDate) {
+      // the event is taken to be on the day closest to now
+      if (time - now > HALF_DAY) {
+        time = addDays(time, -1);
+      } else if (now - time > HALF_DAY) {
+        time = addDays(time, 1);
+      }
+    }
+    return time;
+  }
+
+  private long addDays(long time, int days) {
+    Calendar cal = Calendar.getInstance(timeZone);
+    cal.setTimeInMillis(time);
+    cal.add(Calendar.DAY_OF_MONTH, days);
+    return cal.getTimeInMillis();
+  }
+
+  private Day dayOf(long now) {
+    Day current = day;
+    if (current == null || now < current.start || now >= current.end) {
+      Calendar cal = Calendar.getInstance(timeZone);
+      cal.setTimeInMillis(now);
+      cal.set(Calendar.HOUR_OF_DAY, 0);
+      cal.set(Calendar.MINUTE, 0);
+      cal.set(Calendar.SECOND, 0);
+      cal.set(Calendar.MILLISECOND, 0);
+      long start = cal.getTimeInMillis();
+      cal.add(Calendar.DAY_OF_MONTH, 1);
+      current = new Day(start, cal.getTimeInMillis());
+      day = current;
+    }
+    return current;
+  }
+
+  /**
+   * The epoch of the minute the last parsed event fell into, keyed by the
+   * bytes of its fields coarser than a second.
+   */
+  private static class Minute {
+    private final byte[] key;
+    private final long dayStart;
+    private final long start;
+
+    Minute(byte[] key, long dayStart, long start) {
+      this.key = key;
+      this.dayStart = dayStart;
+      this.start = start;
+    }
+
+    boolean matches(byte[] body, int offset, int[] positions) {
+      for (int i = 0; i < positions.length; i++) {
+        if (body[offset + positions[i]] != key[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  private static class Day {
+    private final long start;
+    private final long end;
+
+    Day(long start, long end) {
+      this.start = start;
+      this.end = end;
+    }
+  }
+
+  /**
+   * Builder which builds new instances of the EventTimeInterceptor.
+   */
+  public static class Builder implements Interceptor.Builder {
+
+    private String layout = LAYOUT_DFLT;
+    private int offset;
+    private TimeZone timeZone;
+    private String header = HEADER_DFLT;
+    private boolean preserveExisting = PRESERVE_DFLT;
+    private boolean fallbackToNow = FALLBACK_DFLT;
+
+    @Override
+    public Interceptor build() {
+      return new EventTimeInterceptor(layout, offset,
+          timeZone == null ? TimeZone.getDefault() : timeZone, header,
+          preserveExisting, fallbackToNow);
+    }
+
+    @Override
+    public void configure(Context context) {
+      layout = context.getString(LAYOUT, LAYOUT_DFLT);
+      offset = context.getInteger(OFFSET, 0);
+      Preconditions.checkArgument(offset >= 0, OFFSET + " must not be negative");
+      String zone = context.getString(TIME_ZONE);
+      timeZone = zone == null ? null : TimeZone.getTimeZone(zone);
+      header = context.getString(HEADER, HEADER_DFLT);
+      preserveExisting = context.getBoolean(PRESERVE, PRESERVE_DFLT);
+      fallbackToNow = context.getBoolean(FALLBACK, FALLBACK_DFLT);
+    }
+
+  }
+
+  public static class Constants {
+    public static final String LAYOUT = "layout";
+    public static final String LAYOUT_DFLT = "HH:mm:ss,SSS";
+    public static final String OFFSET = "offset";
+    public static final String TIME_ZONE = "timeZone";
+    public static final String HEADER = "header";
+    public static final String HEADER_DFLT = "timestamp";
+    public static final String PRESERVE = "preserveExisting";
+    public static final boolean PRESERVE_DFLT = false;
+    public static final String FALLBACK = "fallbackToNow";
+    public static final boolean FALLBACK_DFLT = true;
+  }
+
+}
@@ -26,7 +26,12 @@ public enum InterceptorType {
   MULTI_STATIC(org.n3r.flume.interceptor.MultiStaticInterceptor.Builder.class),
   REGEX_FILTER(
       org.apache.flume.interceptor.RegexFilteringInterceptor.Builder.class),
-  REGEX_EXTRACTOR(org.apache.flume.interceptor.RegexExtractorInterceptor.Builder.class);
+  REGEX_EXTRACTOR(org.apache.flume.interceptor.RegexExtractorInterceptor.Builder.class),
+  TRACING(org.apache.flume.interceptor.TracingInterceptor.Builder.class),
+  EVENT_TIME(org.apache.flume.interceptor.EventTimeInterceptor.Builder.class),
+  STACK_DEDUP(
+      org.n3r.flume.interceptor.StackTraceDedupInterceptor.Builder.class),
+  RATE_LIMIT(org.apache.flume.interceptor.RateLimitingInterceptor.Builder.class);
 
   private final Class<? extends Interceptor.Builder> builderClass;
 
@@ -0,0 +1,333 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.interceptor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.flume.Clock;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.SystemClock;
+import org.apache.flume.instrumentation.RateLimitCounter;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Preconditions;
+
+import static org.apache.flume.interceptor.RateLimitingInterceptor.Constants.*;
+
+/**
+ * Interceptor that keeps a single source of events, such as a misbehaving
+ * module, from flooding the channel. Events are keyed by the value of a
+ * header, typically one set by a static interceptor, and every key gets its
+ * own token bucket and sampling.
+ *
+ * Events of a key are first sampled, keeping a random fraction of them, and
+ * the kept ones then pass the key's token bucket, which admits {@code rate}
+ * events per second on average and up to {@code burst} at once. Events over
+ * the limit or sampled out are dropped, or only tagged with a header so
+ * that a multiplexing selector can route them elsewhere. The bucket is a
+ * single atomic theoretical arrival time updated by compare-and-set, as in
+ * the generic cell rate algorithm, so keys are limited without locks.
+ *
+ * Accepted and dropped events are counted by a {@link RateLimitCounter},
+ * which also keeps the dropped count of every key. At most
+ * {@code maxKeys} keys get their own bucket; events of further keys, and of
+ * events without the header, share the bucket of the {@code other} key.
+ *
+ * Properties:<p>
+ *
+ *   name: Name of the counter group, unique among the interceptors of the
+ *         agent as it also names the MBean. (required)<p>
+ *
+ *   header: Header whose value is the key. (required)<p>
+ *
+ *   rate: Events per second admitted per key, 0 for no limit.
+ *         (default is 0)<p>
+ *
+ *   burst: Events admitted at once per key. (default is the rate)<p>
+ *
+ *   rates.&lt;key&gt;: Rate of a specific key.<p>
+ *
+ *   sampleRate: Fraction of the events of every key to keep.
+ *               (default is 1.0)<p>
+ *
+ *   action: DROP to drop limited events, TAG to set the tag header on them.
+ *           (default is DROP)<p>
+ *
+ *   tagHeader: Header set to rate or sample on limited events.
+ *              (default is rateLimited)<p>
+ *
+ *   maxKeys: Number of keys with a bucket of their own.
+ *            (default is 1000)<p>
+ *
+ * Sample config:<p>
+ *
+ * <code>
+ *   agent.sources.r1.interceptors = i1 i2<p>
+ *   agent.sources.r1.interceptors.i1.type = MULTI_STATIC<p>
+ *   agent.sources.r1.interceptors.i1.keyValues = module:billing<p>
+ *   agent.sources.r1.interceptors.i2.type = RATE_LIMIT<p>
+ *   agent.sources.r1.interceptors.i2.name = r1-module<p>
+ *   agent.sources.r1.interceptors.i2.header = module<p>
+ *   agent.sources.r1.interceptors.i2.rate = 1000<p>
+ *   agent.sources.r1.interceptors.i2.rates.billing = 5000<p>
+ * </code>
+ */
+public class RateLimitingInterceptor implements Interceptor {
+
+  public enum Action {
+    DROP,
+    TAG
+  }
+
+  static final String OTHER_KEY = "other";
+
+  private final String header;
+  private final long rate;
+  private final long burst;
+  private final Map<String, Long> rates;
+  private final double sampleRate;
+  private final Action action;
+  private final String tagHeader;
+  private final int maxKeys;
+  private final RateLimitCounter counter;
+
+  private final ConcurrentMap<String, Bucket> buckets =
+      new ConcurrentHashMap<String, Bucket>();
+  private final Bucket other;
+  private final Random random = new Random();
+
+  private Clock clock = new SystemClock();
+
+  /**
+   * Only {@link RateLimitingInterceptor.Builder} can build me
+   */
+  private RateLimitingInterceptor(String name, String header, long rate,
+      long burst, Map<String, Long> rates, double sampleRate, Action action,
+      String tagHeader, int maxKeys) {
+    this.header = header;
+    this.rate = rate;
+    this.burst = burst;
+    this.rates = rates;
+    this.sampleRate = sampleRate;
+    this.action = action;
+    this.tagHeader = tagHeader;
+    this.maxKeys = maxKeys;
+    this.counter = new RateLimitCounter(name);
+    this.other = bucketFor(OTHER_KEY);
+  }
+
+  @VisibleForTesting
+  void setClock(Clock clock) {
+    this.clock = clock;
+  }
+
+  @VisibleForTesting
+  RateLimitCounter getCounter() {
+    return counter;
+  }
+
+  @Override
+  public void initialize() {
+    counter.start();
+  }
+
+  /**
+   * Returns the event, possibly tagged, or null if it is dropped.
+   */
+  @Override
+  public Event intercept(Event event) {
+    Map<String, String> headers = event.getHeaders();
+    String key = headers.get(header);
+    Bucket bucket = key == null ? other : buckets.get(key);
+    if (bucket == null) {
+      if (buckets.size() < maxKeys) {
+        Bucket created = bucketFor(key);
+        bucket = buckets.putIfAbsent(key, created);
+        if (bucket == null) {
+          bucket = created;
+        }
+      } else {
+        bucket = other;
+      }
+    }
+
+    String limited = null;
+    if (sampleRate < 1.0 && random.nextDouble() >= sampleRate) {
+      counter.incrementEventSampledOutCount(bucket.key);
+      limited = TAG_SAMPLE;
+    } else if (!bucket.tryAcquire(clock.currentTimeMillis() * 1000L)) {
+      counter.incrementEventRateLimitedCount(bucket.key);
+      limited = TAG_RATE;
+    }
+
+    if (limited == null) {
+      counter.incrementEventAcceptedCount();
+      return event;
+    }
+    if (action == Action.DROP) {
+      return null;
+    }
+    headers.put(tagHeader, limited);
+    return event;
+  }
+
+  /**
+   * Returns the events that are not dropped.
+   */
+  @Override
+  public List<Event> intercept(List<Event> events) {
+    List<Event> out = new ArrayList<Event>(events.size());
+    for (Event event : events) {
+      Event intercepted = intercept(event);
+      if (intercepted != null) {
+        out.add(intercepted);
+      }
+    }
+    return out;
+  }
+
+  @Override
+  public void close() {
+    counter.stop();
+  }
+
+  private Bucket bucketFor(String key) {
+    Long keyRate = rates.get(key);
+    long r = keyRate == null ? rate : keyRate;
+    return new Bucket(key, r, keyRate == null ? burst : Math.max(1L, r));
+  }
+
+  /**
+   * A token bucket kept as the time at which it would be full again, in
+   * microseconds. Admitting an event moves that time one emission interval
+   * forward; an event is over the limit if this would move it further than
+   * the burst past the current time.
+   */
+  private static class Bucket {
+    private final String key;
+    private final long interval;
+    private final long tolerance;
+    private final AtomicLong arrival = new AtomicLong(Long.MIN_VALUE);
+
+    Bucket(String key, long rate, long burst) {
+      this.key = key;
+      this.interval = rate > 0 ? Math.max(1L, 1000000L / rate) : 0L;
+      this.tolerance = interval * (burst - 1);
+    }
+
+    boolean tryAcquire(long nowMicros) {
+      if (interval == 0) {
+        return true;
+      }
+      while (true) {
+        long current = arrival.get();
+        long next = Math.max(current, nowMicros);
+        if (next - nowMicros > tolerance) {
+          return false;
+        }
+        if (arrival.compareAndSet(current, next + interval)) {
+          return true;
+        }
+      }
+    }
+  }
+
+  /**
+   * Builder which builds new instances of the RateLimitingInterceptor.
+   */
+  public static class Builder implements Interceptor.Builder {
+
+    private String name;
+    private String header;
+    private long rate;
+    private long burst;
+    private Map<String, Long> rates = new HashMap<String, Long>();
+    private double sampleRate = SAMPLE_RATE_DFLT;
+    private Action action = Action.DROP;
+    private String tagHeader = TAG_HEADER_DFLT;
+    private int maxKeys = MAX_KEYS_DFLT;
+
+    @Override
+    public Interceptor build() {
+      Preconditions.checkState(name != null,
+          "Missing counter group name: " + NAME);
+      Preconditions.checkState(header != null, "Missing key header: " + HEADER);
+      return new RateLimitingInterceptor(name, header, rate, burst, rates,
+          sampleRate, action, tagHeader, maxKeys);
+    }
+
+    @Override
+    public void configure(Context context) {
+      name = context.getString(NAME);
+      header = context.getString(HEADER);
+      rate = context.getLong(RATE, 0L);
+      Preconditions.checkArgument(rate >= 0, RATE + " must not be negative");
+      burst = context.getLong(BURST, Math.max(1L, rate));
+      Preconditions.checkArgument(burst > 0, BURST + " must be positive");
+      rates = new HashMap<String, Long>();
+      for (Map.Entry<String, String> entry :
+          context.getSubProperties(RATES_PREFIX).entrySet()) {
+        long keyRate = Long.parseLong(entry.getValue().trim());
+        Preconditions.checkArgument(keyRate >= 0,
+            RATES_PREFIX + entry.getKey() + " must not be negative");
+        rates.put(entry.getKey(), keyRate);
+      }
+      String sample = context.getString(SAMPLE_RATE);
+      if (sample != null) {
+        sampleRate = Double.parseDouble(sample.trim());
+      }
+      Preconditions.checkArgument(sampleRate >= 0.0 && sampleRate <= 1.0,
+          SAMPLE_RATE + " must be between 0 and 1: " + sampleRate);
+      action = Action.valueOf(context.getString(ACTION, ACTION_DFLT)
+          .trim().toUpperCase(Locale.ENGLISH));
+      tagHeader = context.getString(TAG_HEADER, TAG_HEADER_DFLT);
+      maxKeys = context.getInteger(MAX_KEYS, MAX_KEYS_DFLT);
+      Preconditions.checkArgument(maxKeys > 0, MAX_KEYS + " must be positive");
+    }
+
+  }
+
+  public static class Constants {
+    public static final String NAME = "name";
+    public static final String HEADER = "header";
+    public static final String RATE = "rate";
+    public static final String BURST = "burst";
+    public static final String RATES_PREFIX = "rates.";
+    public static final String SAMPLE_RATE = "sampleRate";
+    public static final double SAMPLE_RATE_DFLT = 1.0;
+    public static final String ACTION = "action";
+    public static final String ACTION_DFLT = "DROP";
+    public static final String TAG_HEADER = "tagHeader";
+    public static final String TAG_HEADER_DFLT = "rateLimited";
+    public static final String TAG_RATE = "rate";
+    public static final String TAG_SAMPLE = "sample";
+    public static final String MAX_KEYS = "maxKeys";
+    public static final int MAX_KEYS_DFLT = 1000;
+  }
+
+}
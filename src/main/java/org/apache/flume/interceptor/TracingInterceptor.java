@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.interceptor;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.instrumentation.EventTracer;
+
+import com.google.common.base.Preconditions;
+
+import static org.apache.flume.interceptor.TracingInterceptor.Constants.*;
+
+/**
+ * Interceptor that traces events through the agents they pass, see
+ * {@link EventTracer}. Events that are already traced are marked with the
+ * configured hop, and a trace is started for a sampled fraction of the
+ * other events: with a sample rate of 0.01, every hundredth event.
+ *
+ * Properties:<p>
+ *
+ *   hop: Name this interceptor marks events with. (required)<p>
+ *
+ *   sampleRate: Fraction of the untraced events to start a trace for,
+ *               0 to only mark events traced upstream. (default is 0.01)<p>
+ *
+ * Sample config:<p>
+ *
+ * <code>
+ *   agent.sources.r1.interceptors = i1<p>
+ *   agent.sources.r1.interceptors.i1.type = TRACING<p>
+ *   agent.sources.r1.interceptors.i1.hop = agent1<p>
+ *   agent.sources.r1.interceptors.i1.sampleRate = 0.001<p>
+ * </code>
+ */
+public class TracingInterceptor implements Interceptor {
+
+  private final EventTracer tracer;
+  private final long sampleInterval;
+  private final AtomicLong untraced = new AtomicLong();
+
+  /**
+   * Only {@link TracingInterceptor.Builder} can build me
+   */
+  private TracingInterceptor(String hop, double sampleRate) {
+    this.tracer = new EventTracer(hop);
+    this.sampleInterval = sampleRate > 0
+        ? Math.max(1L, Math.round(1.0 / sampleRate)) : 0L;
+  }
+
+  @Override
+  public void initialize() {
+    tracer.start();
+  }
+
+  /**
+   * Modifies events in-place.
+   */
+  @Override
+  public Event intercept(Event event) {
+    if (!tracer.mark(event) && sampleInterval > 0
+        && untraced.getAndIncrement() % sampleInterval == 0) {
+      tracer.begin(event);
+    }
+    return event;
+  }
+
+  /**
+   * Delegates to {@link #intercept(Event)} in a loop.
+   * @param events
+   * @return
+   */
+  @Override
+  public List<Event> intercept(List<Event> events) {
+    for (Event event : events) {
+      intercept(event);
+    }
+    return events;
+  }
+
+  @Override
+  public void close() {
+    tracer.stop();
+  }
+
+  /**
+   * Builder which builds new instances of the TracingInterceptor.
+   */
+  public static class Builder implements Interceptor.Builder {
+
+    private String hop;
+    private double sampleRate = SAMPLE_RATE_DFLT;
+
+    @Override
+    public Interceptor build() {
+      Preconditions.checkState(hop != null, "Missing hop name: " + HOP);
+      return new TracingInterceptor(hop, sampleRate);
+    }
+
+    @Override
+    public void configure(Context context) {
+      hop = context.getString(HOP);
+      String rate = context.getString(SAMPLE_RATE);
+      if (rate != null) {
+        sampleRate = Double.parseDouble(rate.trim());
+      }
+      Preconditions.checkArgument(sampleRate >= 0.0 && sampleRate <= 1.0,
+          SAMPLE_RATE + " must be between 0 and 1: " + sampleRate);
+    }
+
+  }
+
+  public static class Constants {
+    public static final String HOP = "hop";
+    public static final String SAMPLE_RATE = "sampleRate";
+    public static final double SAMPLE_RATE_DFLT = 0.01;
+  }
+
+}
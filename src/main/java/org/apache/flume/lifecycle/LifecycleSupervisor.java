@@ -19,9 +19,15 @@
 
 package org.apache.flume.lifecycle;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -122,6 +128,21 @@ public class LifecycleSupervisor implements LifecycleAware {
 
   public synchronized void supervise(LifecycleAware lifecycleAware,
       SupervisorPolicy policy, LifecycleState desiredState) {
+    supervise(lifecycleAware, policy, desiredState,
+        Collections.<LifecycleAware>emptyList());
+  }
+
+  /**
+   * Supervises a component that must not be started before the given
+   * dependencies, for example a sink runner and the channel it drains. The
+   * component is started as soon as all of its dependencies have started or
+   * are in error state; a dependency signals this when it starts, so the
+   * component does not wait for its next monitoring round. Dependencies
+   * that are not supervised by this supervisor are treated as started.
+   */
+  public synchronized void supervise(LifecycleAware lifecycleAware,
+      SupervisorPolicy policy, LifecycleState desiredState,
+      Collection<? extends LifecycleAware> dependencies) {
     if(this.monitorService.isShutdown()
         || this.monitorService.isTerminated()
         || this.monitorService.isTerminating()){
@@ -139,7 +160,9 @@ public class LifecycleSupervisor implements LifecycleAware {
     }
 
     Supervisoree process = new Supervisoree();
+    process.lifecycleAware = lifecycleAware;
     process.status = new Status();
+    process.status.supervisedAt = System.currentTimeMillis();
 
     process.policy = policy;
     process.status.desiredState = desiredState;
@@ -149,6 +172,17 @@ public class LifecycleSupervisor implements LifecycleAware {
     monitorRunnable.lifecycleAware = lifecycleAware;
     monitorRunnable.supervisoree = process;
     monitorRunnable.monitorService = monitorService;
+    process.monitorRunnable = monitorRunnable;
+
+    // register with the dependencies before the first run, so that a
+    // dependency starting in between still wakes this component up
+    for (LifecycleAware dependency : dependencies) {
+      Supervisoree supervisedDependency = supervisedProcesses.get(dependency);
+      if (supervisedDependency != null) {
+        process.dependencies.add(supervisedDependency);
+        supervisedDependency.dependents.add(monitorRunnable);
+      }
+    }
 
     supervisedProcesses.put(lifecycleAware, process);
 
@@ -167,6 +201,9 @@ public class LifecycleSupervisor implements LifecycleAware {
     synchronized (lifecycleAware) {
     Supervisoree supervisoree = supervisedProcesses.get(lifecycleAware);
     supervisoree.status.discard = true;
+    for (Supervisoree dependency : supervisoree.dependencies) {
+      dependency.dependents.remove(supervisoree.monitorRunnable);
+    }
       this.setDesiredState(lifecycleAware, LifecycleState.STOP);
       logger.info("Stopping component: {}", lifecycleAware);
       lifecycleAware.stop();
@@ -203,6 +240,20 @@ public class LifecycleSupervisor implements LifecycleAware {
     return supervisedProcesses.get(component).status.error;
 
   }
+
+  /**
+   * Returns the time in milliseconds from supervising the component to the
+   * first time it was seen started, or null if it has not started yet or is
+   * not supervised.
+   */
+  public synchronized Long getStartLatency(LifecycleAware component) {
+    Supervisoree supervisoree = supervisedProcesses.get(component);
+    if (supervisoree == null || supervisoree.status.startedAt == null) {
+      return null;
+    }
+    return supervisoree.status.startedAt - supervisoree.status.supervisedAt;
+  }
+
   public static class MonitorRunnable implements Runnable {
 
     public ScheduledExecutorService monitorService;
@@ -247,8 +298,18 @@ public class LifecycleSupervisor implements LifecycleAware {
 
             switch (supervisoree.status.desiredState) {
               case START:
+                if (!supervisoree.dependenciesStarted()) {
+                  logger.debug("Not starting {} until its dependencies have"
+                      + " started", lifecycleAware);
+                  break;
+                }
                 try {
+                  long startNanos = System.nanoTime();
                   lifecycleAware.start();
+                  if (LifecycleState.START.equals(
+                      lifecycleAware.getLifecycleState())) {
+                    started((System.nanoTime() - startNanos) / 1000000);
+                  }
                 } catch (Throwable e) {
                   logger.error("Unable to start " + lifecycleAware
                       + " - Exception follows.", e);
@@ -306,6 +367,24 @@ public class LifecycleSupervisor implements LifecycleAware {
       }
       logger.debug("Status check complete");
     }
+
+    private void started(long startMillis) {
+      Status status = supervisoree.status;
+      if (status.startedAt == null) {
+        status.startedAt = System.currentTimeMillis();
+        logger.info("Component {} started in {} ms, {} ms after it was"
+            + " supervised", new Object[] { lifecycleAware, startMillis,
+            status.startedAt - status.supervisedAt });
+      }
+      for (MonitorRunnable dependent : supervisoree.dependents) {
+        try {
+          monitorService.execute(dependent);
+        } catch (RejectedExecutionException e) {
+          logger.debug("Not signalling {}, the supervisor is shutting down",
+              dependent.lifecycleAware);
+        }
+      }
+    }
   }
 
   private class Purger implements Runnable{
@@ -325,15 +404,17 @@ public class LifecycleSupervisor implements LifecycleAware {
     public LifecycleState lastSeenState;
     public LifecycleState desiredState;
     public int failures;
-    public boolean discard;
+    public volatile boolean discard;
     public volatile boolean error;
+    public long supervisedAt;
+    public volatile Long startedAt;
 
     @Override
     public String toString() {
       return "{ lastSeen:" + lastSeen + " lastSeenState:" + lastSeenState
           + " desiredState:" + desiredState + " firstSeen:" + firstSeen
           + " failures:" + failures + " discard:" + discard + " error:" +
-          error + " }";
+          error + " startedAt:" + startedAt + " }";
     }
 
   }
@@ -362,8 +443,25 @@ public class LifecycleSupervisor implements LifecycleAware {
 
   private static class Supervisoree {
 
+    public LifecycleAware lifecycleAware;
     public SupervisorPolicy policy;
     public Status status;
+    public MonitorRunnable monitorRunnable;
+    public final List<Supervisoree> dependencies =
+        new ArrayList<Supervisoree>();
+    public final List<MonitorRunnable> dependents =
+        new CopyOnWriteArrayList<MonitorRunnable>();
+
+    boolean dependenciesStarted() {
+      for (Supervisoree dependency : dependencies) {
+        if (!dependency.status.discard && !dependency.status.error
+            && !LifecycleState.START.equals(
+                dependency.lifecycleAware.getLifecycleState())) {
+          return false;
+        }
+      }
+      return true;
+    }
 
     @Override
     public String toString() {
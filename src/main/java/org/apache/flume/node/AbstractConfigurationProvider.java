@@ -80,10 +80,12 @@ public abstract class AbstractConfigurationProvider implements
       Map<String, ChannelComponent> channelComponentMap = Maps.newHashMap();
       Map<String, SourceRunner> sourceRunnerMap = Maps.newHashMap();
       Map<String, SinkRunner> sinkRunnerMap = Maps.newHashMap();
+      Map<String, ComponentSignature> sinkRunnerSignatures = Maps.newHashMap();
       try {
         loadChannels(agentConf, channelComponentMap);
         loadSources(agentConf, channelComponentMap, sourceRunnerMap);
-        loadSinks(agentConf, channelComponentMap, sinkRunnerMap);
+        loadSinks(agentConf, channelComponentMap, sinkRunnerMap,
+            sinkRunnerSignatures);
         Set<String> channelNames =
             new HashSet<String>(channelComponentMap.keySet());
         for(String channelName : channelNames) {
@@ -102,13 +104,31 @@ public abstract class AbstractConfigurationProvider implements
             LOGGER.info(String.format("Channel %s connected to %s",
                 channelName, channelComponent.components.toString()));
             conf.addChannel(channelName, channelComponent.channel);
+            conf.addSignature(
+                BasicConfigurationConstants.CONFIG_CHANNELS_PREFIX + channelName,
+                new ComponentSignature(agentConf.getComponentProperties(
+                    BasicConfigurationConstants.CONFIG_CHANNELS_PREFIX,
+                    channelName).toString(), Collections.<String>emptySet()));
           }
         }
         for(Entry<String, SourceRunner> entry : sourceRunnerMap.entrySet()) {
           conf.addSourceRunner(entry.getKey(), entry.getValue());
+          List<String> sourceChannels = Lists.newArrayList();
+          for (Channel channel : entry.getValue().getSource()
+              .getChannelProcessor().getSelector().getAllChannels()) {
+            sourceChannels.add(channel.getName());
+          }
+          conf.addSignature(
+              BasicConfigurationConstants.CONFIG_SOURCES_PREFIX + entry.getKey(),
+              new ComponentSignature(agentConf.getComponentProperties(
+                  BasicConfigurationConstants.CONFIG_SOURCES_PREFIX,
+                  entry.getKey()).toString(), sourceChannels));
         }
         for(Entry<String, SinkRunner> entry : sinkRunnerMap.entrySet()) {
           conf.addSinkRunner(entry.getKey(), entry.getValue());
+          conf.addSignature(
+              BasicConfigurationConstants.CONFIG_SINKS_PREFIX + entry.getKey(),
+              sinkRunnerSignatures.get(entry.getKey()));
         }
       } catch (InstantiationException ex) {
         LOGGER.error("Failed to instantiate component", ex);
@@ -353,7 +373,8 @@ public abstract class AbstractConfigurationProvider implements
   }
 
   private void loadSinks(AgentConfiguration agentConf,
-      Map<String, ChannelComponent> channelComponentMap, Map<String, SinkRunner> sinkRunnerMap)
+      Map<String, ChannelComponent> channelComponentMap, Map<String, SinkRunner> sinkRunnerMap,
+      Map<String, ComponentSignature> sinkRunnerSignatures)
       throws InstantiationException {
     Set<String> sinkNames = agentConf.getSinkSet();
     Map<String, ComponentConfiguration> compMap =
@@ -417,11 +438,12 @@ public abstract class AbstractConfigurationProvider implements
       }
     }
 
-    loadSinkGroups(agentConf, sinks, sinkRunnerMap);
+    loadSinkGroups(agentConf, sinks, sinkRunnerMap, sinkRunnerSignatures);
   }
 
   private void loadSinkGroups(AgentConfiguration agentConf,
-      Map<String, Sink> sinks, Map<String, SinkRunner> sinkRunnerMap)
+      Map<String, Sink> sinks, Map<String, SinkRunner> sinkRunnerMap,
+      Map<String, ComponentSignature> sinkRunnerSignatures)
           throws InstantiationException {
     Set<String> sinkGroupNames = agentConf.getSinkgroupSet();
     Map<String, ComponentConfiguration> compMap =
@@ -455,6 +477,10 @@ public abstract class AbstractConfigurationProvider implements
           Configurables.configure(group, groupConf);
           sinkRunnerMap.put(comp.getComponentName(),
               new SinkRunner(group.getProcessor()));
+          sinkRunnerSignatures.put(comp.getComponentName(),
+              sinkRunnerSignature(agentConf,
+                  BasicConfigurationConstants.CONFIG_SINKGROUPS_PREFIX,
+                  groupName, groupSinks));
         } catch (Exception e) {
           String msg = String.format("SinkGroup %s has been removed due to " +
               "an error during configuration", groupName);
@@ -473,6 +499,10 @@ public abstract class AbstractConfigurationProvider implements
           Configurables.configure(pr, new Context());
           sinkRunnerMap.put(entry.getKey(),
               new SinkRunner(pr));
+          sinkRunnerSignatures.put(entry.getKey(),
+              sinkRunnerSignature(agentConf,
+                  BasicConfigurationConstants.CONFIG_SINKS_PREFIX,
+                  entry.getKey(), sinkMap));
         } catch(Exception e) {
           String msg = String.format("SinkGroup %s has been removed due to " +
               "an error during configuration", entry.getKey());
@@ -481,6 +511,26 @@ public abstract class AbstractConfigurationProvider implements
       }
     }
   }
+  /**
+   * The signature of a sink runner covers the runner's own properties (the
+   * sink group's, or the sink's for a solo sink) and those of every sink it
+   * drives, since a change to any of them requires a new runner.
+   */
+  private ComponentSignature sinkRunnerSignature(AgentConfiguration agentConf,
+      String prefix, String name, List<Sink> runnerSinks) {
+    StringBuilder properties = new StringBuilder();
+    properties.append(agentConf.getComponentProperties(prefix, name));
+    List<String> runnerChannels = Lists.newArrayList();
+    for (Sink sink : runnerSinks) {
+      properties.append(' ').append(sink.getName()).append('=')
+          .append(agentConf.getComponentProperties(
+              BasicConfigurationConstants.CONFIG_SINKS_PREFIX,
+              sink.getName()));
+      runnerChannels.add(sink.getChannel().getName());
+    }
+    return new ComponentSignature(properties.toString(), runnerChannels);
+  }
+
   private static class ChannelComponent {
     final Channel channel;
     final List<String> components;
@@ -19,13 +19,14 @@
 
 package org.apache.flume.node;
 
-import com.google.common.base.Throwables;
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.collect.Lists;
 import com.google.common.eventbus.EventBus;
 import com.google.common.eventbus.Subscribe;
 import org.apache.commons.cli.*;
 import org.apache.commons.lang.StringUtils;
 import org.apache.flume.*;
+import org.apache.flume.conf.BasicConfigurationConstants;
 import org.apache.flume.instrumentation.MonitorService;
 import org.apache.flume.instrumentation.MonitoringType;
 import org.apache.flume.lifecycle.LifecycleAware;
@@ -39,7 +40,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.Set;
@@ -75,11 +79,24 @@ public class Application  {
 
   @Subscribe
   public synchronized void handleConfigurationEvent(MaterializedConfiguration conf) {
-    stopAllComponents();
-    startAllComponents(conf);
+    if (this.materializedConfiguration == null) {
+      startAllComponents(conf);
+    } else {
+      reconfigure(conf);
+    }
   }
 
+  /**
+   * Stops the sources, then the sinks, then the channels, so that a channel
+   * only stops once nothing puts or takes events anymore; the supervisor
+   * then stops the remaining components.
+   */
   public synchronized void stop() {
+    if (materializedConfiguration != null) {
+      stopComponents(materializedConfiguration,
+          Collections.<String>emptySet(), Collections.<String>emptySet(),
+          Collections.<String>emptySet());
+    }
     supervisor.stop();
     if(monitorServer != null) {
       monitorServer.stop();
@@ -87,51 +104,151 @@ public class Application  {
   }
 
 
-  private void stopAllComponents() {
-    if (this.materializedConfiguration != null) {
-      logger.info("Shutting down configuration: {}", this.materializedConfiguration);
-      for (Entry<String, SourceRunner> entry : this.materializedConfiguration
-          .getSourceRunners().entrySet()) {
-        try{
-          logger.info("Stopping Source " + entry.getKey());
-          supervisor.unsupervise(entry.getValue());
-        } catch (Exception e){
-          logger.error("Error while stopping {}", entry.getValue(), e);
-        }
+  @VisibleForTesting
+  MaterializedConfiguration getMaterializedConfiguration() {
+    return materializedConfiguration;
+  }
+
+  private void startAllComponents(MaterializedConfiguration materializedConfiguration) {
+    logger.info("Starting new configuration:{}", materializedConfiguration);
+
+    this.materializedConfiguration = materializedConfiguration;
+    startComponents(materializedConfiguration,
+        Collections.<String>emptySet(), Collections.<String>emptySet(),
+        Collections.<String>emptySet());
+
+    this.loadMonitoring();
+  }
+
+  /**
+   * Applies a new configuration on top of the running one. Channels, sinks
+   * and sources whose configuration is unchanged, and whose channels are all
+   * kept, stay running; in particular a kept channel does not lose the
+   * events it has buffered. Everything else is stopped and replaced by its
+   * counterpart from the new configuration.
+   */
+  private void reconfigure(MaterializedConfiguration conf) {
+    MaterializedConfiguration current = this.materializedConfiguration;
+    Map<String, ComponentSignature> oldSignatures = current.getSignatures();
+    Map<String, ComponentSignature> newSignatures = conf.getSignatures();
+
+    Set<String> keptChannels = new HashSet<String>();
+    for (Entry<String, Channel> entry : current.getChannels().entrySet()) {
+      String key = BasicConfigurationConstants.CONFIG_CHANNELS_PREFIX
+          + entry.getKey();
+      if (entry.getValue() == conf.getChannels().get(entry.getKey())
+          && isUnchanged(key, oldSignatures, newSignatures, keptChannels)) {
+        keptChannels.add(entry.getKey());
       }
+    }
 
-      for (Entry<String, SinkRunner> entry :
-        this.materializedConfiguration.getSinkRunners().entrySet()) {
-        try{
-          logger.info("Stopping Sink " + entry.getKey());
-          supervisor.unsupervise(entry.getValue());
-        } catch (Exception e){
-          logger.error("Error while stopping {}", entry.getValue(), e);
-        }
+    Set<String> keptSinks = new HashSet<String>();
+    for (String name : current.getSinkRunners().keySet()) {
+      if (conf.getSinkRunners().containsKey(name) && isUnchanged(
+          BasicConfigurationConstants.CONFIG_SINKS_PREFIX + name,
+          oldSignatures, newSignatures, keptChannels)) {
+        keptSinks.add(name);
       }
+    }
 
-      for (Entry<String, Channel> entry :
-        this.materializedConfiguration.getChannels().entrySet()) {
-        try{
-          logger.info("Stopping Channel " + entry.getKey());
-          supervisor.unsupervise(entry.getValue());
-        } catch (Exception e){
-          logger.error("Error while stopping {}", entry.getValue(), e);
-        }
+    Set<String> keptSources = new HashSet<String>();
+    for (String name : current.getSourceRunners().keySet()) {
+      if (conf.getSourceRunners().containsKey(name) && isUnchanged(
+          BasicConfigurationConstants.CONFIG_SOURCES_PREFIX + name,
+          oldSignatures, newSignatures, keptChannels)) {
+        keptSources.add(name);
       }
     }
-    if(monitorServer != null) {
-      monitorServer.stop();
+
+    logger.info("Reconfiguring, keeping channels {}, sinks {} and sources {}",
+        new Object[] { keptChannels, keptSinks, keptSources });
+
+    stopComponents(current, keptSources, keptSinks, keptChannels);
+
+    MaterializedConfiguration merged = new SimpleMaterializedConfiguration();
+    for (Entry<String, Channel> entry : conf.getChannels().entrySet()) {
+      merged.addChannel(entry.getKey(), entry.getValue());
+    }
+    for (Entry<String, SinkRunner> entry : conf.getSinkRunners().entrySet()) {
+      merged.addSinkRunner(entry.getKey(), keptSinks.contains(entry.getKey())
+          ? current.getSinkRunners().get(entry.getKey()) : entry.getValue());
+    }
+    for (Entry<String, SourceRunner> entry :
+        conf.getSourceRunners().entrySet()) {
+      merged.addSourceRunner(entry.getKey(),
+          keptSources.contains(entry.getKey())
+          ? current.getSourceRunners().get(entry.getKey()) : entry.getValue());
+    }
+    for (Entry<String, ComponentSignature> entry : newSignatures.entrySet()) {
+      merged.addSignature(entry.getKey(), entry.getValue());
     }
+
+    logger.info("Starting new configuration:{}", merged);
+    this.materializedConfiguration = merged;
+    startComponents(merged, keptSources, keptSinks, keptChannels);
   }
 
-  private void startAllComponents(MaterializedConfiguration materializedConfiguration) {
-    logger.info("Starting new configuration:{}", materializedConfiguration);
+  private static boolean isUnchanged(String key,
+      Map<String, ComponentSignature> oldSignatures,
+      Map<String, ComponentSignature> newSignatures,
+      Set<String> keptChannels) {
+    ComponentSignature oldSignature = oldSignatures.get(key);
+    return oldSignature != null
+        && oldSignature.equals(newSignatures.get(key))
+        && keptChannels.containsAll(oldSignature.getChannels());
+  }
 
-    this.materializedConfiguration = materializedConfiguration;
+  private void stopComponents(MaterializedConfiguration conf,
+      Set<String> keptSources, Set<String> keptSinks,
+      Set<String> keptChannels) {
+    for (Entry<String, SourceRunner> entry : conf
+        .getSourceRunners().entrySet()) {
+      if (keptSources.contains(entry.getKey())) {
+        continue;
+      }
+      try{
+        logger.info("Stopping Source " + entry.getKey());
+        supervisor.unsupervise(entry.getValue());
+      } catch (Exception e){
+        logger.error("Error while stopping {}", entry.getValue(), e);
+      }
+    }
+
+    for (Entry<String, SinkRunner> entry :
+      conf.getSinkRunners().entrySet()) {
+      if (keptSinks.contains(entry.getKey())) {
+        continue;
+      }
+      try{
+        logger.info("Stopping Sink " + entry.getKey());
+        supervisor.unsupervise(entry.getValue());
+      } catch (Exception e){
+        logger.error("Error while stopping {}", entry.getValue(), e);
+      }
+    }
+
+    for (Entry<String, Channel> entry :
+      conf.getChannels().entrySet()) {
+      if (keptChannels.contains(entry.getKey())) {
+        continue;
+      }
+      try{
+        logger.info("Stopping Channel " + entry.getKey());
+        supervisor.unsupervise(entry.getValue());
+      } catch (Exception e){
+        logger.error("Error while stopping {}", entry.getValue(), e);
+      }
+    }
+  }
 
+  private void startComponents(MaterializedConfiguration materializedConfiguration,
+      Set<String> keptSources, Set<String> keptSinks,
+      Set<String> keptChannels) {
     for (Entry<String, Channel> entry :
       materializedConfiguration.getChannels().entrySet()) {
+      if (keptChannels.contains(entry.getKey())) {
+        continue;
+      }
       try{
         logger.info("Starting Channel " + entry.getKey());
         supervisor.supervise(entry.getValue(),
@@ -142,28 +259,21 @@ public class Application  {
     }
 
     /*
-     * Wait for all channels to start.
+     * Sinks and sources are started in parallel by the supervisor, each as
+     * soon as the channels it is connected to have started.
      */
-    for(Channel ch: materializedConfiguration.getChannels().values()){
-      while(ch.getLifecycleState() != LifecycleState.START
-          && !supervisor.isComponentInErrorState(ch)){
-        try {
-          logger.info("Waiting for channel: " + ch.getName() +
-              " to start. Sleeping for 500 ms");
-          Thread.sleep(500);
-        } catch (InterruptedException e) {
-          logger.error("Interrupted while waiting for channel to start.", e);
-          Throwables.propagate(e);
-        }
-      }
-    }
-
     for (Entry<String, SinkRunner> entry : materializedConfiguration.getSinkRunners()
         .entrySet()) {
+      if (keptSinks.contains(entry.getKey())) {
+        continue;
+      }
       try{
         logger.info("Starting Sink " + entry.getKey());
         supervisor.supervise(entry.getValue(),
-          new SupervisorPolicy.AlwaysRestartPolicy(), LifecycleState.START);
+          new SupervisorPolicy.AlwaysRestartPolicy(), LifecycleState.START,
+          channelsOf(materializedConfiguration,
+              BasicConfigurationConstants.CONFIG_SINKS_PREFIX
+              + entry.getKey()));
       } catch (Exception e) {
         logger.error("Error while starting {}", entry.getValue(), e);
       }
@@ -171,18 +281,41 @@ public class Application  {
 
     for (Entry<String, SourceRunner> entry : materializedConfiguration
         .getSourceRunners().entrySet()) {
+      if (keptSources.contains(entry.getKey())) {
+        continue;
+      }
       try{
         logger.info("Starting Source " + entry.getKey());
         supervisor.supervise(entry.getValue(),
-          new SupervisorPolicy.AlwaysRestartPolicy(), LifecycleState.START);
+          new SupervisorPolicy.AlwaysRestartPolicy(), LifecycleState.START,
+          channelsOf(materializedConfiguration,
+              BasicConfigurationConstants.CONFIG_SOURCES_PREFIX
+              + entry.getKey()));
       } catch (Exception e) {
         logger.error("Error while starting {}", entry.getValue(), e);
       }
     }
-
-    this.loadMonitoring();
   }
 
+  /**
+   * Returns the channels a source or sink runner is connected to, or all
+   * channels when the configuration does not record it.
+   */
+  private static List<Channel> channelsOf(MaterializedConfiguration conf,
+      String key) {
+    ComponentSignature signature = conf.getSignatures().get(key);
+    if (signature == null) {
+      return new ArrayList<Channel>(conf.getChannels().values());
+    }
+    List<Channel> channels = new ArrayList<Channel>();
+    for (String name : signature.getChannels()) {
+      Channel channel = conf.getChannels().get(name);
+      if (channel != null) {
+        channels.add(channel);
+      }
+    }
+    return channels;
+  }
 
   @SuppressWarnings("unchecked")
   private void loadMonitoring() {
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.node;
+
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+
+/**
+ * Describes what a materialized component was built from: the properties
+ * of the component (and, for sink runners, of the sinks they drive) and the
+ * names of the channels it is connected to. Two signatures are equal when a
+ * running component could be kept instead of its replacement.
+ */
+public final class ComponentSignature {
+
+  private final String properties;
+  private final ImmutableSet<String> channels;
+
+  public ComponentSignature(String properties, Collection<String> channels) {
+    this.properties = properties;
+    this.channels = ImmutableSet.copyOf(channels);
+  }
+
+  public ImmutableSet<String> getChannels() {
+    return channels;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+    if (!(obj instanceof ComponentSignature)) {
+      return false;
+    }
+    ComponentSignature other = (ComponentSignature) obj;
+    return properties.equals(other.properties)
+        && channels.equals(other.channels);
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * properties.hashCode() + channels.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "{ properties:" + properties + " channels:" + channels + " }";
+  }
+
+}
@@ -37,10 +37,19 @@ public interface MaterializedConfiguration {
 
   public void addChannel(String name, Channel channel);
 
+  /**
+   * Records what a component was built from. The key is the component name
+   * prefixed with its kind, e.g. {@code sources.r1}, {@code sinks.k1} (for
+   * the sink runner) or {@code channels.c1}.
+   */
+  public void addSignature(String key, ComponentSignature signature);
+
   public ImmutableMap<String, SourceRunner> getSourceRunners();
 
   public ImmutableMap<String, SinkRunner> getSinkRunners();
 
   public ImmutableMap<String, Channel> getChannels();
 
+  public ImmutableMap<String, ComponentSignature> getSignatures();
+
 }
@@ -32,11 +32,13 @@ public class SimpleMaterializedConfiguration implements MaterializedConfiguratio
   private final Map<String, Channel> channels;
   private final Map<String, SourceRunner> sourceRunners;
   private final Map<String, SinkRunner> sinkRunners;
+  private final Map<String, ComponentSignature> signatures;
 
   public SimpleMaterializedConfiguration() {
     channels = new HashMap<String, Channel>();
     sourceRunners = new HashMap<String, SourceRunner>();
     sinkRunners = new HashMap<String, SinkRunner>();
+    signatures = new HashMap<String, ComponentSignature>();
   }
 
   @Override
@@ -59,6 +61,11 @@ public class SimpleMaterializedConfiguration implements MaterializedConfiguratio
     channels.put(name, channel);
   }
 
+  @Override
+  public void addSignature(String key, ComponentSignature signature) {
+    signatures.put(key, signature);
+  }
+
   @Override
   public ImmutableMap<String, Channel> getChannels() {
     return ImmutableMap.copyOf(channels);
@@ -74,4 +81,9 @@ public class SimpleMaterializedConfiguration implements MaterializedConfiguratio
     return ImmutableMap.copyOf(sinkRunners);
   }
 
+  @Override
+  public ImmutableMap<String, ComponentSignature> getSignatures() {
+    return ImmutableMap.copyOf(signatures);
+  }
+
 }
@@ -75,6 +75,8 @@ public abstract class AbstractAvroEventSerializer<T>
         context.getInteger(SYNC_INTERVAL_BYTES, DEFAULT_SYNC_INTERVAL_BYTES);
     String compressionCodec =
         context.getString(COMPRESSION_CODEC, DEFAULT_COMPRESSION_CODEC);
+    int compressionLevel =
+        context.getInteger(COMPRESSION_LEVEL, DEFAULT_COMPRESSION_LEVEL);
 
     writer = new ReflectDatumWriter<T>(getSchema());
     dataFileWriter = new DataFileWriter<T>(writer);
@@ -82,7 +84,9 @@ public abstract class AbstractAvroEventSerializer<T>
     dataFileWriter.setSyncInterval(syncIntervalBytes);
 
     try {
-      CodecFactory codecFactory = CodecFactory.fromString(compressionCodec);
+      CodecFactory codecFactory = "deflate".equals(compressionCodec)
+          ? CodecFactory.deflateCodec(compressionLevel)
+          : CodecFactory.fromString(compressionCodec);
       dataFileWriter.setCodec(codecFactory);
     } catch (AvroRuntimeException e) {
       logger.warn("Unable to instantiate avro codec with name (" +
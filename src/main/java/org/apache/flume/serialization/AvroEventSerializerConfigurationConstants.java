@@ -35,4 +35,11 @@ public class AvroEventSerializerConfigurationConstants {
   public static final String COMPRESSION_CODEC = "compressionCodec";
   public static final String DEFAULT_COMPRESSION_CODEC = "null"; // no codec
 
+  /**
+   * Deflate level used when the compression codec is "deflate",
+   * 1 (fastest) to 9 (smallest).
+   */
+  public static final String COMPRESSION_LEVEL = "compressionLevel";
+  public static final int DEFAULT_COMPRESSION_LEVEL = 6; // zlib default
+
 }
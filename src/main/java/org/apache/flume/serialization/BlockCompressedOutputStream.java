@@ -0,0 +1,212 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.apache.flume.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+
+import static org.apache.flume.serialization.TextEventSerializerConfigurationConstants.*;
+
+/**
+ * <p>
+ * Buffers serialized events and writes them to the wrapped stream as a
+ * sequence of independent gzip members, one per block. Blocks are only ever
+ * cut at an event boundary (see {@link #endEvent()}), so every member
+ * contains whole events and can be decompressed on its own. This is what
+ * makes the output splittable: a reader can start at any member header.
+ * The concatenation of members is itself a valid gzip file and can be read
+ * with standard tools such as {@code zcat}.
+ * </p>
+ *
+ * <p>
+ * A block is written when it has grown past the configured block size, on
+ * {@link #flush()}, and on {@link #close()}. The {@link Deflater} and
+ * the staging buffers are reused across blocks.
+ * </p>
+ *
+ * <p>
+ * This class is not thread safe, which matches the {@link EventSerializer}
+ * contract.
+ * </p>
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(BlockCompressedOutputStream.class);
+
+  private static final byte[] GZIP_HEADER = {
+      0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+  private final OutputStream out;
+  private final int blockSize;
+  private final Deflater deflater;
+  private final CRC32 crc = new CRC32();
+  private final byte[] trailer = new byte[8];
+
+  private byte[] block;
+  private int blockLength = 0;
+  private byte[] deflated;
+
+  private long blocksWritten = 0;
+  private long uncompressedBytes = 0;
+  private long compressedBytes = 0;
+
+  public BlockCompressedOutputStream(OutputStream out, int blockSize,
+      int level) {
+    Preconditions.checkNotNull(out, "out must not be null");
+    Preconditions.checkArgument(blockSize > 0,
+        "blockSize must be positive: %s", blockSize);
+    this.out = out;
+    this.blockSize = blockSize;
+    this.deflater = new Deflater(level, true);
+    this.block = new byte[blockSize];
+    this.deflated = new byte[Math.max(512, blockSize / 4)];
+  }
+
+  /**
+   * Wraps {@code out} according to the serializer context, or returns
+   * {@code null} if block compression is not configured.
+   */
+  public static BlockCompressedOutputStream fromContext(Context context,
+      OutputStream out) {
+    String codec = context.getString(COMPRESSION_CODEC,
+        DEFAULT_COMPRESSION_CODEC);
+    if (DEFAULT_COMPRESSION_CODEC.equals(codec)) {
+      return null;
+    }
+    if (!CODEC_DEFLATE.equals(codec)) {
+      logger.warn("Unsupported block compression codec (" + codec +
+          "). Compression disabled.");
+      return null;
+    }
+    return new BlockCompressedOutputStream(out,
+        context.getInteger(COMPRESSION_BLOCK_BYTES,
+            DEFAULT_COMPRESSION_BLOCK_BYTES),
+        context.getInteger(COMPRESSION_LEVEL, DEFAULT_COMPRESSION_LEVEL));
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    ensureCapacity(blockLength + 1);
+    block[blockLength++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    ensureCapacity(blockLength + len);
+    System.arraycopy(b, off, block, blockLength, len);
+    blockLength += len;
+  }
+
+  /**
+   * Marks the end of an event. If the current block has reached the block
+   * size it is compressed and written to the underlying stream.
+   */
+  public void endEvent() throws IOException {
+    if (blockLength >= blockSize) {
+      writeBlock();
+    }
+  }
+
+  /**
+   * Compresses any buffered events into a final (possibly short) block and
+   * flushes the underlying stream.
+   */
+  @Override
+  public void flush() throws IOException {
+    writeBlock();
+    out.flush();
+  }
+
+  /**
+   * Writes any buffered events and releases the compressor. The underlying
+   * stream is left open; it belongs to the serializer's driver.
+   */
+  @Override
+  public void close() throws IOException {
+    writeBlock();
+    deflater.end();
+  }
+
+  public long getBlocksWritten() {
+    return blocksWritten;
+  }
+
+  public long getUncompressedBytes() {
+    return uncompressedBytes;
+  }
+
+  public long getCompressedBytes() {
+    return compressedBytes;
+  }
+
+  private void writeBlock() throws IOException {
+    if (blockLength == 0) {
+      return;
+    }
+
+    crc.reset();
+    crc.update(block, 0, blockLength);
+    deflater.reset();
+    deflater.setInput(block, 0, blockLength);
+    deflater.finish();
+
+    out.write(GZIP_HEADER);
+    long written = GZIP_HEADER.length;
+    while (!deflater.finished()) {
+      int n = deflater.deflate(deflated, 0, deflated.length);
+      out.write(deflated, 0, n);
+      written += n;
+    }
+
+    writeIntLE(trailer, 0, (int) crc.getValue());
+    writeIntLE(trailer, 4, blockLength);
+    out.write(trailer);
+    written += trailer.length;
+
+    blocksWritten++;
+    uncompressedBytes += blockLength;
+    compressedBytes += written;
+    blockLength = 0;
+  }
+
+  private void ensureCapacity(int required) {
+    if (required > block.length) {
+      byte[] grown = new byte[Math.max(required, block.length * 2)];
+      System.arraycopy(block, 0, grown, 0, blockLength);
+      block = grown;
+    }
+  }
+
+  private static void writeIntLE(byte[] buf, int off, int v) {
+    buf[off] = (byte) v;
+    buf[off + 1] = (byte) (v >>> 8);
+    buf[off + 2] = (byte) (v >>> 16);
+    buf[off + 3] = (byte) (v >>> 24);
+  }
+
+}
@@ -0,0 +1,290 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.serialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+import org.apache.flume.annotations.InterfaceAudience;
+import org.apache.flume.annotations.InterfaceStability;
+import org.apache.flume.tools.PlatformDetect;
+
+/**
+ * <p/>Class that stores the position in a target file in a small binary
+ * checkpoint file of fixed size, as an alternative to the ever growing
+ * {@link DurablePositionTracker}.
+ *
+ * <p/>The file starts with a header holding the target, written once when
+ * the file is created, followed by two slots that are overwritten in turn
+ * with positional writes. Each slot holds a sequence number, the position
+ * and a checksum, so a write torn by a crash can only damage the slot being
+ * written; on recovery the valid slot with the highest sequence number wins.
+ *
+ * <p/>Positions can be committed in groups: a stored position is written and
+ * forced to disk once {@code commitCount} positions have been stored since
+ * the last commit, or once {@code commitIntervalMillis} have passed since
+ * then, whichever comes first. The interval is only checked when a position
+ * is stored, so the last stored position of a reader that went idle stays
+ * uncommitted until the next store or {@link #close()}. Stored positions
+ * that have not been committed yet are lost by a crash, so the recovered position may be
+ * behind the last stored one, and data between the two is read again, but
+ * it is never ahead of it. {@link #close()} commits the last position.
+ *
+ * <p/>Note: This class is not thread-safe.
+ */
+@InterfaceAudience.Private
+@InterfaceStability.Evolving
+public class CheckpointPositionTracker implements PositionTracker {
+
+  private static final int MAGIC = 0x464c4350; // "FLCP"
+  private static final int VERSION = 1;
+  private static final int SLOT_SIZE = 24;
+
+  private final File checkpointFile;
+  private final RandomAccessFile file;
+  private final FileChannel chan;
+  private final String target;
+  private final long slotsOffset;
+  private final int commitCount;
+  private final long commitIntervalMillis;
+  private final ByteBuffer slotBuf = ByteBuffer.allocate(SLOT_SIZE);
+  private final CRC32 crc = new CRC32();
+
+  private long position;
+  private long sequence;
+  private int pending;
+  private long lastCommit;
+  private boolean isOpen;
+
+  /**
+   * Opens the checkpoint file, creating it for the given target if it does
+   * not exist. The target is only used if the file did not exist.
+   *
+   * @param checkpointFile
+   * @param target
+   * @param commitCount number of stored positions to commit at once, at
+   * least 1
+   * @param commitIntervalMillis time after the last commit from which a
+   * stored position is committed regardless of the count, or 0 to commit on
+   * count alone; it is only checked when a position is stored
+   * @return
+   * @throws IOException if the file exists but is not a valid checkpoint
+   */
+  public static CheckpointPositionTracker getInstance(File checkpointFile,
+      String target, int commitCount, long commitIntervalMillis)
+      throws IOException {
+    Preconditions.checkNotNull(checkpointFile, "checkpointFile must not be null");
+    Preconditions.checkNotNull(target, "target must not be null");
+    Preconditions.checkArgument(commitCount > 0,
+        "commitCount must be positive");
+    Preconditions.checkArgument(commitIntervalMillis >= 0,
+        "commitIntervalMillis must not be negative");
+
+    if (!checkpointFile.exists()) {
+      create(checkpointFile, target);
+    }
+    return new CheckpointPositionTracker(checkpointFile, commitCount,
+        commitIntervalMillis);
+  }
+
+  /**
+   * Writes a new checkpoint file at position 0 to a temporary file that is
+   * then renamed, so that the header is never seen partially written.
+   */
+  private static void create(File checkpointFile, String target)
+      throws IOException {
+    byte[] targetBytes = target.getBytes(Charsets.UTF_8);
+    ByteBuffer buf = ByteBuffer.allocate(12 + targetBytes.length
+        + 2 * SLOT_SIZE);
+    buf.putInt(MAGIC).putInt(VERSION).putInt(targetBytes.length);
+    buf.put(targetBytes);
+    CRC32 crc = new CRC32();
+    putSlot(buf, 0L, 0L, crc);
+    putSlot(buf, -1L, 0L, crc);
+    buf.flip();
+
+    File tmp = File.createTempFile(checkpointFile.getName(), ".tmp",
+        checkpointFile.getParentFile());
+    RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+    try {
+      FileChannel chan = out.getChannel();
+      while (buf.hasRemaining()) {
+        chan.write(buf);
+      }
+      chan.force(true);
+    } finally {
+      out.close();
+    }
+    if (PlatformDetect.isWindows() && checkpointFile.exists()) {
+      if (!checkpointFile.delete()) {
+        throw new IOException("Unable to delete existing checkpoint file " +
+            checkpointFile);
+      }
+    }
+    if (!tmp.renameTo(checkpointFile)) {
+      tmp.delete();
+      throw new IOException("Unable to rename " + tmp + " to " +
+          checkpointFile);
+    }
+  }
+
+  private CheckpointPositionTracker(File checkpointFile, int commitCount,
+      long commitIntervalMillis) throws IOException {
+    this.checkpointFile = checkpointFile;
+    this.commitCount = commitCount;
+    this.commitIntervalMillis = commitIntervalMillis;
+    this.file = new RandomAccessFile(checkpointFile, "rw");
+    this.chan = file.getChannel();
+
+    try {
+      ByteBuffer header = ByteBuffer.allocate(12);
+      readFully(header, 0L);
+      if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+        throw new IOException("Not a checkpoint file: " + checkpointFile);
+      }
+      int targetLength = header.getInt();
+      if (targetLength < 0 || 12L + targetLength + 2 * SLOT_SIZE
+          > chan.size()) {
+        throw new IOException("Corrupt checkpoint file: " + checkpointFile);
+      }
+      ByteBuffer targetBuf = ByteBuffer.allocate(targetLength);
+      readFully(targetBuf, 12L);
+      this.target = new String(targetBuf.array(), Charsets.UTF_8);
+      this.slotsOffset = 12L + targetLength;
+
+      // recover the valid slot with the highest sequence number
+      boolean found = false;
+      for (int slot = 0; slot < 2; slot++) {
+        slotBuf.clear();
+        readFully(slotBuf, slotsOffset + slot * SLOT_SIZE);
+        long seq = slotBuf.getLong();
+        long pos = slotBuf.getLong();
+        long checksum = slotBuf.getLong();
+        if (checksum == checksum(seq, pos, crc) && pos >= 0 &&
+            (!found || seq > sequence)) {
+          sequence = seq;
+          position = pos;
+          found = true;
+        }
+      }
+      if (!found) {
+        throw new IOException("No valid checkpoint in " + checkpointFile);
+      }
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+
+    lastCommit = System.currentTimeMillis();
+    isOpen = true;
+  }
+
+  @Override
+  public void storePosition(long position) throws IOException {
+    Preconditions.checkState(isOpen, "Tracker is closed");
+    this.position = position;
+    pending++;
+    if (pending >= commitCount || (commitIntervalMillis > 0 &&
+        System.currentTimeMillis() - lastCommit >= commitIntervalMillis)) {
+      commit();
+    }
+  }
+
+  /**
+   * Writes the last stored position to the slot not holding the previous
+   * checkpoint and forces it to disk.
+   */
+  private void commit() throws IOException {
+    long seq = sequence + 1;
+    slotBuf.clear();
+    putSlot(slotBuf, seq, position, crc);
+    slotBuf.flip();
+    long offset = slotsOffset + (seq & 1L) * SLOT_SIZE;
+    while (slotBuf.hasRemaining()) {
+      offset += chan.write(slotBuf, offset);
+    }
+    chan.force(false);
+    sequence = seq;
+    pending = 0;
+    lastCommit = System.currentTimeMillis();
+  }
+
+  @Override
+  public long getPosition() {
+    return position;
+  }
+
+  @Override
+  public String getTarget() {
+    return target;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (isOpen) {
+      try {
+        if (pending > 0) {
+          commit();
+        }
+      } finally {
+        isOpen = false;
+        file.close();
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "CheckpointPositionTracker{file=" + checkpointFile + ", target=" +
+        target + ", position=" + position + "}";
+  }
+
+  private void readFully(ByteBuffer buf, long offset) throws IOException {
+    while (buf.hasRemaining()) {
+      int read = chan.read(buf, offset);
+      if (read < 0) {
+        throw new IOException("Truncated checkpoint file: " + checkpointFile);
+      }
+      offset += read;
+    }
+    buf.flip();
+  }
+
+  private static void putSlot(ByteBuffer buf, long seq, long pos, CRC32 crc) {
+    buf.putLong(seq).putLong(pos).putLong(checksum(seq, pos, crc));
+  }
+
+  private static long checksum(long seq, long pos, CRC32 crc) {
+    crc.reset();
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      crc.update((int) (seq >>> shift));
+    }
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      crc.update((int) (pos >>> shift));
+    }
+    return crc.getValue();
+  }
+
+}
@@ -40,10 +40,13 @@ public class HeaderAndBodyTextEventSerializer implements EventSerializer {
 
   private final OutputStream out;
   private final boolean appendNewline;
+  // null unless block compression is configured
+  private final BlockCompressedOutputStream compressed;
 
   private HeaderAndBodyTextEventSerializer(OutputStream out, Context ctx) {
     this.appendNewline = ctx.getBoolean(APPEND_NEWLINE, APPEND_NEWLINE_DFLT);
-    this.out = out;
+    this.compressed = BlockCompressedOutputStream.fromContext(ctx, out);
+    this.out = compressed != null ? compressed : out;
   }
 
   @Override
@@ -62,8 +65,10 @@ public class HeaderAndBodyTextEventSerializer implements EventSerializer {
   }
 
   @Override
-  public void beforeClose() {
-    // noop
+  public void beforeClose() throws IOException {
+    if (compressed != null) {
+      compressed.close();
+    }
   }
 
   @Override
@@ -73,11 +78,16 @@ public class HeaderAndBodyTextEventSerializer implements EventSerializer {
     if (appendNewline) {
       out.write('\n');
     }
+    if (compressed != null) {
+      compressed.endEvent();
+    }
   }
 
   @Override
   public void flush() throws IOException {
-    // noop
+    if (compressed != null) {
+      compressed.flush();
+    }
   }
 
   public static class Builder implements EventSerializer.Builder {
@@ -21,6 +21,7 @@ package org.apache.flume.serialization;
 import com.google.common.base.Charsets;
 import org.apache.flume.annotations.InterfaceAudience;
 import org.apache.flume.annotations.InterfaceStability;
+import org.apache.flume.tools.DirectMemoryUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +31,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
@@ -43,6 +45,14 @@ import java.nio.charset.CoderResult;
  *
  * <p/>The ability to {@link #reset()} is dependent on the underlying {@link
  * PositionTracker} instance's durability semantics.
+ *
+ * <p/>By default the file is read through a direct buffer that is refilled
+ * from the file channel. A stream that is memory mapped instead maps a
+ * read-only window of the file at a time and slides it forward as the file
+ * is read, so that characters are decoded straight from the page cache.
+ * A window is unmapped as soon as the next one is mapped or the stream is
+ * closed, rather than when it is garbage collected, as Windows does not let
+ * a file with a mapped region be renamed or deleted.
  */
 @InterfaceAudience.Private
 @InterfaceStability.Evolving
@@ -53,17 +63,27 @@ public class ResettableFileInputStream extends ResettableInputStream
 
   public static final int DEFAULT_BUF_SIZE = 16384;
 
+  /** Default size of the window of a memory mapped stream. */
+  public static final int DEFAULT_MAP_WINDOW_SIZE = 32 * 1024 * 1024;
+
+  // longest encoding of a character in the supported charsets, the decoder
+  // needs at least this many bytes to be sure to make progress
+  private static final int MAX_CHAR_BYTES = 4;
+
   private final File file;
   private final PositionTracker tracker;
   private final FileInputStream in;
   private final FileChannel chan;
-  private final ByteBuffer buf;
+  private final boolean memoryMapped;
+  private final int bufSize;
+  private ByteBuffer buf;
   private final CharBuffer charBuf;
   private final byte[] byteBuf;
   private final long fileSize;
   private final CharsetDecoder decoder;
   private long position;
   private long syncPosition;
+  private boolean unmapFailed;
 
   /**
    *
@@ -99,11 +119,42 @@ public class ResettableFileInputStream extends ResettableInputStream
   public ResettableFileInputStream(File file, PositionTracker tracker,
                                    int bufSize, Charset charset)
       throws IOException {
+    this(file, tracker, bufSize, charset, false);
+  }
+
+  /**
+   *
+   * @param file
+   *        File to read
+   *
+   * @param tracker
+   *        PositionTracker implementation to make offset position durable
+   *
+   * @param bufSize
+   *        Size of the underlying buffer used for input or, if the stream is
+   *        memory mapped, of the mapped window
+   *
+   * @param charset
+   *        Character set used for decoding text, as necessary
+   *
+   * @param memoryMapped
+   *        Whether to map windows of the file instead of reading it into a
+   *        buffer
+   *
+   * @throws FileNotFoundException
+   */
+  public ResettableFileInputStream(File file, PositionTracker tracker,
+                                   int bufSize, Charset charset,
+                                   boolean memoryMapped)
+      throws IOException {
     this.file = file;
     this.tracker = tracker;
     this.in = new FileInputStream(file);
     this.chan = in.getChannel();
-    this.buf = ByteBuffer.allocateDirect(bufSize);
+    this.memoryMapped = memoryMapped;
+    this.bufSize = bufSize;
+    this.buf = memoryMapped
+        ? ByteBuffer.allocate(0) : ByteBuffer.allocateDirect(bufSize);
     buf.flip();
     this.byteBuf = new byte[1]; // single byte
     this.charBuf = CharBuffer.allocate(1); // single char
@@ -152,7 +203,8 @@ public class ResettableFileInputStream extends ResettableInputStream
 
   @Override
   public synchronized int readChar() throws IOException {
-    if (!buf.hasRemaining()) {
+    if (buf.remaining() < MAX_CHAR_BYTES &&
+        position + buf.remaining() < fileSize) {
       refillBuf();
     }
 
@@ -188,9 +240,25 @@ public class ResettableFileInputStream extends ResettableInputStream
 
   }
 
+  /**
+   * Makes the bytes following the unread bytes of the buffer available,
+   * keeping the unread bytes.
+   */
   private void refillBuf() throws IOException {
+    if (memoryMapped) {
+      unmapWindow();
+      // map a new window starting at the first unread byte
+      long size = Math.min(bufSize, fileSize - position);
+      if (size <= 0) {
+        buf = ByteBuffer.allocate(0);
+      } else {
+        buf = chan.map(FileChannel.MapMode.READ_ONLY, position, size);
+      }
+      return;
+    }
+    long readFrom = position + buf.remaining();
     buf.compact();
-    chan.position(position); // ensure we read from the proper offset
+    chan.position(readFrom); // ensure we read from the proper offset
     chan.read(buf);
     buf.flip();
   }
@@ -262,8 +330,31 @@ public class ResettableFileInputStream extends ResettableInputStream
     }
   }
 
+  /**
+   * Unmaps the current window, if any, leaving an empty buffer. Once
+   * unmapping fails, windows are left to the garbage collector.
+   */
+  private void unmapWindow() {
+    if (!(buf instanceof MappedByteBuffer)) {
+      return;
+    }
+    MappedByteBuffer window = (MappedByteBuffer) buf;
+    buf = ByteBuffer.allocate(0);
+    if (unmapFailed) {
+      return;
+    }
+    try {
+      DirectMemoryUtils.unmap(window);
+    } catch (Exception e) {
+      unmapFailed = true;
+      logger.warn("Unable to unmap a window of " + file + ", leaving it to "
+          + "the garbage collector", e);
+    }
+  }
+
   @Override
-  public void close() throws IOException {
+  public synchronized void close() throws IOException {
+    unmapWindow();
     tracker.close();
     in.close();
   }
@@ -0,0 +1,47 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.serialization;
+
+import java.util.zip.Deflater;
+
+public class TextEventSerializerConfigurationConstants {
+
+  /**
+   * Block compression codec for the text serializers. Supported values are
+   * "null" (no compression) and "deflate" (one gzip member per block).
+   */
+  public static final String COMPRESSION_CODEC = "compressionCodec";
+  public static final String DEFAULT_COMPRESSION_CODEC = "null"; // no codec
+  public static final String CODEC_DEFLATE = "deflate";
+
+  /**
+   * Uncompressed size, in approximate bytes, after which a block is cut at
+   * the next event boundary.
+   */
+  public static final String COMPRESSION_BLOCK_BYTES = "compressionBlockBytes";
+  public static final int DEFAULT_COMPRESSION_BLOCK_BYTES = 256 * 1024;
+
+  /**
+   * Deflate level, 1 (fastest) to 9 (smallest), -1 for the zlib default.
+   */
+  public static final String COMPRESSION_LEVEL = "compressionLevel";
+  public static final int DEFAULT_COMPRESSION_LEVEL =
+      Deflater.DEFAULT_COMPRESSION;
+
+}
@@ -32,7 +32,9 @@ import org.apache.flume.FlumeException;
 import org.apache.flume.Transaction;
 import org.apache.flume.api.RpcClient;
 import org.apache.flume.api.RpcClientConfigurationConstants;
+import org.apache.flume.channel.ChannelUtils;
 import org.apache.flume.conf.Configurable;
+import org.apache.flume.instrumentation.EventTracer;
 import org.apache.flume.instrumentation.SinkCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -125,6 +127,14 @@ import java.util.concurrent.locks.ReentrantLock;
  * <td>compression level</td>
  * <td>6</td>
  * </tr>
+ * <tr>
+ * <td><tt>traceHop</tt></td>
+ * <td>Hop name to mark traced events with before they are sent, see
+ * {@link EventTracer}. The time since the previous mark is then mostly
+ * spent in the channel.</td>
+ * <td>String</td>
+ * <td>none (not traced)</td>
+ * </tr>
  * </table>
  * <p>
  * <b>Metrics</b>
@@ -148,6 +158,7 @@ public abstract class AbstractRpcSink extends AbstractSink
   private RpcClient client;
   private Properties clientProps;
   private SinkCounter sinkCounter;
+  private EventTracer tracer;
   private int cxnResetInterval;
   private final int DEFAULT_CXN_RESET_INTERVAL = 0;
   private final ScheduledExecutorService cxnResetExecutor = Executors
@@ -176,6 +187,7 @@ public abstract class AbstractRpcSink extends AbstractSink
     if (sinkCounter == null) {
       sinkCounter = new SinkCounter(getName());
     }
+    tracer = EventTracer.fromContext(context);
     cxnResetInterval = context.getInteger("reset-connection-interval",
       DEFAULT_CXN_RESET_INTERVAL);
     if(cxnResetInterval == DEFAULT_CXN_RESET_INTERVAL) {
@@ -285,6 +297,9 @@ public abstract class AbstractRpcSink extends AbstractSink
   public void start() {
     logger.info("Starting {}...", this);
     sinkCounter.start();
+    if (tracer != null) {
+      tracer.start();
+    }
     try {
       createConnection();
     } catch (FlumeException e) {
@@ -315,6 +330,9 @@ public abstract class AbstractRpcSink extends AbstractSink
         "to shut down");
     }
     sinkCounter.stop();
+    if (tracer != null) {
+      tracer.stop();
+    }
     super.stop();
 
     logger.info("Rpc sink {} stopped. Metrics: {}", getName(), sinkCounter);
@@ -338,36 +356,30 @@ public abstract class AbstractRpcSink extends AbstractSink
 
       verifyConnection();
 
-      List<Event> batch = Lists.newLinkedList();
-
-      for (int i = 0; i < client.getBatchSize(); i++) {
-        Event event = channel.take();
-
-        if (event == null) {
-          break;
-        }
-
-        batch.add(event);
-      }
-
-      int size = batch.size();
       int batchSize = client.getBatchSize();
+      List<Event> batch = Lists.newArrayListWithCapacity(batchSize);
+      int size = ChannelUtils.takeBatch(channel, batchSize, batch);
 
       if (size == 0) {
-        sinkCounter.incrementBatchEmptyCount();
+        sinkCounter.increment(SinkCounter.Counter.BATCH_EMPTY);
         status = Status.BACKOFF;
       } else {
         if (size < batchSize) {
-          sinkCounter.incrementBatchUnderflowCount();
+          sinkCounter.increment(SinkCounter.Counter.BATCH_UNDERFLOW);
         } else {
-          sinkCounter.incrementBatchCompleteCount();
+          sinkCounter.increment(SinkCounter.Counter.BATCH_COMPLETE);
+        }
+        sinkCounter.add(SinkCounter.Counter.EVENT_DRAIN_ATTEMPT, size);
+        if (tracer != null) {
+          batch = tracer.markCopies(batch);
         }
-        sinkCounter.addToEventDrainAttemptCount(size);
+        long startNanos = System.nanoTime();
         client.appendBatch(batch);
+        sinkCounter.recordBatchDeliveryLatency(startNanos);
       }
 
       transaction.commit();
-      sinkCounter.addToEventDrainSuccessCount(size);
+      sinkCounter.add(SinkCounter.Counter.EVENT_DRAIN_SUCCESS, size);
 
     } catch (Throwable t) {
       transaction.rollback();
@@ -50,6 +50,7 @@ import org.apache.flume.Source;
 import org.apache.flume.conf.Configurable;
 import org.apache.flume.conf.Configurables;
 import org.apache.flume.event.EventBuilder;
+import org.apache.flume.instrumentation.EventTracer;
 import org.apache.flume.instrumentation.SourceCounter;
 import org.apache.flume.source.avro.AvroFlumeEvent;
 import org.apache.flume.source.avro.AvroSourceProtocol;
@@ -111,6 +112,14 @@ import org.slf4j.LoggerFactory;
  * <td>Count / int</td>
  * <td>0(optional)</td>
  * </tr>
+ * <tr>
+ * <td><tt>traceHop</tt></td>
+ * <td>Hop name to mark traced events with as they are received, see
+ * {@link EventTracer}. The time since the previous mark is then mostly
+ * spent in the upstream sink and on the network.</td>
+ * <td>String</td>
+ * <td>none (not traced)</td>
+ * </tr>
  * </table>
  * <p>
  * <b>Metrics</b>
@@ -144,6 +153,7 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
 
   private Server server;
   private SourceCounter sourceCounter;
+  private EventTracer tracer;
 
   private int maxThreads;
   private ScheduledExecutorService connectionCountUpdater;
@@ -185,6 +195,7 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
     if (sourceCounter == null) {
       sourceCounter = new SourceCounter(getName());
     }
+    tracer = EventTracer.fromContext(context);
   }
 
   @Override
@@ -203,6 +214,9 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
     connectionCountUpdater = Executors.newSingleThreadScheduledExecutor();
     server.start();
     sourceCounter.start();
+    if (tracer != null) {
+      tracer.start();
+    }
     super.start();
     final NettyServer srv = (NettyServer)server;
     connectionCountUpdater.scheduleWithFixedDelay(new Runnable(){
@@ -261,6 +275,9 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
           "for Avro server to stop. Exiting. Exception follows.", e);
     }
     sourceCounter.stop();
+    if (tracer != null) {
+      tracer.stop();
+    }
     connectionCountUpdater.shutdown();
     while(!connectionCountUpdater.isTerminated()){
       try {
@@ -299,11 +316,14 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
   public Status append(AvroFlumeEvent avroEvent) {
     logger.debug("Avro source {}: Received avro event: {}", getName(),
         avroEvent);
-    sourceCounter.incrementAppendReceivedCount();
-    sourceCounter.incrementEventReceivedCount();
+    sourceCounter.increment(SourceCounter.Counter.APPEND_RECEIVED);
+    sourceCounter.increment(SourceCounter.Counter.EVENTS_RECEIVED);
 
     Event event = EventBuilder.withBody(avroEvent.getBody().array(),
         toStringMap(avroEvent.getHeaders()));
+    if (tracer != null) {
+      tracer.mark(event);
+    }
 
     try {
       getChannelProcessor().processEvent(event);
@@ -313,8 +333,8 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
       return Status.FAILED;
     }
 
-    sourceCounter.incrementAppendAcceptedCount();
-    sourceCounter.incrementEventAcceptedCount();
+    sourceCounter.increment(SourceCounter.Counter.APPEND_ACCEPTED);
+    sourceCounter.increment(SourceCounter.Counter.EVENTS_ACCEPTED);
 
     return Status.OK;
   }
@@ -323,8 +343,8 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
   public Status appendBatch(List<AvroFlumeEvent> events) {
     logger.debug("Avro source {}: Received avro event batch of {} events.",
         getName(), events.size());
-    sourceCounter.incrementAppendBatchReceivedCount();
-    sourceCounter.addToEventReceivedCount(events.size());
+    sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_RECEIVED);
+    sourceCounter.add(SourceCounter.Counter.EVENTS_RECEIVED, events.size());
 
     List<Event> batch = new ArrayList<Event>();
 
@@ -334,6 +354,9 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
 
       batch.add(event);
     }
+    if (tracer != null) {
+      tracer.mark(batch);
+    }
 
     try {
       getChannelProcessor().processEventBatch(batch);
@@ -346,8 +369,8 @@ public class AvroSource extends AbstractSource implements EventDrivenSource,
       return Status.FAILED;
     }
 
-    sourceCounter.incrementAppendBatchAcceptedCount();
-    sourceCounter.addToEventAcceptedCount(events.size());
+    sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_ACCEPTED);
+    sourceCounter.add(SourceCounter.Counter.EVENTS_ACCEPTED, events.size());
 
     return Status.OK;
   }
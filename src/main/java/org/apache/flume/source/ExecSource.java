@@ -27,9 +27,9 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.flume.Channel;
 import org.apache.flume.Context;
@@ -45,7 +45,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import java.nio.charset.Charset;
 
@@ -131,6 +130,15 @@ import java.nio.charset.Charset;
  * <td>integer</td>
  * <td>20</td>
  * </tr>
+ * <tr>
+ * <td><tt>batchTimeout</tt></td>
+ * <td>How long in milliseconds to wait for a batch to fill up before it is
+ * committed anyway. Batches of all exec sources are checked by one shared
+ * {@link SharedFlushScheduler} thread, and the standard error of all
+ * commands is read by one {@link SharedStderrDrainer} thread.</td>
+ * <td>Long</td>
+ * <td>3000</td>
+ * </tr>
  * </table>
  * <p>
  * <b>Metrics</b>
@@ -276,8 +284,10 @@ Configurable {
     private Process process = null;
     private SystemClock systemClock = new SystemClock();
     private Long lastPushToChannel = systemClock.currentTimeMillis();
-    ScheduledExecutorService timedFlushService;
-    ScheduledFuture<?> future;
+    // guards the batch between the reading thread and the timed flush
+    private final ReentrantLock batchLock = new ReentrantLock();
+    private ScheduledFuture<?> future;
+    private SharedStderrDrainer.Drain stderrDrain;
 
     @Override
     public void run() {
@@ -287,10 +297,6 @@ Configurable {
         String line = null;
         final List<Event> eventList = new ArrayList<Event>();
 
-        timedFlushService = Executors.newSingleThreadScheduledExecutor(
-                new ThreadFactoryBuilder().setNameFormat(
-                "timedFlushExecService" +
-                Thread.currentThread().getId() + "-%d").build());
         try {
           if(shell != null) {
             String[] commandArgs = formulateShellCommand(shell, command);
@@ -302,46 +308,49 @@ Configurable {
           reader = new BufferedReader(
               new InputStreamReader(process.getInputStream(), charset));
 
-          // StderrLogger dies as soon as the input stream is invalid
-          StderrReader stderrReader = new StderrReader(new BufferedReader(
-              new InputStreamReader(process.getErrorStream(), charset)), logStderr);
-          stderrReader.setName("StderrReader-[" + command + "]");
-          stderrReader.setDaemon(true);
-          stderrReader.start();
+          stderrDrain = SharedStderrDrainer.register(command,
+              process.getErrorStream(), charset, logStderr);
 
-          future = timedFlushService.scheduleWithFixedDelay(new Runnable() {
+          future = SharedFlushScheduler.schedule(new Runnable() {
               @Override
               public void run() {
+                // the reading thread flushes by itself when it holds the
+                // batch, and the shared thread must not wait for it
+                if (!batchLock.tryLock()) {
+                  return;
+                }
                 try {
-                  synchronized (eventList) {
-                    if(!eventList.isEmpty() && timeout()) {
-                      flushEventBatch(eventList);
-                    }
+                  if(!eventList.isEmpty() && timeout()) {
+                    flushEventBatch(eventList);
                   }
                 } catch (Exception e) {
                   logger.error("Exception occured when processing event batch", e);
-                  if(e instanceof InterruptedException) {
-                      Thread.currentThread().interrupt();
-                  }
+                } finally {
+                  batchLock.unlock();
                 }
               }
-          },
-          batchTimeout, batchTimeout, TimeUnit.MILLISECONDS);
+          }, batchTimeout);
 
           while ((line = reader.readLine()) != null) {
-            synchronized (eventList) {
-              sourceCounter.incrementEventReceivedCount();
+            batchLock.lock();
+            try {
+              sourceCounter.increment(SourceCounter.Counter.EVENTS_RECEIVED);
               eventList.add(EventBuilder.withBody(line.getBytes(charset)));
               if(eventList.size() >= bufferCount || timeout()) {
                 flushEventBatch(eventList);
               }
+            } finally {
+              batchLock.unlock();
             }
           }
 
-          synchronized (eventList) {
+          batchLock.lock();
+          try {
               if(!eventList.isEmpty()) {
                 flushEventBatch(eventList);
               }
+          } finally {
+            batchLock.unlock();
           }
         } catch (Exception e) {
           logger.error("Failed while running command: " + command, e);
@@ -374,7 +383,8 @@ Configurable {
 
     private void flushEventBatch(List<Event> eventList){
       channelProcessor.processEventBatch(eventList);
-      sourceCounter.addToEventAcceptedCount(eventList.size());
+      sourceCounter.add(SourceCounter.Counter.EVENTS_ACCEPTED,
+          eventList.size());
       eventList.clear();
       lastPushToChannel = systemClock.currentTimeMillis();
     }
@@ -398,27 +408,15 @@ Configurable {
 
           try {
             int exitValue = process.waitFor();
-
-            // Stop the Thread that flushes periodically
-            if (future != null) {
-                future.cancel(true);
-            }
-
-            if (timedFlushService != null) {
-              timedFlushService.shutdown();
-              while (!timedFlushService.isTerminated()) {
-                try {
-                  timedFlushService.awaitTermination(500, TimeUnit.MILLISECONDS);
-                } catch (InterruptedException e) {
-                  logger.debug("Interrupted while waiting for exec executor service "
-                    + "to stop. Just exiting.");
-                  Thread.currentThread().interrupt();
-                }
-              }
-            }
             return exitValue;
           } catch (InterruptedException ex) {
             Thread.currentThread().interrupt();
+          } finally {
+            // Stop the periodic flush and read what is left on stderr
+            SharedFlushScheduler.cancel(future);
+            if (stderrDrain != null) {
+              stderrDrain.close();
+            }
           }
         }
         return Integer.MIN_VALUE;
@@ -429,39 +427,4 @@ Configurable {
       this.restart = restart;
     }
   }
-  private static class StderrReader extends Thread {
-    private BufferedReader input;
-    private boolean logStderr;
-
-    protected StderrReader(BufferedReader input, boolean logStderr) {
-      this.input = input;
-      this.logStderr = logStderr;
-    }
-
-    @Override
-    public void run() {
-      try {
-        int i = 0;
-        String line = null;
-        while((line = input.readLine()) != null) {
-          if(logStderr) {
-            // There is no need to read 'line' with a charset
-            // as we do not to propagate it.
-            // It is in UTF-16 and would be printed in UTF-8 format.
-            logger.info("StderrLogger[{}] = '{}'", ++i, line);
-          }
-        }
-      } catch (IOException e) {
-        logger.info("StderrLogger exiting", e);
-      } finally {
-        try {
-          if(input != null) {
-            input.close();
-          }
-        } catch (IOException ex) {
-          logger.error("Failed to close stderr reader for exec source", ex);
-        }
-      }
-    }
-  }
 }
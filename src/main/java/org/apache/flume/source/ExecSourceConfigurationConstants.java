@@ -62,4 +62,25 @@ public class ExecSourceConfigurationConstants {
    * Optional shell/command processor used to run command
    */
   public static final String CONFIG_SHELL = "shell";
+
+  /**
+   * Should a batch the channel has no room for be retried, instead of
+   * failing and restarting the command: default false
+   */
+  public static final String CONFIG_BACKPRESSURE = "backpressure";
+  public static final boolean DEFAULT_BACKPRESSURE = false;
+
+  /**
+   * Amount of time to wait before the first retry of a batch, doubled on
+   * every further retry: default 100 ms
+   */
+  public static final String CONFIG_BACKOFF_INITIAL = "backoffInitial";
+  public static final long DEFAULT_BACKOFF_INITIAL = 100L;
+
+  /**
+   * Longest amount of time to wait between retries of a batch:
+   * default 5000 ms
+   */
+  public static final String CONFIG_BACKOFF_MAX = "backoffMax";
+  public static final long DEFAULT_BACKOFF_MAX = 5000L;
 }
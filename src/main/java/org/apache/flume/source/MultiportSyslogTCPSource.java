@@ -302,12 +302,12 @@ public class MultiportSyslogTCPSource extends AbstractSource implements
         }
 
         int numEvents = events.size();
-        sourceCounter.addToEventReceivedCount(numEvents);
+        sourceCounter.add(SourceCounter.Counter.EVENTS_RECEIVED, numEvents);
 
         // write the events to the downstream channel
         try {
           channelProcessor.processEventBatch(events);
-          sourceCounter.addToEventAcceptedCount(numEvents);
+          sourceCounter.add(SourceCounter.Counter.EVENTS_ACCEPTED, numEvents);
         } catch (Throwable t) {
           logger.error("Error writing to channel, event dropped", t);
           if (t instanceof Error) {
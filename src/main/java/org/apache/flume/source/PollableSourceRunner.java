@@ -89,6 +89,11 @@ public class PollableSourceRunner extends SourceRunner {
 
   @Override
   public void stop() {
+    if (runner == null) {
+      // unsupervised before the supervisor got to start it
+      logger.debug("Runner for source {} was never started", getSource());
+      return;
+    }
 
     runner.shouldStop.set(true);
 
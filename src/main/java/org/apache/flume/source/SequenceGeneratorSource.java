@@ -31,6 +31,7 @@ import org.apache.flume.EventDeliveryException;
 import org.apache.flume.PollableSource;
 import org.apache.flume.conf.Configurable;
 import org.apache.flume.event.EventBuilder;
+import org.apache.flume.instrumentation.EventTracer;
 import org.apache.flume.instrumentation.SourceCounter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -44,6 +45,7 @@ public class SequenceGeneratorSource extends AbstractSource implements
   private long sequence;
   private int batchSize;
   private SourceCounter sourceCounter;
+  private EventTracer tracer;
   private List<Event> batchArrayList;
   private long totalEvents;
   private long eventsSent = 0;
@@ -54,6 +56,8 @@ public class SequenceGeneratorSource extends AbstractSource implements
   /**
    * Read parameters from context
    * <li>batchSize = type int that defines the size of event batches
+   * <li>traceHop = when set, every event starts a trace at this hop, which
+   * makes the source a continuous latency probe; see {@link EventTracer}
    */
   @Override
   public void configure(Context context) {
@@ -65,6 +69,7 @@ public class SequenceGeneratorSource extends AbstractSource implements
     if (sourceCounter == null) {
       sourceCounter = new SourceCounter(getName());
     }
+    tracer = EventTracer.fromContext(context);
 
       sleepMinMillis = context.getInteger("sleepMinMillis", 100);
       sleepMaxMillis = context.getInteger("sleepMaxMillis", 1000);
@@ -79,7 +84,7 @@ public class SequenceGeneratorSource extends AbstractSource implements
       if (batchSize <= 1) {
         if(eventsSent < totalEvents) {
           getChannelProcessor().processEvent(createEvent());
-            sourceCounter.incrementEventAcceptedCount();
+            sourceCounter.increment(SourceCounter.Counter.EVENTS_ACCEPTED);
           eventsSent++;
         } else {
           status = Status.BACKOFF;
@@ -96,8 +101,9 @@ public class SequenceGeneratorSource extends AbstractSource implements
         }
         if(!batchArrayList.isEmpty()) {
           getChannelProcessor().processEventBatch(batchArrayList);
-          sourceCounter.incrementAppendBatchAcceptedCount();
-          sourceCounter.addToEventAcceptedCount(batchArrayList.size());
+          sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_ACCEPTED);
+          sourceCounter.add(SourceCounter.Counter.EVENTS_ACCEPTED,
+              batchArrayList.size());
         }
       }
 
@@ -121,7 +127,11 @@ public class SequenceGeneratorSource extends AbstractSource implements
         } catch (InterruptedException e) {
             // ignore.
         }
-        return EventBuilder.withBody(sequence++);
+        Event event = EventBuilder.withBody(sequence++);
+        if (tracer != null) {
+            tracer.begin(event);
+        }
+        return event;
     }
 
     @Override
@@ -130,6 +140,9 @@ public class SequenceGeneratorSource extends AbstractSource implements
 
     super.start();
     sourceCounter.start();
+    if (tracer != null) {
+      tracer.start();
+    }
     logger.debug("Sequence generator source started");
   }
 
@@ -139,6 +152,9 @@ public class SequenceGeneratorSource extends AbstractSource implements
 
     super.stop();
     sourceCounter.stop();
+    if (tracer != null) {
+      tracer.stop();
+    }
 
     logger.info("Sequence generator source stopped. Metrics:{}",getName(), sourceCounter);
   }
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.source;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * <p>
+ * One scheduler thread, shared by every exec based source in the agent, to
+ * run their periodic batch flushes, instead of a scheduled executor per
+ * source. Each source schedules its flush with its own period and cancels
+ * it when its command is killed; the thread is started with the first
+ * flush and stops when the last one is cancelled.
+ * </p>
+ * <p>
+ * Flush tasks share the thread and must therefore not block: a task that
+ * finds its source busy should skip the run rather than wait for it.
+ * </p>
+ */
+public class SharedFlushScheduler {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(SharedFlushScheduler.class);
+
+  private static ScheduledExecutorService executor;
+  private static int scheduled;
+
+  private SharedFlushScheduler() {
+  }
+
+  /**
+   * Runs the task every {@code periodMillis}, starting one period from now.
+   */
+  public static synchronized ScheduledFuture<?> schedule(final Runnable task,
+      long periodMillis) {
+    Preconditions.checkArgument(periodMillis > 0,
+        "Flush period must be positive");
+    if (executor == null) {
+      executor = Executors.newSingleThreadScheduledExecutor(
+          new ThreadFactoryBuilder().setNameFormat("execFlushScheduler-%d")
+              .setDaemon(true).build());
+    }
+    scheduled++;
+    return executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        // an exception would silently cancel the periodic task
+        try {
+          task.run();
+        } catch (Throwable t) {
+          logger.error("Flush task failed", t);
+        }
+      }
+    }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Cancels a flush returned by {@link #schedule(Runnable, long)}. A run in
+   * progress is not interrupted. Cancelling a flush twice has no effect.
+   */
+  public static synchronized void cancel(ScheduledFuture<?> future) {
+    if (future == null || !future.cancel(false)) {
+      return;
+    }
+    if (--scheduled == 0) {
+      executor.shutdown();
+      executor = null;
+    }
+  }
+
+  static synchronized int getScheduledCount() {
+    return scheduled;
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.source;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * One thread, shared by every exec based source in the agent, that reads
+ * the standard error of their commands so that they never block on a full
+ * pipe, and logs it line by line if asked to. It replaces a reader thread
+ * per command.
+ * </p>
+ * <p>
+ * Process pipes cannot be put in a selector, so the thread polls the
+ * registered streams for available bytes and only reads what can be read
+ * without blocking, sleeping for {@value #POLL_MILLIS} ms whenever none of
+ * them had anything. The thread is started by the first registration and
+ * stops once no stream is registered.
+ * </p>
+ */
+public class SharedStderrDrainer {
+
+  private static final Logger logger = LoggerFactory
+      .getLogger(SharedStderrDrainer.class);
+
+  public static final long POLL_MILLIS = 100L;
+  private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  private static final List<Drain> drains = new ArrayList<Drain>();
+  private static Thread thread;
+
+  private SharedStderrDrainer() {
+  }
+
+  /**
+   * Starts draining the stream, logging each line under the given name if
+   * {@code logLines} is set.
+   */
+  public static synchronized Drain register(String name, InputStream stream,
+      Charset charset, boolean logLines) {
+    Drain drain = new Drain(name, stream, charset, logLines);
+    drains.add(drain);
+    if (thread == null) {
+      thread = new Thread(new Runnable() {
+        @Override
+        public void run() {
+          drainLoop();
+        }
+      }, "stderrDrainer");
+      thread.setDaemon(true);
+      thread.start();
+    }
+    return drain;
+  }
+
+  private static void drainLoop() {
+    while (true) {
+      List<Drain> current;
+      synchronized (SharedStderrDrainer.class) {
+        if (drains.isEmpty()) {
+          thread = null;
+          return;
+        }
+        current = new ArrayList<Drain>(drains);
+      }
+      boolean read = false;
+      for (Drain drain : current) {
+        read |= drain.poll();
+      }
+      if (!read) {
+        try {
+          Thread.sleep(POLL_MILLIS);
+        } catch (InterruptedException e) {
+          logger.debug("Stderr drainer interrupted, continuing");
+        }
+      }
+    }
+  }
+
+  private static synchronized void remove(Drain drain) {
+    drains.remove(drain);
+  }
+
+  static synchronized int getDrainCount() {
+    return drains.size();
+  }
+
+  /**
+   * The registration of one stream.
+   */
+  public static class Drain {
+    private final String name;
+    private final InputStream stream;
+    private final Charset charset;
+    private final boolean logLines;
+    private final byte[] buffer = new byte[4096];
+    private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+    private int lineCount;
+    private boolean closed;
+
+    private Drain(String name, InputStream stream, Charset charset,
+        boolean logLines) {
+      this.name = name;
+      this.stream = stream;
+      this.charset = charset;
+      this.logLines = logLines;
+    }
+
+    /**
+     * Reads what is available without blocking. Returns whether anything
+     * was read.
+     */
+    private synchronized boolean poll() {
+      if (closed) {
+        return false;
+      }
+      try {
+        int available = stream.available();
+        if (available <= 0) {
+          return false;
+        }
+        int n = stream.read(buffer, 0, Math.min(available, buffer.length));
+        if (n < 0) {
+          finish();
+          return false;
+        }
+        for (int i = 0; i < n; i++) {
+          if (buffer[i] == '\n') {
+            emitLine();
+          } else {
+            line.write(buffer[i]);
+            if (line.size() >= MAX_LINE_LENGTH) {
+              emitLine();
+            }
+          }
+        }
+        return true;
+      } catch (IOException e) {
+        logger.info("StderrLogger[" + name + "] exiting", e);
+        finish();
+        return false;
+      }
+    }
+
+    private void emitLine() {
+      if (logLines) {
+        String text = new String(line.toByteArray(), charset);
+        if (text.endsWith("\r")) {
+          text = text.substring(0, text.length() - 1);
+        }
+        logger.info("StderrLogger[{}][{}] = '{}'",
+            new Object[] { name, ++lineCount, text });
+      }
+      line.reset();
+    }
+
+    /**
+     * Reads what is left in the stream without blocking, logs a last
+     * incomplete line and closes the stream. Closing twice has no effect.
+     */
+    public synchronized void close() {
+      while (poll()) {
+        // keep reading until nothing is available
+      }
+      finish();
+    }
+
+    private void finish() {
+      if (closed) {
+        return;
+      }
+      if (line.size() > 0) {
+        emitLine();
+      }
+      closed = true;
+      try {
+        stream.close();
+      } catch (IOException e) {
+        logger.error("Failed to close stderr of " + name, e);
+      }
+      remove(this);
+    }
+  }
+
+}
@@ -19,6 +19,7 @@ package org.apache.flume.source;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
@@ -26,6 +27,7 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.flume.*;
 import org.apache.flume.client.avro.ReliableSpoolingFileEventReader;
+import org.apache.flume.client.avro.SpoolDirectoryIndex;
 import org.apache.flume.conf.Configurable;
 import org.apache.flume.instrumentation.SourceCounter;
 import org.apache.flume.serialization.LineDeserializer;
@@ -33,6 +35,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import static org.apache.flume.source
     .SpoolDirectorySourceConfigurationConstants.*;
@@ -58,40 +61,61 @@ Configurable, EventDrivenSource {
   private Context deserializerContext;
   private String deletePolicy;
   private String inputCharset;
+  private int threads;
+  private boolean memoryMapped;
+  private String trackerType;
+  private int trackerCommitCount;
+  private long trackerCommitIntervalMillis;
 
   private SourceCounter sourceCounter;
-  ReliableSpoolingFileEventReader reader;
+  private ScheduledExecutorService executor;
+  List<ReliableSpoolingFileEventReader> readers;
 
   @Override
   public void start() {
     logger.info("SpoolDirectorySource source starting with directory: {}",
         spoolDirectory);
 
-    ScheduledExecutorService executor =
-        Executors.newSingleThreadScheduledExecutor();
-
+    // all readers are built before any of them claims a file, so that each
+    // one resumes the file it was reading
     File directory = new File(spoolDirectory);
-    try {
-      reader = new ReliableSpoolingFileEventReader.Builder()
-          .spoolDirectory(directory)
-          .completedSuffix(completedSuffix)
-          .ignorePattern(ignorePattern)
-          .trackerDirPath(trackerDirPath)
-          .annotateFileName(fileHeader)
-          .fileNameHeader(fileHeaderKey)
-          .deserializerType(deserializerType)
-          .deserializerContext(deserializerContext)
-          .deletePolicy(deletePolicy)
-          .inputCharset(inputCharset)
-          .build();
-    } catch (IOException ioe) {
-      throw new FlumeException("Error instantiating spooling event parser",
-          ioe);
+    SpoolDirectoryIndex index = new SpoolDirectoryIndex(directory,
+        completedSuffix, ignorePattern);
+    readers = new ArrayList<ReliableSpoolingFileEventReader>(threads);
+    for (int i = 0; i < threads; i++) {
+      try {
+        readers.add(new ReliableSpoolingFileEventReader.Builder()
+            .spoolDirectory(directory)
+            .completedSuffix(completedSuffix)
+            .ignorePattern(ignorePattern)
+            .trackerDirPath(trackerDirPath)
+            .annotateFileName(fileHeader)
+            .fileNameHeader(fileHeaderKey)
+            .deserializerType(deserializerType)
+            .deserializerContext(deserializerContext)
+            .deletePolicy(deletePolicy)
+            .inputCharset(inputCharset)
+            .memoryMapped(memoryMapped)
+            .trackerType(trackerType)
+            .trackerCommitCount(trackerCommitCount)
+            .trackerCommitIntervalMillis(trackerCommitIntervalMillis)
+            .index(index)
+            .readerId(i)
+            .build());
+      } catch (IOException ioe) {
+        throw new FlumeException("Error instantiating spooling event parser",
+            ioe);
+      }
     }
 
-    Runnable runner = new SpoolDirectoryRunnable(reader, sourceCounter);
-    executor.scheduleWithFixedDelay(
-        runner, 0, POLL_DELAY_MS, TimeUnit.MILLISECONDS);
+    executor = Executors.newScheduledThreadPool(threads,
+        new ThreadFactoryBuilder().setNameFormat(
+            "SpoolDirectorySource-" + getName() + "-%d").build());
+    for (ReliableSpoolingFileEventReader reader : readers) {
+      Runnable runner = new SpoolDirectoryRunnable(reader, sourceCounter);
+      executor.scheduleWithFixedDelay(
+          runner, 0, POLL_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
 
     super.start();
     logger.debug("SpoolDirectorySource source started");
@@ -100,6 +124,23 @@ Configurable, EventDrivenSource {
 
   @Override
   public void stop() {
+    executor.shutdown();
+    try {
+      if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+        executor.shutdownNow();
+      }
+    } catch (InterruptedException e) {
+      logger.info("Interrupted while awaiting termination", e);
+      executor.shutdownNow();
+      Thread.currentThread().interrupt();
+    }
+    for (ReliableSpoolingFileEventReader reader : readers) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        logger.warn("Unable to close spooling event reader", e);
+      }
+    }
     super.stop();
     sourceCounter.stop();
     logger.info("SpoolDir source {} stopped. Metrics: {}", getName(),
@@ -122,6 +163,14 @@ Configurable, EventDrivenSource {
     batchSize = context.getInteger(BATCH_SIZE,
         DEFAULT_BATCH_SIZE);
     inputCharset = context.getString(INPUT_CHARSET, DEFAULT_INPUT_CHARSET);
+    threads = context.getInteger(THREADS, DEFAULT_THREADS);
+    Preconditions.checkState(threads > 0, THREADS + " must be positive");
+    memoryMapped = context.getBoolean(MEMORY_MAPPED, DEFAULT_MEMORY_MAPPED);
+    trackerType = context.getString(POSITION_TRACKER, DEFAULT_POSITION_TRACKER);
+    trackerCommitCount = context.getInteger(TRACKER_COMMIT_COUNT,
+        DEFAULT_TRACKER_COMMIT_COUNT);
+    trackerCommitIntervalMillis = context.getLong(TRACKER_COMMIT_INTERVAL,
+        DEFAULT_TRACKER_COMMIT_INTERVAL);
 
     ignorePattern = context.getString(IGNORE_PAT, DEFAULT_IGNORE_PAT);
     trackerDirPath = context.getString(TRACKER_DIR, DEFAULT_TRACKER_DIR);
@@ -156,18 +205,20 @@ Configurable, EventDrivenSource {
     @Override
     public void run() {
       try {
-        while (true) {
+        while (!Thread.currentThread().isInterrupted()) {
           List<Event> events = reader.readEvents(batchSize);
           if (events.isEmpty()) {
             break;
           }
-          sourceCounter.addToEventReceivedCount(events.size());
-          sourceCounter.incrementAppendBatchReceivedCount();
+          sourceCounter.add(SourceCounter.Counter.EVENTS_RECEIVED,
+              events.size());
+          sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_RECEIVED);
 
           getChannelProcessor().processEventBatch(events);
           reader.commit();
-          sourceCounter.addToEventAcceptedCount(events.size());
-          sourceCounter.incrementAppendBatchAcceptedCount();
+          sourceCounter.add(SourceCounter.Counter.EVENTS_ACCEPTED,
+              events.size());
+          sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_ACCEPTED);
         }
       } catch (Throwable t) {
         logger.error("Uncaught exception in Runnable", t);
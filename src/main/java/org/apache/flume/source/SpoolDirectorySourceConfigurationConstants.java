@@ -66,4 +66,34 @@ public class SpoolDirectorySourceConfigurationConstants {
 
   public static final String INPUT_CHARSET = "inputCharset";
   public static final String DEFAULT_INPUT_CHARSET = "UTF-8";
+
+  /** Number of files to read concurrently, each by its own thread. */
+  public static final String THREADS = "threads";
+  public static final int DEFAULT_THREADS = 1;
+
+  /** Whether to read files through memory mapped windows. */
+  public static final String MEMORY_MAPPED = "memoryMapped";
+  public static final boolean DEFAULT_MEMORY_MAPPED = false;
+
+  /**
+   * Format of the files tracking the position in the files being read:
+   * "durable" appends every commit to an Avro file, "checkpoint" overwrites
+   * a small binary file and can commit in groups.
+   */
+  public static final String POSITION_TRACKER = "positionTracker";
+  public static final String DEFAULT_POSITION_TRACKER = "durable";
+
+  /** Number of commits a checkpoint tracker writes to disk at once. */
+  public static final String TRACKER_COMMIT_COUNT = "trackerCommitCount";
+  public static final int DEFAULT_TRACKER_COMMIT_COUNT = 1;
+
+  /**
+   * Time in milliseconds after its last write from which a checkpoint
+   * tracker writes a commit regardless of the count, 0 to write on count
+   * alone. It is only checked on a commit, so the last commit before the
+   * source goes idle may stay unwritten until the next one or a stop.
+   */
+  public static final String TRACKER_COMMIT_INTERVAL =
+      "trackerCommitIntervalMillis";
+  public static final long DEFAULT_TRACKER_COMMIT_INTERVAL = 0L;
 }
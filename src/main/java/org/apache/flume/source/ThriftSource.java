@@ -246,8 +246,8 @@ public class ThriftSource extends AbstractSource implements Configurable,
       Event flumeEvent = EventBuilder.withBody(event.getBody(),
         event.getHeaders());
 
-      sourceCounter.incrementAppendReceivedCount();
-      sourceCounter.incrementEventReceivedCount();
+      sourceCounter.increment(SourceCounter.Counter.APPEND_RECEIVED);
+      sourceCounter.increment(SourceCounter.Counter.EVENTS_RECEIVED);
 
       try {
         getChannelProcessor().processEvent(flumeEvent);
@@ -256,15 +256,15 @@ public class ThriftSource extends AbstractSource implements Configurable,
           "to the channel.", ex);
         return Status.FAILED;
       }
-      sourceCounter.incrementAppendAcceptedCount();
-      sourceCounter.incrementEventAcceptedCount();
+      sourceCounter.increment(SourceCounter.Counter.APPEND_ACCEPTED);
+      sourceCounter.increment(SourceCounter.Counter.EVENTS_ACCEPTED);
       return Status.OK;
     }
 
     @Override
     public Status appendBatch(List<ThriftFlumeEvent> events) throws TException {
-      sourceCounter.incrementAppendBatchReceivedCount();
-      sourceCounter.addToEventReceivedCount(events.size());
+      sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_RECEIVED);
+      sourceCounter.add(SourceCounter.Counter.EVENTS_RECEIVED, events.size());
 
       List<Event> flumeEvents = Lists.newArrayList();
       for(ThriftFlumeEvent event : events) {
@@ -280,8 +280,8 @@ public class ThriftSource extends AbstractSource implements Configurable,
         return Status.FAILED;
       }
 
-      sourceCounter.incrementAppendBatchAcceptedCount();
-      sourceCounter.addToEventAcceptedCount(events.size());
+      sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_ACCEPTED);
+      sourceCounter.add(SourceCounter.Counter.EVENTS_ACCEPTED, events.size());
       return Status.OK;
     }
   }
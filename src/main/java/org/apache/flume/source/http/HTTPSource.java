@@ -195,8 +195,8 @@ public class HTTPSource extends AbstractSource implements
                 + ex.getMessage());
         return;
       }
-      sourceCounter.incrementAppendBatchReceivedCount();
-      sourceCounter.addToEventReceivedCount(events.size());
+      sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_RECEIVED);
+      sourceCounter.add(SourceCounter.Counter.EVENTS_RECEIVED, events.size());
       try {
         getChannelProcessor().processEventBatch(events);
       } catch (ChannelException ex) {
@@ -217,8 +217,8 @@ public class HTTPSource extends AbstractSource implements
       response.setCharacterEncoding(request.getCharacterEncoding());
       response.setStatus(HttpServletResponse.SC_OK);
       response.flushBuffer();
-      sourceCounter.incrementAppendBatchAcceptedCount();
-      sourceCounter.addToEventAcceptedCount(events.size());
+      sourceCounter.increment(SourceCounter.Counter.APPEND_BATCH_ACCEPTED);
+      sourceCounter.add(SourceCounter.Counter.EVENTS_ACCEPTED, events.size());
     }
 
     @Override
@@ -22,6 +22,7 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -62,12 +63,7 @@ public class DirectMemoryUtils {
   public static void clean(ByteBuffer buffer) throws Exception {
     Preconditions.checkArgument(buffer.isDirect(),
         "buffer isn't direct!");
-    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
-    cleanerMethod.setAccessible(true);
-    Object cleaner = cleanerMethod.invoke(buffer);
-    Method cleanMethod = cleaner.getClass().getMethod("clean");
-    cleanMethod.setAccessible(true);
-    cleanMethod.invoke(cleaner);
+    invokeCleaner(buffer);
     allocated.getAndAdd(-buffer.capacity());
     long maxDirectMemory = getDirectMemorySize();
     LOG.info("Direct Memory Deallocation: " +
@@ -76,6 +72,28 @@ public class DirectMemoryUtils {
         ", Remaining = " + Math.max(0, (maxDirectMemory - allocated.get())));
 
   }
+
+  /**
+   * Unmaps a mapped buffer now instead of when it is garbage collected, so
+   * that, on Windows, its file can be renamed or deleted. The buffer must
+   * not be used afterwards.
+   */
+  public static void unmap(MappedByteBuffer buffer) throws Exception {
+    invokeCleaner(buffer);
+  }
+
+  private static void invokeCleaner(ByteBuffer buffer) throws Exception {
+    Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+    cleanerMethod.setAccessible(true);
+    Object cleaner = cleanerMethod.invoke(buffer);
+    if (cleaner == null) {
+      return;
+    }
+    Method cleanMethod = cleaner.getClass().getMethod("clean");
+    cleanMethod.setAccessible(true);
+    cleanMethod.invoke(cleaner);
+  }
+
   public static long getDirectMemorySize() {
     RuntimeMXBean RuntimemxBean = ManagementFactory.getRuntimeMXBean();
     List<String> arguments = Lists.reverse(RuntimemxBean.getInputArguments());
@@ -0,0 +1,433 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.interceptor;
+
+import static org.n3r.flume.interceptor.StackTraceDedupInterceptor.Constants.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Clock;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.SystemClock;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.Interceptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.base.Preconditions;
+
+/**
+ * Interceptor that collapses repeated stack traces, such as the ones an
+ * application logs for every request while a dependency is down.
+ *
+ * An event whose body contains a stack trace is fingerprinted by the class
+ * of the exception and its top frames, hashed on the body bytes, so that
+ * traces differing only in their message or in deep frames are taken as the
+ * same. The first event of a fingerprint within a window is forwarded in
+ * full, with the fingerprint in a header. Repeats within the window are
+ * dropped and counted, and once the window has passed they are replaced by
+ * a single summary event, whose body is the exception line followed by the
+ * number of repeats, and whose headers are those of the first event plus
+ * the fingerprint and the number of repeats.
+ *
+ * Only batches passed to {@link #intercept(List)} are collapsed, since
+ * summary events are appended to them. {@link #intercept(Event)} cannot
+ * emit a summary next to the event it returns, so it fingerprints the event
+ * and passes it through. The fingerprint table holds at most
+ * {@code maxFingerprints} entries; the least recently seen one is
+ * summarized early to make room for a new fingerprint. On close, the
+ * repeats not summarized yet are logged.
+ *
+ * Events that already carry the fingerprint header are passed as they are,
+ * so that a batch a source retries after a full channel is not collapsed a
+ * second time. The summaries appended to a batch are appended again when
+ * the same batch is retried, and only dropped once the source moves on to
+ * a new batch.
+ *
+ * Properties:<p>
+ *
+ *   frames: Number of top frames in the fingerprint. (default is 10)<p>
+ *
+ *   window: Milliseconds during which repeats of a stack trace are
+ *           collapsed. (default is 60000)<p>
+ *
+ *   maxFingerprints: Number of stack traces tracked at the same time.
+ *                    (default is 1000)<p>
+ *
+ *   fingerprintHeader: Header for the fingerprint.
+ *                      (default is stackFingerprint)<p>
+ *
+ *   repeatsHeader: Header of summary events for the number of repeats.
+ *                  (default is stackRepeats)<p>
+ *
+ * Sample config:<p>
+ *
+ * <code>
+ *   agent.sources.r1.interceptors = i1<p>
+ *   agent.sources.r1.interceptors.i1.type = STACK_DEDUP<p>
+ *   agent.sources.r1.interceptors.i1.frames = 5<p>
+ * </code>
+ */
+public class StackTraceDedupInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(StackTraceDedupInterceptor.class);
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int MAX_LINE = 1024;
+    // marks dropped repeats, so that a retried batch does not count them twice
+    private static final String SUPPRESSED = "stackSuppressed";
+
+    private final int frames;
+    private final long window;
+    private final String fingerprintHeader;
+    private final String repeatsHeader;
+    private final Map<Long, Trace> traces;
+    private final List<Event> pending = new ArrayList<Event>();
+    // summaries appended to the last batch, kept until the source moves on
+    private final List<Event> sent = new ArrayList<Event>();
+    private Event lastBatchHead;
+
+    private Clock clock = new SystemClock();
+    private long lastSweep;
+
+    /**
+     * Only {@link StackTraceDedupInterceptor.Builder} can build me
+     */
+    private StackTraceDedupInterceptor(int frames, long window, final int maxFingerprints,
+            String fingerprintHeader, String repeatsHeader) {
+        this.frames = frames;
+        this.window = window;
+        this.fingerprintHeader = fingerprintHeader;
+        this.repeatsHeader = repeatsHeader;
+        this.traces = new LinkedHashMap<Long, Trace>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Trace> eldest) {
+                if (size() <= maxFingerprints)
+                    return false;
+                summarize(eldest.getKey(), eldest.getValue());
+                return true;
+            }
+        };
+    }
+
+    @VisibleForTesting
+    void setClock(Clock clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public void initialize() {
+        // no-op
+    }
+
+    /**
+     * Fingerprints the event and returns it, since a summary of its repeats
+     * could not be returned with it.
+     */
+    @Override
+    public Event intercept(Event event) {
+        Map<String, String> headers = event.getHeaders();
+        if (headers.containsKey(fingerprintHeader))
+            return event;
+
+        byte[] body = event.getBody();
+        int exceptionLine = findExceptionLine(body);
+        if (exceptionLine >= 0)
+            headers.put(fingerprintHeader, Long.toHexString(fingerprint(body, exceptionLine)));
+        return event;
+    }
+
+    /**
+     * Returns the event, or null if it repeats a stack trace seen within the
+     * window.
+     */
+    private Event collapse(Event event) {
+        Map<String, String> headers = event.getHeaders();
+        if (headers.containsKey(fingerprintHeader))
+            return headers.containsKey(SUPPRESSED) ? null : event;
+
+        byte[] body = event.getBody();
+        int exceptionLine = findExceptionLine(body);
+        if (exceptionLine < 0)
+            return event;
+
+        long fingerprint = fingerprint(body, exceptionLine);
+        headers.put(fingerprintHeader, Long.toHexString(fingerprint));
+
+        long now = clock.currentTimeMillis();
+        Trace trace = traces.get(fingerprint);
+        if (trace != null && now - trace.firstSeen < window) {
+            trace.repeats++;
+            headers.put(SUPPRESSED, "true");
+            return null;
+        }
+        if (trace != null)
+            summarize(fingerprint, trace);
+        traces.put(fingerprint, new Trace(now, headers, line(body, exceptionLine)));
+        return event;
+    }
+
+    /**
+     * Collapses the repeats in the batch, and appends summaries of the
+     * windows that have passed, along with the summaries of the previous
+     * batch if this one is a retry of it.
+     */
+    @Override
+    public synchronized List<Event> intercept(List<Event> events) {
+        Event head = events.isEmpty() ? null : events.get(0);
+        if (head == null || head != lastBatchHead)
+            sent.clear();
+        lastBatchHead = head;
+
+        List<Event> out = new ArrayList<Event>(events.size());
+        for (Event event : events) {
+            Event intercepted = collapse(event);
+            if (intercepted != null)
+                out.add(intercepted);
+        }
+
+        long now = clock.currentTimeMillis();
+        if (now - lastSweep >= Math.min(window, 1000L)) {
+            lastSweep = now;
+            Iterator<Map.Entry<Long, Trace>> it = traces.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Long, Trace> entry = it.next();
+                if (now - entry.getValue().firstSeen >= window) {
+                    summarize(entry.getKey(), entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+
+        sent.addAll(pending);
+        pending.clear();
+        out.addAll(sent);
+        return out;
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Event summary : drain())
+            logger.info("Stack trace summary on close: {}", new String(summary.getBody(), Charsets.UTF_8));
+        sent.clear();
+        lastBatchHead = null;
+    }
+
+    /**
+     * Summarizes the repeats of every fingerprint, whether or not its window
+     * has passed, and returns the summaries not emitted yet.
+     */
+    @VisibleForTesting
+    synchronized List<Event> drain() {
+        for (Map.Entry<Long, Trace> entry : traces.entrySet())
+            summarize(entry.getKey(), entry.getValue());
+        traces.clear();
+        List<Event> summaries = new ArrayList<Event>(pending);
+        pending.clear();
+        return summaries;
+    }
+
+    @VisibleForTesting
+    synchronized int getFingerprintCount() {
+        return traces.size();
+    }
+
+    private void summarize(long fingerprint, Trace trace) {
+        if (trace.repeats == 0)
+            return;
+
+        Map<String, String> headers = new HashMap<String, String>(trace.headers);
+        headers.put(fingerprintHeader, Long.toHexString(fingerprint));
+        headers.put(repeatsHeader, String.valueOf(trace.repeats));
+        byte[] suffix = (" [repeated " + trace.repeats + " times]").getBytes(Charsets.UTF_8);
+        byte[] body = new byte[trace.line.length + suffix.length];
+        System.arraycopy(trace.line, 0, body, 0, trace.line.length);
+        System.arraycopy(suffix, 0, body, trace.line.length, suffix.length);
+        pending.add(EventBuilder.withBody(body, headers));
+        trace.repeats = 0;
+    }
+
+    /**
+     * Returns the offset of the line that precedes the first stack frame, or
+     * -1 if the body holds no stack trace.
+     */
+    @VisibleForTesting
+    static int findExceptionLine(byte[] body) {
+        int previous = -1;
+        int start = 0;
+        while (start < body.length) {
+            if (frameStart(body, start) >= 0)
+                return previous;
+            previous = start;
+            start = lineEnd(body, start) + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Hashes the class of the exception at the given line and the top frames
+     * that follow it with 64 bit FNV-1a.
+     */
+    @VisibleForTesting
+    long fingerprint(byte[] body, int exceptionLine) {
+        int end = lineEnd(body, exceptionLine);
+        // the class is the word before the first colon, as in
+        // "Exception in thread "main" java.lang.IllegalStateException: boom"
+        int classEnd = exceptionLine;
+        while (classEnd < end && body[classEnd] != ':')
+            classEnd++;
+        while (classEnd > exceptionLine && isBlank(body[classEnd - 1]))
+            classEnd--;
+        int classStart = classEnd;
+        while (classStart > exceptionLine && !isBlank(body[classStart - 1]))
+            classStart--;
+
+        long hash = hash(FNV_OFFSET, body, classStart, classEnd);
+        int start = end + 1;
+        for (int i = 0; i < frames && start < body.length; i++) {
+            int frame = frameStart(body, start);
+            if (frame < 0)
+                break;
+            end = lineEnd(body, start);
+            hash = hash((hash ^ '\n') * FNV_PRIME, body, frame, end);
+            start = end + 1;
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, byte[] body, int from, int to) {
+        for (int i = from; i < to; i++) {
+            hash ^= body[i] & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the offset of the frame after {@code at } if the line starting
+     * at the given offset is a stack frame, or -1.
+     */
+    private static int frameStart(byte[] body, int start) {
+        int i = start;
+        while (i < body.length && (body[i] == ' ' || body[i] == '\t'))
+            i++;
+        if (i == start || i + 3 > body.length)
+            return -1;
+        return body[i] == 'a' && body[i + 1] == 't' && body[i + 2] == ' ' ? i + 3 : -1;
+    }
+
+    /**
+     * Returns the offset of the line feed ending the line at the given
+     * offset, or the body length, not counting a carriage return.
+     */
+    private static int lineEnd(byte[] body, int start) {
+        int i = start;
+        while (i < body.length && body[i] != '\n')
+            i++;
+        return i;
+    }
+
+    private static byte[] line(byte[] body, int start) {
+        int end = lineEnd(body, start);
+        if (end > start && body[end - 1] == '\r')
+            end--;
+        byte[] line = new byte[Math.min(end - start, MAX_LINE)];
+        System.arraycopy(body, start, line, 0, line.length);
+        return line;
+    }
+
+    private static boolean isBlank(byte b) {
+        return b == ' ' || b == '\t' || b == '\r';
+    }
+
+    private static class Trace {
+        private final long firstSeen;
+        private final Map<String, String> headers;
+        private final byte[] line;
+        private long repeats;
+
+        Trace(long firstSeen, Map<String, String> headers, byte[] line) {
+            this.firstSeen = firstSeen;
+            this.headers = new HashMap<String, String>(headers);
+            this.line = line;
+        }
+    }
+
+    /**
+     * Builder which builds new instances of the StackTraceDedupInterceptor.
+     */
+    public static class Builder implements Interceptor.Builder {
+
+        private int frames = FRAMES_DFLT;
+        private long window = WINDOW_DFLT;
+        private int maxFingerprints = MAX_FINGERPRINTS_DFLT;
+        private String fingerprintHeader = FINGERPRINT_HEADER_DFLT;
+        private String repeatsHeader = REPEATS_HEADER_DFLT;
+
+        @Override
+        public void configure(Context context) {
+            frames = context.getInteger(FRAMES, FRAMES_DFLT);
+            Preconditions.checkArgument(frames > 0, FRAMES + " must be positive");
+            window = context.getLong(WINDOW, WINDOW_DFLT);
+            Preconditions.checkArgument(window > 0, WINDOW + " must be positive");
+            maxFingerprints = context.getInteger(MAX_FINGERPRINTS, MAX_FINGERPRINTS_DFLT);
+            Preconditions.checkArgument(maxFingerprints > 0, MAX_FINGERPRINTS + " must be positive");
+            fingerprintHeader = context.getString(FINGERPRINT_HEADER, FINGERPRINT_HEADER_DFLT);
+            repeatsHeader = context.getString(REPEATS_HEADER, REPEATS_HEADER_DFLT);
+        }
+
+        @Override
+        public Interceptor build() {
+            logger.info(String.format("Creating StackTraceDedupInterceptor: frames=%s,window=%s,maxFingerprints=%s",
+                    frames, window, maxFingerprints));
+            return new StackTraceDedupInterceptor(frames, window, maxFingerprints,
+                    fingerprintHeader, repeatsHeader);
+        }
+
+    }
+
+    public static class Constants {
+
+        public static final String FRAMES = "frames";
+        public static final int FRAMES_DFLT = 10;
+
+        public static final String WINDOW = "window";
+        public static final long WINDOW_DFLT = 60000L;
+
+        public static final String MAX_FINGERPRINTS = "maxFingerprints";
+        public static final int MAX_FINGERPRINTS_DFLT = 1000;
+
+        public static final String FINGERPRINT_HEADER = "fingerprintHeader";
+        public static final String FINGERPRINT_HEADER_DFLT = "stackFingerprint";
+
+        public static final String REPEATS_HEADER = "repeatsHeader";
+        public static final String REPEATS_HEADER_DFLT = "stackRepeats";
+    }
+}
@@ -0,0 +1,36 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.source.exec;
+
+/**
+ * Finds where a new block starts in a line read by {@link ExecBlockSource}.
+ *
+ * Implementations may keep state between calls and are used by one reading
+ * thread only. Custom detectors need a public no-argument constructor and
+ * are configured with their class name as {@code boundaryDetector}.
+ */
+public interface BoundaryDetector {
+
+    /**
+     * Returns the index of the first block boundary in the line at or after
+     * {@code from}, or -1 if there is none.
+     */
+    int find(String line, int from);
+
+}
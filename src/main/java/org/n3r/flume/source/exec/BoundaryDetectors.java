@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.source.exec;
+
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.flume.FlumeException;
+
+/**
+ * Creates the {@link BoundaryDetector} configured for an
+ * {@link ExecBlockSource}.
+ *
+ * {@code boundaryDetector} is one of {@code time}, {@code iso8601},
+ * {@code log4j} and {@code logback} (see {@link FixedFormatBoundaryDetector}
+ * for the formats), {@code regex} to use {@code boundaryRegex}, or the class
+ * name of a custom detector. Without it, {@code boundaryRegex} is used, unless
+ * it is one of the well known timestamp regexes, which are replaced by the
+ * equivalent fixed format detector.
+ */
+public class BoundaryDetectors {
+
+    public enum Type {
+        TIME(FixedFormatBoundaryDetector.TIME),
+        ISO8601(FixedFormatBoundaryDetector.ISO8601),
+        LOG4J(FixedFormatBoundaryDetector.LOG4J),
+        LOGBACK(FixedFormatBoundaryDetector.LOGBACK),
+        REGEX(null);
+
+        private final String format;
+
+        private Type(String format) {
+            this.format = format;
+        }
+    }
+
+    // regexes equivalent to a fixed format
+    private static final String[][] KNOWN_REGEXES = {
+        { "^\\d{2}:\\d{2}:\\d{2},\\d{3}\\s", "99:99:99,999_" },
+        { "^\\d{2}:\\d{2}:\\d{2}\\.\\d{3}\\s", "99:99:99.999_" },
+        { "^\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2},\\d{3}", FixedFormatBoundaryDetector.LOG4J },
+        { "^\\d{4}-\\d{2}-\\d{2}T\\d{2}:\\d{2}:\\d{2}", "9999-99-99T99:99:99" },
+    };
+
+    private BoundaryDetectors() {
+    }
+
+    /**
+     * Returns a new detector, or null if blocks are not detected and every
+     * line is an event.
+     */
+    public static BoundaryDetector create(String detector, String regex) {
+        if (StringUtils.isEmpty(detector)) {
+            if (StringUtils.isEmpty(regex))
+                return null;
+            for (String[] known : KNOWN_REGEXES) {
+                if (known[0].equals(regex))
+                    return new FixedFormatBoundaryDetector(known[1]);
+            }
+            return new RegexBoundaryDetector(Pattern.compile(regex));
+        }
+
+        Type type = null;
+        try {
+            type = Type.valueOf(detector.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            // not a built-in type, a class name
+        }
+        if (type == Type.REGEX) {
+            if (StringUtils.isEmpty(regex))
+                throw new FlumeException("boundaryRegex must be set for the regex boundary detector");
+            return new RegexBoundaryDetector(Pattern.compile(regex));
+        }
+        if (type != null)
+            return new FixedFormatBoundaryDetector(type.format);
+
+        try {
+            return Class.forName(detector).asSubclass(BoundaryDetector.class).newInstance();
+        } catch (Exception e) {
+            throw new FlumeException("Unable to create boundary detector " + detector, e);
+        }
+    }
+}
@@ -9,13 +9,12 @@ import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.flume.ChannelException;
 import org.apache.flume.Context;
 import org.apache.flume.Event;
 import org.apache.flume.EventDrivenSource;
@@ -26,11 +25,12 @@ import org.apache.flume.event.EventBuilder;
 import org.apache.flume.instrumentation.SourceCounter;
 import org.apache.flume.source.AbstractSource;
 import org.apache.flume.source.ExecSourceConfigurationConstants;
+import org.apache.flume.source.SharedFlushScheduler;
+import org.apache.flume.source.SharedStderrDrainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.base.Preconditions;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 public class ExecBlockSource extends AbstractSource implements EventDrivenSource, Configurable {
 
@@ -46,9 +46,13 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
     private boolean logStderr;
     private Integer bufferCount;
     private long bufferTimeout;
-    private Pattern boundaryRegex;
+    private String boundaryDetector;
+    private String boundaryRegex;
     private ExecRunnable runner;
     private Charset charset;
+    private boolean backpressure;
+    private long backoffInitial;
+    private long backoffMax;
     private static String newline = System.getProperty("line.separator");
 
     @Override
@@ -58,7 +62,10 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
         executor = Executors.newSingleThreadExecutor();
 
         runner = new ExecRunnable(shell, command, getChannelProcessor(), sourceCounter,
-                restart, restartThrottle, logStderr, bufferCount, bufferTimeout, boundaryRegex, charset);
+                restart, restartThrottle, logStderr, bufferCount, bufferTimeout,
+                BoundaryDetectors.create(boundaryDetector, boundaryRegex), charset);
+        if (backpressure)
+            runner.setBackoff(backoffInitial, backoffMax);
 
         // FIXME: Use a callback-like executor / future to signal us upon
         // failure.
@@ -130,27 +137,44 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
         bufferTimeout = context.getLong(ExecSourceConfigurationConstants.CONFIG_BATCH_TIME_OUT,
                 ExecSourceConfigurationConstants.DEFAULT_BATCH_TIME_OUT);
 
-        String regex = context.getString("boundaryRegex");
-        boundaryRegex = StringUtils.isEmpty(regex) ? null : Pattern.compile(regex);
+        boundaryRegex = context.getString("boundaryRegex");
+        boundaryDetector = context.getString("boundaryDetector");
+        // fail on a bad regex or detector class now rather than on start
+        BoundaryDetector detector = BoundaryDetectors.create(boundaryDetector, boundaryRegex);
 
         charset = Charset.forName(context.getString(ExecSourceConfigurationConstants.CHARSET,
                 ExecSourceConfigurationConstants.DEFAULT_CHARSET));
 
         shell = context.getString(ExecSourceConfigurationConstants.CONFIG_SHELL, null);
 
+        backpressure = context.getBoolean(ExecSourceConfigurationConstants.CONFIG_BACKPRESSURE,
+                ExecSourceConfigurationConstants.DEFAULT_BACKPRESSURE);
+
+        backoffInitial = context.getLong(ExecSourceConfigurationConstants.CONFIG_BACKOFF_INITIAL,
+                ExecSourceConfigurationConstants.DEFAULT_BACKOFF_INITIAL);
+
+        backoffMax = context.getLong(ExecSourceConfigurationConstants.CONFIG_BACKOFF_MAX,
+                ExecSourceConfigurationConstants.DEFAULT_BACKOFF_MAX);
+
+        Preconditions.checkState(backoffInitial > 0 && backoffMax >= backoffInitial,
+                "backoffInitial must be positive and not larger than backoffMax");
+
         if (sourceCounter == null)
             sourceCounter = new SourceCounter(getName());
 
         logger.info("Configuration : restartThrottle=" + restartThrottle + ", restart=" + restart +
                 ", logStderr=" + logStderr + ", bufferCount=" + bufferCount + ", bufferTimeout=" +
-                bufferTimeout + ", boundaryRegex=" + regex + ", charset" + charset + ", shell" + shell);
+                bufferTimeout + ", boundaryDetector=" + detector + ", charset" + charset + ", shell" + shell +
+                ", backpressure=" + backpressure + ", backoffInitial=" + backoffInitial +
+                ", backoffMax=" + backoffMax);
     }
 
     private static class ExecRunnable implements Runnable {
 
         public ExecRunnable(String shell, String command, ChannelProcessor channelProcessor,
                 SourceCounter sourceCounter, boolean restart, long restartThrottle,
-                boolean logStderr, int bufferCount, long bufferTimeout, Pattern boundaryRegex, Charset charset) {
+                boolean logStderr, int bufferCount, long bufferTimeout, BoundaryDetector boundaryDetector,
+                Charset charset) {
             this.command = command;
             this.channelProcessor = channelProcessor;
             this.sourceCounter = sourceCounter;
@@ -159,7 +183,7 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
             this.bufferTimeout = bufferTimeout;
             this.restart = restart;
             this.logStderr = logStderr;
-            this.boundaryRegex = boundaryRegex;
+            this.boundaryDetector = boundaryDetector;
             this.charset = charset;
             this.shell = shell;
         }
@@ -173,21 +197,41 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
         private final int bufferCount;
         private long bufferTimeout;
         private final boolean logStderr;
-        private Pattern boundaryRegex;
+        private final BoundaryDetector boundaryDetector;
         private final Charset charset;
         private Process process = null;
         private SystemClock systemClock = new SystemClock();
         private Long lastPushToChannel = systemClock.currentTimeMillis();
-        private ScheduledExecutorService timedFlushService;
+        // guards eventList and block between the reading thread and the timed flush
+        private final ReentrantLock batchLock = new ReentrantLock();
         private ScheduledFuture<?> future;
+        private SharedStderrDrainer.Drain stderrDrain;
         private List<Event> eventList = new ArrayList<Event>();
         private StringBuilder block = new StringBuilder();
+        // 0 unless full channels are retried rather than failing the command
+        private long backoffInitial;
+        private long backoffMax;
+        private final Object backoffLock = new Object();
+        private volatile boolean killed;
+
+        /**
+         * Makes batches the channels have no room for be retried, waiting
+         * from {@code initial} up to {@code max} milliseconds between
+         * attempts, instead of failing the command. The thread that reads the
+         * command's output is the one retrying, so reading pauses until the
+         * batch is accepted and the command blocks once the pipe is full.
+         */
+        public void setBackoff(long initial, long max) {
+            this.backoffInitial = initial;
+            this.backoffMax = max;
+        }
 
         @Override
         public void run() {
             do {
                 String exitCode = "unknown";
                 BufferedReader reader = null;
+                killed = false;
 
                 try {
                     if (shell != null) {
@@ -200,28 +244,30 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
                     reader = new BufferedReader(
                             new InputStreamReader(process.getInputStream(), charset));
 
-                    // StderrLogger dies as soon as the input stream is invalid
-                    StderrReader stderrReader = new StderrReader(new BufferedReader(
-                            new InputStreamReader(process.getErrorStream(), charset)), logStderr);
-                    stderrReader.setName("StderrReader-[" + command + "]");
-                    stderrReader.setDaemon(true);
-                    stderrReader.start();
+                    stderrDrain = SharedStderrDrainer.register(command,
+                            process.getErrorStream(), charset, logStderr);
 
-                    // Start flush thread
-                    startTimedFlushService();
+                    // Start the periodic flush
+                    scheduleTimedFlush();
 
                     String line = null;
                     while ((line = reader.readLine()) != null) {
-                        synchronized (eventList) {
+                        batchLock.lock();
+                        try {
                             processLine(line);
                             if (eventList.size() >= bufferCount || timeout())
-                                flushEventBatch(eventList);
+                                flushEventBatch(eventList, true);
+                        } finally {
+                            batchLock.unlock();
                         }
                     }
 
-                    synchronized (eventList) {
+                    batchLock.lock();
+                    try {
                         if (!eventList.isEmpty())
-                            flushEventBatch(eventList);
+                            flushEventBatch(eventList, true);
+                    } finally {
+                        batchLock.unlock();
                     }
                 } catch (Exception e) {
                     logger.error("Failed while running command: " + command, e);
@@ -251,61 +297,68 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
             } while (restart);
         }
 
-        private void startTimedFlushService() {
-            timedFlushService = Executors.newSingleThreadScheduledExecutor(
-                    new ThreadFactoryBuilder().setNameFormat(
-                            "timedFlushExecService" + Thread.currentThread().getId() + "-%d").build());
-
-            future = timedFlushService.scheduleWithFixedDelay(new Runnable() {
+        private void scheduleTimedFlush() {
+            future = SharedFlushScheduler.schedule(new Runnable() {
                 @Override
                 public void run() {
+                    // The reading thread flushes by itself when it holds the batch,
+                    // and the shared thread must not wait for it
+                    if (!batchLock.tryLock())
+                        return;
                     try {
-                        synchronized (eventList) {
-                            if (StringUtils.isNotEmpty(block.toString()))
-                                flushBlock();
-
-                            if (!eventList.isEmpty() && timeout()) {
-                                logger.info("Timeout : eventList size is [{}]", eventList.size());
-                                flushEventBatch(eventList);
-                            }
+                        if (StringUtils.isNotEmpty(block.toString()))
+                            flushBlock();
+
+                        if (!eventList.isEmpty() && timeout()) {
+                            logger.info("Timeout : eventList size is [{}]", eventList.size());
+                            flushEventBatch(eventList, false);
+                        }
+                    } catch (ChannelException e) {
+                        if (backoffInitial > 0) {
+                            // keep the batch for the next attempt
+                            sourceCounter.incrementChannelWriteRetryCount();
+                            logger.debug("Channel full, keeping batch of {} events", eventList.size());
+                        } else {
+                            logger.error("Exception occured when flushing event batch", e);
                         }
                     } catch (Exception e) {
                         logger.error("Exception occured when flushing event batch", e);
-                        if (e instanceof InterruptedException)
-                            Thread.currentThread().interrupt();
+                    } finally {
+                        batchLock.unlock();
                     }
                 }
-            }, bufferTimeout, bufferTimeout, TimeUnit.MILLISECONDS);
+            }, bufferTimeout);
         }
 
         private void processLine(String line) {
             // Line break
-            if (null == boundaryRegex) {
+            if (null == boundaryDetector) {
                 logger.info("Line : [{}]", line);
-                sourceCounter.incrementEventReceivedCount();
+                sourceCounter.increment(SourceCounter.Counter.EVENTS_RECEIVED);
                 eventList.add(EventBuilder.withBody(line, charset));
                 return;
             }
 
             // Block break
-            Matcher matcher = boundaryRegex.matcher(line);
             int start = 0;
-            while (matcher.find()) {
+            int boundary = boundaryDetector.find(line, 0);
+            while (boundary >= 0) {
                 // Incr counter
-                sourceCounter.incrementEventReceivedCount();
+                sourceCounter.increment(SourceCounter.Counter.EVENTS_RECEIVED);
                 // Append the tail to last block before flushing it
-                if (matcher.start() > 0) {
-                    String tail = line.substring(start, matcher.start());
+                if (boundary > 0) {
+                    String tail = line.substring(start, boundary);
                     synchronized (block) {
                         if (start == 0 && block.length() > 0) block.append(newline);
                         block.append(tail);
                     }
                     // Reset the index of new block
-                    start = matcher.start();
+                    start = boundary;
                 }
                 // Flush last block
-                if (StringUtils.isNotEmpty(block.toString()))
+                if (block.length() > 0)
                     flushBlock();
+                boundary = boundaryDetector.find(line, boundary + 1);
             }
             synchronized (block) {
                 if (block.length() > 0) block.append(newline);
@@ -321,13 +374,47 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
             }
         }
 
-        private void flushEventBatch(List<Event> eventList) {
-            channelProcessor.processEventBatch(eventList);
-            sourceCounter.addToEventAcceptedCount(eventList.size());
+        /**
+         * Commits the batch, retrying with backoff if allowed to; the shared
+         * flush thread must not.
+         */
+        private void flushEventBatch(List<Event> eventList, boolean retry) throws InterruptedException {
+            if (retry && backoffInitial > 0)
+                processWithBackoff(eventList);
+            else
+                channelProcessor.processEventBatch(eventList);
+            sourceCounter.add(SourceCounter.Counter.EVENTS_ACCEPTED, eventList.size());
             eventList.clear();
             lastPushToChannel = systemClock.currentTimeMillis();
         }
 
+        /**
+         * Retries the batch until the channels accept it, or gives up when the
+         * command is killed, in which case the batch is kept for a restart.
+         */
+        private void processWithBackoff(List<Event> eventList) throws InterruptedException {
+            long delay = backoffInitial;
+            while (true) {
+                try {
+                    channelProcessor.processEventBatch(eventList);
+                    return;
+                } catch (ChannelException e) {
+                    if (killed)
+                        throw e;
+                    sourceCounter.incrementChannelWriteRetryCount();
+                    logger.debug("Channel full, retrying batch of {} events in {}ms",
+                            eventList.size(), delay);
+                    long start = systemClock.currentTimeMillis();
+                    synchronized (backoffLock) {
+                        if (!killed)
+                            backoffLock.wait(delay);
+                    }
+                    sourceCounter.addToBlockedTime(systemClock.currentTimeMillis() - start);
+                    delay = Math.min(delay * 2, backoffMax);
+                }
+            }
+        }
+
         private boolean timeout() {
             return (systemClock.currentTimeMillis() - lastPushToChannel) >= bufferTimeout;
         }
@@ -341,6 +428,12 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
         }
 
         public int kill() {
+            // wake up a batch being retried, it is given up
+            killed = true;
+            synchronized (backoffLock) {
+                backoffLock.notifyAll();
+            }
+
             if (process == null)
                 return Integer.MIN_VALUE / 2;
 
@@ -348,26 +441,14 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
                 process.destroy();
                 try {
                     int exitValue = process.waitFor();
-
-                    // Stop the Thread that flushes periodically
-                    if (future != null)
-                        future.cancel(true);
-
-                    if (timedFlushService != null) {
-                        timedFlushService.shutdown();
-                        while (!timedFlushService.isTerminated()) {
-                            try {
-                                timedFlushService.awaitTermination(500, TimeUnit.MILLISECONDS);
-                            } catch (InterruptedException e) {
-                                logger.debug("Interrupted while waiting for execblock executor service "
-                                        + "to stop. Just exiting.");
-                                Thread.currentThread().interrupt();
-                            }
-                        }
-                    }
                     return exitValue;
                 } catch (InterruptedException ex) {
                     Thread.currentThread().interrupt();
+                } finally {
+                    // Stop the periodic flush and read what is left on stderr
+                    SharedFlushScheduler.cancel(future);
+                    if (stderrDrain != null)
+                        stderrDrain.close();
                 }
             }
             return Integer.MIN_VALUE;
@@ -377,38 +458,4 @@ public class ExecBlockSource extends AbstractSource implements EventDrivenSource
             this.restart = restart;
         }
     }
-
-    private static class StderrReader extends Thread {
-        private BufferedReader input;
-        private boolean logStderr;
-
-        protected StderrReader(BufferedReader input, boolean logStderr) {
-            this.input = input;
-            this.logStderr = logStderr;
-        }
-
-        @Override
-        public void run() {
-            try {
-                int i = 0;
-                String line = null;
-                while ((line = input.readLine()) != null) {
-                    if (logStderr)
-                        // There is no need to read 'line' with a charset
-                        // as we do not to propagate it.
-                        // It is in UTF-16 and would be printed in UTF-8 format.
-                        logger.info("StderrLogger[{}] = '{}'", ++i, line);
-                }
-            } catch (IOException e) {
-                logger.info("StderrLogger exiting", e);
-            } finally {
-                try {
-                    if (input != null)
-                        input.close();
-                } catch (IOException ex) {
-                    logger.error("Failed to close stderr reader for execblock source", ex);
-                }
-            }
-        }
-    }
 }
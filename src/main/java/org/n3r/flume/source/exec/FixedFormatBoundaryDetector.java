@@ -0,0 +1,99 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.source.exec;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A boundary detector for lines that start with a fixed width prefix, such
+ * as a timestamp, checked character by character without a regex.
+ *
+ * The prefix is described by a mask in which
+ * <ul>
+ * <li>{@code 9} matches a digit,</li>
+ * <li>{@code _} matches a whitespace character, as {@code \s} does,</li>
+ * <li>{@code |} matches a comma or a dot, the usual separators of
+ * milliseconds,</li>
+ * <li>{@code ~} matches a {@code T} or a space, the separators of date and
+ * time,</li>
+ * </ul>
+ * and any other character matches itself. A boundary is only ever found at
+ * the start of a line, as with a regex anchored by {@code ^}.
+ */
+public class FixedFormatBoundaryDetector implements BoundaryDetector {
+
+    /** {@code HH:mm:ss,SSS} or {@code HH:mm:ss.SSS} and a blank */
+    public static final String TIME = "99:99:99|999_";
+    /** {@code yyyy-MM-ddTHH:mm:ss}, with a {@code T} or a space */
+    public static final String ISO8601 = "9999-99-99~99:99:99";
+    /** the log4j {@code %d} default, {@code yyyy-MM-dd HH:mm:ss,SSS} */
+    public static final String LOG4J = "9999-99-99 99:99:99,999";
+    /** the logback default, {@code %d{HH:mm:ss.SSS} [%thread]} */
+    public static final String LOGBACK = "99:99:99.999 [";
+
+    private final String mask;
+    private final char[] chars;
+
+    public FixedFormatBoundaryDetector(String mask) {
+        Preconditions.checkArgument(mask != null && !mask.isEmpty(),
+                "Boundary format must not be empty");
+        this.mask = mask;
+        this.chars = mask.toCharArray();
+    }
+
+    @Override
+    public int find(String line, int from) {
+        return from == 0 && matches(line) ? 0 : -1;
+    }
+
+    private boolean matches(String line) {
+        if (line.length() < chars.length)
+            return false;
+        for (int i = 0; i < chars.length; i++) {
+            char c = line.charAt(i);
+            switch (chars[i]) {
+            case '9':
+                if (c < '0' || c > '9')
+                    return false;
+                break;
+            case '_':
+                if (c != ' ' && c != '\t' && c != '\n' && c != '\u000B' && c != '\f' && c != '\r')
+                    return false;
+                break;
+            case '|':
+                if (c != ',' && c != '.')
+                    return false;
+                break;
+            case '~':
+                if (c != 'T' && c != ' ')
+                    return false;
+                break;
+            default:
+                if (c != chars[i])
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return "format " + mask;
+    }
+}
@@ -0,0 +1,66 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.source.exec;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A boundary detector for custom {@code boundaryRegex} patterns. The
+ * matcher is reused from line to line, and searching a line again right
+ * after a match continues after the end of that match, so boundaries are
+ * found exactly as by a loop over {@link Matcher#find()}.
+ */
+public class RegexBoundaryDetector implements BoundaryDetector {
+
+    private final Pattern pattern;
+    private final Matcher matcher;
+    private String current;
+    private int previousStart = -1;
+    private int previousEnd;
+
+    public RegexBoundaryDetector(Pattern pattern) {
+        this.pattern = pattern;
+        this.matcher = pattern.matcher("");
+    }
+
+    @Override
+    public int find(String line, int from) {
+        boolean found;
+        if (line == current && previousStart >= 0 && from > previousStart && from <= previousEnd) {
+            found = matcher.find();
+        } else {
+            current = line;
+            matcher.reset(line);
+            found = from <= line.length() && matcher.find(from);
+        }
+        if (!found) {
+            previousStart = -1;
+            return -1;
+        }
+        previousStart = matcher.start();
+        previousEnd = matcher.end();
+        return previousStart;
+    }
+
+    @Override
+    public String toString() {
+        return "regex " + pattern.pattern();
+    }
+}
@@ -19,8 +19,14 @@
 
 package org.apache.flume.channel;
 
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
 import java.util.List;
 
+import org.apache.flume.BatchChannel;
+import org.apache.flume.Channel;
 import org.apache.flume.ChannelException;
 import org.apache.flume.Event;
 import org.junit.Assert;
@@ -76,6 +82,36 @@ public class TestChannelUtils
     }
   }
 
+  @Test
+  public void testBatchFallback() {
+    // a channel that only implements the single event methods
+    final Channel plain = (Channel) Proxy.newProxyInstance(
+        Channel.class.getClassLoader(), new Class<?>[] { Channel.class },
+        new InvocationHandler() {
+          @Override
+          public Object invoke(Object proxy, Method method, Object[] args)
+              throws Throwable {
+            return method.invoke(channel, args);
+          }
+        });
+    Assert.assertFalse(plain instanceof BatchChannel);
+    ChannelUtils.transact(plain, new Runnable() {
+        @Override
+        public void run() {
+          ChannelUtils.putAll(plain, events);
+        }
+      });
+    final List<Event> taken = new ArrayList<Event>();
+    ChannelUtils.transact(plain, new Runnable() {
+        @Override
+        public void run() {
+          Assert.assertEquals(events.size(),
+              ChannelUtils.takeBatch(plain, events.size() + 1, taken));
+        }
+      });
+    Assert.assertEquals(events, taken);
+  }
+
   private void testTransact(final TestChannel.Mode mode,
       Class<? extends Throwable> exceptionClass, final Runnable test) {
     testException(exceptionClass, new Runnable() {
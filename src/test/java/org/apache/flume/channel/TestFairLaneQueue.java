@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestFairLaneQueue {
+
+  private static Event event(String source, String body) {
+    Map<String, String> headers = new HashMap<String, String>();
+    if (source != null) {
+      headers.put("source", source);
+    }
+    return EventBuilder.withBody(body.getBytes(), headers);
+  }
+
+  private static String body(Event event) {
+    return new String(event.getBody());
+  }
+
+  private static List<Event> events(String source, int count) {
+    Event[] events = new Event[count];
+    for (int i = 0; i < count; i++) {
+      events[i] = event(source, source + " " + i);
+    }
+    return Arrays.asList(events);
+  }
+
+  @Test
+  public void testWeightedRoundRobin() {
+    Map<String, Integer> weights = new HashMap<String, Integer>();
+    weights.put("b", 2);
+    LaneQueue queue = new FairLaneQueue("source", Arrays.asList("a", "b"),
+        weights, 1, 64);
+    for (Event event : events("a", 4)) {
+      queue.offer(event);
+    }
+    for (Event event : events("b", 5)) {
+      queue.offer(event);
+    }
+    queue.offer(event(null, "other 0"));
+
+    String[] expected = { "b 0", "b 1", "other 0", "a 0", "b 2", "b 3",
+        "a 1", "b 4", "a 2", "a 3" };
+    for (String body : expected) {
+      Assert.assertEquals(body, body(queue.poll()));
+    }
+    Assert.assertNull(queue.poll());
+  }
+
+  @Test
+  public void testLanesOpenedOnDemand() {
+    LaneQueue queue = new FairLaneQueue("source",
+        Collections.<String>emptyList(), Collections.<String, Integer>emptyMap(),
+        1, 3);
+    Assert.assertEquals(1, queue.getLaneCount());
+    queue.offer(event("a", "a 0"));
+    queue.offer(event("b", "b 0"));
+    // the limit is reached, further sources share the default lane
+    queue.offer(event("c", "c 0"));
+    queue.offer(event(null, "other 0"));
+    Assert.assertEquals(3, queue.getLaneCount());
+    Assert.assertEquals("{other=2, a=1, b=1}",
+        queue.getLaneSizes().toString());
+  }
+
+  @Test
+  public void testCapacityShares() {
+    Map<String, Integer> weights = new HashMap<String, Integer>();
+    weights.put("a", 3);
+    LaneQueue queue = new FairLaneQueue("source", Arrays.asList("a", "b"),
+        weights, 1, 64);
+    // a lone lane may fill the channel, an idle lane is always accepted
+    int[] counts = queue.countLanes(events("a", 10));
+    Assert.assertEquals(-1, queue.reserve(counts, 10));
+    queue.release(counts);
+    for (Event event : events("a", 7)) {
+      queue.offer(event);
+    }
+    int[] b = queue.countLanes(events("b", 3));
+    Assert.assertEquals(-1, queue.reserve(b, 10));
+
+    // with b waiting, a may only hold 3/4 of the capacity
+    Assert.assertEquals(0, queue.reserve(queue.countLanes(events("a", 1)), 10));
+    queue.poll();
+    Assert.assertEquals(-1, queue.reserve(queue.countLanes(events("a", 1)), 10));
+    Assert.assertEquals(0, queue.reserve(queue.countLanes(events("a", 1)), 10));
+    Assert.assertEquals(7, queue.pending(0) + queue.size(0));
+    Assert.assertEquals(3, queue.pending(1));
+  }
+
+}
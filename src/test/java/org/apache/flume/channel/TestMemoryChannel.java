@@ -19,10 +19,16 @@
 
 package org.apache.flume.channel;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.LinkedBlockingDeque;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.BatchChannel;
 import org.apache.flume.Channel;
 import org.apache.flume.ChannelException;
 import org.apache.flume.Context;
@@ -31,9 +37,13 @@ import org.apache.flume.EventDeliveryException;
 import org.apache.flume.Transaction;
 import org.apache.flume.conf.Configurables;
 import org.apache.flume.event.EventBuilder;
+import org.apache.flume.instrumentation.ChannelCounter;
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
+
+import com.google.common.io.Files;
+
 import static org.fest.reflect.core.Reflection.*;
 
 
@@ -443,6 +453,341 @@ public class TestMemoryChannel {
 
   }
 
+  @Test
+  public void testOffHeap() {
+    Context context = new Context();
+    context.put("offHeap", "true");
+    context.put("offHeapHeaders", "true");
+    context.put("byteCapacity", "1048576");
+    Configurables.configure(channel, context);
+    channel.start();
+
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("module", "billing");
+    Transaction tx = channel.getTransaction();
+    tx.begin();
+    for (int i = 0; i < 10; i++) {
+      channel.put(EventBuilder.withBody(("event " + i).getBytes(), headers));
+    }
+    tx.commit();
+    tx.close();
+
+    // taken events are heap copies, and rolled back takes are kept
+    tx = channel.getTransaction();
+    tx.begin();
+    Event event = channel.take();
+    Assert.assertFalse(event instanceof OffHeapEventStore.OffHeapEvent);
+    Assert.assertEquals("event 0", new String(event.getBody()));
+    Assert.assertEquals(headers, event.getHeaders());
+    tx.rollback();
+    tx.close();
+
+    tx = channel.getTransaction();
+    tx.begin();
+    for (int i = 0; i < 10; i++) {
+      Assert.assertEquals("event " + i, new String(channel.take().getBody()));
+    }
+    Assert.assertNull(channel.take());
+    tx.commit();
+    tx.close();
+
+    // rolled back puts give their memory back
+    tx = channel.getTransaction();
+    tx.begin();
+    channel.put(EventBuilder.withBody("rolled back".getBytes()));
+    tx.rollback();
+    tx.close();
+
+    OffHeapEventStore store = field("offHeapStore")
+        .ofType(OffHeapEventStore.class).in(channel).get();
+    Assert.assertEquals(0L, store.getUsedBytes());
+    Assert.assertTrue(store.getAllocatedBytes() > 0);
+    channel.stop();
+    Assert.assertEquals(0L, store.getAllocatedBytes());
+  }
+
+  @Test
+  public void testOffHeapSwitchedOff() {
+    Context context = new Context();
+    context.put("offHeap", "true");
+    context.put("byteCapacity", "1048576");
+    Configurables.configure(channel, context);
+    OffHeapEventStore store = field("offHeapStore")
+        .ofType(OffHeapEventStore.class).in(channel).get();
+    Transaction tx = channel.getTransaction();
+    tx.begin();
+    channel.put(EventBuilder.withBody("off heap".getBytes()));
+    tx.commit();
+    tx.close();
+
+    // the old store keeps its queued event and frees its memory once the
+    // event is taken
+    context.put("offHeap", "false");
+    Configurables.configure(channel, context);
+    Assert.assertTrue(store.getAllocatedBytes() > 0);
+    tx = channel.getTransaction();
+    tx.begin();
+    Assert.assertEquals("off heap", new String(channel.take().getBody()));
+    tx.commit();
+    tx.close();
+    Assert.assertEquals(0L, store.getAllocatedBytes());
+  }
+
+  @Test
+  public void testOffHeapChargesBlocks() {
+    Context context = new Context();
+    context.put("offHeap", "true");
+    context.put("byteCapacity", "2560");
+    context.put("byteCapacityBufferPercentage", "0");
+    context.put("keep-alive", "0");
+    Configurables.configure(channel, context);
+
+    // each small event takes a 256 byte block, charged as 3 slots of 100
+    // bytes, so byteCapacity runs out before the store does
+    Transaction tx = channel.getTransaction();
+    tx.begin();
+    for (int i = 0; i < 8; i++) {
+      channel.put(EventBuilder.withBody("small".getBytes()));
+    }
+    try {
+      channel.put(EventBuilder.withBody("small".getBytes()));
+      Assert.fail("Put over byteCapacity succeeded");
+    } catch (ChannelException e) {
+      Assert.assertTrue(e.getMessage(),
+          e.getMessage().contains("byteCapacity"));
+      Assert.assertFalse(e.getMessage(),
+          e.getMessage().contains("Off heap storage"));
+    }
+    tx.rollback();
+    tx.close();
+  }
+
+  @Test
+  public void testPutAllTakeBatch() {
+    Context context = new Context();
+    context.put("capacity", "10");
+    context.put("transactionCapacity", "5");
+    context.put("keep-alive", "0");
+    Configurables.configure(channel, context);
+    BatchChannel batch = (BatchChannel) channel;
+
+    List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < 5; i++) {
+      events.add(EventBuilder.withBody(("event " + i).getBytes()));
+    }
+    Transaction tx = channel.getTransaction();
+    tx.begin();
+    batch.putAll(events);
+    tx.commit();
+    tx.close();
+
+    // a batch over the transaction capacity is refused as a whole
+    tx = channel.getTransaction();
+    tx.begin();
+    channel.put(EventBuilder.withBody("single".getBytes()));
+    try {
+      batch.putAll(events);
+      Assert.fail("Put list overflow not detected");
+    } catch (ChannelException e) {
+      // expected
+    }
+    tx.rollback();
+    tx.close();
+
+    tx = channel.getTransaction();
+    tx.begin();
+    List<Event> taken = new ArrayList<Event>();
+    Assert.assertEquals(3, batch.take(3, taken));
+    Assert.assertEquals(2, batch.take(10, taken));
+    Assert.assertEquals(events, taken);
+    tx.rollback();
+    tx.close();
+
+    // rolled back batch takes are returned in order
+    tx = channel.getTransaction();
+    tx.begin();
+    taken.clear();
+    Assert.assertEquals(2, batch.take(2, taken));
+    Assert.assertEquals(events.subList(0, 2), taken);
+    Assert.assertEquals(events.get(2), channel.take());
+    tx.commit();
+    tx.close();
+
+    tx = channel.getTransaction();
+    tx.begin();
+    taken.clear();
+    Assert.assertEquals(2, batch.take(5, taken));
+    Assert.assertEquals(events.subList(3, 5), taken);
+    Assert.assertEquals(0, batch.take(5, taken));
+    tx.commit();
+    tx.close();
+
+    // a batch take counts as many attempts as a loop of single takes would
+    ChannelCounter counter = field("channelCounter")
+        .ofType(ChannelCounter.class).in(channel).get();
+    Assert.assertEquals(3 + 3 + 2 + 1 + 3 + 1, counter.getEventTakeAttemptCount());
+  }
+
+  @Test
+  public void testPriorityLanes() {
+    Context context = new Context();
+    context.put("capacity", "10");
+    context.put("transactionCapacity", "10");
+    Configurables.configure(channel, context);
+
+    Transaction tx = channel.getTransaction();
+    tx.begin();
+    for (int i = 0; i < 3; i++) {
+      channel.put(EventBuilder.withBody(("log " + i).getBytes()));
+    }
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("type", "heartbeat");
+    channel.put(EventBuilder.withBody("heartbeat".getBytes(), headers));
+    tx.commit();
+    tx.close();
+
+    // queued events move into the lanes when they are configured
+    context.put("laneHeader", "type");
+    context.put("lanes", "heartbeat");
+    Configurables.configure(channel, context);
+
+    tx = channel.getTransaction();
+    tx.begin();
+    Assert.assertEquals("heartbeat", new String(channel.take().getBody()));
+    Assert.assertEquals("log 0", new String(channel.take().getBody()));
+    tx.rollback();
+    tx.close();
+
+    tx = channel.getTransaction();
+    tx.begin();
+    Assert.assertEquals("heartbeat", new String(channel.take().getBody()));
+    tx.commit();
+    tx.close();
+
+    // and back when they are removed
+    context.put("laneHeader", "");
+    Configurables.configure(channel, context);
+    tx = channel.getTransaction();
+    tx.begin();
+    for (int i = 0; i < 3; i++) {
+      Assert.assertEquals("log " + i, new String(channel.take().getBody()));
+    }
+    tx.commit();
+    tx.close();
+  }
+
+  @Test
+  public void testFairLanes() {
+    Context context = new Context();
+    context.put("capacity", "10");
+    context.put("transactionCapacity", "10");
+    context.put("laneHeader", "source");
+    context.put("lanePolicy", "fair");
+    Configurables.configure(channel, context);
+
+    putFrom("a", 8);
+    putFrom("b", 1);
+    // with b holding events, a is over its half of the capacity
+    try {
+      putFrom("a", 1);
+      Assert.fail("Commit over the fair share of a lane succeeded");
+    } catch (ChannelException e) {
+      // expected
+    }
+    ChannelCounter counter = field("channelCounter")
+        .ofType(ChannelCounter.class).in(channel).get();
+    Assert.assertEquals("{other=0, a=8, b=1}", counter.getLaneSizes());
+
+    Transaction tx = channel.getTransaction();
+    tx.begin();
+    Assert.assertEquals("a 0", new String(channel.take().getBody()));
+    Assert.assertEquals("b 0", new String(channel.take().getBody()));
+    Assert.assertEquals("a 1", new String(channel.take().getBody()));
+    Assert.assertEquals("a 2", new String(channel.take().getBody()));
+    tx.commit();
+    tx.close();
+    Assert.assertEquals("{other=0, a=5, b=0}", counter.getLaneSizes());
+
+    // b is idle again, so a may use the whole channel
+    putFrom("a", 4);
+  }
+
+  private void putFrom(String source, int count) {
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("source", source);
+    Transaction tx = channel.getTransaction();
+    tx.begin();
+    try {
+      for (int i = 0; i < count; i++) {
+        channel.put(EventBuilder.withBody((source + " " + i).getBytes(),
+            headers));
+      }
+      tx.commit();
+    } catch (RuntimeException e) {
+      tx.rollback();
+      throw e;
+    } finally {
+      tx.close();
+    }
+  }
+
+  @Test
+  public void testSnapshotOnStop() throws IOException {
+    File dir = Files.createTempDir();
+    try {
+      File file = new File(dir, "c1.snapshot");
+      Context context = new Context();
+      context.put("capacity", "10");
+      context.put("transactionCapacity", "10");
+      context.put("snapshotFile", file.getPath());
+      channel.setName("c1");
+      Configurables.configure(channel, context);
+      channel.start();
+      putFrom("a", 3);
+      Transaction tx = channel.getTransaction();
+      tx.begin();
+      Assert.assertEquals("a 0", new String(channel.take().getBody()));
+      tx.commit();
+      tx.close();
+      channel.stop();
+      Assert.assertTrue(file.exists());
+
+      // a new channel restores the events on start, in their order
+      context.put("offHeap", "true");
+      Channel restarted = new MemoryChannel();
+      restarted.setName("c2");
+      Configurables.configure(restarted, context);
+      restarted.start();
+      Assert.assertFalse(file.exists());
+      tx = restarted.getTransaction();
+      tx.begin();
+      for (int i = 1; i < 3; i++) {
+        Event event = restarted.take();
+        Assert.assertEquals("a " + i, new String(event.getBody()));
+        Assert.assertEquals("a", event.getHeaders().get("source"));
+      }
+      Assert.assertNull(restarted.take());
+      tx.commit();
+      tx.close();
+      restarted.stop();
+      Assert.assertFalse(file.exists());
+
+      // a restarted channel that kept its events ignores the snapshot
+      channel.start();
+      channel.stop();
+      Assert.assertTrue(file.exists());
+      channel.start();
+      Assert.assertFalse(file.exists());
+      tx = channel.getTransaction();
+      tx.begin();
+      Assert.assertEquals("a 1", new String(channel.take().getBody()));
+      tx.commit();
+      tx.close();
+    } finally {
+      FileUtils.deleteDirectory(dir);
+    }
+  }
+
   @Test
   public void testNegativeCapacities() {
     Context context = new Context();
@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.io.Files;
+
+public class TestMemoryChannelSnapshot {
+
+  private File dir;
+  private File file;
+
+  @Before
+  public void setUp() {
+    dir = Files.createTempDir();
+    file = new File(dir, "channel.snapshot");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  private static List<Event> events(int count) {
+    List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < count; i++) {
+      Map<String, String> headers = new HashMap<String, String>();
+      headers.put("host", "h\u00e9" + i);
+      headers.put("seq", String.valueOf(i));
+      events.add(EventBuilder.withBody(new byte[i * 100], headers));
+    }
+    events.add(EventBuilder.withBody(new byte[0]));
+    return events;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    List<Event> events = events(20);
+    MemoryChannelSnapshot.write(file, events);
+    Assert.assertEquals(1, dir.list().length);
+
+    MemoryChannelSnapshot.Reader reader =
+        new MemoryChannelSnapshot.Reader(file);
+    try {
+      for (Event expected : events) {
+        Event event = reader.next();
+        Assert.assertEquals(expected.getHeaders(), event.getHeaders());
+        Assert.assertArrayEquals(expected.getBody(), event.getBody());
+      }
+      Assert.assertNull(reader.next());
+      Assert.assertNull(reader.next());
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testDamageIsDetected() throws IOException {
+    MemoryChannelSnapshot.write(file, events(3));
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      // flip a bit of the last body byte, before the empty last event and
+      // the trailer
+      raf.seek(raf.length() - 10);
+      int b = raf.read();
+      raf.seek(raf.length() - 10);
+      raf.write(b ^ 1);
+    } finally {
+      raf.close();
+    }
+    assertDamaged(file, 4);
+
+    MemoryChannelSnapshot.write(file, events(3));
+    raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(raf.length() - 10);
+    } finally {
+      raf.close();
+    }
+    assertDamaged(file, 2);
+  }
+
+  private static void assertDamaged(File file, int readable)
+      throws IOException {
+    MemoryChannelSnapshot.Reader reader =
+        new MemoryChannelSnapshot.Reader(file);
+    try {
+      for (int i = 0; i < readable; i++) {
+        Assert.assertNotNull(reader.next());
+      }
+      reader.next();
+      Assert.fail("Damaged snapshot was read");
+    } catch (IOException e) {
+      // expected
+    } finally {
+      reader.close();
+    }
+  }
+
+}
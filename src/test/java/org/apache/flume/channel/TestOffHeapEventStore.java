@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.apache.flume.Event;
+import org.apache.flume.channel.OffHeapEventStore.OffHeapEvent;
+import org.apache.flume.event.EventBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestOffHeapEventStore {
+
+  private static byte[] randomBody(Random random, int length) {
+    byte[] body = new byte[length];
+    random.nextBytes(body);
+    return body;
+  }
+
+  @Test
+  public void testStoreAndRead() {
+    // 4 slabs of 4 blocks of 16 bytes
+    OffHeapEventStore store = new OffHeapEventStore(256, 16, 64);
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("host", "h1");
+    headers.put("module", "billing");
+    byte[] body = "a body spanning several blocks".getBytes();
+
+    OffHeapEvent onHeapHeaders =
+        store.store(EventBuilder.withBody(body, headers), false);
+    OffHeapEvent offHeapHeaders =
+        store.store(EventBuilder.withBody(body, headers), true);
+    Assert.assertArrayEquals(body, onHeapHeaders.getBody());
+    Assert.assertArrayEquals(body, offHeapHeaders.getBody());
+    Assert.assertEquals(headers, onHeapHeaders.getHeaders());
+    Assert.assertEquals(headers, offHeapHeaders.getHeaders());
+    Assert.assertEquals("billing", onHeapHeaders.getHeader("module"));
+    Assert.assertEquals("billing", offHeapHeaders.getHeader("module"));
+    Assert.assertNull(offHeapHeaders.getHeader("missing"));
+    Assert.assertEquals(body.length, offHeapHeaders.getBodySize());
+
+    Event copy = offHeapHeaders.toHeapEvent();
+    Assert.assertArrayEquals(body, copy.getBody());
+    Assert.assertEquals(headers, copy.getHeaders());
+
+    // empty bodies still take a block
+    OffHeapEvent empty = store.store(EventBuilder.withBody(new byte[0]), false);
+    Assert.assertEquals(0, empty.getBody().length);
+    Assert.assertTrue(store.getUsedBytes() > 0);
+  }
+
+  @Test
+  public void testFullAndReuse() {
+    OffHeapEventStore store = new OffHeapEventStore(256, 16, 64);
+    Random random = new Random(7);
+    List<OffHeapEvent> events = new ArrayList<OffHeapEvent>();
+    List<byte[]> bodies = new ArrayList<byte[]>();
+    OffHeapEvent event;
+    while ((event = store.store(
+        EventBuilder.withBody(randomBody(random, 40)), false)) != null) {
+      events.add(event);
+    }
+    // 40 bytes take 3 blocks, 16 blocks hold 5 events
+    Assert.assertEquals(5, events.size());
+    Assert.assertEquals(256L, store.getAllocatedBytes());
+    Assert.assertFalse(store.release());
+
+    for (OffHeapEvent e : events) {
+      e.free();
+    }
+    events.clear();
+    Assert.assertEquals(0L, store.getUsedBytes());
+
+    // freed blocks are reused, and events may now span slabs
+    for (int i = 0; i < 3; i++) {
+      byte[] body = randomBody(random, 80);
+      bodies.add(body);
+      events.add(store.store(EventBuilder.withBody(body), false));
+    }
+    for (int i = 0; i < 3; i++) {
+      Assert.assertNotNull(events.get(i));
+      Assert.assertArrayEquals(bodies.get(i), events.get(i).getBody());
+    }
+    Assert.assertNull(store.store(
+        EventBuilder.withBody(randomBody(random, 80)), false));
+
+    for (OffHeapEvent e : events) {
+      e.free();
+    }
+    Assert.assertTrue(store.release());
+    Assert.assertEquals(0L, store.getAllocatedBytes());
+  }
+
+  @Test
+  public void testFootprintAndPartialSlab() {
+    // one slab of 4 blocks of 16 bytes, and a last one of 2 blocks
+    OffHeapEventStore store = new OffHeapEventStore(100, 16, 64);
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("k", "v\u00e9x");
+    Event event = EventBuilder.withBody(new byte[20], headers);
+    Assert.assertEquals(32, store.footprint(event, false));
+    // 20 bytes of body and 4 + 2 + 1 + 2 + 4 bytes of headers
+    Assert.assertEquals(48, store.footprint(event, true));
+    Assert.assertEquals(48, store.store(event, true).getFootprint());
+    Assert.assertEquals(16,
+        store.footprint(EventBuilder.withBody(new byte[0]), false));
+
+    List<OffHeapEvent> events = new ArrayList<OffHeapEvent>();
+    OffHeapEvent stored;
+    while ((stored = store.store(
+        EventBuilder.withBody(new byte[16]), false)) != null) {
+      events.add(stored);
+    }
+    Assert.assertEquals(3, events.size());
+    Assert.assertEquals(96L, store.getAllocatedBytes());
+  }
+
+  @Test
+  public void testRetire() {
+    OffHeapEventStore store = new OffHeapEventStore(256, 16, 64);
+    OffHeapEvent first =
+        store.store(EventBuilder.withBody("first".getBytes()), false);
+    OffHeapEvent second =
+        store.store(EventBuilder.withBody("second".getBytes()), false);
+    store.retire();
+    Assert.assertEquals(64L, store.getAllocatedBytes());
+    first.free();
+    Assert.assertEquals(64L, store.getAllocatedBytes());
+    Assert.assertEquals("second", new String(second.getBody()));
+    second.free();
+    Assert.assertEquals(0L, store.getAllocatedBytes());
+  }
+
+  @Test
+  public void testKeyHeader() {
+    OffHeapEventStore store = new OffHeapEventStore(256, 16, 64);
+    Map<String, String> headers = new HashMap<String, String>();
+    headers.put("host", "h1");
+    headers.put("module", "billing");
+    OffHeapEvent event = store.store(
+        EventBuilder.withBody("body".getBytes(), headers), true, "module");
+    Assert.assertEquals("billing", event.getHeader("module"));
+    Assert.assertEquals("h1", event.getHeader("host"));
+    Assert.assertEquals(headers, event.getHeaders());
+    Assert.assertNull(store.store(EventBuilder.withBody("body".getBytes()),
+        true, "module").getHeader("module"));
+
+    // the key header is kept on the heap, the others are read from the store
+    event.free();
+    Assert.assertEquals("billing", event.getHeader("module"));
+    try {
+      event.getHeader("host");
+      Assert.fail("Header read after free");
+    } catch (IllegalStateException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testReadAfterFree() {
+    OffHeapEventStore store = new OffHeapEventStore(256, 16, 64);
+    OffHeapEvent event =
+        store.store(EventBuilder.withBody("body".getBytes()), false);
+    event.free();
+    event.getBody();
+  }
+
+}
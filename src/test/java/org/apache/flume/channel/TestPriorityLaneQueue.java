@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestPriorityLaneQueue {
+
+  private static Event event(String priority, String body) {
+    Map<String, String> headers = new HashMap<String, String>();
+    if (priority != null) {
+      headers.put("priority", priority);
+    }
+    return EventBuilder.withBody(body.getBytes(), headers);
+  }
+
+  private static String body(Event event) {
+    return new String(event.getBody());
+  }
+
+  @Test
+  public void testPriority() {
+    LaneQueue queue = new PriorityLaneQueue("priority",
+        Arrays.asList("control", "heartbeat"), 100);
+    Assert.assertEquals(3, queue.getLaneCount());
+    queue.offer(event(null, "log 1"));
+    queue.offer(event("unknown", "log 2"));
+    queue.offer(event("heartbeat", "heartbeat 1"));
+    queue.offer(event("control", "control 1"));
+    queue.offer(event("heartbeat", "heartbeat 2"));
+    Assert.assertEquals(5, queue.size());
+    Assert.assertEquals(2, queue.size(2));
+
+    Assert.assertEquals("control 1", body(queue.poll()));
+    Event heartbeat = queue.poll();
+    Assert.assertEquals("heartbeat 1", body(heartbeat));
+    // a rolled back event goes back to the front of its lane
+    queue.addFirst(heartbeat);
+    Assert.assertEquals("heartbeat 1", body(queue.poll()));
+    Assert.assertEquals("heartbeat 2", body(queue.poll()));
+    Assert.assertEquals("log 1", body(queue.poll()));
+    Assert.assertEquals("log 2", body(queue.poll()));
+    Assert.assertNull(queue.poll());
+    Assert.assertEquals(0, queue.size());
+  }
+
+  @Test
+  public void testStarvationGuard() {
+    LaneQueue queue = new PriorityLaneQueue("priority",
+        Arrays.asList("high"), 3);
+    for (int i = 0; i < 10; i++) {
+      queue.offer(event("high", "high " + i));
+    }
+    queue.offer(event(null, "low 0"));
+    queue.offer(event(null, "low 1"));
+
+    String[] expected = { "high 0", "high 1", "high 2", "low 0", "high 3",
+        "high 4", "high 5", "low 1", "high 6", "high 7", "high 8", "high 9" };
+    for (String body : expected) {
+      Assert.assertEquals(body, body(queue.poll()));
+    }
+  }
+
+  @Test
+  public void testStarvationGuardRotates() {
+    LaneQueue queue = new PriorityLaneQueue("priority",
+        Arrays.asList("high", "mid"), 2);
+    for (int i = 0; i < 10; i++) {
+      queue.offer(event("high", "high " + i));
+    }
+    for (int i = 0; i < 3; i++) {
+      queue.offer(event("mid", "mid " + i));
+      queue.offer(event(null, "low " + i));
+    }
+
+    // the lowest lane gets its turn even though the middle one waits too
+    String[] expected = { "high 0", "high 1", "mid 0", "high 2", "high 3",
+        "low 0", "high 4", "high 5", "mid 1", "high 6", "high 7", "low 1",
+        "high 8", "high 9", "low 2", "mid 2" };
+    for (String body : expected) {
+      Assert.assertEquals(body, body(queue.poll()));
+    }
+    Assert.assertNull(queue.poll());
+  }
+
+}
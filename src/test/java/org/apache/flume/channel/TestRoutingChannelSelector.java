@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.channel;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.flume.Channel;
+import org.apache.flume.Event;
+import org.apache.flume.FlumeException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestRoutingChannelSelector {
+
+  private List<Channel> channels = new ArrayList<Channel>();
+
+  private RoutingChannelSelector selector;
+  private Map<String, String> config = new HashMap<String, String>();
+
+  @Before
+  public void setUp() throws Exception {
+    channels.clear();
+    channels.add(MockChannel.createMockChannel("ch1"));
+    channels.add(MockChannel.createMockChannel("ch2"));
+    channels.add(MockChannel.createMockChannel("ch3"));
+    channels.add(MockChannel.createMockChannel("ch4"));
+    config.clear();
+    config.put("type", "routing");
+    config.put("rules", "billingErrors billing anyError");
+    config.put("rules.billingErrors.module", "billing");
+    config.put("rules.billingErrors.severity", "ERROR");
+    config.put("rules.billingErrors.channels", "ch1 ch2");
+    config.put("rules.billing.module", "billing*");
+    config.put("rules.billing.channels", "ch2");
+    config.put("rules.billing.optional", "ch2 ch3");
+    config.put("rules.anyError.severity", "ERR*");
+    config.put("rules.anyError.host", "*");
+    config.put("rules.anyError.channels", "ch3");
+    config.put("default", "ch4");
+  }
+
+  private RoutingChannelSelector create() {
+    return (RoutingChannelSelector)
+        ChannelSelectorFactory.create(channels, config);
+  }
+
+  private static Event event(String... headers) {
+    Event event = new MockEvent();
+    Map<String, String> map = new HashMap<String, String>();
+    for (int i = 0; i < headers.length; i += 2) {
+      map.put(headers[i], headers[i + 1]);
+    }
+    event.setHeaders(map);
+    return event;
+  }
+
+  private static String names(List<Channel> list) {
+    StringBuilder sb = new StringBuilder();
+    for (Channel channel : list) {
+      if (sb.length() > 0) {
+        sb.append(' ');
+      }
+      sb.append(channel.getName());
+    }
+    return sb.toString();
+  }
+
+  @Test
+  public void testSelection() {
+    selector = create();
+
+    Event billingError = event("module", "billing", "severity", "ERROR");
+    Assert.assertEquals("ch1 ch2",
+        names(selector.getRequiredChannels(billingError)));
+    Assert.assertTrue(selector.getOptionalChannels(billingError).isEmpty());
+
+    // prefix match, and ch2 is dropped from the optional channels
+    Event billingInfo = event("module", "billing-eu", "severity", "INFO");
+    Assert.assertEquals("ch2",
+        names(selector.getRequiredChannels(billingInfo)));
+    Assert.assertEquals("ch3",
+        names(selector.getOptionalChannels(billingInfo)));
+
+    // exact value of a prefix rule
+    Assert.assertEquals("ch2",
+        names(selector.getRequiredChannels(event("module", "billing"))));
+
+    // wildcard requires the header to be present
+    Assert.assertEquals("ch3", names(selector.getRequiredChannels(
+        event("module", "web", "severity", "ERROR", "host", "h1"))));
+    Assert.assertEquals("ch4", names(selector.getRequiredChannels(
+        event("module", "web", "severity", "ERROR"))));
+
+    // shorter than the prefix, and no headers at all
+    Assert.assertEquals("ch4", names(selector.getRequiredChannels(
+        event("module", "bill"))));
+    Assert.assertEquals("ch4", names(selector.getRequiredChannels(event())));
+    Assert.assertTrue(selector.getOptionalChannels(event()).isEmpty());
+
+    Assert.assertEquals(1L, selector.getRuleHits("billingErrors"));
+    Assert.assertEquals(2L, selector.getRuleHits("billing"));
+    Assert.assertEquals(1L, selector.getRuleHits("anyError"));
+    Assert.assertEquals(3L, selector.getRuleHits(null));
+    Assert.assertEquals("[billingErrors, billing, anyError]",
+        selector.getRuleHits().keySet().toString());
+  }
+
+  @Test
+  public void testFirstMatchingRuleWins() {
+    config.put("rules", "billing billingErrors");
+    selector = create();
+    Assert.assertEquals("ch2", names(selector.getRequiredChannels(
+        event("module", "billing", "severity", "ERROR"))));
+    Assert.assertEquals(0L, selector.getRuleHits("billingErrors"));
+  }
+
+  @Test
+  public void testListsAreCachedAndImmutable() {
+    selector = create();
+    List<Channel> first = selector.getRequiredChannels(event("module", "billing"));
+    List<Channel> second =
+        selector.getRequiredChannels(event("module", "billing-us"));
+    Assert.assertSame(first, second);
+    try {
+      first.clear();
+      Assert.fail("Channel list should be immutable");
+    } catch (UnsupportedOperationException e) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testManyRules() {
+    StringBuilder rules = new StringBuilder();
+    for (int i = 0; i < RoutingChannelSelector.MAX_RULES; i++) {
+      rules.append("r").append(i).append(' ');
+      config.put("rules.r" + i + ".id", Integer.toString(i));
+      config.put("rules.r" + i + ".channels", "ch" + (i % 3 + 1));
+    }
+    config.put("rules", rules.toString());
+    selector = create();
+    Assert.assertEquals("ch1",
+        names(selector.getRequiredChannels(event("id", "63"))));
+    Assert.assertEquals(1L, selector.getRuleHits("r63"));
+    Assert.assertEquals("ch4",
+        names(selector.getRequiredChannels(event("id", "64"))));
+
+    config.put("rules", rules + "r64");
+    config.put("rules.r64.channels", "ch1");
+    try {
+      create();
+      Assert.fail("Too many rules should not be accepted");
+    } catch (FlumeException e) {
+      // expected
+    }
+  }
+
+  @Test(expected = FlumeException.class)
+  public void testRuleWithoutChannels() {
+    config.remove("rules.billing.channels");
+    create();
+  }
+
+}
@@ -19,6 +19,7 @@ package org.apache.flume.client.avro;
 
 import com.google.common.base.Charsets;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.google.common.io.Files;
 import junit.framework.Assert;
 import org.apache.flume.Event;
@@ -164,6 +165,43 @@ public class TestReliableSpoolingFileEventReader {
     Assert.assertEquals(expectedLines, seenLines);
   }
 
+  @Test
+  public void testCheckpointTracker() throws IOException {
+    String trackerDirPath =
+        SpoolDirectorySourceConfigurationConstants.DEFAULT_TRACKER_DIR;
+    File checkpoint = new File(new File(WORK_DIR, trackerDirPath),
+        ReliableSpoolingFileEventReader.checkpointFileName);
+
+    ReliableEventReader reader = new ReliableSpoolingFileEventReader.Builder()
+        .spoolDirectory(WORK_DIR).trackerDirPath(trackerDirPath)
+        .trackerType("checkpoint").trackerCommitCount(2).build();
+
+    // file3 holds 3 lines
+    List<Event> events = reader.readEvents(1);
+    while (events.isEmpty() || !new String(events.get(0).getBody(),
+        Charsets.UTF_8).startsWith("file3")) {
+      reader.commit();
+      events = reader.readEvents(1);
+    }
+    reader.commit();
+    long length = checkpoint.length();
+    Assert.assertTrue(length > 0);
+    Assert.assertEquals(1, reader.readEvents(1).size());
+    reader.commit();
+    Assert.assertEquals(length, checkpoint.length());
+    reader.close();
+
+    // the second line was committed, so only the third one is read again
+    reader = new ReliableSpoolingFileEventReader.Builder()
+        .spoolDirectory(WORK_DIR).trackerDirPath(trackerDirPath)
+        .trackerType("checkpoint").trackerCommitCount(2).build();
+    events = reader.readEvents(10);
+    Assert.assertEquals(1, events.size());
+    Assert.assertEquals("file3line2",
+        new String(events.get(0).getBody(), Charsets.UTF_8));
+    reader.close();
+  }
+
   @Test
   public void testFileDeletion() throws IOException {
     ReliableEventReader reader = new ReliableSpoolingFileEventReader.Builder()
@@ -188,6 +226,84 @@ public class TestReliableSpoolingFileEventReader {
         trackerFiles.size());
   }
 
+  @Test
+  public void testReadersSharingIndex() throws IOException {
+    SpoolDirectoryIndex index = new SpoolDirectoryIndex(WORK_DIR,
+        SpoolDirectorySourceConfigurationConstants.DEFAULT_SPOOLED_FILE_SUFFIX,
+        SpoolDirectorySourceConfigurationConstants.DEFAULT_IGNORE_PAT);
+    List<ReliableSpoolingFileEventReader> readers = Lists.newArrayList();
+    for (int i = 0; i < 3; i++) {
+      readers.add(new ReliableSpoolingFileEventReader.Builder()
+          .spoolDirectory(WORK_DIR)
+          .completedSuffix(SpoolDirectorySourceConfigurationConstants
+              .DEFAULT_SPOOLED_FILE_SUFFIX)
+          .index(index).readerId(i).build());
+    }
+
+    // read one batch at a time from each reader in turn, so that several
+    // files are open at once
+    List<String> lines = Lists.newArrayList();
+    boolean read = true;
+    while (read) {
+      read = false;
+      for (ReliableSpoolingFileEventReader reader : readers) {
+        List<Event> events = reader.readEvents(1);
+        for (Event event : events) {
+          lines.add(new String(event.getBody(), Charsets.UTF_8));
+        }
+        reader.commit();
+        read |= !events.isEmpty();
+      }
+    }
+
+    Assert.assertEquals(0 + 1 + 2 + 3 + 1, lines.size());
+    Assert.assertEquals(lines.size(), Sets.newHashSet(lines).size());
+    for (int i = 1; i < 4; i++) {
+      Assert.assertTrue(new File(WORK_DIR, "file" + i +
+          SpoolDirectorySourceConfigurationConstants
+              .DEFAULT_SPOOLED_FILE_SUFFIX).exists());
+    }
+    Assert.assertEquals(0, index.size());
+  }
+
+  @Test
+  public void testResumeAfterRestart() throws IOException {
+    String suffix =
+        SpoolDirectorySourceConfigurationConstants.DEFAULT_SPOOLED_FILE_SUFFIX;
+    ReliableSpoolingFileEventReader reader =
+        new ReliableSpoolingFileEventReader.Builder()
+            .spoolDirectory(WORK_DIR).completedSuffix(suffix)
+            .readerId(1).build();
+    // file0 is empty, so the first line comes from file1
+    Assert.assertEquals(1, reader.readEvents(1).size());
+    reader.commit();
+    List<Event> events = reader.readEvents(1);
+    Assert.assertEquals("file2line0",
+        new String(events.get(0).getBody(), Charsets.UTF_8));
+    reader.commit();
+    reader.close();
+
+    // a restarted reader resumes file2 even though another reader of the
+    // same index claims a file first
+    SpoolDirectoryIndex index = new SpoolDirectoryIndex(WORK_DIR, suffix,
+        SpoolDirectorySourceConfigurationConstants.DEFAULT_IGNORE_PAT);
+    ReliableSpoolingFileEventReader other =
+        new ReliableSpoolingFileEventReader.Builder()
+            .spoolDirectory(WORK_DIR).completedSuffix(suffix)
+            .index(index).readerId(0).build();
+    reader = new ReliableSpoolingFileEventReader.Builder()
+        .spoolDirectory(WORK_DIR).completedSuffix(suffix)
+        .index(index).readerId(1).build();
+    events = other.readEvents(10);
+    Assert.assertTrue(other.getLastFileRead().endsWith("file3"));
+    events = reader.readEvents(10);
+    Assert.assertEquals(1, events.size());
+    Assert.assertEquals("file2line1",
+        new String(events.get(0).getBody(), Charsets.UTF_8));
+    other.close();
+    reader.close();
+  }
+
   private static List<File> listFiles(File dir) {
     List<File> files = Lists.newArrayList(dir.listFiles(new FileFilter
         () {
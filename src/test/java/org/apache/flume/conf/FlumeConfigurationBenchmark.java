@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.conf;
+
+import java.util.Map;
+
+/**
+ * Compares the time to build the configuration of one agent out of a large
+ * generated file with the time to build and validate every agent of it, as
+ * a configuration used to be loaded. It is not a unit test and is not run
+ * by the build; run its main method, optionally with the number of agents.
+ */
+public class FlumeConfigurationBenchmark {
+
+  private static final int ROUNDS = 10;
+
+  public static void main(String[] args) {
+    int agents = args.length > 0 ? Integer.parseInt(args[0])
+        : TestFlumeConfiguration.AGENTS;
+    Map<String, String> props = TestFlumeConfiguration.generate(agents);
+    String self = TestFlumeConfiguration.agentName(agents / 2);
+
+    // warm up both paths
+    for (int i = 0; i < 3; i++) {
+      new FlumeConfiguration(props).getConfigurationErrors();
+      new FlumeConfiguration(props).getConfigurationFor(self);
+    }
+
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      FlumeConfiguration conf = new FlumeConfiguration(props);
+      conf.getConfigurationErrors();
+      conf.getConfigurationFor(self);
+    }
+    long allAgents = (System.nanoTime() - start) / ROUNDS;
+
+    start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      new FlumeConfiguration(props).getConfigurationFor(self);
+    }
+    long oneAgent = (System.nanoTime() - start) / ROUNDS;
+
+    System.out.println(String.format("%d agents, %d properties: "
+        + "validating all agents %d ms, requested agent only %d ms", agents,
+        props.size(), allAgents / 1000000, oneAgent / 1000000));
+  }
+
+}
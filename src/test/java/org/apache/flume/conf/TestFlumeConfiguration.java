@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.conf;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.conf.FlumeConfiguration.AgentConfiguration;
+import org.apache.flume.conf.FlumeConfigurationError.ErrorOrWarning;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class TestFlumeConfiguration {
+
+  static final int AGENTS = 500;
+  private static final int SOURCES_PER_AGENT = 4;
+
+  static String agentName(int i) {
+    return "agent_10_142_" + (i / 256) + "_" + (i % 256);
+  }
+
+  /**
+   * Builds a configuration shaped like the output of BatchFlumeConfGenerator:
+   * per agent a few exec block sources, a seq heartbeat source, an avro sink
+   * and a memory channel.
+   */
+  static Map<String, String> generate(int agents) {
+    Map<String, String> props = new HashMap<String, String>();
+    for (int i = 0; i < agents; i++) {
+      String agent = agentName(i);
+      StringBuilder sources = new StringBuilder();
+      for (int j = 1; j <= SOURCES_PER_AGENT; j++) {
+        String prefix = agent + ".sources.reb" + j;
+        sources.append("reb").append(j).append(' ');
+        props.put(prefix + ".type",
+            "org.n3r.flume.source.exec.ExecBlockSource");
+        props.put(prefix + ".command", "tail -F /app/domains/malldomain/"
+            + "servers/MallAppServer0" + j + "/logs/MallAppServer0" + j
+            + ".out");
+        props.put(prefix + ".boundaryRegex",
+            "^\\d{2}:\\d{2}:\\d{2},\\d{3}\\s");
+        props.put(prefix + ".interceptors", "host static");
+        props.put(prefix + ".interceptors.host.type", "host");
+        props.put(prefix + ".interceptors.static.type", "multi_static");
+        props.put(prefix + ".interceptors.static.keyValues",
+            "server:MallAppServer0" + j + " module:mall");
+        props.put(prefix + ".channels", "mem");
+      }
+      props.put(agent + ".sources", sources + "rseq");
+      props.put(agent + ".channels", "mem");
+      props.put(agent + ".sinks", "avro");
+
+      props.put(agent + ".sources.rseq.type", "seq");
+      props.put(agent + ".sources.rseq.sleepMinMillis", "3000");
+      props.put(agent + ".sources.rseq.sleepMaxMillis", "3000");
+      props.put(agent + ".sources.rseq.interceptors", "host");
+      props.put(agent + ".sources.rseq.interceptors.host.type", "host");
+      props.put(agent + ".sources.rseq.channels", "mem");
+
+      props.put(agent + ".sinks.avro.type", "avro");
+      props.put(agent + ".sinks.avro.hostname", "10.142.194.155");
+      props.put(agent + ".sinks.avro.port", "10010");
+      props.put(agent + ".sinks.avro.channel", "mem");
+
+      props.put(agent + ".channels.mem.type", "memory");
+      props.put(agent + ".channels.mem.capacity", "100");
+    }
+    return props;
+  }
+
+  @Test
+  public void testOnlyRequestedAgentIsBuilt() {
+    Map<String, String> props = generate(3);
+    props.put("broken.sources", "r1");
+    props.put("broken.sources.r1.type", "seq");
+    FlumeConfiguration conf = new FlumeConfiguration(props);
+
+    AgentConfiguration agent = conf.getConfigurationFor(agentName(1));
+    Assert.assertNotNull(agent);
+    Assert.assertEquals(Sets.newHashSet("reb1", "reb2", "reb3", "reb4",
+        "rseq"), agent.getSourceSet());
+    Assert.assertEquals(Sets.newHashSet("avro"), agent.getSinkSet());
+    Assert.assertEquals(Sets.newHashSet("mem"), agent.getChannelSet());
+    Assert.assertEquals("host static", agent.getSourceContext().get("reb2")
+        .getString("interceptors"));
+    Assert.assertSame(agent, conf.getConfigurationFor(agentName(1)));
+    Assert.assertNull(conf.getConfigurationFor("unknown"));
+
+    // the invalid agent has not been looked at yet
+    Assert.assertNull(conf.getConfigurationFor("broken"));
+    List<FlumeConfigurationError> errors = conf.getConfigurationErrors();
+    boolean brokenReported = false;
+    for (FlumeConfigurationError error : errors) {
+      if (error.getComponentName().equals("broken")
+          && error.getErrorType() ==
+              FlumeConfigurationErrorType.AGENT_CONFIGURATION_INVALID) {
+        Assert.assertEquals(ErrorOrWarning.ERROR, error.getErrorOrWarning());
+        brokenReported = true;
+      }
+    }
+    Assert.assertTrue(brokenReported);
+  }
+
+  @Test
+  public void testMalformedPropertiesReportedUpFront() {
+    Map<String, String> props = generate(1);
+    props.put("noagentprefix", "x");
+    props.put(agentName(0) + ".", "x");
+    props.put(agentName(0) + ".sources.reb1.empty", " ");
+    FlumeConfiguration conf = new FlumeConfiguration(props);
+
+    Assert.assertEquals(3, conf.getConfigurationErrors().size());
+    Assert.assertNotNull(conf.getConfigurationFor(agentName(0)));
+  }
+
+  @Test
+  public void testLargeFileBuildsRequestedAgentOnly() {
+    Map<String, String> props = generate(AGENTS);
+    String self = agentName(AGENTS / 2);
+    FlumeConfiguration conf = new FlumeConfiguration(props);
+    Assert.assertNotNull(conf.getConfigurationFor(self));
+    for (int i = 0; i < AGENTS; i++) {
+      Assert.assertEquals(agentName(i).equals(self),
+          conf.isBuilt(agentName(i)));
+    }
+
+    conf.getConfigurationErrors();
+    for (int i = 0; i < AGENTS; i++) {
+      Assert.assertTrue(conf.isBuilt(agentName(i)));
+    }
+  }
+
+}
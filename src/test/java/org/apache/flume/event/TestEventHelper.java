@@ -18,6 +18,9 @@
  */
 package org.apache.flume.event;
 
+import java.util.Map;
+
+import org.apache.flume.Event;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -40,4 +43,40 @@ public class TestEventHelper {
     String eventDump = EventHelper.dumpEvent(event);
     Assert.assertTrue(eventDump, eventDump.contains("....."));
   }
+
+  @Test
+  public void testBodySize() {
+    Assert.assertEquals(4,
+        EventHelper.getBodySize(EventBuilder.withBody("test".getBytes())));
+
+    JSONEvent json = new JSONEvent();
+    json.setBody("caf\u00e9".getBytes());
+    Assert.assertEquals(json.getBody().length, EventHelper.getBodySize(json));
+    json.setCharset("UTF-16BE");
+    Assert.assertEquals(8, EventHelper.getBodySize(json));
+    json.setBody(null);
+    Assert.assertEquals(0, EventHelper.getBodySize(json));
+
+    Event plain = new Event() {
+      private byte[] body;
+      @Override
+      public Map<String, String> getHeaders() {
+        return null;
+      }
+      @Override
+      public void setHeaders(Map<String, String> headers) {
+      }
+      @Override
+      public byte[] getBody() {
+        return body;
+      }
+      @Override
+      public void setBody(byte[] body) {
+        this.body = body;
+      }
+    };
+    Assert.assertEquals(0, EventHelper.getBodySize(plain));
+    plain.setBody(new byte[3]);
+    Assert.assertEquals(3, EventHelper.getBodySize(plain));
+  }
 }
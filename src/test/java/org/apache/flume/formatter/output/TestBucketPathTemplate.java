@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.formatter.output;
+
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+import org.apache.flume.Clock;
+import org.joda.time.format.DateTimeFormatter;
+import org.joda.time.format.ISODateTimeFormat;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TestBucketPathTemplate {
+
+  private static final String[] TEMPLATES = {
+      "/flume/%{module}/%Y-%m-%d/%H%M",
+      "%c",
+      "%s.%t",
+      "%a %A %b %B %d %D %j %k %l %p %S %y %z %I",
+      "100%% %{host}%{missing}-%{a.b-c}",
+      "%q unknown escape",
+      "trailing %",
+      "%{not closed",
+      "%{} empty %{ bad } $1 \\",
+      "plain"
+  };
+
+  private Map<String, String> headers;
+
+  @Before
+  public void setUp() {
+    headers = new HashMap<String, String>();
+    headers.put("module", "mall");
+    headers.put("host", "h1");
+    headers.put("a.b-c", "dotted");
+  }
+
+  @Test
+  public void testMatchesEscapeString() {
+    TimeZone utc = TimeZone.getTimeZone("UTC");
+    long ts = 1371995193234L;
+    // step through several minutes, hours and days
+    for (int i = 0; i < 500; i++) {
+      ts += 7919 * 37L * i;
+      headers.put("timestamp", String.valueOf(ts));
+      for (String template : TEMPLATES) {
+        assertSame(template, null, false, 0, 0);
+        assertSame(template, utc, false, 0, 0);
+        assertSame(template, null, true, Calendar.MINUTE, 5);
+        assertSame(template, utc, true, Calendar.HOUR_OF_DAY, 12);
+      }
+    }
+  }
+
+  @Test
+  public void testCacheFollowsBuckets() {
+    BucketPathTemplate template = BucketPathTemplate.compile("%H:%M:%S",
+        TimeZone.getTimeZone("UTC"), false, 0, 0, false);
+    DateTimeFormatter parser = ISODateTimeFormat.dateTimeParser();
+    long ts = parser.parseMillis("2013-04-21T02:59:58-00:00");
+    String[] expected = { "02:59:58", "02:59:58", "02:59:59", "03:00:00" };
+    long[] offsets = { 0, 999, 1000, 2000 };
+    for (int i = 0; i < expected.length; i++) {
+      headers.put("timestamp", String.valueOf(ts + offsets[i]));
+      Assert.assertEquals(expected[i], template.render(headers));
+    }
+    // going back in time must not reuse the later bucket
+    headers.put("timestamp", String.valueOf(ts));
+    Assert.assertEquals("02:59:58", template.render(headers));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testMissingTimestamp() {
+    BucketPathTemplate.compile("%Y").render(new HashMap<String, String>());
+  }
+
+  @Test
+  public void testHeadersOnlyNeedNoTimestamp() {
+    Assert.assertEquals("mall/h1", BucketPathTemplate.compile(
+        "%{module}/%{host}").render(headers));
+  }
+
+  @Test
+  public void testLocalTimestamp() {
+    Clock mockClock = mock(Clock.class);
+    DateTimeFormatter parser = ISODateTimeFormat.dateTimeParser();
+    long two = parser.parseMillis("2013-04-21T02:59:59-00:00");
+    long three = parser.parseMillis("2013-04-21T03:00:00-00:00");
+    when(mockClock.currentTimeMillis()).thenReturn(two, three);
+
+    Clock origClock = BucketPath.getClock();
+    BucketPath.setClock(mockClock);
+    try {
+      BucketPathTemplate template = BucketPathTemplate.compile("%H:%M",
+          TimeZone.getTimeZone("UTC"), true, Calendar.MINUTE, 10, true);
+      Assert.assertEquals("02:50", template.render(headers));
+      Assert.assertEquals("03:00", template.render(headers));
+    } finally {
+      BucketPath.setClock(origClock);
+    }
+  }
+
+  private void assertSame(String in, TimeZone timeZone, boolean needRounding,
+      int unit, int roundDown) {
+    String expected = BucketPath.escapeString(in, headers, timeZone,
+        needRounding, unit, roundDown, false);
+    String actual = BucketPathTemplate.compile(in, timeZone, needRounding,
+        unit, roundDown, false).render(headers);
+    Assert.assertEquals(in, expected, actual);
+  }
+
+}
@@ -0,0 +1,124 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestEventTracer {
+
+  @Test
+  public void testLatencies() {
+    EventTracer tracer = new EventTracer("collector");
+    tracer.start();
+    long now = System.currentTimeMillis();
+    Event event = EventBuilder.withBody(new byte[0]);
+    Map<String, String> headers = event.getHeaders();
+    headers.put(EventTracer.ORIGIN_HEADER, Long.toString(now - 10000));
+    headers.put(EventTracer.HOPS_HEADER,
+        "agent1:" + (now - 10000) + ",agent1-out:" + (now - 4000));
+
+    Assert.assertTrue(tracer.mark(event));
+    TraceCounter counter = tracer.getCounter();
+    Assert.assertEquals(1, counter.getTraceMarkedCount());
+    LatencyHistogram.Snapshot hop =
+        counter.getHistograms().get("trace.hop.latency").getSnapshot();
+    LatencyHistogram.Snapshot origin =
+        counter.getHistograms().get("trace.origin.latency").getSnapshot();
+    Assert.assertTrue(hop.getMax() >= 4000000L);
+    Assert.assertTrue(hop.getMax() < 9000000L);
+    Assert.assertTrue(origin.getMax() >= 10000000L);
+    Assert.assertEquals(hop.getMax(), counter.getHopLatencyMax());
+    Assert.assertEquals(hop.getPercentile(99.0), counter.getHopLatencyP99());
+    Assert.assertEquals(origin.getMax(), counter.getOriginLatencyMax());
+    Assert.assertTrue(counter.getHopLatency().endsWith(
+        "max=" + hop.getMax() + " (us)"));
+    tracer.stop();
+
+    // the latencies cover the lifetime of the counter until it restarts
+    tracer.start();
+    Assert.assertEquals(0L, counter.getHopLatencyMax());
+    Assert.assertEquals(0L, counter.getOriginLatencyP99());
+    tracer.stop();
+  }
+
+  /**
+   * Ensure that a hop marking an event twice, as a sink retrying a batch
+   * does, replaces its mark
+   */
+  @Test
+  public void testRemarkReplaces() {
+    EventTracer origin = new EventTracer("agent1");
+    EventTracer sink = new EventTracer("agent1-out");
+    Event event = EventBuilder.withBody(new byte[0]);
+    origin.begin(event);
+    Assert.assertEquals(1, origin.getCounter().getTraceStartedCount());
+    sink.mark(event);
+    sink.mark(event);
+
+    String[] marks =
+        event.getHeaders().get(EventTracer.HOPS_HEADER).split(",");
+    Assert.assertEquals(2, marks.length);
+    Assert.assertTrue(marks[0].startsWith("agent1:"));
+    Assert.assertTrue(marks[1].startsWith("agent1-out:"));
+    Assert.assertEquals(2, sink.getCounter().getTraceMarkedCount());
+  }
+
+  @Test
+  public void testMarkCopies() {
+    EventTracer origin = new EventTracer("agent1");
+    EventTracer sink = new EventTracer("agent1-out");
+    Event traced = EventBuilder.withBody("traced".getBytes());
+    origin.begin(traced);
+    String hops = traced.getHeaders().get(EventTracer.HOPS_HEADER);
+    Event untraced = EventBuilder.withBody(new byte[0]);
+
+    List<Event> marked = sink.markCopies(Arrays.asList(traced, untraced));
+    Assert.assertEquals(2, marked.size());
+    Assert.assertNotSame(traced, marked.get(0));
+    Assert.assertSame(traced.getBody(), marked.get(0).getBody());
+    Assert.assertTrue(marked.get(0).getHeaders().get(EventTracer.HOPS_HEADER)
+        .startsWith(hops + ",agent1-out:"));
+    Assert.assertSame(untraced, marked.get(1));
+    // the event taken from the channel keeps its headers
+    Assert.assertEquals(hops, traced.getHeaders().get(EventTracer.HOPS_HEADER));
+    Assert.assertEquals(1, sink.getCounter().getTraceMarkedCount());
+  }
+
+  @Test
+  public void testUntraced() {
+    EventTracer tracer = new EventTracer("agent1");
+    Event event = EventBuilder.withBody(new byte[0]);
+    Assert.assertFalse(tracer.mark(event));
+    Assert.assertFalse(EventTracer.isTraced(event));
+    Assert.assertEquals(0, tracer.getCounter().getTraceMarkedCount());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidHop() {
+    new EventTracer("agent:1");
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.flume.instrumentation.LatencyHistogram.Snapshot;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestLatencyHistogram {
+
+  @Test
+  public void testBucketBounds() {
+    for (long v = 0; v < 1000000; v += 7) {
+      int bucket = LatencyHistogram.bucketOf(v);
+      Assert.assertTrue(LatencyHistogram.highestValueOf(bucket) >= v);
+      if (bucket > 0) {
+        Assert.assertTrue(LatencyHistogram.highestValueOf(bucket - 1) < v);
+      }
+    }
+    Assert.assertEquals(31, LatencyHistogram.highestValueOf(31));
+    Assert.assertEquals(32, LatencyHistogram.highestValueOf(32));
+  }
+
+  @Test
+  public void testPercentilesWithinPrecision() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Random random = new Random(42);
+    long[] values = new long[100000];
+    for (int i = 0; i < values.length; i++) {
+      // a long tailed distribution between 10us and 1s
+      values[i] = (long) (10 * Math.pow(100000, random.nextDouble()));
+      histogram.record(values[i]);
+    }
+    Arrays.sort(values);
+
+    Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(values.length, snapshot.getCount());
+    Assert.assertEquals(values[values.length - 1], snapshot.getMax());
+    for (double p : new double[] { 50.0, 90.0, 99.0, 99.9 }) {
+      long exact = values[(int) Math.ceil(values.length * p / 100) - 1];
+      long estimate = snapshot.getPercentile(p);
+      Assert.assertTrue("p" + p + " " + estimate + " vs " + exact,
+          estimate >= exact && estimate <= exact * 1.035);
+    }
+  }
+
+  @Test
+  public void testEmptyAndReset() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assert.assertEquals(0L, histogram.getSnapshot().getPercentile(99.0));
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+    Assert.assertEquals(2, histogram.getCount());
+    Assert.assertEquals(0L, histogram.getSnapshot().getPercentile(50.0));
+    histogram.reset();
+    Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(0, snapshot.getCount());
+    Assert.assertEquals(0, snapshot.getMax());
+    Assert.assertTrue(snapshot.toString().startsWith("count=0,"));
+  }
+
+  @Test
+  public void testConcurrentRecording() throws InterruptedException {
+    final LatencyHistogram histogram = new LatencyHistogram();
+    final int threads = 8;
+    final int perThread = 100000;
+    final CountDownLatch done = new CountDownLatch(threads);
+    for (int t = 0; t < threads; t++) {
+      final int offset = t;
+      new Thread() {
+        @Override
+        public void run() {
+          for (int i = 0; i < perThread; i++) {
+            histogram.record(offset * 1000 + (i % 1000));
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    done.await();
+    Snapshot snapshot = histogram.getSnapshot();
+    Assert.assertEquals(threads * perThread, snapshot.getCount());
+    Assert.assertEquals((threads - 1) * 1000 + 999, snapshot.getMax());
+  }
+
+}
@@ -314,6 +314,21 @@ public class TestMonitoredCounterGroup {
         0L, 0L, 0L, 0L);
   }
 
+  @Test
+  public void testUpdatesReturnTotal() {
+    SourceCounter srcc = new SourceCounter("legacy");
+    Assert.assertEquals(1L, srcc.incrementEventReceivedCount());
+    Assert.assertEquals(5L, srcc.addToEventReceivedCount(4));
+    srcc.increment(SourceCounter.Counter.EVENTS_RECEIVED);
+    srcc.add(SourceCounter.Counter.EVENTS_RECEIVED, 2);
+    Assert.assertEquals(8L, srcc.getEventReceivedCount());
+
+    SinkCounter skc = new SinkCounter("legacy");
+    Assert.assertEquals(3L, skc.addToEventDrainSuccessCount(3));
+    ChannelCounter chc = new ChannelCounter("legacy");
+    Assert.assertEquals(1L, chc.incrementEventPutAttemptCount());
+  }
+
   private void assertSrcCounterState(ObjectName on, long eventReceivedCount,
       long eventAcceptedCount, long appendReceivedCount,
       long appendAcceptedCount, long appendBatchReceivedCount,
@@ -0,0 +1,121 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class TestStripedCounter {
+
+  private static final Logger logger =
+      LoggerFactory.getLogger(TestStripedCounter.class);
+
+  private static final int THREADS = 8;
+  private static final int INCREMENTS = 1000000;
+
+  @Test
+  public void testStripes() {
+    Assert.assertEquals(1, StripedCounter.stripesFor(1));
+    Assert.assertEquals(4, StripedCounter.stripesFor(3));
+    Assert.assertEquals(8, StripedCounter.stripesFor(8));
+    Assert.assertEquals(32, StripedCounter.stripesFor(200));
+  }
+
+  @Test
+  public void testSetAndAdd() {
+    StripedCounter counter = new StripedCounter();
+    counter.add(5);
+    counter.increment();
+    Assert.assertEquals(6, counter.get());
+    counter.set(42);
+    Assert.assertEquals(42, counter.get());
+    counter.set(0);
+    Assert.assertEquals(0, counter.get());
+  }
+
+  @Test
+  public void testConcurrentIncrementsAreExact() throws InterruptedException {
+    final StripedCounter counter = new StripedCounter();
+    long millis = run(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < INCREMENTS; i++) {
+          counter.increment();
+        }
+      }
+    });
+    Assert.assertEquals((long) THREADS * INCREMENTS, counter.get());
+
+    final AtomicLong atomic = new AtomicLong();
+    long atomicMillis = run(new Runnable() {
+      @Override
+      public void run() {
+        for (int i = 0; i < INCREMENTS; i++) {
+          atomic.incrementAndGet();
+        }
+      }
+    });
+    logger.info("{} threads x {} increments: striped {} ms, AtomicLong {} ms",
+        new Object[] { THREADS, INCREMENTS, millis, atomicMillis });
+  }
+
+  @Test
+  public void testCounterGroupByEnum() {
+    ChannelCounter counter = new ChannelCounter("striped");
+    counter.incrementEventPutAttemptCount();
+    counter.incrementEventPutAttemptCount();
+    counter.addToEventPutSuccessCount(2);
+    counter.setChannelSize(7);
+    Assert.assertEquals(2, counter.getEventPutAttemptCount());
+    Assert.assertEquals(2, counter.getEventPutSuccessCount());
+    Assert.assertEquals(7, counter.getChannelSize());
+    // the string keys still address the same counters
+    Assert.assertEquals(2, counter.get("channel.event.put.attempt"));
+    Assert.assertEquals(7, counter.get("channel.current.size"));
+  }
+
+  private static long run(final Runnable task) throws InterruptedException {
+    final CountDownLatch start = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(THREADS);
+    for (int t = 0; t < THREADS; t++) {
+      new Thread() {
+        @Override
+        public void run() {
+          try {
+            start.await();
+            task.run();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+          done.countDown();
+        }
+      }.start();
+    }
+    long begin = System.nanoTime();
+    start.countDown();
+    done.await();
+    return (System.nanoTime() - begin) / 1000000;
+  }
+
+}
@@ -127,4 +127,50 @@ public class TestHTTPMetricsServer {
     srv.stop();
     System.out.println(String.valueOf(port) + "test success!");
   }
+
+  @Test
+  public void testPrometheusAndFilter() throws Exception {
+    memChannel.setName("memChannel");
+    Configurables.configure(memChannel, new Context());
+    memChannel.start();
+    pmemChannel.setName("pmemChannel");
+    Configurables.configure(pmemChannel, new Context());
+    pmemChannel.start();
+
+    MonitorService srv = new HTTPMetricsServer();
+    Context context = new Context();
+    context.put(HTTPMetricsServer.CONFIG_PORT, "5468");
+    srv.configure(context);
+    srv.start();
+
+    String json = get("http://0.0.0.0:5468/metrics?component=memChannel");
+    Map<String, Map<String, String>> mbeans = gson.fromJson(json, mapType);
+    Assert.assertEquals(1, mbeans.size());
+    Assert.assertNotNull(mbeans.get("CHANNEL.memChannel"));
+
+    String text = get("http://0.0.0.0:5468/metrics?format=prometheus"
+        + "&component=CHANNEL.pmemChannel");
+    Assert.assertTrue(text.contains(
+        "flume_channel_channel_size{component=\"pmemChannel\"} "));
+    Assert.assertFalse(text.contains("{component=\"memChannel\""));
+
+    srv.stop();
+    memChannel.stop();
+    pmemChannel.stop();
+  }
+
+  private static String get(String address) throws Exception {
+    HttpURLConnection conn =
+        (HttpURLConnection) new URL(address).openConnection();
+    conn.setRequestMethod("GET");
+    BufferedReader reader = new BufferedReader(
+            new InputStreamReader(conn.getInputStream()));
+    StringBuilder result = new StringBuilder();
+    String line;
+    while ((line = reader.readLine()) != null) {
+      result.append(line).append('\n');
+    }
+    reader.close();
+    return result.toString();
+  }
 }
@@ -34,5 +34,10 @@ public class JMXTestUtils {
     Assert.assertTrue(Long.parseLong(attrs.get("EventTakeAttemptCount")) == 1);
     Assert.assertTrue(Long.parseLong(attrs.get("EventPutSuccessCount")) == 2);
     Assert.assertTrue(Long.parseLong(attrs.get("EventTakeSuccessCount")) == 1);
+    Assert.assertTrue(attrs.get("PutLatency").startsWith("count=2,"));
+    Assert.assertTrue(attrs.get("TakeLatency").startsWith("count=1,"));
+    Assert.assertTrue(Long.parseLong(attrs.get("PutLatencyP99"))
+        <= Long.parseLong(attrs.get("PutLatencyMax")));
+    Assert.assertNotNull(attrs.get("TakeLatencyMax"));
   }
 }
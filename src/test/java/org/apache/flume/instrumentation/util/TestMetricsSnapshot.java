@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.instrumentation.util;
+
+import java.io.StringWriter;
+import java.lang.reflect.Type;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.flume.Context;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.instrumentation.SinkCounter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+public class TestMetricsSnapshot {
+
+  private final Type mapType =
+      new TypeToken<Map<String, Map<String, String>>>() {
+      }.getType();
+
+  private MemoryChannel channel;
+  private SinkCounter sinkCounter;
+
+  @Before
+  public void setUp() {
+    channel = new MemoryChannel();
+    channel.setName("snapshotChannel");
+    Configurables.configure(channel, new Context());
+    channel.start();
+    Transaction txn = channel.getTransaction();
+    txn.begin();
+    channel.put(EventBuilder.withBody("blah".getBytes()));
+    channel.put(EventBuilder.withBody("blah".getBytes()));
+    txn.commit();
+    txn.close();
+    txn = channel.getTransaction();
+    txn.begin();
+    channel.take();
+    txn.commit();
+    txn.close();
+
+    sinkCounter = new SinkCounter("snapshotSink");
+    sinkCounter.start();
+    sinkCounter.incrementBatchCompleteCount();
+  }
+
+  @After
+  public void tearDown() {
+    channel.stop();
+    sinkCounter.stop();
+  }
+
+  @Test
+  public void testJsonMatchesJmx() throws Exception {
+    StringWriter out = new StringWriter();
+    MetricsSnapshot.take().writeJson(out, null);
+    Map<String, Map<String, String>> metrics =
+        new Gson().fromJson(out.toString(), mapType);
+
+    Map<String, Map<String, String>> jmx = JMXPollUtil.getAllMBeans();
+    Assert.assertEquals(jmx.get("CHANNEL.snapshotChannel"),
+        metrics.get("CHANNEL.snapshotChannel"));
+    Assert.assertEquals(jmx.get("SINK.snapshotSink"),
+        metrics.get("SINK.snapshotSink"));
+    JMXTestUtils.checkChannelCounterParams(
+        metrics.get("CHANNEL.snapshotChannel"));
+  }
+
+  @Test
+  public void testFilter() throws Exception {
+    MetricsSnapshot snapshot = MetricsSnapshot.take();
+    for (String filter : new String[] { "CHANNEL.snapshotChannel",
+        "snapshotChannel", "channel" }) {
+      StringWriter out = new StringWriter();
+      snapshot.writeJson(out, Arrays.asList(filter));
+      Map<String, Map<String, String>> metrics =
+          new Gson().fromJson(out.toString(), mapType);
+      Assert.assertTrue(metrics.containsKey("CHANNEL.snapshotChannel"));
+      Assert.assertFalse(metrics.containsKey("SINK.snapshotSink"));
+    }
+  }
+
+  @Test
+  public void testPrometheus() throws Exception {
+    StringWriter out = new StringWriter();
+    MetricsSnapshot.take().writePrometheus(out,
+        Arrays.asList("snapshotChannel", "snapshotSink"));
+    String text = out.toString();
+
+    Assert.assertTrue(text.contains(
+        "# TYPE flume_channel_event_put_attempt_total counter\n"));
+    Assert.assertTrue(text.contains("flume_channel_event_put_attempt_total"
+        + "{component=\"snapshotChannel\"} 2\n"));
+    Assert.assertTrue(text.contains("flume_sink_batch_complete_total"
+        + "{component=\"snapshotSink\"} 1\n"));
+    Assert.assertTrue(text.contains(
+        "# TYPE flume_channel_channel_size gauge\n"));
+    Assert.assertTrue(text.contains(
+        "# TYPE flume_channel_channel_fill_percentage gauge\n"));
+    Assert.assertFalse(text.contains("_count gauge"));
+    Assert.assertTrue(text.contains(
+        "# TYPE flume_channel_put_latency_microseconds summary\n"));
+    Assert.assertTrue(text.contains("flume_channel_put_latency_microseconds"
+        + "{component=\"snapshotChannel\",quantile=\"0.99\"} "));
+    Assert.assertTrue(text.contains("flume_channel_put_latency_microseconds"
+        + "_count{component=\"snapshotChannel\"} 2\n"));
+    // string attributes are not exported
+    Assert.assertFalse(text.contains("_type"));
+    for (String line : text.split("\n")) {
+      Assert.assertTrue(line, line.startsWith("# TYPE flume_")
+          || line.matches("flume_[a-z0-9_]+\\{[^}]*\\} \\S+"));
+    }
+  }
+
+  @Test
+  public void testMetricNames() {
+    Assert.assertTrue(MetricsSnapshot.isCumulative("EventPutAttemptCount"));
+    Assert.assertTrue(MetricsSnapshot.isCumulative("BlockedTime"));
+    Assert.assertFalse(MetricsSnapshot.isCumulative("OpenConnectionCount"));
+    Assert.assertFalse(MetricsSnapshot.isCumulative("ChannelSize"));
+    Assert.assertEquals("event_put_attempt_total",
+        MetricsSnapshot.metricName("EventPutAttemptCount", true));
+    Assert.assertEquals("blocked_time_total",
+        MetricsSnapshot.metricName("BlockedTime", true));
+    Assert.assertEquals("open_connection_count",
+        MetricsSnapshot.metricName("OpenConnectionCount", false));
+  }
+
+  @Test
+  public void testSnakeCase() {
+    Assert.assertEquals("event_put_attempt_count",
+        MetricsSnapshot.snakeCase("EventPutAttemptCount"));
+    Assert.assertEquals("channel_fill_percentage",
+        MetricsSnapshot.snakeCase("ChannelFillPercentage"));
+  }
+
+}
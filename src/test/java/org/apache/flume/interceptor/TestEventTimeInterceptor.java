@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flume.interceptor;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Clock;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.EventTimeInterceptor.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestEventTimeInterceptor {
+
+  private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+  private long now;
+
+  private EventTimeInterceptor build(Context ctx) throws Exception {
+    ctx.put(Constants.TIME_ZONE, "UTC");
+    Interceptor.Builder builder = InterceptorBuilderFactory.newInstance(
+        InterceptorType.EVENT_TIME.toString());
+    builder.configure(ctx);
+    EventTimeInterceptor interceptor = (EventTimeInterceptor) builder.build();
+    interceptor.setClock(new Clock() {
+      @Override
+      public long currentTimeMillis() {
+        return now;
+      }
+    });
+    return interceptor;
+  }
+
+  private static long parse(String time) throws Exception {
+    SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss,SSS");
+    format.setTimeZone(UTC);
+    return format.parse(time).getTime();
+  }
+
+  private static String timestampOf(Interceptor interceptor, String body) {
+    Event event = interceptor.intercept(
+        EventBuilder.withBody(body, Charsets.UTF_8));
+    return event.getHeaders().get(Constants.HEADER_DFLT);
+  }
+
+  @Test
+  public void testTimeOnly() throws Exception {
+    Interceptor interceptor = build(new Context());
+    now = parse("2014-03-05 10:00:00,000");
+    Assert.assertEquals(String.valueOf(parse("2014-03-05 09:58:12,345")),
+        timestampOf(interceptor, "09:58:12,345 INFO started"));
+    // same minute, cached epoch
+    Assert.assertEquals(String.valueOf(parse("2014-03-05 09:58:59,999")),
+        timestampOf(interceptor, "09:58:59,999 INFO done"));
+    Assert.assertEquals(String.valueOf(parse("2014-03-05 09:59:00,000")),
+        timestampOf(interceptor, "09:59:00,000 INFO next"));
+  }
+
+  @Test
+  public void testRollover() throws Exception {
+    Interceptor interceptor = build(new Context());
+    // read just after midnight, logged just before it
+    now = parse("2014-03-06 00:00:05,000");
+    Assert.assertEquals(String.valueOf(parse("2014-03-05 23:59:58,100")),
+        timestampOf(interceptor, "23:59:58,100 late"));
+    Assert.assertEquals(String.valueOf(parse("2014-03-06 00:00:01,000")),
+        timestampOf(interceptor, "00:00:01,000 early"));
+    // clock slightly behind the logging host
+    now = parse("2014-03-05 23:59:59,000");
+    Assert.assertEquals(String.valueOf(parse("2014-03-06 00:00:02,000")),
+        timestampOf(interceptor, "00:00:02,000 ahead"));
+    // the cached day moves with the clock
+    now = parse("2014-03-07 08:00:00,000");
+    Assert.assertEquals(String.valueOf(parse("2014-03-07 07:59:00,000")),
+        timestampOf(interceptor, "07:59:00,000 next day"));
+  }
+
+  @Test
+  public void testDateLayoutAndOffset() throws Exception {
+    Context ctx = new Context();
+    ctx.put(Constants.LAYOUT, "yyyy-MM-dd'T'HH:mm:ss.SSS");
+    ctx.put(Constants.OFFSET, "1");
+    Interceptor interceptor = build(ctx);
+    now = parse("2014-03-05 10:00:00,000");
+    Assert.assertEquals(String.valueOf(parse("2013-12-31 23:59:59,999")),
+        timestampOf(interceptor, "[2013-12-31T23:59:59.999] old"));
+    Assert.assertEquals(String.valueOf(parse("2014-01-01 00:00:00,000")),
+        timestampOf(interceptor, "[2014-01-01T00:00:00.000] new"));
+  }
+
+  @Test
+  public void testUnparseable() throws Exception {
+    Interceptor interceptor = build(new Context());
+    now = parse("2014-03-05 10:00:00,000");
+    Assert.assertEquals(String.valueOf(now),
+        timestampOf(interceptor, "\tat org.apache.flume.Foo"));
+    Assert.assertEquals(String.valueOf(now),
+        timestampOf(interceptor, "25:00:00,000 bad hour"));
+    Assert.assertEquals(String.valueOf(now), timestampOf(interceptor, "09:"));
+
+    Context ctx = new Context();
+    ctx.put(Constants.FALLBACK, "false");
+    interceptor = build(ctx);
+    Assert.assertNull(timestampOf(interceptor, "09:58:1x,345 bad digit"));
+  }
+
+  @Test
+  public void testPreserve() throws Exception {
+    Context ctx = new Context();
+    ctx.put(Constants.PRESERVE, "true");
+    ctx.put(Constants.HEADER, "eventTime");
+    Interceptor interceptor = build(ctx);
+    now = parse("2014-03-05 10:00:00,000");
+    Event event = EventBuilder.withBody("09:58:12,345 x", Charsets.UTF_8);
+    event.getHeaders().put("eventTime", "1");
+    Assert.assertEquals("1",
+        interceptor.intercept(event).getHeaders().get("eventTime"));
+    event = EventBuilder.withBody("09:58:12,345 x", Charsets.UTF_8);
+    Assert.assertEquals(String.valueOf(parse("2014-03-05 09:58:12,345")),
+        interceptor.intercept(event).getHeaders().get("eventTime"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPartialDate() throws Exception {
+    Context ctx = new Context();
+    ctx.put(Constants.LAYOUT, "MM-dd HH:mm:ss");
+    build(ctx);
+  }
+
+}
@@ -0,0 +1,157 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.flume.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Clock;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.instrumentation.RateLimitCounter;
+import org.apache.flume.interceptor.RateLimitingInterceptor.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRateLimitingInterceptor {
+
+  private long now = 1000000L;
+
+  private RateLimitingInterceptor build(Context ctx) throws Exception {
+    ctx.put(Constants.NAME, "r1-module");
+    ctx.put(Constants.HEADER, "module");
+    Interceptor.Builder builder = InterceptorBuilderFactory.newInstance(
+        InterceptorType.RATE_LIMIT.toString());
+    builder.configure(ctx);
+    RateLimitingInterceptor interceptor =
+        (RateLimitingInterceptor) builder.build();
+    interceptor.setClock(new Clock() {
+      @Override
+      public long currentTimeMillis() {
+        return now;
+      }
+    });
+    interceptor.initialize();
+    return interceptor;
+  }
+
+  private static List<Event> events(String module, int count) {
+    List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < count; i++) {
+      Event event = EventBuilder.withBody("event " + i, Charsets.UTF_8);
+      if (module != null) {
+        event.getHeaders().put("module", module);
+      }
+      events.add(event);
+    }
+    return events;
+  }
+
+  /**
+   * The name is required rather than defaulting to the header, as two
+   * sources limiting on the same header would share a counter group name.
+   */
+  @Test(expected = IllegalStateException.class)
+  public void testNameRequired() throws Exception {
+    Context ctx = new Context();
+    ctx.put(Constants.HEADER, "module");
+    Interceptor.Builder builder = InterceptorBuilderFactory.newInstance(
+        InterceptorType.RATE_LIMIT.toString());
+    builder.configure(ctx);
+    builder.build();
+  }
+
+  @Test
+  public void testRateLimit() throws Exception {
+    Context ctx = new Context();
+    ctx.put(Constants.RATE, "10");
+    ctx.put(Constants.BURST, "5");
+    ctx.put("rates.billing", "100");
+    RateLimitingInterceptor interceptor = build(ctx);
+
+    Assert.assertEquals(5, interceptor.intercept(events("noisy", 20)).size());
+    // every key has a bucket of its own
+    Assert.assertEquals(100, interceptor.intercept(events("billing", 150)).size());
+    Assert.assertEquals(5, interceptor.intercept(events(null, 20)).size());
+
+    // a tenth of a second refills one token
+    now += 100;
+    Assert.assertEquals(1, interceptor.intercept(events("noisy", 20)).size());
+    now += 10000;
+    Assert.assertEquals(5, interceptor.intercept(events("noisy", 20)).size());
+
+    RateLimitCounter counter = interceptor.getCounter();
+    Assert.assertEquals(116, counter.getEventAcceptedCount());
+    Assert.assertEquals(114, counter.getEventRateLimitedCount());
+    Assert.assertEquals(49, counter.getDroppedCount("noisy"));
+    Assert.assertEquals(50, counter.getDroppedCount("billing"));
+    Assert.assertEquals(15,
+        counter.getDroppedCount(RateLimitingInterceptor.OTHER_KEY));
+    Assert.assertEquals("{billing=50, noisy=49, other=15}",
+        counter.getDroppedByKey());
+    interceptor.close();
+  }
+
+  @Test
+  public void testTag() throws Exception {
+    Context ctx = new Context();
+    ctx.put(Constants.RATE, "1");
+    ctx.put(Constants.ACTION, "tag");
+    RateLimitingInterceptor interceptor = build(ctx);
+
+    List<Event> out = interceptor.intercept(events("noisy", 3));
+    Assert.assertEquals(3, out.size());
+    Assert.assertNull(out.get(0).getHeaders().get(Constants.TAG_HEADER_DFLT));
+    Assert.assertEquals(Constants.TAG_RATE,
+        out.get(1).getHeaders().get(Constants.TAG_HEADER_DFLT));
+    Assert.assertEquals(2, interceptor.getCounter().getDroppedCount("noisy"));
+  }
+
+  @Test
+  public void testSampling() throws Exception {
+    Context ctx = new Context();
+    ctx.put(Constants.SAMPLE_RATE, "0.25");
+    RateLimitingInterceptor interceptor = build(ctx);
+
+    int kept = interceptor.intercept(events("noisy", 10000)).size();
+    Assert.assertTrue("kept " + kept, kept > 2000 && kept < 3000);
+    Assert.assertEquals(10000 - kept,
+        interceptor.getCounter().getEventSampledOutCount());
+    Assert.assertEquals(0, interceptor.getCounter().getEventRateLimitedCount());
+  }
+
+  @Test
+  public void testMaxKeys() throws Exception {
+    Context ctx = new Context();
+    ctx.put(Constants.RATE, "1");
+    ctx.put(Constants.MAX_KEYS, "2");
+    RateLimitingInterceptor interceptor = build(ctx);
+
+    Assert.assertEquals(1, interceptor.intercept(events("a", 2)).size());
+    Assert.assertEquals(1, interceptor.intercept(events("b", 2)).size());
+    // further keys share the bucket of the other key
+    Assert.assertEquals(1, interceptor.intercept(events("c", 2)).size());
+    Assert.assertEquals(0, interceptor.intercept(events("d", 2)).size());
+    Assert.assertEquals(3, interceptor.getCounter().getDroppedCount(
+        RateLimitingInterceptor.OTHER_KEY));
+  }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.interceptor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.instrumentation.EventTracer;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestTracingInterceptor {
+
+  private static Interceptor build(String hop, String sampleRate)
+      throws Exception {
+    Context ctx = new Context();
+    ctx.put("hop", hop);
+    if (sampleRate != null) {
+      ctx.put("sampleRate", sampleRate);
+    }
+    Interceptor.Builder builder = InterceptorBuilderFactory.newInstance(
+        InterceptorType.TRACING.toString());
+    builder.configure(ctx);
+    Interceptor interceptor = builder.build();
+    interceptor.initialize();
+    return interceptor;
+  }
+
+  /**
+   * Ensure that one in every 1/sampleRate events starts a trace
+   */
+  @Test
+  public void testSampling() throws Exception {
+    Interceptor interceptor = build("agent1", "0.1");
+    List<Event> events = new ArrayList<Event>();
+    for (int i = 0; i < 100; i++) {
+      events.add(EventBuilder.withBody("test event", Charsets.UTF_8));
+    }
+    interceptor.intercept(events);
+
+    int traced = 0;
+    for (Event event : events) {
+      if (EventTracer.isTraced(event)) {
+        traced++;
+        String origin = event.getHeaders().get(EventTracer.ORIGIN_HEADER);
+        Assert.assertEquals("agent1:" + origin,
+            event.getHeaders().get(EventTracer.HOPS_HEADER));
+      }
+    }
+    Assert.assertEquals(10, traced);
+    interceptor.close();
+  }
+
+  /**
+   * Ensure that events traced upstream are marked even when not sampling
+   */
+  @Test
+  public void testMarkUpstreamTrace() throws Exception {
+    Interceptor interceptor = build("collector", "0");
+    long origin = System.currentTimeMillis() - 5000;
+    Event traced = EventBuilder.withBody("test event", Charsets.UTF_8);
+    traced.getHeaders().put(EventTracer.ORIGIN_HEADER, Long.toString(origin));
+    traced.getHeaders().put(EventTracer.HOPS_HEADER,
+        "agent1:" + origin + ",agent1-out:" + (origin + 3000));
+    Event untraced = EventBuilder.withBody("test event", Charsets.UTF_8);
+
+    interceptor.intercept(traced);
+    interceptor.intercept(untraced);
+
+    Assert.assertFalse(EventTracer.isTraced(untraced));
+    String hops = traced.getHeaders().get(EventTracer.HOPS_HEADER);
+    Assert.assertTrue(hops, hops.startsWith(
+        "agent1:" + origin + ",agent1-out:" + (origin + 3000)
+        + ",collector:"));
+    interceptor.close();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testMissingHop() throws Exception {
+    Interceptor.Builder builder = InterceptorBuilderFactory.newInstance(
+        InterceptorType.TRACING.toString());
+    builder.configure(new Context());
+    builder.build();
+  }
+
+}
@@ -19,6 +19,9 @@
 
 package org.apache.flume.lifecycle;
 
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
 import org.apache.flume.CounterGroup;
 import org.apache.flume.lifecycle.LifecycleSupervisor.SupervisorPolicy;
 import org.junit.Assert;
@@ -165,6 +168,54 @@ public class TestLifecycleSupervisor {
     supervisor.stop();
   }
 
+  @Test
+  public void testDependentStartsWhenDependencyIsReady()
+      throws LifecycleException, InterruptedException {
+    supervisor.start();
+
+    final CountingLifecycleAware dependency = new CountingLifecycleAware() {
+      @Override
+      public void start() {
+        try {
+          Thread.sleep(500);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        super.start();
+      }
+    };
+    final AtomicBoolean dependencyStartedFirst = new AtomicBoolean();
+    CountingLifecycleAware dependent = new CountingLifecycleAware() {
+      @Override
+      public void start() {
+        dependencyStartedFirst.set(
+            dependency.getLifecycleState() == LifecycleState.START);
+        super.start();
+      }
+    };
+
+    supervisor.supervise(dependency,
+        new SupervisorPolicy.AlwaysRestartPolicy(), LifecycleState.START);
+    supervisor.supervise(dependent,
+        new SupervisorPolicy.AlwaysRestartPolicy(), LifecycleState.START,
+        Collections.singletonList(dependency));
+
+    // well before the 3 second monitoring round that would otherwise retry
+    for (int i = 0; i < 20 &&
+        dependent.getLifecycleState() != LifecycleState.START; i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(LifecycleState.START, dependent.getLifecycleState());
+    Assert.assertTrue(dependencyStartedFirst.get());
+    Assert.assertEquals(Long.valueOf(1), dependent.counterGroup.get("start"));
+
+    Long latency = supervisor.getStartLatency(dependent);
+    Assert.assertNotNull(latency);
+    Assert.assertTrue(latency >= 400 && latency < 2000);
+
+    supervisor.stop();
+  }
+
   public static class CountingLifecycleAware implements LifecycleAware {
 
     public CounterGroup counterGroup;
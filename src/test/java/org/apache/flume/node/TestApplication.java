@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.node;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.flume.Channel;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.instrumentation.SourceCounter;
+import org.apache.flume.lifecycle.LifecycleAware;
+import org.apache.flume.lifecycle.LifecycleState;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.common.primitives.Longs;
+
+import static org.fest.reflect.core.Reflection.field;
+
+public class TestApplication {
+
+  private static final String BASE_CONF =
+      "a1.channels = c1 c2\n" +
+      "a1.channels.c1.type = memory\n" +
+      "a1.channels.c2.type = memory\n" +
+      "a1.sources = r1 r2\n" +
+      "a1.sources.r1.type = seq\n" +
+      "a1.sources.r1.channels = c1\n" +
+      "a1.sources.r2.type = seq\n" +
+      "a1.sources.r2.channels = c2\n" +
+      "a1.sinks = k1 k2\n" +
+      "a1.sinks.k1.type = null\n" +
+      "a1.sinks.k1.channel = c1\n" +
+      "a1.sinks.k2.type = null\n" +
+      "a1.sinks.k2.channel = c2\n";
+
+  private File baseDir;
+  private File confFile;
+  private PropertiesFileConfigurationProvider provider;
+  private Application application;
+
+  @Before
+  public void setUp() {
+    baseDir = Files.createTempDir();
+    confFile = new File(baseDir, "flume-conf.properties");
+    // one provider across reloads, as its channel cache is what lets
+    // channel instances survive
+    provider = new PropertiesFileConfigurationProvider("a1", confFile);
+    application = new Application();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    application.stop();
+    FileUtils.deleteDirectory(baseDir);
+  }
+
+  private MaterializedConfiguration load(String conf) throws IOException {
+    Files.write(conf, confFile, Charsets.UTF_8);
+    application.handleConfigurationEvent(provider.getConfiguration());
+    return application.getMaterializedConfiguration();
+  }
+
+  @Test
+  public void testReloadOnlyRestartsChangedComponents() throws Exception {
+    MaterializedConfiguration before = load(BASE_CONF);
+    assertAllStarted(before);
+    MaterializedConfiguration after =
+        load(BASE_CONF + "a1.sources.r2.batchSize = 5\n");
+
+    Assert.assertSame(before.getChannels().get("c1"),
+        after.getChannels().get("c1"));
+    Assert.assertSame(before.getChannels().get("c2"),
+        after.getChannels().get("c2"));
+    Assert.assertSame(before.getSinkRunners().get("k1"),
+        after.getSinkRunners().get("k1"));
+    Assert.assertSame(before.getSinkRunners().get("k2"),
+        after.getSinkRunners().get("k2"));
+    Assert.assertSame(before.getSourceRunners().get("r1"),
+        after.getSourceRunners().get("r1"));
+    Assert.assertNotSame(before.getSourceRunners().get("r2"),
+        after.getSourceRunners().get("r2"));
+
+    Assert.assertEquals(LifecycleState.STOP,
+        before.getSourceRunners().get("r2").getLifecycleState());
+    assertStarted(after.getSourceRunners().get("r2"));
+    Assert.assertEquals(LifecycleState.START,
+        after.getChannels().get("c2").getLifecycleState());
+  }
+
+  @Test
+  public void testChannelChangeRestartsConnectedComponents() throws Exception {
+    MaterializedConfiguration before = load(BASE_CONF);
+    MaterializedConfiguration after =
+        load(BASE_CONF + "a1.channels.c1.capacity = 500\n");
+
+    // the memory channel instance is reused but restarted, with its users
+    Assert.assertSame(before.getChannels().get("c1"),
+        after.getChannels().get("c1"));
+    Assert.assertNotSame(before.getSinkRunners().get("k1"),
+        after.getSinkRunners().get("k1"));
+    Assert.assertNotSame(before.getSourceRunners().get("r1"),
+        after.getSourceRunners().get("r1"));
+    Assert.assertSame(before.getSinkRunners().get("k2"),
+        after.getSinkRunners().get("k2"));
+    Assert.assertSame(before.getSourceRunners().get("r2"),
+        after.getSourceRunners().get("r2"));
+  }
+
+  @Test
+  public void testRemovedComponentsAreStopped() throws Exception {
+    MaterializedConfiguration before = load(BASE_CONF);
+    assertAllStarted(before);
+    MaterializedConfiguration after = load(BASE_CONF
+        .replace("a1.sources = r1 r2", "a1.sources = r1")
+        .replace("a1.sinks = k1 k2", "a1.sinks = k1"));
+
+    Assert.assertNull(after.getSourceRunners().get("r2"));
+    Assert.assertNull(after.getChannels().get("c2"));
+    Assert.assertEquals(LifecycleState.STOP,
+        before.getSourceRunners().get("r2").getLifecycleState());
+    Assert.assertEquals(LifecycleState.STOP,
+        before.getChannels().get("c2").getLifecycleState());
+    Assert.assertSame(before.getSourceRunners().get("r1"),
+        after.getSourceRunners().get("r1"));
+  }
+
+  @Test
+  public void testStopKeepsEventsInFlight() throws Exception {
+    File snapshot = new File(baseDir, "c1.snapshot");
+    MaterializedConfiguration conf = load(
+        "a1.channels = c1\n" +
+        "a1.channels.c1.type = memory\n" +
+        "a1.channels.c1.capacity = 100000\n" +
+        "a1.channels.c1.transactionCapacity = 100\n" +
+        "a1.channels.c1.snapshotFile = " + snapshot.getPath() + "\n" +
+        "a1.sources = r1\n" +
+        "a1.sources.r1.type = seq\n" +
+        "a1.sources.r1.channels = c1\n" +
+        "a1.sources.r1.batchSize = 10\n" +
+        "a1.sources.r1.sleepMinMillis = 0\n" +
+        "a1.sources.r1.sleepMaxMillis = 0\n");
+    SourceCounter counter = field("sourceCounter").ofType(SourceCounter.class)
+        .in(conf.getSourceRunners().get("r1").getSource()).get();
+    for (int i = 0; i < 50 && counter.getEventAcceptedCount() < 1000; i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertTrue(counter.getEventAcceptedCount() >= 1000);
+
+    // the source is still producing when the application stops
+    application.stop();
+    application = new Application();
+    Assert.assertTrue(snapshot.exists());
+
+    Context context = new Context();
+    context.put("capacity", "100000");
+    context.put("snapshotFile", snapshot.getPath());
+    Channel restored = new MemoryChannel();
+    restored.setName("restored");
+    Configurables.configure(restored, context);
+    restored.start();
+    long expected = 0;
+    boolean empty = false;
+    while (!empty) {
+      Transaction tx = restored.getTransaction();
+      tx.begin();
+      for (int i = 0; i < 100; i++) {
+        Event event = restored.take();
+        if (event == null) {
+          empty = true;
+          break;
+        }
+        Assert.assertEquals(expected++, Longs.fromByteArray(event.getBody()));
+      }
+      tx.commit();
+      tx.close();
+    }
+    restored.stop();
+    Assert.assertEquals(counter.getEventAcceptedCount(), expected);
+  }
+
+  private static void assertAllStarted(MaterializedConfiguration conf)
+      throws InterruptedException {
+    for (LifecycleAware channel : conf.getChannels().values()) {
+      assertStarted(channel);
+    }
+    for (LifecycleAware sink : conf.getSinkRunners().values()) {
+      assertStarted(sink);
+    }
+    for (LifecycleAware source : conf.getSourceRunners().values()) {
+      assertStarted(source);
+    }
+  }
+
+  private static void assertStarted(LifecycleAware component)
+      throws InterruptedException {
+    // the supervisor starts components asynchronously
+    for (int i = 0; i < 50 &&
+        component.getLifecycleState() != LifecycleState.START; i++) {
+      Thread.sleep(100);
+    }
+    Assert.assertEquals(LifecycleState.START, component.getLifecycleState());
+  }
+
+}
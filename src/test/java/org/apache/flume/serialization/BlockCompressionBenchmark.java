@@ -0,0 +1,113 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.serialization;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.flume.Context;
+import org.apache.flume.event.EventBuilder;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Compares the CPU time and the bytes written by the text serializer with
+ * and without block compression. It is not a unit test and is not run by
+ * the build; run its main method, optionally with the number of events.
+ * Each configuration is run a few times so that the JIT has warmed up by
+ * the last run, which is the one reported.
+ */
+public class BlockCompressionBenchmark {
+
+  private static final int RUNS = 5;
+
+  public static void main(String[] args) throws IOException {
+    int events = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+    String[] names = { "none", "deflate/64k", "deflate/256k",
+        "deflate/256k/level1" };
+    Context[] contexts = { new Context(), deflate(64 * 1024),
+        deflate(256 * 1024), deflate(256 * 1024) };
+    contexts[3].put("compressionLevel", "1");
+
+    for (int i = 0; i < contexts.length; i++) {
+      long bytes = 0;
+      long nanos = 0;
+      for (int run = 0; run < RUNS; run++) {
+        CountingOutputStream out = new CountingOutputStream();
+        long start = System.nanoTime();
+        serialize(contexts[i], events, out);
+        nanos = System.nanoTime() - start;
+        bytes = out.count;
+      }
+      System.out.println(String.format("%-20s %12d bytes %8d ms %8.1f MB/s",
+          names[i], bytes, nanos / 1000000,
+          plainBytes(events) * 1000.0 / Math.max(1L, nanos)));
+    }
+  }
+
+  private static Context deflate(int blockBytes) {
+    Context context = new Context();
+    context.put("compressionCodec", "deflate");
+    context.put("compressionBlockBytes", String.valueOf(blockBytes));
+    return context;
+  }
+
+  private static String line(int i) {
+    return "12:34:56,789 INFO  [main] com.example.OrderService - order " + i +
+        " accepted for customer " + (i % 97);
+  }
+
+  private static long plainBytes(int events) {
+    long bytes = 0;
+    for (int i = 0; i < events; i++) {
+      bytes += line(i).length() + 1;
+    }
+    return bytes;
+  }
+
+  private static void serialize(Context context, int events,
+      OutputStream out) throws IOException {
+    EventSerializer serializer =
+        EventSerializerFactory.getInstance("text", context, out);
+    serializer.afterCreate();
+    for (int i = 0; i < events; i++) {
+      serializer.write(EventBuilder.withBody(line(i), Charsets.UTF_8));
+      if (i % 10000 == 9999) {
+        serializer.flush();
+      }
+    }
+    serializer.flush();
+    serializer.beforeClose();
+  }
+
+  private static class CountingOutputStream extends OutputStream {
+    private long count;
+
+    @Override
+    public void write(int b) {
+      count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      count += len;
+    }
+  }
+
+}
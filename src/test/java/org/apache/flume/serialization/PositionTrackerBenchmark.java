@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.serialization;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Compares the commit rate of the Avro and checkpoint position trackers.
+ * It is not a unit test and is not run by the build; run its main method,
+ * optionally with the number of commits per tracker, on the disk to
+ * measure, as the rate is bound by how fast it forces writes.
+ */
+public class PositionTrackerBenchmark {
+
+  public static void main(String[] args) throws IOException {
+    int commits = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+    File dir = new File(System.getProperty("java.io.tmpdir"));
+    File dataFile = File.createTempFile("benchmark", ".data", dir);
+    File metaFile = new File(dataFile.getPath() + ".meta");
+    File checkpointFile = new File(dataFile.getPath() + ".checkpoint");
+    try {
+      report("durable", DurablePositionTracker.getInstance(metaFile,
+          dataFile.toString()), commits);
+      for (int commitCount : new int[] { 1, 10, 100 }) {
+        checkpointFile.delete();
+        report("checkpoint, commitCount=" + commitCount,
+            CheckpointPositionTracker.getInstance(checkpointFile,
+                dataFile.toString(), commitCount, 0L), commits);
+      }
+    } finally {
+      metaFile.delete();
+      checkpointFile.delete();
+      dataFile.delete();
+    }
+  }
+
+  private static void report(String name, PositionTracker tracker,
+      int commits) throws IOException {
+    long start = System.nanoTime();
+    for (int i = 1; i <= commits; i++) {
+      tracker.storePosition(i * 100L);
+    }
+    tracker.close();
+    long nanos = System.nanoTime() - start;
+    System.out.println(String.format("%-30s %10d commits/s", name,
+        commits * 1000000000L / Math.max(1L, nanos)));
+  }
+
+}
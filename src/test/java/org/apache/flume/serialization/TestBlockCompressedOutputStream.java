@@ -0,0 +1,130 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.serialization;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.flume.Context;
+import org.apache.flume.event.EventBuilder;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class TestBlockCompressedOutputStream {
+
+  private static String line(int i) {
+    return "12:34:56,789 INFO  [main] com.example.OrderService - order " + i +
+        " accepted for customer " + (i % 97);
+  }
+
+  private static byte[] serialize(Context context, int count)
+      throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    EventSerializer serializer =
+        EventSerializerFactory.getInstance("text", context, out);
+    serializer.afterCreate();
+    for (int i = 0; i < count; i++) {
+      serializer.write(EventBuilder.withBody(line(i), Charsets.UTF_8));
+      if (i % 10000 == 9999) {
+        serializer.flush();
+      }
+    }
+    serializer.flush();
+    serializer.beforeClose();
+    out.close();
+    return out.toByteArray();
+  }
+
+  private static Context deflateContext(int blockBytes) {
+    Context context = new Context();
+    context.put("compressionCodec", "deflate");
+    context.put("compressionBlockBytes", String.valueOf(blockBytes));
+    return context;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    byte[] data = serialize(deflateContext(4096), 5000);
+
+    BufferedReader reader = new BufferedReader(new InputStreamReader(
+        new GZIPInputStream(new ByteArrayInputStream(data)), Charsets.UTF_8));
+    for (int i = 0; i < 5000; i++) {
+      Assert.assertEquals(line(i), reader.readLine());
+    }
+    Assert.assertNull(reader.readLine());
+    reader.close();
+  }
+
+  @Test
+  public void testBlocksEndOnEventBoundaries() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    BlockCompressedOutputStream blocks =
+        new BlockCompressedOutputStream(out, 50, 6);
+    int[] ends = new int[10];
+    for (int i = 0; i < 10; i++) {
+      blocks.write((line(i) + "\n").getBytes(Charsets.UTF_8));
+      blocks.endEvent();
+      ends[i] = out.size();
+    }
+    blocks.close();
+
+    // every event is longer than the block size, so each gets its own member
+    Assert.assertEquals(10, blocks.getBlocksWritten());
+    Assert.assertEquals(out.size(), blocks.getCompressedBytes());
+
+    // each member decompresses on its own to exactly one whole event
+    byte[] data = out.toByteArray();
+    int start = 0;
+    for (int i = 0; i < 10; i++) {
+      GZIPInputStream in = new GZIPInputStream(
+          new ByteArrayInputStream(data, start, ends[i] - start));
+      BufferedReader reader = new BufferedReader(
+          new InputStreamReader(in, Charsets.UTF_8));
+      Assert.assertEquals(line(i), reader.readLine());
+      Assert.assertNull(reader.readLine());
+      start = ends[i];
+    }
+    Assert.assertEquals(data.length, start);
+  }
+
+  @Test
+  public void testUnknownCodecDisablesCompression() throws IOException {
+    Context context = new Context();
+    context.put("compressionCodec", "lzo");
+    Assert.assertEquals(new String(serialize(new Context(), 10)),
+        new String(serialize(context, 10)));
+  }
+
+  @Test
+  public void testCompresses() throws IOException {
+    int plainBytes = serialize(new Context(), 20000).length;
+    Context fast = deflateContext(64 * 1024);
+    fast.put("compressionLevel", "1");
+    Assert.assertTrue(serialize(deflateContext(64 * 1024), 20000).length
+        < plainBytes);
+    Assert.assertTrue(serialize(fast, 20000).length < plainBytes);
+  }
+
+}
@@ -0,0 +1,137 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.serialization;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestCheckpointPositionTracker {
+
+  private File checkpointFile;
+  private File dataFile;
+
+  @Before
+  public void setup() throws IOException {
+    checkpointFile = File.createTempFile(getClass().getName(), ".checkpoint");
+    checkpointFile.delete();
+    dataFile = File.createTempFile(getClass().getName(), ".data");
+    Files.write("line 1\nline2\n", dataFile, Charsets.UTF_8);
+  }
+
+  @After
+  public void tearDown() {
+    checkpointFile.delete();
+    dataFile.delete();
+  }
+
+  @Test
+  public void testBasicTracker() throws IOException {
+    PositionTracker tracker = CheckpointPositionTracker.getInstance(
+        checkpointFile, dataFile.toString(), 1, 0L);
+    Assert.assertEquals(0, tracker.getPosition());
+    Assert.assertEquals(dataFile.toString(), tracker.getTarget());
+    long length = checkpointFile.length();
+    for (long pos = 1; pos <= 100; pos++) {
+      tracker.storePosition(pos);
+    }
+    Assert.assertEquals(100, tracker.getPosition());
+    Assert.assertEquals(length, checkpointFile.length());
+    tracker.close();
+
+    // target only gets updated if the file did not exist
+    tracker = CheckpointPositionTracker.getInstance(checkpointFile, "foobar",
+        1, 0L);
+    Assert.assertEquals(100, tracker.getPosition());
+    Assert.assertEquals(dataFile.toString(), tracker.getTarget());
+    tracker.close();
+  }
+
+  @Test
+  public void testGroupCommit() throws IOException {
+    PositionTracker tracker = CheckpointPositionTracker.getInstance(
+        checkpointFile, dataFile.toString(), 3, 0L);
+    tracker.storePosition(1);
+    tracker.storePosition(2);
+    // not committed yet, as after a crash
+    Assert.assertEquals(0, recoveredPosition());
+    tracker.storePosition(3);
+    Assert.assertEquals(3, recoveredPosition());
+    tracker.storePosition(4);
+    Assert.assertEquals(3, recoveredPosition());
+    tracker.close();
+    Assert.assertEquals(4, recoveredPosition());
+  }
+
+  @Test
+  public void testCommitInterval() throws Exception {
+    PositionTracker tracker = CheckpointPositionTracker.getInstance(
+        checkpointFile, dataFile.toString(), 1000, 50L);
+    tracker.storePosition(1);
+    Assert.assertEquals(0, recoveredPosition());
+    Thread.sleep(100);
+    tracker.storePosition(2);
+    Assert.assertEquals(2, recoveredPosition());
+    tracker.close();
+  }
+
+  /**
+   * Ensure that a torn write of the latest checkpoint falls back to the
+   * previous one
+   */
+  @Test
+  public void testTornWrite() throws IOException {
+    PositionTracker tracker = CheckpointPositionTracker.getInstance(
+        checkpointFile, dataFile.toString(), 1, 0L);
+    tracker.storePosition(7);
+    tracker.storePosition(11);
+    tracker.close();
+
+    // the latest slot is the first one, its position starts 8 bytes in
+    int slotsOffset = 12 + dataFile.toString().getBytes(Charsets.UTF_8).length;
+    RandomAccessFile raf = new RandomAccessFile(checkpointFile, "rw");
+    raf.seek(slotsOffset + 8 + 7);
+    raf.write(0x42);
+    raf.close();
+
+    Assert.assertEquals(7, recoveredPosition());
+  }
+
+  @Test(expected = IOException.class)
+  public void testNotACheckpoint() throws IOException {
+    Files.write("not a checkpoint file", checkpointFile, Charsets.UTF_8);
+    CheckpointPositionTracker.getInstance(checkpointFile, "foo", 1, 0L);
+  }
+
+  private long recoveredPosition() throws IOException {
+    PositionTracker tracker = CheckpointPositionTracker.getInstance(
+        checkpointFile, "foo", 1, 0L);
+    long position = tracker.getPosition();
+    tracker.close();
+    return position;
+  }
+
+}
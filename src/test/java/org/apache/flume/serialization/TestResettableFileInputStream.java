@@ -29,12 +29,15 @@ import org.slf4j.LoggerFactory;
 
 import static org.junit.Assert.*;
 import static org.junit.Assert.assertEquals;
+import static org.fest.reflect.core.Reflection.field;
 
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.charset.Charset;
 import java.util.List;
 
@@ -229,6 +232,112 @@ public class TestResettableFileInputStream {
     assertEquals(11, Integer.parseInt(readLine(in, LINE_LEN).substring(0, 10)));
   }
 
+  @Test
+  public void testMemoryMappedSeek() throws IOException {
+    int NUM_LINES = 1000;
+    int LINE_LEN = 1000;
+    generateData(file, Charsets.UTF_8, NUM_LINES, LINE_LEN);
+
+    PositionTracker tracker = new DurablePositionTracker(meta, file.getPath());
+    ResettableInputStream in = new ResettableFileInputStream(file, tracker,
+        10 * LINE_LEN + 7, Charsets.UTF_8, true);
+
+    for (int i = 0; i < 25; i++) {
+      assertEquals(i, Integer.parseInt(readLine(in, LINE_LEN).substring(0, 10)));
+    }
+
+    // seek back within and outside the mapped window
+    in.seek(in.tell() - 2 * LINE_LEN);
+    assertEquals(23, Integer.parseInt(readLine(in, LINE_LEN).substring(0, 10)));
+    in.seek(3 * LINE_LEN);
+    assertEquals(3, Integer.parseInt(readLine(in, LINE_LEN).substring(0, 10)));
+
+    // seek forward outside the mapped window
+    in.seek(in.tell() + 500 * LINE_LEN);
+    assertEquals(504, Integer.parseInt(readLine(in, LINE_LEN).substring(0, 10)));
+    in.seek((NUM_LINES - 1) * LINE_LEN);
+    assertEquals(NUM_LINES - 1,
+        Integer.parseInt(readLine(in, LINE_LEN).substring(0, 10)));
+    assertNull(readLine(in, LINE_LEN));
+    in.close();
+  }
+
+  @Test
+  public void testMemoryMappedResume() throws IOException {
+    List<String> expected = multiLineFileInit(file, Charsets.UTF_8);
+
+    PositionTracker tracker = new DurablePositionTracker(meta, file.getPath());
+    ResettableInputStream in =
+        new ResettableFileInputStream(file, tracker, 16, Charsets.UTF_8, true);
+    assertEquals(expected.get(0), readLine(in, 100));
+    in.mark();
+    assertEquals(expected.get(1), readLine(in, 100));
+    in.reset();
+    assertEquals(expected.get(1), readLine(in, 100));
+    in.mark();
+    assertEquals(expected.get(2), readLine(in, 100));
+    in.close();
+
+    tracker = new DurablePositionTracker(meta, file.getPath());
+    in = new ResettableFileInputStream(file, tracker, 16, Charsets.UTF_8, true);
+    assertEquals(expected.get(2), readLine(in, 100));
+    assertEquals(expected.get(3), readLine(in, 100));
+    assertNull(readLine(in, 100));
+    in.close();
+  }
+
+  /**
+   * Ensure that closing a memory mapped stream unmaps its window, so that
+   * the file can be retired on Windows too.
+   */
+  @Test
+  public void testMemoryMappedCloseUnmaps() throws IOException {
+    List<String> expected = multiLineFileInit(file, Charsets.UTF_8);
+
+    PositionTracker tracker = new DurablePositionTracker(meta, file.getPath());
+    ResettableInputStream in =
+        new ResettableFileInputStream(file, tracker, 16, Charsets.UTF_8, true);
+    assertEquals(expected.get(0), readLine(in, 100));
+    assertTrue(field("buf").ofType(ByteBuffer.class).in(in).get()
+        instanceof MappedByteBuffer);
+    in.close();
+    assertFalse(field("buf").ofType(ByteBuffer.class).in(in).get()
+        instanceof MappedByteBuffer);
+
+    File renamed = new File(file.getPath() + ".COMPLETED");
+    assertTrue(file.renameTo(renamed));
+    assertTrue(renamed.renameTo(file));
+  }
+
+  /**
+   * Ensure that multi-byte characters split by the end of the buffer or of
+   * the mapped window are decoded.
+   */
+  @Test
+  public void testMultiByteCharsAcrossBuffers() throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (int i = 0; i < 200; i++) {
+      sb.append("line ").append(i).append(": \u00e9\u20ac\u00fc\n");
+    }
+    String output = sb.toString();
+    Files.write(output.getBytes(Charsets.UTF_8), file);
+
+    for (boolean memoryMapped : new boolean[] { false, true }) {
+      meta.delete();
+      PositionTracker tracker =
+          new DurablePositionTracker(meta, file.getPath());
+      ResettableInputStream in = new ResettableFileInputStream(file, tracker,
+          7, Charsets.UTF_8, memoryMapped);
+      StringBuilder result = new StringBuilder();
+      String line;
+      while ((line = readLine(in, 100)) != null) {
+        result.append(line);
+      }
+      assertEquals(output, result.toString());
+      in.close();
+    }
+  }
+
   /**
    * Helper function to read a line from a character stream.
    * @param in
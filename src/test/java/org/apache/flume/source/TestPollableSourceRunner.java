@@ -36,6 +36,7 @@ import org.apache.flume.channel.ReplicatingChannelSelector;
 import org.apache.flume.conf.Configurables;
 import org.apache.flume.event.EventBuilder;
 import org.apache.flume.lifecycle.LifecycleState;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
 import org.slf4j.Logger;
@@ -140,4 +141,11 @@ public class TestPollableSourceRunner {
     sourceRunner.stop();
   }
 
+  @Test
+  public void testStopBeforeStart() {
+    sourceRunner.setSource(new SequenceGeneratorSource());
+    sourceRunner.stop();
+    Assert.assertEquals(LifecycleState.IDLE, sourceRunner.getLifecycleState());
+  }
+
 }
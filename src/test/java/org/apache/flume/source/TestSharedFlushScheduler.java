@@ -0,0 +1,123 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.flume.source;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.flume.Channel;
+import org.apache.flume.Context;
+import org.apache.flume.channel.ChannelProcessor;
+import org.apache.flume.channel.ReplicatingChannelSelector;
+import org.apache.flume.conf.Configurables;
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+public class TestSharedFlushScheduler {
+
+  @Test
+  public void testTasksShareOneThread() throws Exception {
+    final Set<String> threads = Collections.newSetFromMap(
+        new ConcurrentHashMap<String, Boolean>());
+    final CountDownLatch fast = new CountDownLatch(5);
+    final CountDownLatch slow = new CountDownLatch(1);
+    ScheduledFuture<?> first = SharedFlushScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        threads.add(Thread.currentThread().getName());
+        fast.countDown();
+      }
+    }, 10);
+    ScheduledFuture<?> second = SharedFlushScheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        threads.add(Thread.currentThread().getName());
+        slow.countDown();
+        throw new RuntimeException("does not cancel the task");
+      }
+    }, 50);
+    Assert.assertTrue(fast.await(5, TimeUnit.SECONDS));
+    Assert.assertTrue(slow.await(5, TimeUnit.SECONDS));
+    Assert.assertEquals(1, threads.size());
+    Assert.assertFalse(second.isDone());
+
+    SharedFlushScheduler.cancel(first);
+    SharedFlushScheduler.cancel(first);
+    Assert.assertEquals(1, SharedFlushScheduler.getScheduledCount());
+    SharedFlushScheduler.cancel(second);
+    Assert.assertEquals(0, SharedFlushScheduler.getScheduledCount());
+  }
+
+  @Test
+  public void testStderrDrainer() throws Exception {
+    byte[] text = "first\nsecond\r\nincomplete".getBytes(Charsets.UTF_8);
+    ByteArrayInputStream stream = new ByteArrayInputStream(text);
+    SharedStderrDrainer.Drain drain = SharedStderrDrainer.register("test",
+        stream, Charsets.UTF_8, true);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (stream.available() > 0 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(0, stream.available());
+
+    drain.close();
+    drain.close();
+    Assert.assertEquals(0, SharedStderrDrainer.getDrainCount());
+  }
+
+  @Test
+  public void testExecSourcesShareThreads() throws Exception {
+    ExecSource[] sources = new ExecSource[3];
+    for (int i = 0; i < sources.length; i++) {
+      sources[i] = new ExecSource();
+      sources[i].setName("shared" + i);
+      Context context = new Context();
+      context.put("command", "sleep 30");
+      context.put("batchTimeout", "50");
+      Configurables.configure(sources[i], context);
+      ReplicatingChannelSelector selector = new ReplicatingChannelSelector();
+      selector.setChannels(new ArrayList<Channel>());
+      sources[i].setChannelProcessor(new ChannelProcessor(selector));
+      sources[i].start();
+    }
+    long deadline = System.currentTimeMillis() + 5000;
+    while (SharedFlushScheduler.getScheduledCount() < sources.length
+        && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertEquals(sources.length,
+        SharedFlushScheduler.getScheduledCount());
+    Assert.assertEquals(sources.length, SharedStderrDrainer.getDrainCount());
+
+    for (ExecSource source : sources) {
+      source.stop();
+    }
+    Assert.assertEquals(0, SharedFlushScheduler.getScheduledCount());
+    Assert.assertEquals(0, SharedStderrDrainer.getDrainCount());
+  }
+
+}
@@ -20,7 +20,9 @@ package org.apache.flume.source;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.apache.flume.Channel;
 import org.apache.flume.ChannelSelector;
@@ -102,6 +104,58 @@ public class TestSpoolDirectorySource {
     txn.close();
   }
 
+  @Test
+  public void testMultipleThreads() throws IOException, InterruptedException {
+    Context channelContext = new Context();
+    channelContext.put("capacity", "1000");
+    channelContext.put("transactionCapacity", "1000");
+    Configurables.configure(channel, channelContext);
+
+    Context context = new Context();
+    for (int i = 0; i < 4; i++) {
+      StringBuilder sb = new StringBuilder();
+      for (int j = 0; j < 50; j++) {
+        sb.append("file" + i + "line" + j + "\n");
+      }
+      Files.write(sb.toString(), new File(tmpDir, "file" + i), Charsets.UTF_8);
+    }
+
+    context.put(SpoolDirectorySourceConfigurationConstants.SPOOL_DIRECTORY,
+        tmpDir.getAbsolutePath());
+    context.put(SpoolDirectorySourceConfigurationConstants.BATCH_SIZE, "10");
+    context.put(SpoolDirectorySourceConfigurationConstants.THREADS, "3");
+
+    Configurables.configure(source, context);
+    source.start();
+    File[] completed = null;
+    for (int i = 0; i < 50; i++) {
+      Thread.sleep(100);
+      completed = tmpDir.listFiles(new java.io.FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+          return name.endsWith(SpoolDirectorySourceConfigurationConstants
+              .DEFAULT_SPOOLED_FILE_SUFFIX);
+        }
+      });
+      if (completed.length == 4) {
+        break;
+      }
+    }
+    Assert.assertEquals(4, completed.length);
+    source.stop();
+
+    Set<String> lines = new HashSet<String>();
+    Transaction txn = channel.getTransaction();
+    txn.begin();
+    Event e;
+    while ((e = channel.take()) != null) {
+      Assert.assertTrue(lines.add(new String(e.getBody(), Charsets.UTF_8)));
+    }
+    txn.commit();
+    txn.close();
+    Assert.assertEquals(200, lines.size());
+  }
+
   @Test
   public void testLifecycle() throws IOException, InterruptedException {
     Context context = new Context();
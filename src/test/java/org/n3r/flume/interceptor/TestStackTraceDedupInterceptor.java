@@ -0,0 +1,211 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.interceptor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.flume.Clock;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.event.EventBuilder;
+import org.apache.flume.interceptor.Interceptor;
+import org.apache.flume.interceptor.InterceptorBuilderFactory;
+import org.apache.flume.interceptor.InterceptorType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.n3r.flume.interceptor.StackTraceDedupInterceptor.Constants;
+
+import com.google.common.base.Charsets;
+
+public class TestStackTraceDedupInterceptor {
+
+    private static final String TRACE = "10:00:00,000 ERROR [main] Service - call failed\n"
+            + "java.net.ConnectException: Connection refused to %s\n"
+            + "\tat java.net.PlainSocketImpl.socketConnect(Native Method)\n"
+            + "\tat com.example.Client.call(Client.java:42)\n"
+            + "\tat com.example.Service.handle(Service.java:%d)\n";
+
+    private long now;
+    private StackTraceDedupInterceptor interceptor;
+
+    @Before
+    public void setUp() throws Exception {
+        interceptor = build(new Context());
+    }
+
+    private StackTraceDedupInterceptor build(Context ctx) throws Exception {
+        ctx.put(Constants.FRAMES, "2");
+        ctx.put(Constants.WINDOW, "1000");
+        Interceptor.Builder builder = InterceptorBuilderFactory.newInstance(
+                InterceptorType.STACK_DEDUP.toString());
+        builder.configure(ctx);
+        StackTraceDedupInterceptor built = (StackTraceDedupInterceptor) builder.build();
+        built.setClock(new Clock() {
+            @Override
+            public long currentTimeMillis() {
+                return now;
+            }
+        });
+        return built;
+    }
+
+    private static Event trace(String host, int line) {
+        Event event = EventBuilder.withBody(String.format(TRACE, host, line), Charsets.UTF_8);
+        event.getHeaders().put("host", host);
+        return event;
+    }
+
+    private static String body(Event event) {
+        return new String(event.getBody(), Charsets.UTF_8);
+    }
+
+    @Test
+    public void testCollapse() {
+        Event plain = EventBuilder.withBody("10:00:00,000 INFO ok", Charsets.UTF_8);
+        List<Event> out = interceptor.intercept(Arrays.asList(trace("a", 1), plain, trace("b", 2)));
+        // the message and the third frame are not part of the fingerprint
+        Assert.assertEquals(2, out.size());
+        Assert.assertEquals("a", out.get(0).getHeaders().get("host"));
+        Assert.assertNotNull(out.get(0).getHeaders().get(Constants.FINGERPRINT_HEADER_DFLT));
+        Assert.assertSame(plain, out.get(1));
+        Assert.assertNull(plain.getHeaders().get(Constants.FINGERPRINT_HEADER_DFLT));
+
+        now += 500;
+        Assert.assertTrue(interceptor.intercept(Arrays.asList(trace("c", 3))).isEmpty());
+
+        now += 600;
+        out = interceptor.intercept(new ArrayList<Event>());
+        Assert.assertEquals(1, out.size());
+        Event summary = out.get(0);
+        Assert.assertEquals("java.net.ConnectException: Connection refused to a [repeated 2 times]",
+                body(summary));
+        Assert.assertEquals("2", summary.getHeaders().get(Constants.REPEATS_HEADER_DFLT));
+        Assert.assertEquals("a", summary.getHeaders().get("host"));
+        Assert.assertEquals(out.get(0).getHeaders().get(Constants.FINGERPRINT_HEADER_DFLT),
+                summary.getHeaders().get(Constants.FINGERPRINT_HEADER_DFLT));
+        Assert.assertEquals(0, interceptor.getFingerprintCount());
+
+        // a new window forwards the trace in full again
+        out = interceptor.intercept(Arrays.asList(trace("d", 4)));
+        Assert.assertEquals(1, out.size());
+        Assert.assertEquals("d", out.get(0).getHeaders().get("host"));
+    }
+
+    @Test
+    public void testDistinctTraces() {
+        Event other = EventBuilder.withBody(("java.lang.IllegalStateException: x\n"
+                + "\tat java.net.PlainSocketImpl.socketConnect(Native Method)\n"
+                + "\tat com.example.Client.call(Client.java:42)\n").getBytes(Charsets.UTF_8));
+        Event moved = EventBuilder.withBody(("java.net.ConnectException: y\r\n"
+                + "    at java.net.PlainSocketImpl.socketConnect(Native Method)\r\n"
+                + "    at com.example.Client.call(Client.java:43)\r\n").getBytes(Charsets.UTF_8));
+        List<Event> out = interceptor.intercept(Arrays.asList(trace("a", 1), other, moved));
+        Assert.assertEquals(3, out.size());
+        Assert.assertEquals(3, interceptor.getFingerprintCount());
+    }
+
+    @Test
+    public void testRetriedBatch() {
+        List<Event> batch = Arrays.asList(trace("a", 1), trace("b", 1), trace("c", 1));
+        Assert.assertEquals(1, interceptor.intercept(batch).size());
+        Assert.assertEquals(1, interceptor.intercept(batch).size());
+
+        now += 1000;
+        List<Event> out = interceptor.intercept(new ArrayList<Event>());
+        Assert.assertEquals(1, out.size());
+        Assert.assertEquals("2", out.get(0).getHeaders().get(Constants.REPEATS_HEADER_DFLT));
+    }
+
+    @Test
+    public void testRetriedSummaries() {
+        Assert.assertEquals(1, interceptor.intercept(Arrays.asList(trace("a", 1), trace("b", 1))).size());
+
+        now += 1000;
+        Event plain = EventBuilder.withBody("10:00:01,000 INFO ok", Charsets.UTF_8);
+        List<Event> batch = Arrays.asList(plain);
+        List<Event> out = interceptor.intercept(batch);
+        Assert.assertEquals(2, out.size());
+        Event summary = out.get(1);
+        Assert.assertEquals("1", summary.getHeaders().get(Constants.REPEATS_HEADER_DFLT));
+
+        // the channel rejected the batch, so the source retries it
+        out = interceptor.intercept(batch);
+        Assert.assertEquals(2, out.size());
+        Assert.assertSame(plain, out.get(0));
+        Assert.assertSame(summary, out.get(1));
+
+        out = interceptor.intercept(Arrays.asList(EventBuilder.withBody("next", Charsets.UTF_8)));
+        Assert.assertEquals(1, out.size());
+    }
+
+    @Test
+    public void testSingleEvents() {
+        for (int i = 0; i < 3; i++) {
+            Event event = trace("a", i);
+            Assert.assertSame(event, interceptor.intercept(event));
+            Assert.assertNotNull(event.getHeaders().get(Constants.FINGERPRINT_HEADER_DFLT));
+        }
+        Assert.assertEquals(0, interceptor.getFingerprintCount());
+        Assert.assertTrue(interceptor.drain().isEmpty());
+    }
+
+    @Test
+    public void testDrainOnClose() {
+        Assert.assertEquals(1, interceptor.intercept(Arrays.asList(
+                trace("a", 1), trace("b", 1), trace("c", 1))).size());
+
+        // the window has not passed, but nothing will be intercepted anymore
+        List<Event> summaries = interceptor.drain();
+        Assert.assertEquals(1, summaries.size());
+        Assert.assertEquals("2", summaries.get(0).getHeaders().get(Constants.REPEATS_HEADER_DFLT));
+        Assert.assertEquals(0, interceptor.getFingerprintCount());
+        Assert.assertTrue(interceptor.drain().isEmpty());
+        interceptor.close();
+    }
+
+    @Test
+    public void testBoundedTable() throws Exception {
+        Context ctx = new Context();
+        ctx.put(Constants.MAX_FINGERPRINTS, "2");
+        interceptor = build(ctx);
+        List<Event> out = interceptor.intercept(Arrays.asList(trace("a", 1), trace("b", 1)));
+        Assert.assertEquals(1, out.size());
+        for (int i = 0; i < 2; i++) {
+            String trace = "java.lang.Error" + i + "\n\tat com.example.Foo.bar(Foo.java:1)\n";
+            out = interceptor.intercept(Arrays.asList(
+                    EventBuilder.withBody(trace, Charsets.UTF_8)));
+        }
+        Assert.assertEquals(2, interceptor.getFingerprintCount());
+        // the evicted trace is summarized early
+        Assert.assertEquals(2, out.size());
+        Assert.assertEquals("1", out.get(1).getHeaders().get(Constants.REPEATS_HEADER_DFLT));
+    }
+
+    @Test
+    public void testFindExceptionLine() {
+        Assert.assertEquals(-1, StackTraceDedupInterceptor.findExceptionLine(
+                "no trace\nat all".getBytes(Charsets.UTF_8)));
+        Assert.assertEquals(4, StackTraceDedupInterceptor.findExceptionLine(
+                "log\nX: y\n\tat a.b(C.java:1)".getBytes(Charsets.UTF_8)));
+    }
+
+}
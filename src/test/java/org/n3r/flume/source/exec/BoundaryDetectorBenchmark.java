@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.source.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the time detector with the equivalent regex on lines shaped like
+ * those of our application servers. It is not a unit test and is not run by
+ * the build; run its main method, optionally with the number of lines and of
+ * rounds, the first of which warm up the JIT.
+ */
+public class BoundaryDetectorBenchmark {
+
+    private static final String TIME_REGEX = "^\\d{2}:\\d{2}:\\d{2},\\d{3}\\s";
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        List<String> lines = sampleLines(count);
+        BoundaryDetector regex = BoundaryDetectors.create("regex", TIME_REGEX);
+        BoundaryDetector fixed = BoundaryDetectors.create("time", null);
+        for (int round = 1; round <= rounds; round++) {
+            long regexNanos = time(regex, lines);
+            long fixedNanos = time(fixed, lines);
+            System.out.println(String.format("round %2d: regex %5d ns/line, time %5d ns/line",
+                    round, regexNanos / count, fixedNanos / count));
+        }
+    }
+
+    private static long time(BoundaryDetector detector, List<String> lines) {
+        long start = System.nanoTime();
+        int found = 0;
+        for (String line : lines) {
+            for (int b = detector.find(line, 0); b >= 0; b = detector.find(line, b + 1))
+                found++;
+        }
+        long nanos = System.nanoTime() - start;
+        if (found == 0)
+            throw new IllegalStateException("no boundaries found");
+        return nanos;
+    }
+
+    private static List<String> sampleLines(int count) {
+        Random random = new Random(42);
+        String[] levels = { "INFO ", "WARN ", "ERROR", "DEBUG" };
+        List<String> lines = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                lines.add(String.format("%02d:%02d:%02d,%03d %s [http-8080-%d] com.mall.app.OrderService - order %d placed",
+                        random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000),
+                        levels[random.nextInt(levels.length)], random.nextInt(200), random.nextInt(1000000)));
+            } else if (kind < 9) {
+                lines.add("\tat com.mall.app.OrderService.place(OrderService.java:" + random.nextInt(500) + ")");
+            } else {
+                lines.add("Caused by: java.sql.SQLException: 12:30 timeout,123 ");
+            }
+        }
+        return lines;
+    }
+
+}
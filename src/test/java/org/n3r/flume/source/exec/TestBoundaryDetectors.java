@@ -0,0 +1,147 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.source.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.flume.FlumeException;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBoundaryDetectors {
+
+    private static final String TIME_REGEX = "^\\d{2}:\\d{2}:\\d{2},\\d{3}\\s";
+
+    private static List<Integer> findAll(BoundaryDetector detector, String line) {
+        List<Integer> result = new ArrayList<Integer>();
+        int boundary = detector.find(line, 0);
+        while (boundary >= 0) {
+            result.add(boundary);
+            boundary = detector.find(line, boundary + 1);
+        }
+        return result;
+    }
+
+    private static List<Integer> findAll(Pattern pattern, String line) {
+        List<Integer> result = new ArrayList<Integer>();
+        Matcher matcher = pattern.matcher(line);
+        while (matcher.find()) {
+            result.add(matcher.start());
+        }
+        return result;
+    }
+
+    // lines shaped like those of our application servers
+    private static List<String> sampleLines(int count) {
+        Random random = new Random(42);
+        String[] levels = { "INFO ", "WARN ", "ERROR", "DEBUG" };
+        List<String> lines = new ArrayList<String>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            if (kind < 6) {
+                lines.add(String.format("%02d:%02d:%02d,%03d %s [http-8080-%d] com.mall.app.OrderService - order %d placed",
+                        random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000),
+                        levels[random.nextInt(levels.length)], random.nextInt(200), random.nextInt(1000000)));
+            } else if (kind < 9) {
+                lines.add("\tat com.mall.app.OrderService.place(OrderService.java:" + random.nextInt(500) + ")");
+            } else {
+                lines.add("Caused by: java.sql.SQLException: 12:30 timeout,123 ");
+            }
+        }
+        return lines;
+    }
+
+    @Test
+    public void testFixedFormats() {
+        BoundaryDetector time = BoundaryDetectors.create("time", null);
+        Assert.assertEquals(0, time.find("10:15:32,123 INFO started", 0));
+        Assert.assertEquals(0, time.find("10:15:32.123\tINFO started", 0));
+        Assert.assertEquals(-1, time.find("10:15:32,123INFO", 0));
+        Assert.assertEquals(-1, time.find("10:15:3", 0));
+        Assert.assertEquals(-1, time.find(" 10:15:32,123 INFO", 0));
+        Assert.assertEquals(-1, time.find("10:15:32,123 INFO", 1));
+
+        BoundaryDetector iso = BoundaryDetectors.create("ISO8601", null);
+        Assert.assertEquals(0, iso.find("2014-03-02T10:15:32+08:00 x", 0));
+        Assert.assertEquals(0, iso.find("2014-03-02 10:15:32 x", 0));
+        Assert.assertEquals(-1, iso.find("2014/03/02 10:15:32 x", 0));
+
+        BoundaryDetector log4j = BoundaryDetectors.create("log4j", null);
+        Assert.assertEquals(0, log4j.find("2014-03-02 10:15:32,123 INFO", 0));
+        Assert.assertEquals(-1, log4j.find("2014-03-02 10:15:32.123 INFO", 0));
+
+        BoundaryDetector logback = BoundaryDetectors.create("logback", null);
+        Assert.assertEquals(0, logback.find("10:15:32.123 [main] INFO", 0));
+        Assert.assertEquals(-1, logback.find("10:15:32.123 main INFO", 0));
+
+        Assert.assertEquals(0, new FixedFormatBoundaryDetector("[9999]").find("[2014] x", 0));
+    }
+
+    @Test
+    public void testKnownRegexAgreesWithPattern() {
+        BoundaryDetector detector = BoundaryDetectors.create(null, TIME_REGEX);
+        Assert.assertTrue(detector instanceof FixedFormatBoundaryDetector);
+        Pattern pattern = Pattern.compile(TIME_REGEX);
+        List<String> lines = sampleLines(2000);
+        lines.add("10:15:32,123");
+        lines.add("10:15:32,123\f");
+        lines.add("");
+        for (String line : lines) {
+            Assert.assertEquals(line, findAll(pattern, line), findAll(detector, line));
+        }
+    }
+
+    @Test
+    public void testRegexFindsLikeMatcherLoop() {
+        String[] regexes = { "aa", "\\d{2}:", "x*", "(?=b)" };
+        String[] lines = { "aaaaa", "12:34:56", "abxxbx", "", "bbb" };
+        for (String regex : regexes) {
+            Pattern pattern = Pattern.compile(regex);
+            BoundaryDetector detector = BoundaryDetectors.create("regex", regex);
+            Assert.assertTrue(detector instanceof RegexBoundaryDetector);
+            for (String line : lines) {
+                Assert.assertEquals(regex + " on " + line, findAll(pattern, line), findAll(detector, line));
+            }
+        }
+        Assert.assertNull(BoundaryDetectors.create(null, null));
+    }
+
+    public static class EveryLine implements BoundaryDetector {
+        @Override
+        public int find(String line, int from) {
+            return from == 0 ? 0 : -1;
+        }
+    }
+
+    @Test
+    public void testCustomDetector() {
+        Assert.assertTrue(BoundaryDetectors.create(EveryLine.class.getName(), null) instanceof EveryLine);
+        try {
+            BoundaryDetectors.create("no.such.Detector", null);
+            Assert.fail("Unknown detector should not be created");
+        } catch (FlumeException e) {
+            // expected
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.n3r.flume.source.exec;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.flume.Channel;
+import org.apache.flume.ChannelSelector;
+import org.apache.flume.Context;
+import org.apache.flume.Event;
+import org.apache.flume.Transaction;
+import org.apache.flume.channel.ChannelProcessor;
+import org.apache.flume.channel.MemoryChannel;
+import org.apache.flume.channel.ReplicatingChannelSelector;
+import org.apache.flume.conf.Configurables;
+import org.apache.flume.instrumentation.SourceCounter;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import static org.fest.reflect.core.Reflection.field;
+
+public class TestExecBlockSource {
+
+    private ExecBlockSource source;
+    private Channel channel;
+
+    @Before
+    public void setUp() {
+        channel = new MemoryChannel();
+        Context channelContext = new Context();
+        channelContext.put("capacity", "10");
+        channelContext.put("transactionCapacity", "10");
+        channelContext.put("keep-alive", "0");
+        Configurables.configure(channel, channelContext);
+        channel.start();
+
+        ChannelSelector selector = new ReplicatingChannelSelector();
+        selector.setChannels(Lists.newArrayList(channel));
+        source = new ExecBlockSource();
+        source.setName("execBlock");
+        source.setChannelProcessor(new ChannelProcessor(selector));
+    }
+
+    @After
+    public void tearDown() {
+        source.stop();
+        channel.stop();
+    }
+
+    @Test
+    public void testBackpressure() throws Exception {
+        Context context = new Context();
+        context.put("command", "seq 1 100");
+        context.put("batchSize", "5");
+        context.put("batchTimeout", "100000");
+        context.put("backpressure", "true");
+        context.put("backoffInitial", "10");
+        context.put("backoffMax", "40");
+        Configurables.configure(source, context);
+        source.start();
+
+        // the channel only holds two batches, so the source has to wait
+        Thread.sleep(500);
+        List<String> taken = new ArrayList<String>();
+        long deadline = System.currentTimeMillis() + 30000;
+        while (taken.size() < 100 && System.currentTimeMillis() < deadline) {
+            Transaction tx = channel.getTransaction();
+            tx.begin();
+            Event event = channel.take();
+            if (event != null) {
+                taken.add(new String(event.getBody()));
+            }
+            tx.commit();
+            tx.close();
+            if (event == null) {
+                Thread.sleep(20);
+            }
+        }
+
+        Assert.assertEquals(100, taken.size());
+        for (int i = 0; i < 100; i++) {
+            Assert.assertEquals(String.valueOf(i + 1), taken.get(i));
+        }
+        SourceCounter counter = field("sourceCounter").ofType(SourceCounter.class)
+                .in(source).get();
+        Assert.assertTrue(counter.getChannelWriteRetryCount() > 0);
+        Assert.assertTrue(counter.getBlockedTime() > 0);
+        Assert.assertEquals(100, counter.getEventAcceptedCount());
+    }
+
+    @Test
+    public void testBlocks() throws Exception {
+        Context context = new Context();
+        context.put("shell", "/bin/sh -c");
+        context.put("command", "printf '10:00:00,000 a\\n\\tat x\\n10:00:01,000 b\\n'; sleep 1");
+        context.put("batchSize", "1");
+        context.put("batchTimeout", "100");
+        context.put("boundaryDetector", "time");
+        Configurables.configure(source, context);
+        source.start();
+
+        List<String> taken = new ArrayList<String>();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (taken.size() < 2 && System.currentTimeMillis() < deadline) {
+            Transaction tx = channel.getTransaction();
+            tx.begin();
+            Event event = channel.take();
+            if (event != null) {
+                taken.add(new String(event.getBody()));
+            }
+            tx.commit();
+            tx.close();
+            if (event == null) {
+                Thread.sleep(20);
+            }
+        }
+        String newline = System.getProperty("line.separator");
+        Assert.assertEquals(2, taken.size());
+        Assert.assertEquals("10:00:00,000 a" + newline + "\tat x", taken.get(0));
+        Assert.assertEquals("10:00:01,000 b", taken.get(1));
+    }
+
+}